@@ -0,0 +1,46 @@
+#!/usr/bin/env bash
+#
+# Builds the bookstore and its JMH benchmarks with the JDK alone and runs bench.doa_bookstore.BenchmarkRunner,
+# so the suite runs from a shell or a CI job without IntelliJ. The JMH jars are the ones the doa_benchmarks
+# module uses, read from the local Maven repository; fetch them once with
+#
+#   mvn dependency:get -Dartifact=org.openjdk.jmh:jmh-generator-annprocess:1.37
+#
+# Arguments go to BenchmarkRunner, for example:
+#
+#   benchmarks/run.sh -p catalogSize=1000 CatalogEditBenchmark
+#
+# JAVA_HOME selects the JDK (21 or later), MAVEN_REPOSITORY the Maven repository and DOA_RELEASE the results
+# directory under benchmarks/results/.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+REPOSITORY="${MAVEN_REPOSITORY:-$HOME/.m2/repository}"
+JAVA_BIN="${JAVA_HOME:+$JAVA_HOME/bin/}"
+JARS=(
+    "org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar"
+    "org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar"
+    "net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar"
+    "org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+)
+
+CLASSPATH=""
+for jar in "${JARS[@]}"; do
+    if [ ! -f "$REPOSITORY/$jar" ]; then
+        echo "Missing $REPOSITORY/$jar; fetch it with mvn dependency:get (see the top of this script)." >&2
+        exit 1
+    fi
+    CLASSPATH="$CLASSPATH${CLASSPATH:+:}$REPOSITORY/$jar"
+done
+
+CLASSES="$(mktemp -d)"
+trap 'rm -rf "$CLASSES"' EXIT
+
+# The annotation processor writes the benchmark list next to the classes, where the runner looks for it
+find src -name '*.java' -not -path 'src/test/*' > "$CLASSES/sources"
+find benchmarks/src -name '*.java' >> "$CLASSES/sources"
+"${JAVA_BIN}javac" --release 21 -d "$CLASSES" -cp "$CLASSPATH" -processorpath "$CLASSPATH" @"$CLASSES/sources"
+
+"${JAVA_BIN}java" -Ddoa.release="${DOA_RELEASE:-snapshot}" -cp "$CLASSES:$CLASSPATH" \
+    bench.doa_bookstore.BenchmarkRunner "$@"
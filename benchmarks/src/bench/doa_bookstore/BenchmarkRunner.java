@@ -0,0 +1,47 @@
+package bench.doa_bookstore;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmark suite once per thread count and stores one JSON result file per run under
+ * {@code benchmarks/results/<release>/}, so throughput and allocation ({@code gc.alloc.rate.norm})
+ * can be compared between releases.
+ * <p>
+ * Any standard JMH option (for example {@code -p catalogSize=1000} or a benchmark regex) can be
+ * passed as an argument. The release label is read from the {@code doa.release} system property.
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String release = System.getProperty("doa.release", "snapshot");
+        File resultDir = new File("benchmarks/results", release);
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + resultDir);
+        }
+
+        for (int threads : THREAD_COUNTS) {
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+            if (commandLine.getIncludes().isEmpty()) {
+                options.include("bench\\.doa_bookstore\\..*Benchmark");
+            }
+            new Runner(options
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultDir, "threads-" + threads + ".json").getPath())
+                    .build()).run();
+        }
+    }
+}
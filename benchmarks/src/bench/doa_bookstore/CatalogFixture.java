@@ -0,0 +1,112 @@
+package bench.doa_bookstore;
+
+import doa_bookstore.controller.BookstoreController;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.repository.AuthorRepository;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.OrderRepository;
+import doa_bookstore.service.AuthorService;
+import doa_bookstore.service.BookService;
+import doa_bookstore.service.OrderService;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fills the singleton repositories with a synthetic catalog and wires the services and controller
+ * on top of it, so every benchmark measures the same object graph.
+ */
+public final class CatalogFixture {
+
+    /**
+     * Number of books written by each generated author.
+     */
+    public static final int BOOKS_PER_AUTHOR = 10;
+
+    /**
+     * Stock given to every generated book. Large enough that ordering benchmarks never run out.
+     */
+    public static final int STOCK_UNITS = Integer.MAX_VALUE / 2;
+
+    private static final Book.Genre[] GENRES = Book.Genre.values();
+
+    public final BookRepository bookRepository = BookRepository.getInstance();
+    public final AuthorRepository authorRepository = AuthorRepository.getInstance();
+    public final OrderRepository orderRepository = OrderRepository.getInstance();
+
+    public final BookService bookService = new BookService(bookRepository);
+    public final AuthorService authorService = new AuthorService(authorRepository);
+    public final OrderService orderService = new OrderService(orderRepository, bookService);
+    public final BookstoreController controller = new BookstoreController(bookService, authorService, orderService);
+
+    private final long[] bookIds;
+    private final Author[] authors;
+
+    private CatalogFixture(int catalogSize) throws EntityAlreadyExistsException {
+        orderRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        bookIds = new long[catalogSize];
+        authors = new Author[Math.max(1, catalogSize / BOOKS_PER_AUTHOR)];
+        for (int a = 0; a < authors.length; a++) {
+            authors[a] = authorRepository.save(new Author("Author " + a));
+        }
+        for (int b = 0; b < catalogSize; b++) {
+            Author author = authors[b % authors.length];
+            Book book = bookRepository.save(new Book("Title " + b, author, GENRES[b % GENRES.length], STOCK_UNITS));
+            bookIds[b] = book.getId();
+        }
+    }
+
+    /**
+     * Clears the repositories and loads a catalog of the given size.
+     *
+     * @param catalogSize The number of books to create.
+     * @return The loaded fixture.
+     */
+    public static CatalogFixture load(int catalogSize) throws EntityAlreadyExistsException {
+        return new CatalogFixture(catalogSize);
+    }
+
+    /**
+     * Releases the catalog so the next trial starts from an empty heap.
+     */
+    public void clear() {
+        orderRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+    }
+
+    public int size() {
+        return bookIds.length;
+    }
+
+    public long randomBookId() {
+        return bookIds[ThreadLocalRandom.current().nextInt(bookIds.length)];
+    }
+
+    /**
+     * Returns the ID of a fixture book, in the order the books were created.
+     *
+     * @param index The index of the book, from 0 to {@link #size()} - 1.
+     * @return Its ID.
+     */
+    public long bookId(int index) {
+        return bookIds[index];
+    }
+
+    public Author randomAuthor() {
+        return authors[ThreadLocalRandom.current().nextInt(authors.length)];
+    }
+
+    /**
+     * Returns the highest book ID created by the fixture. Anything above it was added by a benchmark.
+     *
+     * @return The highest fixture book ID.
+     */
+    public long lastBookId() {
+        return bookIds.length == 0 ? 0 : bookIds[bookIds.length - 1];
+    }
+}
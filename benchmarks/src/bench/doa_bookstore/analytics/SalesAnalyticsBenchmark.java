@@ -0,0 +1,142 @@
+package bench.doa_bookstore.analytics;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.analytics.BookSales;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sales queries answered by the incremental {@link doa_bookstore.analytics.SalesAnalytics} of the order
+ * repository, against the same answers computed by scanning {@code OrderRepository.findAll()} and every
+ * order's lines, which is what they cost before. One order in ten is cancelled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SalesAnalyticsBenchmark {
+
+    private static final int TOP = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    public int orderCount;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void loadOrders() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(100_000);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Orders> batch = new ArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            OrderLines.Builder lines = OrderLines.builder();
+            int lineCount = 1 + random.nextInt(3);
+            for (int l = 0; l < lineCount; l++) {
+                lines.add(fixture.bookRepository.findById(fixture.randomBookId()).orElseThrow(), 1 + random.nextInt(3));
+            }
+            Orders.OrderStatus status = i % 10 == 0 ? Orders.OrderStatus.CANCELLED : Orders.OrderStatus.COMPLETED;
+            batch.add(new Orders("Customer " + i, lines.build(), new Date(), status));
+            if (batch.size() == 10_000) {
+                fixture.orderService.saveOrders(batch);
+                batch.clear();
+            }
+        }
+        fixture.orderService.saveOrders(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public List<BookSales> topBooks() {
+        return fixture.orderService.findTopSellingBooks(TOP);
+    }
+
+    @Benchmark
+    public List<Map.Entry<Long, Long>> topBooksFullScan() {
+        Map<Long, Long> unitsByBook = new HashMap<>();
+        for (Orders order : fixture.orderRepository.findAll()) {
+            if (order.getStatus() == Orders.OrderStatus.CANCELLED) {
+                continue;
+            }
+            OrderLines lines = order.getLines();
+            for (int i = 0; i < lines.size(); i++) {
+                unitsByBook.merge(lines.bookId(i), (long) lines.quantity(i), Long::sum);
+            }
+        }
+        List<Map.Entry<Long, Long>> ranked = new ArrayList<>(unitsByBook.entrySet());
+        ranked.sort(Map.Entry.<Long, Long>comparingByValue().reversed());
+        return ranked.subList(0, Math.min(TOP, ranked.size()));
+    }
+
+    @Benchmark
+    public long unitsByAuthor() {
+        return fixture.orderService.countUnitsSoldByAuthor(fixture.randomAuthor().getId());
+    }
+
+    @Benchmark
+    public long unitsByAuthorFullScan() {
+        Long authorId = fixture.randomAuthor().getId();
+        long units = 0;
+        for (Orders order : fixture.orderRepository.findAll()) {
+            if (order.getStatus() == Orders.OrderStatus.CANCELLED) {
+                continue;
+            }
+            OrderLines lines = order.getLines();
+            for (int i = 0; i < lines.size(); i++) {
+                if (authorId.equals(lines.book(i).getAuthor().getId())) {
+                    units += lines.quantity(i);
+                }
+            }
+        }
+        return units;
+    }
+
+    @Benchmark
+    public Map<Book.Genre, Long> unitsPerGenre() {
+        return fixture.orderService.countUnitsSoldPerGenre();
+    }
+
+    @Benchmark
+    public Map<Book.Genre, Long> unitsPerGenreFullScan() {
+        Map<Book.Genre, Long> units = new EnumMap<>(Book.Genre.class);
+        for (Orders order : fixture.orderRepository.findAll()) {
+            if (order.getStatus() == Orders.OrderStatus.CANCELLED) {
+                continue;
+            }
+            OrderLines lines = order.getLines();
+            for (int i = 0; i < lines.size(); i++) {
+                units.merge(lines.book(i).getGenre(), (long) lines.quantity(i), Long::sum);
+            }
+        }
+        return units;
+    }
+}
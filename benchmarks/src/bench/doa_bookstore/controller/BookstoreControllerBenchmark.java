@@ -0,0 +1,84 @@
+package bench.doa_bookstore.controller;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the controller entry points on the storefront hot path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookstoreControllerBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(catalogSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropOrders() {
+        fixture.orderRepository.deleteAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public List<Book> booksByAuthor() throws EntityNotFoundException {
+        return fixture.controller.booksByAuthor(fixture.randomAuthor());
+    }
+
+    @Benchmark
+    public boolean makeOrder()
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        HashMap<Book, Integer> order = new HashMap<>();
+        for (int line = 0; line < 3; line++) {
+            Book book = fixture.bookRepository.findById(fixture.randomBookId()).orElseThrow();
+            order.merge(book, 1, Integer::sum);
+        }
+        return fixture.controller.makeOrder("Customer", order);
+    }
+
+    // The same order given as lines of book IDs, validated by ID only
+    @Benchmark
+    public boolean makeOrderByLines()
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        OrderLines.Builder order = OrderLines.builder();
+        for (int line = 0; line < 3; line++) {
+            order.add(fixture.randomBookId(), 1);
+        }
+        return fixture.controller.makeOrder("Customer", order.build());
+    }
+}
@@ -0,0 +1,133 @@
+package bench.doa_bookstore.executor;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.executor.RequestExecutor;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.FsyncPolicy;
+import doa_bookstore.persistence.OrderCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Load generator for the {@link RequestExecutor}: each invocation fires a burst of {@code concurrency}
+ * storefront requests at once and waits for all of them. The mix is 70% {@code booksByAuthor},
+ * 25% {@code makeOrder} and 5% {@code saveBook}.
+ * <p>
+ * With {@code durable} set, orders are logged with group commit, so every order blocks until the log is
+ * flushed. That is where one virtual thread per request pulls ahead of a fixed pool of platform threads,
+ * whose threads sit idle waiting for the disk. Set {@code -Ddoa.bench.dir} to log to a specific disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RequestExecutorBenchmark {
+
+    public enum Threads {
+        VIRTUAL,
+        PLATFORM
+    }
+
+    /**
+     * Size of the platform thread pool, a common servlet container default.
+     */
+    private static final int PLATFORM_POOL_SIZE = 200;
+
+    @Param({"VIRTUAL", "PLATFORM"})
+    public Threads threads;
+
+    @Param({"1000", "10000", "50000"})
+    public int concurrency;
+
+    @Param({"false", "true"})
+    public boolean durable;
+
+    private CatalogFixture fixture;
+    private RequestExecutor executor;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void start() throws EntityAlreadyExistsException, IOException {
+        fixture = CatalogFixture.load(100_000);
+        if (durable) {
+            String base = System.getProperty("doa.bench.dir");
+            directory = base == null ? Files.createTempDirectory("doa-executor-bench")
+                    : Files.createTempDirectory(Path.of(base), "doa-executor-bench");
+            fixture.orderRepository.enableDurability(directory,
+                    new OrderCodec(id -> fixture.bookRepository.findById(id).orElse(null)),
+                    new DurabilityOptions(FsyncPolicy.GROUP_COMMIT, 5, 0));
+        }
+        Duration admissionTimeout = Duration.ofSeconds(30);
+        executor = threads == Threads.VIRTUAL
+                ? RequestExecutor.virtualThreads(fixture.controller, concurrency, admissionTimeout)
+                : RequestExecutor.platformThreads(fixture.controller, PLATFORM_POOL_SIZE, concurrency, admissionTimeout);
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropOrdersAndSavedBooks() throws EntityAlreadyExistsException {
+        fixture.orderRepository.deleteAll();
+        long last = fixture.bookRepository.save(new Book("Probe", null, Book.Genre.DRAMA, 0)).getId();
+        for (long id = fixture.lastBookId() + 1; id <= last; id++) {
+            fixture.bookRepository.deleteById(id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        executor.close();
+        if (durable) {
+            fixture.orderRepository.disableDurability();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        fixture.clear();
+    }
+
+    @Benchmark
+    public void burst() {
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            int kind = ThreadLocalRandom.current().nextInt(100);
+            if (kind < 70) {
+                requests[i] = executor.booksByAuthor(fixture.randomAuthor());
+            } else if (kind < 95) {
+                HashMap<Book, Integer> order = new HashMap<>();
+                order.put(fixture.bookRepository.findById(fixture.randomBookId()).orElseThrow(), 1);
+                requests[i] = executor.makeOrder("Customer", order);
+            } else {
+                requests[i] = executor.saveBook(new Book("New title", fixture.randomAuthor(),
+                        Book.Genre.values()[kind % Book.Genre.values().length], 1));
+            }
+        }
+        CompletableFuture.allOf(requests).join();
+    }
+}
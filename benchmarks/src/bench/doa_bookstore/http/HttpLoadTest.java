@@ -0,0 +1,134 @@
+package bench.doa_bookstore.http;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.executor.RequestExecutor;
+import doa_bookstore.http.BookstoreHttpServer;
+import doa_bookstore.metrics.LatencyHistogram;
+import doa_bookstore.metrics.LatencySnapshot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test of the HTTP front end over the loopback interface. A number of clients, each on its
+ * own virtual thread, send requests back to back and record the latency of every request; the p50, p99 and
+ * max latency of each endpoint are printed at the end. The first seconds are a warm-up and are not recorded.
+ * <p>
+ * The mix is 60% {@code GET /books/{id}}, 25% {@code GET /books?after=..&limit=20},
+ * 10% {@code GET /authors/{id}/books} and 5% {@code POST /orders}.
+ * Arguments, all optional: {@code clients seconds warmupSeconds catalogSize}, defaulting to {@code 64 30 5 100000}.
+ */
+public class HttpLoadTest {
+
+    private enum Endpoint {
+        GET_BOOK("GET /books/{id}"),
+        GET_PAGE("GET /books?after&limit=20"),
+        GET_AUTHOR_BOOKS("GET /authors/{id}/books"),
+        POST_ORDER("POST /orders");
+
+        private final String label;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int warmupSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int catalogSize = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+
+        CatalogFixture fixture = CatalogFixture.load(catalogSize);
+        try (RequestExecutor requests = RequestExecutor.virtualThreads(fixture.controller, 10_000, Duration.ofSeconds(5));
+             BookstoreHttpServer server = new BookstoreHttpServer(requests, new InetSocketAddress("127.0.0.1", 0))) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort();
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+
+            long start = System.nanoTime();
+            long recordFrom = start + Duration.ofSeconds(warmupSeconds).toNanos();
+            long end = recordFrom + Duration.ofSeconds(seconds).toNanos();
+            try (ExecutorService load = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < clients; c++) {
+                    load.submit(() -> {
+                        run(client, base, fixture, recordFrom, end);
+                        return null;
+                    });
+                }
+            }
+            report(clients, seconds);
+        } finally {
+            fixture.clear();
+        }
+    }
+
+    private static void run(HttpClient client, String base, CatalogFixture fixture, long recordFrom, long end)
+            throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            int kind = random.nextInt(100);
+            Endpoint endpoint;
+            HttpRequest request;
+            if (kind < 60) {
+                endpoint = Endpoint.GET_BOOK;
+                request = HttpRequest.newBuilder(URI.create(base + "/books/" + fixture.randomBookId())).build();
+            } else if (kind < 85) {
+                endpoint = Endpoint.GET_PAGE;
+                request = HttpRequest.newBuilder(URI.create(base + "/books?after=" + fixture.randomBookId() + "&limit=20")).build();
+            } else if (kind < 95) {
+                endpoint = Endpoint.GET_AUTHOR_BOOKS;
+                request = HttpRequest.newBuilder(URI.create(base + "/authors/" + fixture.randomAuthor().getId() + "/books")).build();
+            } else {
+                endpoint = Endpoint.POST_ORDER;
+                String body = "{\"customerName\":\"Load test\",\"lines\":[{\"bookId\":" + fixture.randomBookId()
+                        + ",\"quantity\":1}]}";
+                request = HttpRequest.newBuilder(URI.create(base + "/orders"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            }
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long latency = System.nanoTime() - now;
+            if (now >= recordFrom) {
+                endpoint.latencies.record(latency);
+                if (response.statusCode() >= 300) {
+                    endpoint.errors.increment();
+                }
+            }
+        }
+    }
+
+    private static void report(int clients, int seconds) {
+        System.out.printf(Locale.ROOT, "%d clients, %d s measured%n", clients, seconds);
+        System.out.printf(Locale.ROOT, "%-28s %10s %10s %10s %10s %10s %8s%n",
+                "endpoint", "requests", "req/s", "p50 us", "p99 us", "max us", "errors");
+        List<LatencySnapshot> all = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            LatencySnapshot latencies = endpoint.latencies.snapshot();
+            all.add(latencies);
+            System.out.printf(Locale.ROOT, "%-28s %10d %10.0f %10.1f %10.1f %10.1f %8d%n",
+                    endpoint.label, latencies.getCount(), latencies.getCount() / (double) seconds,
+                    latencies.getP50() / 1_000.0, latencies.getP99() / 1_000.0, latencies.getMax() / 1_000.0,
+                    endpoint.errors.sum());
+        }
+        long total = all.stream().mapToLong(LatencySnapshot::getCount).sum();
+        System.out.printf(Locale.ROOT, "%-28s %10d %10.0f%n", "total", total, total / (double) seconds);
+    }
+}
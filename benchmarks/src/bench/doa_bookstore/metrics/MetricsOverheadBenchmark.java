@@ -0,0 +1,134 @@
+package bench.doa_bookstore.metrics;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics instrumentation. Each operation is measured twice, in separate forks: once with metrics
+ * on, and once with {@code -Ddoa.metrics=false}, where the JIT removes the instrumentation entirely.
+ * The two scores of an operation should be within 2% of each other.
+ * <p>
+ * Lookups by ID are only timed with {@code -Ddoa.metrics.lookups=true}; {@code findByIdWithLookupTiming}
+ * shows what timing them costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MetricsOverheadBenchmark {
+
+    private static final String ON = "-D" + MetricsRegistry.ENABLED_PROPERTY + "=true";
+    private static final String OFF = "-D" + MetricsRegistry.ENABLED_PROPERTY + "=false";
+    private static final String LOOKUPS = "-D" + MetricsRegistry.LOOKUPS_PROPERTY + "=true";
+
+    @Param({"100000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(catalogSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropOrders() {
+        fixture.orderRepository.deleteAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", ON})
+    public Optional<Book> findByIdWithMetrics() {
+        return fixture.bookRepository.findById(fixture.randomBookId());
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", OFF})
+    public Optional<Book> findByIdWithoutMetrics() {
+        return fixture.bookRepository.findById(fixture.randomBookId());
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", ON, LOOKUPS})
+    public Optional<Book> findByIdWithLookupTiming() {
+        return fixture.bookRepository.findById(fixture.randomBookId());
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", ON})
+    public boolean existsByIdWithMetrics() {
+        return fixture.bookRepository.existsById(fixture.randomBookId());
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", OFF})
+    public boolean existsByIdWithoutMetrics() {
+        return fixture.bookRepository.existsById(fixture.randomBookId());
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", ON})
+    public List<Book> getBooksPageWithMetrics() {
+        return fixture.controller.getBooksPage(fixture.randomBookId(), 20);
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", OFF})
+    public List<Book> getBooksPageWithoutMetrics() {
+        return fixture.controller.getBooksPage(fixture.randomBookId(), 20);
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", ON})
+    public boolean makeOrderWithMetrics()
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        return makeOrder();
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", OFF})
+    public boolean makeOrderWithoutMetrics()
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        return makeOrder();
+    }
+
+    private boolean makeOrder()
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        HashMap<Book, Integer> order = new HashMap<>();
+        for (int line = 0; line < 3; line++) {
+            Book book = fixture.bookRepository.findById(fixture.randomBookId()).orElseThrow();
+            order.merge(book, 1, Integer::sum);
+        }
+        return fixture.controller.makeOrder("Customer", order);
+    }
+}
@@ -0,0 +1,110 @@
+package bench.doa_bookstore.persistence;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.persistence.BookCodec;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.SnapshotFile;
+import doa_bookstore.repository.MyCrudRepository;
+import doa_bookstore.repository.StorageMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time from opening a durable book repository to serving its first lookup by ID, with a snapshot of
+ * {@code catalogSize} books on disk. The snapshot is written once per trial and every invocation recovers
+ * from it in a fresh repository, so the score is the cost of a restart, not of a warmed-up table.
+ * Set {@code -Ddoa.bench.dir} to benchmark a specific disk instead of the temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class SnapshotStartupBenchmark {
+
+    private static class DurableBookRepository extends MyCrudRepository<Book> {
+        DurableBookRepository() {
+            super(StorageMode.CONCURRENT);
+        }
+    }
+
+    @Param({"100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    private final BookCodec codec = new BookCodec(id -> null);
+    private Path directory;
+    private DurableBookRepository repository;
+
+    @Setup(Level.Trial)
+    public void writeSnapshot() throws IOException {
+        String base = System.getProperty("doa.bench.dir");
+        directory = base == null ? Files.createTempDirectory("doa-snapshot-bench")
+                : Files.createTempDirectory(Path.of(base), "doa-snapshot-bench");
+        // Books are generated while the snapshot is written, so the catalog never has to fit in the heap twice
+        Iterable<Book> books = () -> new Iterator<>() {
+            private long next = 1;
+
+            @Override
+            public boolean hasNext() {
+                return next <= catalogSize;
+            }
+
+            @Override
+            public Book next() {
+                Book.Genre genre = Book.Genre.values()[(int) (next % Book.Genre.values().length)];
+                Book book = new Book("Title " + next, null, genre, 100);
+                book.setId(next++);
+                return book;
+            }
+        };
+        Path snapshot = directory.resolve(DurableBookRepository.class.getSimpleName() + ".snapshot");
+        SnapshotFile.write(snapshot, codec, books, 1);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeRepository() throws IOException {
+        if (repository != null) {
+            // Let the warm-up finish outside the measured time, so it does not compete with the next restart
+            repository.whenFullyLoaded().join();
+            repository.disableDurability();
+            repository = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<Book> firstLookupAfterRestart() throws IOException {
+        repository = new DurableBookRepository();
+        repository.enableDurability(directory, codec, DurabilityOptions.defaults());
+        return repository.findById((long) catalogSize / 2);
+    }
+}
@@ -0,0 +1,83 @@
+package bench.doa_bookstore.persistence;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.persistence.AuthorCodec;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.FsyncPolicy;
+import doa_bookstore.repository.MyCrudRepository;
+import doa_bookstore.repository.StorageMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Write throughput of a durable repository under each {@link FsyncPolicy}.
+ * Run it with several thread counts: group commit only pays off when writers overlap.
+ * Set {@code -Ddoa.bench.dir} to benchmark a specific disk instead of the temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WriteAheadLogBenchmark {
+
+    private static class DurableAuthorRepository extends MyCrudRepository<Author> {
+        DurableAuthorRepository() {
+            super(StorageMode.CONCURRENT);
+        }
+    }
+
+    @Param({"EVERY_WRITE", "GROUP_COMMIT", "INTERVAL"})
+    public FsyncPolicy policy;
+
+    @Param({"0", "100000"})
+    public long snapshotThreshold;
+
+    private Path directory;
+    private DurableAuthorRepository repository;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        String base = System.getProperty("doa.bench.dir");
+        directory = base == null ? Files.createTempDirectory("doa-wal-bench")
+                : Files.createTempDirectory(Path.of(base), "doa-wal-bench");
+        repository = new DurableAuthorRepository();
+        repository.enableDurability(directory, new AuthorCodec(),
+                new DurabilityOptions(policy, 10, snapshotThreshold));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        repository.disableDurability();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Author save() throws EntityAlreadyExistsException {
+        return repository.save(new Author("Author"));
+    }
+}
@@ -0,0 +1,118 @@
+package bench.doa_bookstore.pipeline;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.persistence.BookCodec;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.FsyncPolicy;
+import doa_bookstore.persistence.OrderCodec;
+import doa_bookstore.pipeline.OrderPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Order throughput under a flash sale: 64 threads placing single-book orders, either one by one through
+ * {@code BookstoreController#makeOrder} or through the batching {@link OrderPipeline}.
+ * <p>
+ * With {@code durable} set, books and orders are logged with group commit. The synchronous path then writes
+ * two log records per order, while the pipeline writes two per batch, which is where batching pays off.
+ * Set {@code -Ddoa.bench.dir} to log to a specific disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+public class OrderPipelineBenchmark {
+
+    @Param({"false", "true"})
+    public boolean durable;
+
+    @Param({"64", "512"})
+    public int maxBatch;
+
+    private CatalogFixture fixture;
+    private OrderPipeline pipeline;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void start() throws EntityAlreadyExistsException, IOException {
+        fixture = CatalogFixture.load(100_000);
+        if (durable) {
+            String base = System.getProperty("doa.bench.dir");
+            directory = base == null ? Files.createTempDirectory("doa-pipeline-bench")
+                    : Files.createTempDirectory(Path.of(base), "doa-pipeline-bench");
+            DurabilityOptions options = new DurabilityOptions(FsyncPolicy.GROUP_COMMIT, 5, 0);
+            fixture.bookRepository.enableDurability(directory,
+                    new BookCodec(id -> fixture.authorRepository.findById(id).orElse(null)), options);
+            fixture.orderRepository.enableDurability(directory,
+                    new OrderCodec(id -> fixture.bookRepository.findById(id).orElse(null)), options);
+        }
+        pipeline = new OrderPipeline(fixture.bookService, fixture.orderService, 1 << 16, maxBatch,
+                Duration.ofSeconds(30));
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropOrders() {
+        fixture.orderRepository.deleteAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        pipeline.close();
+        if (durable) {
+            fixture.orderRepository.disableDurability();
+            fixture.bookRepository.disableDurability();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        fixture.clear();
+    }
+
+    private HashMap<Book, Integer> randomOrder() {
+        HashMap<Book, Integer> order = new HashMap<>();
+        order.put(fixture.bookRepository.findById(fixture.randomBookId()).orElseThrow(), 1);
+        return order;
+    }
+
+    @Benchmark
+    public boolean synchronous()
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        return fixture.controller.makeOrder("Customer", randomOrder());
+    }
+
+    @Benchmark
+    public Orders pipelined() {
+        return pipeline.placeOrder("Customer", randomOrder()).join();
+    }
+}
@@ -0,0 +1,105 @@
+package bench.doa_bookstore.repository;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.repository.table.ColumnarBookTable;
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+import doa_bookstore.repository.table.EntityTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Object-per-book storage ({@link ConcurrentLongEntityMap}) against the columnar {@link ColumnarBookTable}:
+ * a full scan of the catalog reading two fields per book, and a lookup by ID reading one.
+ * The setup also prints the heap retained per book by each layout, measured after a full GC, since
+ * footprint is what the columnar layout is for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ColumnarBookTableBenchmark {
+
+    private static final Book.Genre[] GENRES = Book.Genre.values();
+
+    @Param({"ConcurrentLongEntityMap", "ColumnarBookTable"})
+    public String layout;
+
+    @Param({"100000", "1000000", "5000000"})
+    public int catalogSize;
+
+    private EntityTable<Book> books;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        long before = usedHeap();
+        Author[] authors = new Author[Math.max(1, catalogSize / 10)];
+        for (int a = 0; a < authors.length; a++) {
+            authors[a] = new Author("Author " + a);
+            authors[a].setId(a + 1L);
+        }
+        books = switch (layout) {
+            case "ConcurrentLongEntityMap" -> new ConcurrentLongEntityMap<>();
+            case "ColumnarBookTable" -> new ColumnarBookTable(id -> authors[(int) id - 1]);
+            default -> throw new IllegalArgumentException("Unknown layout " + layout);
+        };
+        for (long id = 1; id <= catalogSize; id++) {
+            Book book = new Book("Title " + id, authors[(int) (id % authors.length)], GENRES[(int) (id % GENRES.length)], 10);
+            book.setId(id);
+            books.put(id, book);
+        }
+        // The authors are counted too, as they are shared by both layouts
+        System.out.printf("%n%s: %d bytes retained per book%n", layout, (usedHeap() - before) / catalogSize);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Units in stock of one genre across the whole catalog: a scan that reads the genre and stock of every book.
+     */
+    @Benchmark
+    public long scanStockOfGenre() {
+        long units = 0;
+        for (Book book : books.values()) {
+            if (book.getGenre() == Book.Genre.SCIFI) {
+                units += book.getStockUnits();
+            }
+        }
+        return units;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int getStock() {
+        return books.get(ThreadLocalRandom.current().nextLong(1, catalogSize + 1L)).getStockUnits();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String getTitle() {
+        return books.get(ThreadLocalRandom.current().nextLong(1, catalogSize + 1L)).getTitle();
+    }
+}
@@ -0,0 +1,169 @@
+package bench.doa_bookstore.repository;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+import doa_bookstore.repository.table.EntityTable;
+import doa_bookstore.repository.table.LongEntityMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Per-operation latency of the primitive-keyed repository tables against the boxed {@link HashMap}
+ * and {@link ConcurrentHashMap} tables they replaced. Run it with {@code -prof gc} (as {@code BenchmarkRunner}
+ * does) to compare the bytes allocated per lookup: the boxed tables allocate a {@link Long} for every
+ * ID above the {@code Long} cache, the primitive ones nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EntityTableBenchmark {
+
+    @Param({"HashMap", "LongEntityMap", "ConcurrentHashMap", "ConcurrentLongEntityMap"})
+    public String table;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    private EntityTable<Book> books;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        books = switch (table) {
+            case "HashMap" -> new BoxedTable<>(new HashMap<>());
+            case "ConcurrentHashMap" -> new BoxedTable<>(new ConcurrentHashMap<>());
+            case "LongEntityMap" -> new LongEntityMap<>();
+            case "ConcurrentLongEntityMap" -> new ConcurrentLongEntityMap<>();
+            default -> throw new IllegalArgumentException("Unknown table " + table);
+        };
+        for (long id = 1; id <= catalogSize; id++) {
+            Book book = new Book("Title " + id, null, Book.Genre.DRAMA, 1);
+            book.setId(id);
+            books.put(id, book);
+        }
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, catalogSize + 1L);
+    }
+
+    @Benchmark
+    public Book get() {
+        return books.get(randomId());
+    }
+
+    @Benchmark
+    public boolean containsMissing() {
+        return books.containsKey(catalogSize + randomId());
+    }
+
+    @Benchmark
+    public Book putAndRemove() {
+        // Keeps the size constant, so the table never resizes during the measurement
+        long id = catalogSize + randomId();
+        Book book = books.get(randomId());
+        books.putIfAbsent(id, book);
+        return books.remove(id);
+    }
+
+    /**
+     * The repository table as it was before the primitive maps: a {@code Map<Long, E>} that boxes every key.
+     */
+    private static final class BoxedTable<E> implements EntityTable<E> {
+
+        private final Map<Long, E> map;
+
+        BoxedTable(Map<Long, E> map) {
+            this.map = map;
+        }
+
+        @Override
+        public E get(long id) {
+            return map.get(id);
+        }
+
+        @Override
+        public boolean containsKey(long id) {
+            return map.containsKey(id);
+        }
+
+        @Override
+        public E put(long id, E entity) {
+            return map.put(id, entity);
+        }
+
+        @Override
+        public E putIfAbsent(long id, E entity) {
+            return map.putIfAbsent(id, entity);
+        }
+
+        @Override
+        public E replace(long id, E entity) {
+            return map.replace(id, entity);
+        }
+
+        @Override
+        public E replace(long id, E entity, Consumer<? super E> check) {
+            List<E> previous = new ArrayList<>(1);
+            map.computeIfPresent(id, (key, current) -> {
+                check.accept(current);
+                previous.add(current);
+                return entity;
+            });
+            return previous.isEmpty() ? null : previous.get(0);
+        }
+
+        @Override
+        public E remove(long id) {
+            return map.remove(id);
+        }
+
+        @Override
+        public boolean remove(long id, E entity) {
+            return map.remove(id, entity);
+        }
+
+        @Override
+        public E computeIfAbsent(long id, LongFunction<? extends E> loader) {
+            return map.computeIfAbsent(id, loader::apply);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Collection<E> values() {
+            return map.values();
+        }
+    }
+}
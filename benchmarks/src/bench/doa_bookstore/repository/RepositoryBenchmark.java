@@ -0,0 +1,89 @@
+package bench.doa_bookstore.repository;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the basic {@link doa_bookstore.repository.MyCrudRepository} operations
+ * on the book repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+
+    private static final int IMPORT_BATCH = 1000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(catalogSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropSavedBooks() throws EntityAlreadyExistsException {
+        // save() grows the table; trim it back so every iteration measures the same catalog size
+        long last = fixture.bookRepository.save(new Book("Probe", null, Book.Genre.DRAMA, 0)).getId();
+        for (long id = fixture.lastBookId() + 1; id <= last; id++) {
+            fixture.bookRepository.deleteById(id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public Book save() throws EntityAlreadyExistsException {
+        return fixture.bookRepository.save(new Book("New title", null, Book.Genre.DRAMA, 1));
+    }
+
+    // Scored per book, so it compares directly with save()
+    @Benchmark
+    @OperationsPerInvocation(IMPORT_BATCH)
+    public List<Book> saveAll() throws EntityAlreadyExistsException {
+        List<Book> batch = new ArrayList<>(IMPORT_BATCH);
+        for (int i = 0; i < IMPORT_BATCH; i++) {
+            batch.add(new Book("New title", null, Book.Genre.DRAMA, 1));
+        }
+        return fixture.bookRepository.saveAll(batch);
+    }
+
+    @Benchmark
+    public Optional<Book> findById() {
+        return fixture.bookRepository.findById(fixture.randomBookId());
+    }
+
+    @Benchmark
+    public List<Book> findAll() {
+        return fixture.bookRepository.findAll();
+    }
+}
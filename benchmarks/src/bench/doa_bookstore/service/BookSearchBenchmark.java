@@ -0,0 +1,157 @@
+package bench.doa_bookstore.service;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.index.BookSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@code BookService#searchBooks} on catalogs of up to 5M titles, against filtering
+ * {@code getAllBooks()} in memory, which was the only way to search before the index.
+ * <p>
+ * Titles are two to five words drawn from a vocabulary of 50,000 made-up words of one to four syllables,
+ * with a skewed distribution so a few words are very common, as "the" or "love" are in real titles.
+ * Each query is the first word of a random title followed by the first three letters of its second word,
+ * as typed in a search box.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookSearchBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+    private static final String[] SYLLABLES = {"a", "an", "ar", "ba", "be", "bri", "ca", "con", "da", "de", "dra",
+            "e", "el", "en", "fa", "gar", "go", "ha", "in", "is", "ka", "la", "le", "li", "lo", "ma", "mi", "mor",
+            "na", "ne", "o", "or", "pa", "ra", "re", "ri", "sa", "se", "ta", "te", "ti", "to", "tor", "u", "ve", "wy"};
+
+    @Param({"100000", "1000000", "5000000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(0);
+        Random random = new Random(42);
+        String[] words = new String[VOCABULARY];
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < VOCABULARY; i++) {
+            String word;
+            do {
+                StringBuilder syllables = new StringBuilder();
+                for (int n = 1 + random.nextInt(4); n > 0; n--) {
+                    syllables.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+                }
+                word = syllables.toString();
+            } while (word.length() < 2 || !used.add(word));
+            words[i] = word;
+        }
+
+        List<Author> authors = new ArrayList<>();
+        for (int a = 0; a < catalogSize / CatalogFixture.BOOKS_PER_AUTHOR; a++) {
+            authors.add(new Author(capitalize(words[skewed(random)]) + " " + capitalize(words[skewed(random)])));
+        }
+        fixture.authorService.saveAuthors(authors);
+
+        queries = new String[1024];
+        int stride = Math.max(1, catalogSize / queries.length);
+        List<Book> batch = new ArrayList<>();
+        for (int b = 0; b < catalogSize; b++) {
+            int length = 2 + random.nextInt(4);
+            StringBuilder title = new StringBuilder();
+            String first = null;
+            String second = null;
+            for (int w = 0; w < length; w++) {
+                String word = words[skewed(random)];
+                if (w == 0) {
+                    first = word;
+                } else if (w == 1) {
+                    second = word;
+                }
+                title.append(w == 0 ? "" : " ").append(capitalize(word));
+            }
+            if (b % stride == 0 && b / stride < queries.length) {
+                queries[b / stride] = first + " " + second.substring(0, Math.min(3, second.length()));
+            }
+            batch.add(new Book(title.toString(), authors.get(b % authors.size()),
+                    Book.Genre.values()[b % Book.Genre.values().length], 1));
+            if (batch.size() == 10_000) {
+                fixture.bookService.saveBooks(batch);
+                batch.clear();
+            }
+        }
+        fixture.bookService.saveBooks(batch);
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i] == null) {
+                queries[i] = queries[0];
+            }
+        }
+    }
+
+    // Word ranks follow roughly 1/rank, so low ranks are very common
+    private static int skewed(Random random) {
+        return (int) Math.min(VOCABULARY - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY)) - 1);
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public List<Book> searchBooks() {
+        return fixture.bookService.searchBooks(queries[ThreadLocalRandom.current().nextInt(queries.length)], 20);
+    }
+
+    // The workaround before the index: normalize and filter every title of the catalog
+    @Benchmark
+    public List<Book> filterAllBooks() {
+        String[] words = BookSearchIndex.tokenize(queries[ThreadLocalRandom.current().nextInt(queries.length)]);
+        List<Book> found = new ArrayList<>();
+        for (Book book : fixture.bookService.getAllBooks()) {
+            String title = BookRepository.normalizeTitle(book.getTitle());
+            boolean all = true;
+            for (String word : words) {
+                if (!title.contains(word)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all && found.size() < 20) {
+                found.add(book);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,77 @@
+package bench.doa_bookstore.service;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.dto.BookDTO;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of listing the catalog through {@link doa_bookstore.service.BookService},
+ * either as a whole or one page at a time, and of listing a page of DTOs with and without the projection cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public List<Book> getAllBooks() {
+        return fixture.bookService.getAllBooks();
+    }
+
+    @Benchmark
+    public List<Book> getBooksPage() {
+        return fixture.bookService.getBooksPage(fixture.randomBookId(), 50);
+    }
+
+    @Benchmark
+    public List<BookDTO> getBookDTOPage() {
+        return fixture.bookService.getBookDTOPage(fixture.randomBookId(), 50);
+    }
+
+    // The listing as it was before the projection cache: every DTO built on every request
+    @Benchmark
+    public List<BookDTO> getBookDTOPageUncached() {
+        List<Book> page = fixture.bookService.getBooksPage(fixture.randomBookId(), 50);
+        List<BookDTO> dtos = new ArrayList<>(page.size());
+        for (Book book : page) {
+            dtos.add(new BookDTO(book));
+        }
+        return dtos;
+    }
+}
@@ -0,0 +1,113 @@
+package bench.doa_bookstore.service;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.StaleEntityException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of catalog editors renaming books concurrently: each edit reads a book, changes a copy of it and
+ * writes the copy back. The edits are checked against the version of the stored book and retried when stale,
+ * serialized by one global lock, or written blindly, which is fastest but loses concurrent edits.
+ * <p>
+ * {@code hotBooks} sets the contention: with one hot book every editor races for the same row, with many they
+ * rarely meet. The {@code retries} counter reports how many optimistic edits had to be redone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class CatalogEditBenchmark {
+
+    @Param({"1", "16", "1024"})
+    public int hotBooks;
+
+    private CatalogFixture fixture;
+    private final Object globalLock = new Object();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retries {
+        public long retries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retries = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(Math.max(hotBooks, 1024));
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public Book optimisticEdit(Retries counters) {
+        long id = hotBookId();
+        while (true) {
+            Book edit = renamedCopy(id);
+            try {
+                fixture.bookService.updateBook(edit);
+                return edit;
+            } catch (StaleEntityException e) {
+                counters.retries++;
+            }
+        }
+    }
+
+    // What an editor needs without versions to not lose edits: one mutex around every read-modify-write
+    @Benchmark
+    public Book globalLockEdit() {
+        long id = hotBookId();
+        synchronized (globalLock) {
+            Book edit = renamedCopy(id);
+            edit.setVersion(Book.ANY_VERSION);
+            fixture.bookService.updateBook(edit);
+            return edit;
+        }
+    }
+
+    @Benchmark
+    public Book blindEdit() {
+        Book edit = renamedCopy(hotBookId());
+        edit.setVersion(Book.ANY_VERSION);
+        fixture.bookService.updateBook(edit);
+        return edit;
+    }
+
+    private long hotBookId() {
+        return fixture.bookId(ThreadLocalRandom.current().nextInt(hotBooks));
+    }
+
+    private Book renamedCopy(long id) {
+        Book copy = fixture.bookService.findBookById(id).orElseThrow().copy();
+        copy.setTitle("Title " + ThreadLocalRandom.current().nextInt());
+        return copy;
+    }
+}
@@ -0,0 +1,105 @@
+package bench.doa_bookstore.service;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.repository.mvcc.ReadView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a listing that walks the catalog page by page while editors rename books, read through a
+ * {@link ReadView} or directly from the live repository. Each group runs one lister and three editors, so the
+ * editor score shows what keeping versions for the open view costs the writers, and the lister score what
+ * reading them back costs the listing.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CatalogListingBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "100000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    @Group("viewListing")
+    @GroupThreads(1)
+    public int listFromView() {
+        try (ReadView view = ReadView.open()) {
+            int listed = 0;
+            List<Book> page = fixture.bookService.getBooksPage(null, PAGE_SIZE, view);
+            while (!page.isEmpty()) {
+                listed += page.size();
+                page = fixture.bookService.getBooksPage(page.get(page.size() - 1).getId(), PAGE_SIZE, view);
+            }
+            return listed;
+        }
+    }
+
+    @Benchmark
+    @Group("viewListing")
+    @GroupThreads(3)
+    public Book editDuringViewListing() throws EntityNotFoundException {
+        return edit();
+    }
+
+    @Benchmark
+    @Group("liveListing")
+    @GroupThreads(1)
+    public int listLive() {
+        int listed = 0;
+        List<Book> page = fixture.bookService.getBooksPage(null, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            listed += page.size();
+            page = fixture.bookService.getBooksPage(page.get(page.size() - 1).getId(), PAGE_SIZE);
+        }
+        return listed;
+    }
+
+    @Benchmark
+    @Group("liveListing")
+    @GroupThreads(3)
+    public Book editDuringLiveListing() throws EntityNotFoundException {
+        return edit();
+    }
+
+    private Book edit() throws EntityNotFoundException {
+        String title = "Title " + ThreadLocalRandom.current().nextInt();
+        return fixture.bookService.editBook(fixture.randomBookId(), book -> book.setTitle(title));
+    }
+}
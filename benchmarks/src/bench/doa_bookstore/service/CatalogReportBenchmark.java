@@ -0,0 +1,93 @@
+package bench.doa_bookstore.service;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the catalog reports of {@link doa_bookstore.service.BookService}, which scan the repository with
+ * a parallel stream, against the sequential loop over the catalog they replaced.
+ * <p>
+ * The reports run inside a fork/join pool of {@code parallelism} workers (a parallel stream runs in the pool
+ * of the thread that starts it), so one run shows how a report scales with the number of cores. A single
+ * benchmark thread is used: the scaling measured is that of one report, not of concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(1)
+public class CatalogReportBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int catalogSize;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private CatalogFixture fixture;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void loadCatalog() throws EntityAlreadyExistsException {
+        fixture = CatalogFixture.load(catalogSize);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCatalog() {
+        pool.shutdown();
+        fixture.clear();
+    }
+
+    // The report as it was written before: one sequential loop over the whole catalog
+    @Benchmark
+    public Map<Book.Genre, Long> stockPerGenreSequentialLoop() {
+        Map<Book.Genre, Long> units = new EnumMap<>(Book.Genre.class);
+        for (Book book : fixture.bookService.getAllBooks()) {
+            if (book.getGenre() != null) {
+                units.merge(book.getGenre(), (long) book.getStockUnits(), Long::sum);
+            }
+        }
+        return units;
+    }
+
+    @Benchmark
+    public Map<Book.Genre, Long> stockPerGenre() {
+        return pool.submit(() -> fixture.bookService.countStockUnitsPerGenre()).join();
+    }
+
+    @Benchmark
+    public List<Book> lowStockBooks() {
+        // The fixture gives every book the same large stock, so this is a full scan that keeps nothing
+        return pool.submit(() -> fixture.bookService.findLowStockBooks(10)).join();
+    }
+
+    @Benchmark
+    public List<Author> authorsWithMostTitles() {
+        return pool.submit(() -> fixture.bookService.findAuthorsWithMostTitles(10)).join();
+    }
+}
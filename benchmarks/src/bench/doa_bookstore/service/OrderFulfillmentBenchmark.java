@@ -0,0 +1,84 @@
+package bench.doa_bookstore.service;
+
+import bench.doa_bookstore.CatalogFixture;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a fulfillment worker pulling a batch of pending orders, through the status index of the order
+ * repository or by scanning every order, when most orders have already been completed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OrderFulfillmentBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"100000", "1000000"})
+    public int orderCount;
+
+    // One order in this many stays pending
+    @Param({"1000"})
+    public int pendingEvery;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void placeOrders() throws EntityAlreadyExistsException, EntityNotFoundException {
+        fixture = CatalogFixture.load(1000);
+        List<Orders> orders = new ArrayList<>(orderCount);
+        for (int i = 0; i < orderCount; i++) {
+            orders.add(new Orders("Customer " + i % 1000, OrderLines.builder().add(fixture.randomBookId(), 1).build(),
+                    new Date(), Orders.OrderStatus.PENDING));
+        }
+        fixture.orderService.saveOrders(orders);
+        for (int i = 0; i < orderCount; i++) {
+            if (i % pendingEvery != pendingEvery - 1) {
+                fixture.orderService.completeOrder(orders.get(i).getId());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        fixture.clear();
+    }
+
+    @Benchmark
+    public List<Orders> pendingBatchFromIndex() {
+        return fixture.orderService.findOrdersByStatus(Orders.OrderStatus.PENDING, BATCH);
+    }
+
+    // What a worker had to do before the index: scan the orders until the batch is full
+    @Benchmark
+    public List<Orders> pendingBatchByScan() {
+        return fixture.orderRepository.streamAll()
+                .filter(order -> order.getStatus() == Orders.OrderStatus.PENDING)
+                .limit(BATCH)
+                .toList();
+    }
+}
@@ -1,9 +1,17 @@
 package doa_bookstore;
 
+import doa_bookstore.http.BookstoreHttpServer;
 import doa_bookstore.startup.StartupInitializer;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
 public class Application {
-    public static void main(String[] args) {
-        new StartupInitializer();
+    public static void main(String[] args) throws IOException {
+        StartupInitializer initializer = new StartupInitializer();
+        BookstoreHttpServer server = new BookstoreHttpServer(initializer.getRequestExecutor(),
+                new InetSocketAddress(Integer.getInteger(BookstoreHttpServer.PORT_PROPERTY, 8080)));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "http-shutdown"));
+        server.start();
     }
 }
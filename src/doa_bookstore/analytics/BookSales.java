@@ -0,0 +1,31 @@
+package doa_bookstore.analytics;
+
+/**
+ * The number of units sold of one book, as ranked by {@link SalesAnalytics#topBooks(int)}.
+ */
+public class BookSales {
+
+    private final long bookId;
+    private final long units;
+
+    BookSales(long bookId, long units) {
+        this.bookId = bookId;
+        this.units = units;
+    }
+
+    public long getBookId() {
+        return bookId;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    @Override
+    public String toString() {
+        return "BookSales{" +
+                "bookId=" + bookId +
+                ", units=" + units +
+                '}';
+    }
+}
@@ -0,0 +1,285 @@
+package doa_bookstore.analytics;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Sales aggregates of the bookstore, maintained incrementally as a {@link RepositoryListener} of the order
+ * repository: units sold per book, per author and per genre, and a ranking of the best-selling books.
+ * Answering them costs O(1), or O(n log b) for the top n of b books, instead of a scan of every order.
+ * <p>
+ * Every order that is not {@link Orders.OrderStatus#CANCELLED cancelled} counts as sold. Cancelling an order
+ * takes its units back out of the aggregates, and un-cancelling it puts them back. Archiving an order keeps
+ * its units. The units of a book are credited to the author and genre the book had when the order was last
+ * saved or updated: those of the book held by the order's lines, or of the stored book if the lines are not
+ * resolved.
+ * <p>
+ * Like a {@link doa_bookstore.repository.index.SecondaryIndex}, the aggregates remember what each order
+ * contributed, because orders are usually updated in place and their old lines cannot be read back.
+ * All changes for one order are serialized. Readers running concurrently with writers see each book's
+ * count either before or after a change, never a torn value, but the aggregates as a whole are not
+ * a snapshot of one instant.
+ */
+public class SalesAnalytics implements RepositoryListener<Orders> {
+
+    private static final Book.Genre[] GENRES = Book.Genre.values();
+
+    // The lines each counted order contributed, by order ID
+    private final ConcurrentHashMap<Long, Line[]> linesByOrder = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, BookTally> tallyByBook = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, LongAdder> unitsByAuthor = new ConcurrentHashMap<>();
+    private final LongAdder[] unitsByGenre = new LongAdder[GENRES.length];
+    private final LongAdder totalUnits = new LongAdder();
+    // Books with at least one unit sold, best-selling first
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>();
+    private final LongFunction<Book> bookResolver;
+
+    /**
+     * One book line of an order, with the author and genre it is credited to.
+     */
+    private static final class Line {
+        final long bookId;
+        final Long authorId;
+        final Book.Genre genre;
+        final int units;
+
+        Line(long bookId, Long authorId, Book.Genre genre, int units) {
+            this.bookId = bookId;
+            this.authorId = authorId;
+            this.genre = genre;
+            this.units = units;
+        }
+    }
+
+    /**
+     * An entry of the ranking. Entries are immutable: a book whose count changes gets a new entry.
+     */
+    private static final class Rank implements Comparable<Rank> {
+        final long bookId;
+        final long units;
+
+        Rank(long bookId, long units) {
+            this.bookId = bookId;
+            this.units = units;
+        }
+
+        @Override
+        public int compareTo(Rank other) {
+            int byUnits = Long.compare(other.units, units);
+            return byUnits != 0 ? byUnits : Long.compare(bookId, other.bookId);
+        }
+    }
+
+    /**
+     * The units sold of one book and its current entry in the ranking.
+     */
+    private final class BookTally {
+        final long bookId;
+        long units;
+        Rank rank;
+
+        BookTally(long bookId) {
+            this.bookId = bookId;
+        }
+
+        synchronized void add(long delta) {
+            units += delta;
+            Rank previous = rank;
+            rank = units > 0 ? new Rank(bookId, units) : null;
+            // Add before removing, so a concurrent reader never misses the book; topBooks skips the duplicate
+            if (rank != null) {
+                ranking.add(rank);
+            }
+            if (previous != null) {
+                ranking.remove(previous);
+            }
+        }
+
+        synchronized long units() {
+            return units;
+        }
+    }
+
+    /**
+     * Creates aggregates that only credit authors and genres for the books held by resolved order lines.
+     */
+    public SalesAnalytics() {
+        this(id -> null);
+    }
+
+    /**
+     * Creates aggregates that look up the books of unresolved order lines with the given function.
+     *
+     * @param bookResolver Returns the stored book with the given ID, or {@code null} if it is unknown.
+     */
+    public SalesAnalytics(LongFunction<Book> bookResolver) {
+        this.bookResolver = bookResolver;
+        for (int i = 0; i < unitsByGenre.length; i++) {
+            unitsByGenre[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onSaved(Orders order) {
+        refresh(order);
+    }
+
+    @Override
+    public void onUpdated(Orders previous, Orders order) {
+        refresh(order);
+    }
+
+    @Override
+    public void onDeleted(Orders order) {
+        linesByOrder.computeIfPresent(order.getLongId(), (id, lines) -> {
+            apply(lines, -1);
+            return null;
+        });
+    }
+
+    // An archived order still counts as sold; only what it contributed is forgotten, since it no longer changes
+    @Override
+    public void onArchived(Orders order) {
+        linesByOrder.remove(order.getLongId());
+    }
+
+    @Override
+    public void onCleared() {
+        linesByOrder.clear();
+        tallyByBook.clear();
+        unitsByAuthor.clear();
+        ranking.clear();
+        for (LongAdder adder : unitsByGenre) {
+            adder.reset();
+        }
+        totalUnits.reset();
+    }
+
+    /**
+     * Returns the best-selling books, most units first. Ties are broken by book ID.
+     *
+     * @param n The maximum number of books to return.
+     * @return Up to {@code n} books that sold at least one unit.
+     */
+    public List<BookSales> topBooks(int n) {
+        List<BookSales> top = new ArrayList<>(Math.min(n, 64));
+        Set<Long> seen = new HashSet<>();
+        for (Rank rank : ranking) {
+            if (top.size() >= n) {
+                break;
+            }
+            // A book whose count is changing may briefly hold two entries; keep the first
+            if (seen.add(rank.bookId)) {
+                top.add(new BookSales(rank.bookId, rank.units));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @param bookId The ID of the book.
+     * @return The number of units sold of the book.
+     */
+    public long unitsSoldOfBook(long bookId) {
+        BookTally tally = tallyByBook.get(bookId);
+        return tally == null ? 0 : tally.units();
+    }
+
+    /**
+     * @param authorId The ID of the author.
+     * @return The number of units sold of all the author's books.
+     */
+    public long unitsSoldByAuthor(long authorId) {
+        LongAdder units = unitsByAuthor.get(authorId);
+        return units == null ? 0 : units.sum();
+    }
+
+    /**
+     * @param genre The genre.
+     * @return The number of units sold of all the books of that genre.
+     */
+    public long unitsSoldByGenre(Book.Genre genre) {
+        return unitsByGenre[genre.ordinal()].sum();
+    }
+
+    /**
+     * @return The number of units sold per genre, for every genre.
+     */
+    public Map<Book.Genre, Long> unitsSoldPerGenre() {
+        Map<Book.Genre, Long> units = new EnumMap<>(Book.Genre.class);
+        for (Book.Genre genre : GENRES) {
+            units.put(genre, unitsByGenre[genre.ordinal()].sum());
+        }
+        return units;
+    }
+
+    /**
+     * @return The number of units sold in total.
+     */
+    public long totalUnitsSold() {
+        return totalUnits.sum();
+    }
+
+    // Replaces what the order contributed with what it contributes now
+    private void refresh(Orders order) {
+        Line[] current = order.getStatus() == Orders.OrderStatus.CANCELLED ? null : linesOf(order);
+        linesByOrder.compute(order.getLongId(), (id, previous) -> {
+            if (previous != null) {
+                apply(previous, -1);
+            }
+            if (current != null) {
+                apply(current, 1);
+            }
+            return current;
+        });
+    }
+
+    private Line[] linesOf(Orders order) {
+        OrderLines orderLines = order.getLines();
+        if (orderLines.isEmpty()) {
+            return null;
+        }
+        List<Line> lines = new ArrayList<>(orderLines.size());
+        for (int i = 0; i < orderLines.size(); i++) {
+            int units = orderLines.quantity(i);
+            if (units <= 0) {
+                continue;
+            }
+            Book book = orderLines.book(i);
+            if (book == null) {
+                book = bookResolver.apply(orderLines.bookId(i));
+            }
+            // A book that cannot be found still counts for itself, just not for an author or genre
+            Long authorId = book == null || book.getAuthor() == null ? null : book.getAuthor().getId();
+            lines.add(new Line(orderLines.bookId(i), authorId, book == null ? null : book.getGenre(), units));
+        }
+        return lines.isEmpty() ? null : lines.toArray(new Line[0]);
+    }
+
+    private void apply(Line[] lines, int sign) {
+        for (Line line : lines) {
+            long delta = (long) sign * line.units;
+            tallyByBook.computeIfAbsent(line.bookId, BookTally::new).add(delta);
+            if (line.authorId != null) {
+                unitsByAuthor.computeIfAbsent(line.authorId, id -> new LongAdder()).add(delta);
+            }
+            if (line.genre != null) {
+                unitsByGenre[line.genre.ordinal()].add(delta);
+            }
+            totalUnits.add(delta);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package doa_bookstore.cache;
+
+/**
+ * An immutable snapshot of the counters of a {@link ProjectionCache}.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final int size;
+
+    CacheStats(long hits, long misses, long evictions, long invalidations, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.size = size;
+    }
+
+    /**
+     * @return The number of lookups served from the cache.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that had to build the projection, including those that found an expired one.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of projections dropped to respect the size bound or because they expired.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of projections dropped because their entity was updated or deleted.
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return The number of projections cached when the snapshot was taken.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The fraction of lookups served from the cache, or 0 if there were none.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", invalidations=" + invalidations +
+                ", size=" + size +
+                '}';
+    }
+}
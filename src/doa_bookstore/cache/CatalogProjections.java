@@ -0,0 +1,99 @@
+package doa_bookstore.cache;
+
+import doa_bookstore.dto.AuthorDTO;
+import doa_bookstore.dto.BookDTO;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.repository.AuthorRepository;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.time.Duration;
+
+/**
+ * The projection caches of the catalog: {@link BookDTO} and {@link AuthorDTO} by entity ID.
+ * They are registered as listeners of the book and author repositories, so any write through a repository
+ * invalidates the affected DTOs. Because a {@link BookDTO} carries the name of its author, updating or
+ * deleting an author also invalidates the DTOs of that author's books.
+ * <p>
+ * Cached DTOs are shared between callers and must not be modified.
+ */
+public class CatalogProjections {
+
+    /**
+     * System property setting the maximum number of cached {@link BookDTO}s.
+     */
+    public static final String BOOK_CACHE_SIZE_PROPERTY = "doa.cache.books";
+
+    /**
+     * System property setting the maximum number of cached {@link AuthorDTO}s.
+     */
+    public static final String AUTHOR_CACHE_SIZE_PROPERTY = "doa.cache.authors";
+
+    /**
+     * System property setting how many seconds a DTO is served after it was built; 0 disables expiry.
+     */
+    public static final String TTL_SECONDS_PROPERTY = "doa.cache.ttl.seconds";
+
+    private static CatalogProjections instance;
+
+    private final ProjectionCache<Book, BookDTO> books;
+    private final ProjectionCache<Author, AuthorDTO> authors;
+
+    private CatalogProjections() {
+        BookRepository bookRepository = BookRepository.getInstance();
+        AuthorRepository authorRepository = AuthorRepository.getInstance();
+        Duration ttl = Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 300));
+
+        books = new ProjectionCache<>(BookDTO::new, bookRepository::findById,
+                Integer.getInteger(BOOK_CACHE_SIZE_PROPERTY, 100_000), ttl);
+        authors = new ProjectionCache<>(AuthorDTO::new, authorRepository::findById,
+                Integer.getInteger(AUTHOR_CACHE_SIZE_PROPERTY, 10_000), ttl);
+        bookRepository.addListener(books);
+        authorRepository.addListener(authors);
+
+        authorRepository.addListener(new RepositoryListener<>() {
+            @Override
+            public void onUpdated(Author previous, Author author) {
+                invalidateBooksOf(author);
+            }
+
+            @Override
+            public void onDeleted(Author author) {
+                invalidateBooksOf(author);
+            }
+
+            @Override
+            public void onCleared() {
+                books.invalidateAll();
+            }
+
+            private void invalidateBooksOf(Author author) {
+                for (Book book : bookRepository.findByAuthorId(author.getId())) {
+                    books.invalidate(book.getLongId());
+                }
+            }
+        });
+    }
+
+    public static synchronized CatalogProjections getInstance() {
+        if (instance == null) {
+            instance = new CatalogProjections();
+        }
+        return instance;
+    }
+
+    /**
+     * @return The cache of book DTOs.
+     */
+    public ProjectionCache<Book, BookDTO> books() {
+        return books;
+    }
+
+    /**
+     * @return The cache of author DTOs.
+     */
+    public ProjectionCache<Author, AuthorDTO> authors() {
+        return authors;
+    }
+}
@@ -0,0 +1,239 @@
+package doa_bookstore.cache;
+
+import doa_bookstore.entity.interfaces.LongEntity;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * A read-through cache of projections (e.g. DTOs) of the entities of a repository, keyed by entity ID.
+ * <p>
+ * The cache is split into segments, each a {@link LinkedHashMap} in access order guarded by its own lock,
+ * so eviction is least-recently-used within a segment. Projections can also expire after a time to live,
+ * which bounds how stale a projection gets when an entity it depends on is changed in place without
+ * going through the repository.
+ * <p>
+ * Registered as a {@link RepositoryListener}, the cache drops the projection of every entity that is saved,
+ * updated or deleted. A projection built while its entity was being invalidated is not cached, so a slow
+ * reader can never put back a projection of the previous state.
+ *
+ * @param <E> The type of entity projected.
+ * @param <P> The type of the projection.
+ */
+public class ProjectionCache<E extends LongEntity, P> implements RepositoryListener<E> {
+
+    private static final int SEGMENTS = 16;
+
+    private static final class Cached<P> {
+        final P projection;
+        final long createdAt;
+
+        Cached(P projection, long createdAt) {
+            this.projection = projection;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // Never serialized: the cache lives only in memory
+    @SuppressWarnings("serial")
+    private final class Segment extends LinkedHashMap<Long, Cached<P>> {
+        private final int capacity;
+        // Bumped on every invalidation, so a projection built across one is not cached
+        private long version;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Cached<P>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final Function<? super E, ? extends P> projector;
+    private final LongFunction<Optional<E>> loader;
+    private final long ttlNanos;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param projector   Builds the projection of an entity.
+     * @param loader      Loads an entity by ID when its projection is not cached, usually {@code repository::findById}.
+     * @param maximumSize The maximum number of projections kept.
+     * @param timeToLive  How long a projection is served after it was built, or {@link Duration#ZERO} for no limit.
+     */
+    public ProjectionCache(Function<? super E, ? extends P> projector, LongFunction<Optional<E>> loader,
+                           int maximumSize, Duration timeToLive) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+        }
+        this.projector = projector;
+        this.loader = loader;
+        this.ttlNanos = timeToLive.isZero() ? Long.MAX_VALUE : timeToLive.toNanos();
+        this.segments = newSegments(SEGMENTS);
+        int perSegment = Math.max(1, (maximumSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Segment[] newSegments(int length) {
+        return (Segment[]) new ProjectionCache<?, ?>.Segment[length];
+    }
+
+    /**
+     * Returns the projection of the entity with the given ID, loading and projecting the entity on a miss.
+     *
+     * @param id The ID of the entity.
+     * @return The projection, or an empty {@link Optional} if no entity has that ID.
+     */
+    public Optional<P> get(long id) {
+        Segment segment = segmentFor(id);
+        long version;
+        synchronized (segment) {
+            P cached = lookup(segment, id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            version = segment.version;
+        }
+        Optional<E> entity = loader.apply(id);
+        if (entity.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(store(segment, id, version, entity.get()));
+    }
+
+    /**
+     * Returns the projection of an entity the caller already holds, building it on a miss.
+     * Listings use this to project each entity of a page without loading it again.
+     *
+     * @param entity The stored entity.
+     * @return The projection of the entity.
+     */
+    public P project(E entity) {
+        long id = entity.getLongId();
+        Segment segment = segmentFor(id);
+        long version;
+        synchronized (segment) {
+            P cached = lookup(segment, id);
+            if (cached != null) {
+                return cached;
+            }
+            version = segment.version;
+        }
+        return store(segment, id, version, entity);
+    }
+
+    /**
+     * Drops the projection of the entity with the given ID, if one is cached.
+     *
+     * @param id The ID of the entity.
+     */
+    public void invalidate(long id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.version++;
+            if (segment.remove(id) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached projection.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.version++;
+                invalidations.add(segment.size());
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return A snapshot of the hit, miss, eviction and invalidation counters.
+     */
+    public CacheStats stats() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size);
+    }
+
+    @Override
+    public void onSaved(E entity) {
+        // An entity saved under the ID of a deleted one must not be served the old projection
+        invalidate(entity.getLongId());
+    }
+
+    @Override
+    public void onUpdated(E previous, E entity) {
+        invalidate(entity.getLongId());
+    }
+
+    @Override
+    public void onDeleted(E entity) {
+        invalidate(entity.getLongId());
+    }
+
+    @Override
+    public void onCleared() {
+        invalidateAll();
+    }
+
+    // Must be called with the segment lock held; counts the hit or miss
+    private P lookup(Segment segment, long id) {
+        Cached<P> entry = segment.get(id);
+        if (entry != null && (ttlNanos == Long.MAX_VALUE || System.nanoTime() - entry.createdAt < ttlNanos)) {
+            hits.increment();
+            return entry.projection;
+        }
+        if (entry != null) {
+            segment.remove(id);
+            evictions.increment();
+        }
+        misses.increment();
+        return null;
+    }
+
+    private P store(Segment segment, long id, long version, E entity) {
+        // Built outside the lock: projections may follow references, e.g. a book to its author
+        P projection = projector.apply(entity);
+        synchronized (segment) {
+            if (segment.version == version) {
+                segment.put(id, new Cached<>(projection, System.nanoTime()));
+            }
+        }
+        return projection;
+    }
+
+    private Segment segmentFor(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+}
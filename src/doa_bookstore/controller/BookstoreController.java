@@ -1,16 +1,27 @@
 package doa_bookstore.controller;
 
+import doa_bookstore.analytics.BookSales;
+import doa_bookstore.dto.AuthorDTO;
+import doa_bookstore.dto.BookDTO;
 import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
 import doa_bookstore.exception.EntityAlreadyExistsException;
 import doa_bookstore.exception.EntityNotFoundException;
 import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
 import doa_bookstore.service.AuthorService;
 import doa_bookstore.service.BookService;
 import doa_bookstore.service.OrderService;
 
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Controller class for managing bookstore operations.
@@ -18,6 +29,32 @@ import java.util.List;
  */
 public class BookstoreController {
 
+    private static final Timer SEARCH_CATALOG = MetricsRegistry.getInstance().timer("controller.searchCatalog");
+    private static final Timer SAVE_BOOK = MetricsRegistry.getInstance().timer("controller.saveBook");
+    private static final Timer SAVE_BOOKS = MetricsRegistry.getInstance().timer("controller.saveBooks");
+    private static final Timer GET_BOOKS_PAGE = MetricsRegistry.getInstance().timer("controller.getBooksPage");
+    private static final Timer GET_CATALOG_PAGE = MetricsRegistry.getInstance().timer("controller.getCatalogPage");
+    private static final Timer FIND_BOOK_DTO = MetricsRegistry.getInstance().timer("controller.findBookDTO");
+    private static final Timer FIND_AUTHOR_BY_ID = MetricsRegistry.getInstance().timer("controller.findAuthorById");
+    private static final Timer SAVE_AUTHOR = MetricsRegistry.getInstance().timer("controller.saveAuthor");
+    private static final Timer BOOKS_BY_AUTHOR = MetricsRegistry.getInstance().timer("controller.booksByAuthor");
+    private static final Timer FIND_AUTHOR_DTO = MetricsRegistry.getInstance().timer("controller.findAuthorDTO");
+    private static final Timer FIND_BOOK_DTOS_BY_AUTHOR =
+            MetricsRegistry.getInstance().timer("controller.findBookDTOsByAuthor");
+    private static final Timer FIND_ORDER_BY_ID = MetricsRegistry.getInstance().timer("controller.findOrderById");
+    private static final Timer FIND_BOOKS_BY_IDS = MetricsRegistry.getInstance().timer("controller.findBooksByIds");
+    private static final Timer SAVE_AUTHORS = MetricsRegistry.getInstance().timer("controller.saveAuthors");
+    private static final Timer SEARCH_BOOKS = MetricsRegistry.getInstance().timer("controller.searchBooks");
+    private static final Timer GET_BEST_SELLERS = MetricsRegistry.getInstance().timer("controller.getBestSellers");
+    private static final Timer FIND_PENDING_ORDERS =
+            MetricsRegistry.getInstance().timer("controller.findPendingOrders");
+    private static final Timer COMPLETE_ORDER = MetricsRegistry.getInstance().timer("controller.completeOrder");
+    private static final Timer CANCEL_ORDER = MetricsRegistry.getInstance().timer("controller.cancelOrder");
+    private static final Timer FIND_ORDERS_BETWEEN =
+            MetricsRegistry.getInstance().timer("controller.findOrdersBetween");
+    private static final Timer MAKE_ORDER = MetricsRegistry.getInstance().timer("controller.makeOrder");
+    private static final Counter ORDERS_REJECTED = MetricsRegistry.getInstance().counter("controller.makeOrder.insufficientUnits");
+
     private final BookService bookService;
     private final AuthorService authorService;
     private final OrderService orderService;
@@ -37,6 +74,7 @@ public class BookstoreController {
 
     /**
      * Retrieves all books from the bookstore.
+     * The catalog is not copied: the result is a read-only view over the repository.
      *
      * @return An iterable collection of all books.
      */
@@ -44,6 +82,86 @@ public class BookstoreController {
         return bookService.getAllBooks();
     }
 
+    /**
+     * Retrieves one page of books, ordered by ID.
+     *
+     * @param afterId The ID of the last book of the previous page, or {@code null} for the first page.
+     * @param limit   The maximum number of books to return.
+     * @return Up to {@code limit} books following {@code afterId}.
+     */
+    public List<Book> getBooksPage(Long afterId, int limit) {
+        long start = GET_BOOKS_PAGE.start();
+        try {
+            return bookService.getBooksPage(afterId, limit);
+        } finally {
+            GET_BOOKS_PAGE.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves one page of the catalog as DTOs, ordered by book ID, served from the projection cache.
+     *
+     * @param afterId The ID of the last book of the previous page, or {@code null} for the first page.
+     * @param limit   The maximum number of books to return.
+     * @return Up to {@code limit} book DTOs following {@code afterId}.
+     */
+    public List<BookDTO> getCatalogPage(Long afterId, int limit) {
+        long start = GET_CATALOG_PAGE.start();
+        try {
+            return bookService.getBookDTOPage(afterId, limit);
+        } finally {
+            GET_CATALOG_PAGE.stop(start);
+        }
+    }
+
+    /**
+     * Searches the books by title and author name, best matches first.
+     *
+     * @param query The words to look for; the last one may be a prefix.
+     * @param limit The maximum number of books to return.
+     * @return The matching books.
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        long start = SEARCH_BOOKS.start();
+        try {
+            return bookService.searchBooks(query, limit);
+        } finally {
+            SEARCH_BOOKS.stop(start);
+        }
+    }
+
+    /**
+     * Searches the catalog by title and author name and returns DTOs, served from the projection cache.
+     *
+     * @param query The words to look for; the last one may be a prefix.
+     * @param limit The maximum number of books to return.
+     * @return The DTOs of the matching books, best matches first.
+     */
+    public List<BookDTO> searchCatalog(String query, int limit) {
+        long start = SEARCH_CATALOG.start();
+        try {
+            return bookService.searchBookDTOs(query, limit);
+        } finally {
+            SEARCH_CATALOG.stop(start);
+        }
+    }
+
+    /**
+     * Finds the DTO of a book.
+     *
+     * @param id The ID of the book.
+     * @return The DTO of the book.
+     * @throws EntityNotFoundException If no book with the specified ID is found.
+     */
+    public BookDTO findBookDTO(long id) throws EntityNotFoundException {
+        long start = FIND_BOOK_DTO.start();
+        try {
+            return bookService.findBookDTO(id).orElseThrow(() -> new EntityNotFoundException(Book.class));
+        } finally {
+            FIND_BOOK_DTO.stop(start);
+        }
+    }
+
     /**
      * Saves a new book in the bookstore.
      *
@@ -53,13 +171,61 @@ public class BookstoreController {
      * @throws EntityNotFoundException If the author associated with the book is not found in the repository.
      */
     public Book saveBook(Book book) throws EntityAlreadyExistsException, EntityNotFoundException {
-        if (book.getAuthor() == null || book.getAuthor().getId() == null ||
-                !authorService.findAuthorByID(book.getAuthor().getId()).isPresent()) {
-            throw new EntityNotFoundException(Author.class);
+        long start = SAVE_BOOK.start();
+        try {
+            if (book.getAuthor() == null || book.getAuthor().getId() == null ||
+                    !authorService.findAuthorByID(book.getAuthor().getId()).isPresent()) {
+                throw new EntityNotFoundException(Author.class);
+            }
+            return bookService.saveBook(book);
+        } finally {
+            SAVE_BOOK.stop(start);
+        }
+    }
+
+
+    /**
+     * Saves several new books in one batch, e.g. for a catalog import.
+     * Every author is checked first, with one lookup per distinct author, and nothing is saved if one is missing.
+     *
+     * @param books The books to be saved.
+     * @return The saved books, in the order given.
+     * @throws EntityAlreadyExistsException If a book already exists in the repository. No book is saved.
+     * @throws EntityNotFoundException If the author of any book is not found in the repository.
+     */
+    public List<Book> saveBooks(List<Book> books) throws EntityAlreadyExistsException, EntityNotFoundException {
+        long start = SAVE_BOOKS.start();
+        try {
+            Set<Long> authorIds = new HashSet<>();
+            for (Book book : books) {
+                if (book.getAuthor() == null || book.getAuthor().getId() == null) {
+                    throw new EntityNotFoundException(Author.class);
+                }
+                authorIds.add(book.getAuthor().getId());
+            }
+            if (authorService.findAuthorsByIDs(authorIds).size() != authorIds.size()) {
+                throw new EntityNotFoundException(Author.class);
+            }
+            return bookService.saveBooks(books);
+        } finally {
+            SAVE_BOOKS.stop(start);
         }
-        return bookService.saveBook(book);
     }
 
+    /**
+     * Finds several books by ID.
+     *
+     * @param ids The IDs of the books to find.
+     * @return The books found, in the order of {@code ids}. Unknown IDs are skipped.
+     */
+    public List<Book> findBooksByIds(List<Long> ids) {
+        long start = FIND_BOOKS_BY_IDS.start();
+        try {
+            return bookService.findBooksByIds(ids);
+        } finally {
+            FIND_BOOKS_BY_IDS.stop(start);
+        }
+    }
 
     /**
      * Finds an author by their ID.
@@ -69,11 +235,32 @@ public class BookstoreController {
      * @throws EntityNotFoundException If no author with the specified ID is found.
      */
     public Author findAuthorById(Long id) throws EntityNotFoundException {
-        return authorService.findAuthorByID(id)
-                .orElseThrow(() -> new EntityNotFoundException(Author.class));
+        long start = FIND_AUTHOR_BY_ID.start();
+        try {
+            return authorService.findAuthorByID(id)
+                    .orElseThrow(() -> new EntityNotFoundException(Author.class));
+        } finally {
+            FIND_AUTHOR_BY_ID.stop(start);
+        }
     }
 
 
+    /**
+     * Finds the DTO of an author.
+     *
+     * @param id The ID of the author.
+     * @return The DTO of the author.
+     * @throws EntityNotFoundException If no author with the specified ID is found.
+     */
+    public AuthorDTO findAuthorDTO(long id) throws EntityNotFoundException {
+        long start = FIND_AUTHOR_DTO.start();
+        try {
+            return authorService.findAuthorDTO(id).orElseThrow(() -> new EntityNotFoundException(Author.class));
+        } finally {
+            FIND_AUTHOR_DTO.stop(start);
+        }
+    }
+
     /**
      * Saves a new author in the bookstore.
      *
@@ -82,28 +269,193 @@ public class BookstoreController {
      * @throws EntityAlreadyExistsException If the author already exists in the repository.
      */
     public Author saveAuthor(Author author) throws EntityAlreadyExistsException {
-        return authorService.saveAuthor(author);
+        long start = SAVE_AUTHOR.start();
+        try {
+            return authorService.saveAuthor(author);
+        } finally {
+            SAVE_AUTHOR.stop(start);
+        }
     }
 
     /**
-     * Retrieves a list of books written by the specified author.
+     * Saves several new authors in one batch.
+     *
+     * @param authors The authors to be saved.
+     * @return The saved authors, in the order given.
+     * @throws EntityAlreadyExistsException If an author already exists in the repository. No author is saved.
+     */
+    public List<Author> saveAuthors(List<Author> authors) throws EntityAlreadyExistsException {
+        long start = SAVE_AUTHORS.start();
+        try {
+            return authorService.saveAuthors(authors);
+        } finally {
+            SAVE_AUTHORS.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves a list of books written by the specified author, from the book IDs the repositories keep on
+     * the stored author.
      *
      * @param author The author whose books are to be retrieved.
-     * @return A list of books written by the author.
+     * @return A new list of the books written by the author, in ascending ID order.
      * @throws EntityNotFoundException If the author does not exist in the repository.
      */
     public List<Book> booksByAuthor(Author author) throws EntityNotFoundException {
-        return authorService.findAuthorByID(author.getId())
-                .orElseThrow(() -> new EntityNotFoundException(Author.class))
-                .getBooks();
+        long start = BOOKS_BY_AUTHOR.start();
+        try {
+            if (authorService.findAuthorByID(author.getId()).isEmpty()) {
+                throw new EntityNotFoundException(Author.class);
+            }
+            return bookService.findByAuthorId(author.getId());
+        } finally {
+            BOOKS_BY_AUTHOR.stop(start);
+        }
+    }
+
+
+    /**
+     * Retrieves the DTOs of the books written by an author, from the book IDs kept on the author.
+     *
+     * @param authorId The ID of the author.
+     * @return The DTOs of the author's books.
+     * @throws EntityNotFoundException If the author does not exist in the repository.
+     */
+    public List<BookDTO> findBookDTOsByAuthor(long authorId) throws EntityNotFoundException {
+        long start = FIND_BOOK_DTOS_BY_AUTHOR.start();
+        try {
+            if (authorService.findAuthorByID(authorId).isEmpty()) {
+                throw new EntityNotFoundException(Author.class);
+            }
+            return bookService.findBookDTOsByAuthorId(authorId);
+        } finally {
+            FIND_BOOK_DTOS_BY_AUTHOR.stop(start);
+        }
+    }
+
+    /**
+     * Finds an order by its ID.
+     *
+     * @param id The ID of the order.
+     * @return The order.
+     * @throws EntityNotFoundException If no order with the specified ID is found.
+     */
+    public Orders findOrderById(long id) throws EntityNotFoundException {
+        long start = FIND_ORDER_BY_ID.start();
+        try {
+            return orderService.findOrderById(id).orElseThrow(() -> new EntityNotFoundException(Orders.class));
+        } finally {
+            FIND_ORDER_BY_ID.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves pending orders for fulfillment, oldest first.
+     *
+     * @param limit The maximum number of orders to return.
+     * @return Up to {@code limit} pending orders.
+     */
+    public List<Orders> findPendingOrders(int limit) {
+        long start = FIND_PENDING_ORDERS.start();
+        try {
+            return orderService.findOrdersByStatus(Orders.OrderStatus.PENDING, limit);
+        } finally {
+            FIND_PENDING_ORDERS.stop(start);
+        }
+    }
+
+    /**
+     * Finds the orders placed between two dates, including archived orders.
+     *
+     * @param from The earliest date, included.
+     * @param to   The latest date, excluded.
+     * @return The matching orders, oldest first.
+     */
+    public List<Orders> findOrdersBetween(Date from, Date to) {
+        long start = FIND_ORDERS_BETWEEN.start();
+        try {
+            return orderService.findOrdersBetween(from, to);
+        } finally {
+            FIND_ORDERS_BETWEEN.stop(start);
+        }
+    }
+
+    /**
+     * Marks a pending order as completed.
+     *
+     * @param id The ID of the order.
+     * @return {@code true} if the order was completed, {@code false} if it was no longer pending.
+     * @throws EntityNotFoundException If no order with the specified ID is found.
+     */
+    public boolean completeOrder(long id) throws EntityNotFoundException {
+        long start = COMPLETE_ORDER.start();
+        try {
+            return orderService.completeOrder(id);
+        } finally {
+            COMPLETE_ORDER.stop(start);
+        }
+    }
+
+    /**
+     * Cancels a pending order, putting its books back in stock.
+     *
+     * @param id The ID of the order.
+     * @return {@code true} if the order was cancelled, {@code false} if it was no longer pending.
+     * @throws EntityNotFoundException If no order with the specified ID is found.
+     */
+    public boolean cancelOrder(long id) throws EntityNotFoundException {
+        long start = CANCEL_ORDER.start();
+        try {
+            return orderService.cancelOrder(id);
+        } finally {
+            CANCEL_ORDER.stop(start);
+        }
     }
 
+    /**
+     * Retrieves the best-selling books, counting every order that is not cancelled.
+     *
+     * @param limit The maximum number of books to return.
+     * @return Up to {@code limit} books and their units sold, most units first.
+     */
+    public List<BookSales> getBestSellers(int limit) {
+        long start = GET_BEST_SELLERS.start();
+        try {
+            return orderService.findTopSellingBooks(limit);
+        } finally {
+            GET_BEST_SELLERS.stop(start);
+        }
+    }
+
+    /**
+     * Creates an order for the specified customer with lines of books and their quantities.
+     * Every book is looked up once by ID, then the stock of every line is reserved atomically before the order
+     * is stored, so concurrent orders can never sell more units than are in stock.
+     *
+     * @param customerName The name of the customer placing the order.
+     * @param lines        The IDs of the books to order and their quantities.
+     * @return {@code true} if the order is successfully created, {@code false} otherwise.
+     * @throws InsufficientUnitsException If there are not enough units of any book in the order.
+     * @throws EntityNotFoundException    If a book in the order is not found in the repository.
+     * @throws EntityAlreadyExistsException If the order already exists in the repository.
+     */
+    public boolean makeOrder(String customerName, OrderLines lines)
+            throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
+        long start = MAKE_ORDER.start();
+        try {
+            return placeOrder(customerName, bookService.resolveBooks(lines));
+        } finally {
+            MAKE_ORDER.stop(start);
+        }
+    }
 
     /**
      * Creates an order for the specified customer with a list of books and their quantities.
+     * The stock of every book in the order is reserved atomically before the order is stored,
+     * so concurrent orders can never sell more units than are in stock.
      *
      * @param customerName The name of the customer placing the order.
-     * @param orders       A map of books and their quantities to be ordered.
+     * @param orders       A map of books and their quantities to be ordered. Books are matched by ID and title.
      * @return {@code true} if the order is successfully created, {@code false} otherwise.
      * @throws InsufficientUnitsException If there are not enough units of any book in the order.
      * @throws EntityNotFoundException    If a book in the order is not found in the repository.
@@ -111,20 +463,29 @@ public class BookstoreController {
      */
     public boolean makeOrder(String customerName, HashMap<Book, Integer> orders)
             throws InsufficientUnitsException, EntityNotFoundException, EntityAlreadyExistsException {
-        // Check availability of all books in the order
-        for (Book bookFromList : orders.keySet()) {
-            Book bookFromRepo = bookService.findBookById(bookFromList.getId())
-                    .orElseThrow(() -> new EntityNotFoundException(Book.class));
-            if(!bookFromRepo.getTitle().equals(bookFromList.getTitle()))
-                throw new EntityNotFoundException(Book.class);
-            int requestedQuantity = orders.get(bookFromList);
-
-            if (bookFromRepo.getStockUnits() < requestedQuantity) {
-                throw new InsufficientUnitsException();
-            }
+        long start = MAKE_ORDER.start();
+        try {
+            return placeOrder(customerName, bookService.resolveBooks(orders));
+        } finally {
+            MAKE_ORDER.stop(start);
+        }
+    }
+
+    // Takes the units out of stock, all or nothing, then creates the order
+    private boolean placeOrder(String customerName, OrderLines lines)
+            throws InsufficientUnitsException, EntityAlreadyExistsException {
+        try {
+            bookService.reserveStock(lines);
+        } catch (InsufficientUnitsException e) {
+            ORDERS_REJECTED.increment();
+            throw e;
+        }
+        try {
+            orderService.createOrder(customerName, lines);
+        } catch (EntityAlreadyExistsException | RuntimeException e) {
+            bookService.releaseStock(lines);
+            throw e;
         }
-        // If all checks pass, create the order
-        orderService.createOrder(customerName, orders);
         return true;
     }
 
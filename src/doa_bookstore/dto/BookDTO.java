@@ -22,13 +22,14 @@ public class BookDTO {
     /**
      * Constructs a {@code BookDTO} from a {@link Book} entity.
      * Copies the ID, title, and author's name from the provided Book to the DTO.
+     * The author name is {@code null} for a book without an author.
      *
      * @param book The Book entity from which to create the DTO.
      */
     public BookDTO(Book book) {
         this.id = book.getId();
         this.title = book.getTitle();
-        this.authorName = book.getAuthor().getName();
+        this.authorName = book.getAuthor() == null ? null : book.getAuthor().getName();
     }
 
     /**
@@ -1,19 +1,44 @@
 package doa_bookstore.entity;
 
-import doa_bookstore.entity.interfaces.Entity;
+import doa_bookstore.entity.interfaces.LongEntity;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.LongFunction;
 
 /**
  * Represents an author in the bookstore system.
- * Contains information about the author's ID, name, and a list of books written by the author.
+ * Contains information about the author's ID, name, and the IDs of the books written by the author.
+ * <p>
+ * The book IDs are the author side of the relationship whose book side is {@link Book#getAuthor()}; the
+ * repositories keep it in sync as books are saved, updated and deleted. They are held copy-on-write: each
+ * change swaps in new {@link BookIds} with a compare-and-set, so readers never lock and never see a change
+ * half made.
  */
-public class Author implements Entity<Long> {
+public class Author implements LongEntity {
+
+    private static final VarHandle IDS;
+
+    static {
+        try {
+            IDS = MethodHandles.lookup().findVarHandle(BookLinks.class, "ids", BookIds.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Shared with the copies that replace this author in its repository, so no link made meanwhile is lost
+    private static final class BookLinks {
+        volatile BookIds ids = BookIds.EMPTY;
+    }
 
     private Long id;
+    private volatile long version;
     private String name;
-    private List<Book> books;
+    private volatile BookLinks books = new BookLinks();
 
     /**
      * Default constructor for creating an empty {@code Author}.
@@ -27,7 +52,6 @@ public class Author implements Entity<Long> {
      */
     public Author(String name) {
         this.name = name;
-        this.books = new ArrayList<>();
     }
 
     /**
@@ -50,6 +74,46 @@ public class Author implements Entity<Long> {
         return id;
     }
 
+    /**
+     * Gets the ID of the author as a primitive.
+     *
+     * @return The ID of the author.
+     */
+    @Override
+    public long getLongId() {
+        return id;
+    }
+
+    /**
+     * Tells whether the author has been given an ID.
+     *
+     * @return {@code true} if the author has an ID.
+     */
+    @Override
+    public boolean hasId() {
+        return id != null;
+    }
+
+    /**
+     * Gets the version of the author.
+     *
+     * @return The version of the author, 0 if it was never saved.
+     */
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the author.
+     *
+     * @param version The version to set for the author.
+     */
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Gets the name of the author.
      *
@@ -69,30 +133,128 @@ public class Author implements Entity<Long> {
     }
 
     /**
-     * Gets the list of books written by the author.
+     * Gets the IDs of the books written by the author. The result is immutable: later changes to the author's
+     * books do not show in it.
+     *
+     * @return The IDs of the author's books, in ascending order.
+     */
+    public BookIds getBookIds() {
+        return books.ids;
+    }
+
+    /**
+     * Gets the books written by the author, resolved from the book IDs through the given lookup.
      *
-     * @return A list of books written by the author.
+     * @param books Function finding a stored book by ID, typically {@code bookRepository::findById}.
+     * @return A new list of the author's stored books, in ascending order of ID.
+     * @deprecated Read the IDs with {@link #getBookIds()}, which does not look up every book, or find the books
+     *             with {@code BookService.findByAuthorId}.
      */
-    public List<Book> getBooks() {
-        return books;
+    @Deprecated
+    public List<Book> getBooks(LongFunction<Optional<Book>> books) {
+        BookIds ids = this.books.ids;
+        List<Book> found = new ArrayList<>(ids.size());
+        ids.forEach(bookId -> books.apply(bookId).ifPresent(found::add));
+        return found;
     }
 
     /**
-     * Sets the list of books written by the author.
+     * Sets the books written by the author, replacing the IDs linked so far. The repositories still link and
+     * unlink books as they are saved, updated and deleted afterwards.
      *
-     * @param books The new list of books to associate with the author.
+     * @param books The books of the author, which must all have an ID.
+     * @throws IllegalArgumentException If a book has no ID.
+     * @deprecated The repositories link the books of an author; see {@link #getBookIds()}.
      */
+    @Deprecated
     public void setBooks(List<Book> books) {
-        this.books = books;
+        long[] ids = new long[books.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Book book = books.get(i);
+            if (book == null || !book.hasId()) {
+                throw new IllegalArgumentException("A book must have an ID to be linked to its author.");
+            }
+            ids[i] = book.getLongId();
+        }
+        this.books.ids = BookIds.of(ids);
     }
 
     /**
-     * Add a book to the list of books
+     * Links a book to the author. Adding a book already linked does nothing.
      *
-     * @param book The new book to associate with the author.
+     * @param book The book, which must have an ID.
+     * @throws IllegalArgumentException If the book has no ID.
      */
     public void addBook(Book book) {
-        this.books.add(book);
+        if (book == null || !book.hasId()) {
+            throw new IllegalArgumentException("A book must have an ID to be linked to its author.");
+        }
+        addBookId(book.getLongId());
+    }
+
+    /**
+     * Links a book to the author by ID. Adding an ID already linked does nothing.
+     *
+     * @param bookId The ID of the book.
+     * @return {@code true} if the book was not linked yet.
+     */
+    public boolean addBookId(long bookId) {
+        BookLinks links = books;
+        while (true) {
+            BookIds current = links.ids;
+            BookIds added = current.with(bookId);
+            if (added == current) {
+                return false;
+            }
+            if (IDS.compareAndSet(links, current, added)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unlinks a book from the author by ID. Removing an ID that is not linked does nothing.
+     *
+     * @param bookId The ID of the book.
+     * @return {@code true} if the book was linked.
+     */
+    public boolean removeBookId(long bookId) {
+        BookLinks links = books;
+        while (true) {
+            BookIds current = links.ids;
+            BookIds removed = current.without(bookId);
+            if (removed == current) {
+                return false;
+            }
+            if (IDS.compareAndSet(links, current, removed)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a detached copy of the author, with the same ID and version, to edit and pass to an update: the
+     * update is then rejected if another writer updated the author since this copy was taken. The copy starts
+     * with the book IDs of this author but does not follow them; it shares them again once it is stored.
+     *
+     * @return A new {@code Author} holding the current values of this one.
+     */
+    public Author copy() {
+        Author copy = new Author(name);
+        copy.setId(id);
+        copy.setVersion(version);
+        copy.books.ids = books.ids;
+        return copy;
+    }
+
+    /**
+     * Makes this author share the book IDs of the author it replaces in a repository, such as a stored author
+     * this one is an edited copy of. From then on, a book linked or unlinked through either is seen by both.
+     *
+     * @param replaced The author this one replaces.
+     */
+    public void shareBooksOf(Author replaced) {
+        books = replaced.books;
     }
 
 }
@@ -1,12 +1,16 @@
 package doa_bookstore.entity;
 
-import doa_bookstore.entity.interfaces.Entity;
+import doa_bookstore.entity.interfaces.LongEntity;
 
 /**
  * Represents a book in the bookstore system.
  * Contains information about the book's ID, title, author, genre, and stock units.
+ * <p>
+ * Books are equal when they have the same ID, so two instances of one stored book, such as the one given by
+ * a caller and the one in the repository, are the same key in a map. A book without an ID is only equal to
+ * itself; its hash code changes when it is given an ID, so it must not be in a hash-based collection then.
  */
-public class Book implements Entity<Long> {
+public class Book implements LongEntity {
 
     /**
      * Enum representing the genre of the book.
@@ -16,10 +20,11 @@ public class Book implements Entity<Long> {
     }
 
     private Long id;
+    private volatile long version;
     private String title;
     private Author author;
     private Genre genre;
-    private int stockUnits;
+    private volatile int stockUnits;
 
     /**
      * Default constructor for creating an empty {@code Book}.
@@ -51,6 +56,46 @@ public class Book implements Entity<Long> {
         return id;
     }
 
+    /**
+     * Gets the ID of the book as a primitive.
+     *
+     * @return The ID of the book.
+     */
+    @Override
+    public long getLongId() {
+        return id;
+    }
+
+    /**
+     * Tells whether the book has been given an ID.
+     *
+     * @return {@code true} if the book has an ID.
+     */
+    @Override
+    public boolean hasId() {
+        return id != null;
+    }
+
+    /**
+     * Gets the version of the book.
+     *
+     * @return The version of the book, 0 if it was never saved.
+     */
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the book.
+     *
+     * @param version The version to set for the book.
+     */
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Sets the ID of the book.
      *
@@ -132,4 +177,45 @@ public class Book implements Entity<Long> {
     public void setStockUnits(int stockUnits) {
         this.stockUnits = stockUnits;
     }
+
+    /**
+     * Returns a detached copy of the book, with the same ID and version, to edit and pass to an update: the update
+     * is then rejected if another writer updated the book since this copy was taken.
+     *
+     * @return A new {@code Book} holding the current values of this one.
+     */
+    public Book copy() {
+        // Through the getters, which views of stored books override
+        Book copy = new Book(getTitle(), getAuthor(), getGenre(), getStockUnits());
+        copy.setId(getId());
+        copy.setVersion(getVersion());
+        return copy;
+    }
+
+    /**
+     * Compares books by ID. A book without an ID is only equal to itself.
+     *
+     * @param o The object to compare with.
+     * @return {@code true} if {@code o} is a book with the same ID.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        // Through the getters, which views of stored books override
+        Long id = getId();
+        return id != null && o instanceof Book other && id.equals(other.getId());
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return The hash of the ID, or the identity hash of a book without an ID.
+     */
+    @Override
+    public int hashCode() {
+        Long id = getId();
+        return id == null ? System.identityHashCode(this) : Long.hashCode(id);
+    }
 }
@@ -0,0 +1,174 @@
+package doa_bookstore.entity;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * The IDs of the books of an author, in one primitive array sorted by ID. Book IDs are immutable: adding or
+ * removing one returns new IDs and leaves these unchanged, so they can be read and iterated by any number of
+ * threads without locking or copying.
+ * <p>
+ * Iterate with {@link #size()} and {@link #get(int)}, or {@link #forEach(LongConsumer)}; neither allocates.
+ */
+public final class BookIds {
+
+    /**
+     * No book IDs.
+     */
+    public static final BookIds EMPTY = new BookIds(new long[0]);
+
+    private final long[] ids;
+
+    private BookIds(long[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Creates book IDs holding the given ones.
+     *
+     * @param ids The IDs, in any order; duplicates are kept once.
+     * @return The book IDs.
+     */
+    public static BookIds of(long... ids) {
+        if (ids.length == 0) {
+            return EMPTY;
+        }
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return new BookIds(distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct));
+    }
+
+    /**
+     * Returns the number of IDs.
+     *
+     * @return The number of books.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Tells whether there are no IDs.
+     *
+     * @return {@code true} if there is no book.
+     */
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    /**
+     * Returns an ID by position.
+     *
+     * @param index The position of the ID, from 0 to {@link #size()} - 1.
+     * @return The ID at that position, IDs being in ascending order.
+     */
+    public long get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Tells whether an ID is present, by binary search.
+     *
+     * @param id The ID to look for.
+     * @return {@code true} if the ID is present.
+     */
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * Passes every ID to an action, in ascending order.
+     *
+     * @param action The action to run on each ID.
+     */
+    public void forEach(LongConsumer action) {
+        for (long id : ids) {
+            action.accept(id);
+        }
+    }
+
+    /**
+     * Returns these IDs plus one.
+     *
+     * @param id The ID to add.
+     * @return The new IDs, or these IDs if they already hold {@code id}.
+     */
+    public BookIds with(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return this;
+        }
+        int insertion = -index - 1;
+        long[] added = new long[ids.length + 1];
+        System.arraycopy(ids, 0, added, 0, insertion);
+        added[insertion] = id;
+        System.arraycopy(ids, insertion, added, insertion + 1, ids.length - insertion);
+        return new BookIds(added);
+    }
+
+    /**
+     * Returns these IDs minus one.
+     *
+     * @param id The ID to remove.
+     * @return The new IDs, or these IDs if they do not hold {@code id}.
+     */
+    public BookIds without(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return this;
+        }
+        if (ids.length == 1) {
+            return EMPTY;
+        }
+        long[] removed = new long[ids.length - 1];
+        System.arraycopy(ids, 0, removed, 0, index);
+        System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+        return new BookIds(removed);
+    }
+
+    /**
+     * Returns a copy of the IDs.
+     *
+     * @return A new array of the IDs, in ascending order.
+     */
+    public long[] toArray() {
+        return ids.clone();
+    }
+
+    /**
+     * Compares these IDs with another object: they are equal if it holds the same IDs.
+     *
+     * @param o The object to compare with.
+     * @return {@code true} if the object holds the same book IDs.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof BookIds other && Arrays.equals(ids, other.ids));
+    }
+
+    /**
+     * Returns a hash code of the IDs.
+     *
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    /**
+     * Returns a string representation of the IDs.
+     *
+     * @return A string representation of the IDs.
+     */
+    @Override
+    public String toString() {
+        return "BookIds" + Arrays.toString(ids);
+    }
+}
@@ -0,0 +1,262 @@
+package doa_bookstore.entity;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The lines of an order: the ID of each book ordered and its quantity, in two primitive arrays sorted by book ID,
+ * with one line per book. Lines are immutable.
+ * <p>
+ * Lines may also hold the stored {@link Book} of each line once they have been resolved against the repository,
+ * see {@link #withBooks(Book[])}. Lines built from IDs alone, such as those of a request or decoded from disk,
+ * hold no books until then.
+ */
+public final class OrderLines {
+
+    private static final long[] NO_IDS = new long[0];
+    private static final int[] NO_QUANTITIES = new int[0];
+
+    /**
+     * Lines of an order with no books.
+     */
+    public static final OrderLines EMPTY = new OrderLines(NO_IDS, NO_QUANTITIES, new Book[0]);
+
+    private final long[] bookIds;
+    private final int[] quantities;
+    // Aligned with bookIds, or null if the lines were not resolved
+    private final Book[] books;
+
+    private OrderLines(long[] bookIds, int[] quantities, Book[] books) {
+        this.bookIds = bookIds;
+        this.quantities = quantities;
+        this.books = books;
+    }
+
+    /**
+     * Creates a builder of lines.
+     *
+     * @return An empty builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Converts a map of books and quantities, as orders were built before lines existed.
+     * The books of the map are kept as the books of the lines.
+     *
+     * @param books The books and the quantity of each.
+     * @return The lines, one per book.
+     * @throws IllegalArgumentException If a book has no ID or a quantity is {@code null}.
+     */
+    public static OrderLines of(Map<Book, Integer> books) {
+        Builder builder = new Builder();
+        for (Map.Entry<Book, Integer> line : books.entrySet()) {
+            Integer quantity = line.getValue();
+            if (quantity == null) {
+                throw new IllegalArgumentException("Ordered quantity must be positive: null");
+            }
+            builder.add(line.getKey(), quantity);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return The number of distinct books ordered.
+     */
+    public int size() {
+        return bookIds.length;
+    }
+
+    /**
+     * Tells whether there are no lines.
+     *
+     * @return {@code true} if no book is ordered.
+     */
+    public boolean isEmpty() {
+        return bookIds.length == 0;
+    }
+
+    /**
+     * Returns the book ID of a line.
+     *
+     * @param line The index of the line, from 0 to {@link #size()} - 1.
+     * @return The ID of the book ordered.
+     */
+    public long bookId(int line) {
+        return bookIds[line];
+    }
+
+    /**
+     * Returns the quantity of a line.
+     *
+     * @param line The index of the line, from 0 to {@link #size()} - 1.
+     * @return The number of units ordered.
+     */
+    public int quantity(int line) {
+        return quantities[line];
+    }
+
+    /**
+     * Returns the book of a line.
+     *
+     * @param line The index of the line, from 0 to {@link #size()} - 1.
+     * @return The book, or {@code null} if the lines are not resolved.
+     */
+    public Book book(int line) {
+        return books == null ? null : books[line];
+    }
+
+    /**
+     * Tells whether the lines hold the book of every line.
+     *
+     * @return {@code true} if the lines were resolved.
+     */
+    public boolean isResolved() {
+        return books != null;
+    }
+
+    /**
+     * Finds the line of a book, by binary search.
+     *
+     * @param bookId The ID of the book.
+     * @return The index of its line, or a negative number if the book is not ordered.
+     */
+    public int indexOf(long bookId) {
+        return Arrays.binarySearch(bookIds, bookId);
+    }
+
+    /**
+     * Returns the total number of units ordered.
+     *
+     * @return The sum of the quantities.
+     */
+    public long totalUnits() {
+        long units = 0;
+        for (int quantity : quantities) {
+            units += quantity;
+        }
+        return units;
+    }
+
+    /**
+     * Returns the same lines holding the given books, sharing the IDs and quantities of these lines.
+     *
+     * @param books The book of each line, in line order.
+     * @return The resolved lines.
+     * @throws IllegalArgumentException If there is not one book per line or a book has another ID than its line.
+     */
+    public OrderLines withBooks(Book[] books) {
+        if (books.length != bookIds.length) {
+            throw new IllegalArgumentException("Expected " + bookIds.length + " books, got " + books.length);
+        }
+        for (int i = 0; i < books.length; i++) {
+            if (books[i] == null || !books[i].hasId() || books[i].getLongId() != bookIds[i]) {
+                throw new IllegalArgumentException("Book of line " + i + " does not have ID " + bookIds[i]);
+            }
+        }
+        return new OrderLines(bookIds, quantities, books.clone());
+    }
+
+    /**
+     * Returns a string representation of the lines, as book IDs and quantities.
+     *
+     * @return A string representation of the lines.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("OrderLines{");
+        for (int i = 0; i < bookIds.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(bookIds[i]).append('=').append(quantities[i]);
+        }
+        return text.append('}').toString();
+    }
+
+    /**
+     * Collects lines in any order. Lines of the same book are merged by adding their quantities.
+     */
+    public static final class Builder {
+
+        private long[] bookIds = new long[4];
+        private int[] quantities = new int[4];
+        private Book[] books = new Book[4];
+        private int size;
+        // Whether every line so far was added with its book
+        private boolean resolved = true;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a line by book ID.
+         *
+         * @param bookId   The ID of the book.
+         * @param quantity The number of units ordered.
+         * @return This builder.
+         */
+        public Builder add(long bookId, int quantity) {
+            resolved = false;
+            return append(bookId, quantity, null);
+        }
+
+        /**
+         * Adds a line for a book, which is kept as the book of the line.
+         *
+         * @param book     The book, which must have an ID.
+         * @param quantity The number of units ordered.
+         * @return This builder.
+         * @throws IllegalArgumentException If the book has no ID.
+         */
+        public Builder add(Book book, int quantity) {
+            if (book == null || !book.hasId()) {
+                throw new IllegalArgumentException("A book must have an ID to be ordered.");
+            }
+            return append(book.getLongId(), quantity, book);
+        }
+
+        private Builder append(long bookId, int quantity, Book book) {
+            if (size == bookIds.length) {
+                bookIds = Arrays.copyOf(bookIds, size * 2);
+                quantities = Arrays.copyOf(quantities, size * 2);
+                books = Arrays.copyOf(books, size * 2);
+            }
+            bookIds[size] = bookId;
+            quantities[size] = quantity;
+            books[size] = book;
+            size++;
+            return this;
+        }
+
+        /**
+         * Builds the lines, sorted by book ID.
+         *
+         * @return The lines. They hold their books only if every line was added with its book.
+         */
+        public OrderLines build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            long[] ids = Arrays.copyOf(bookIds, size);
+            Arrays.sort(ids);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            ids = distinct == size ? ids : Arrays.copyOf(ids, distinct);
+            int[] merged = new int[distinct];
+            Book[] lineBooks = resolved ? new Book[distinct] : null;
+            for (int i = 0; i < size; i++) {
+                int line = Arrays.binarySearch(ids, bookIds[i]);
+                merged[line] = Math.addExact(merged[line], quantities[i]);
+                if (resolved && lineBooks[line] == null) {
+                    lineBooks[line] = books[i];
+                }
+            }
+            return new OrderLines(ids, merged, lineBooks);
+        }
+    }
+}
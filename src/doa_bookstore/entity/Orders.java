@@ -1,25 +1,34 @@
 package doa_bookstore.entity;
 
-import doa_bookstore.entity.interfaces.Entity;
+import doa_bookstore.entity.interfaces.LongEntity;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Represents an order in the bookstore system.
  * Contains information about the order ID, the customer who placed the order,
- * the map of books with quantities, the date of the order, and the status of the order.
+ * the lines of books with quantities, the date of the order, and the status of the order.
+ * <p>
+ * The books of an order are kept as {@link OrderLines}, a book ID and a quantity per line. Orders can still be
+ * built from a map of books and quantities, as before lines existed: such an order keeps its map, which
+ * {@link #getBooks()} returns for callers to read or change in place, and derives its lines from the map.
  */
-public class Orders implements Entity<Long> {
+public class Orders implements LongEntity {
 
     private Long id;
+    private volatile long version;
     private String customerName;
+    private OrderLines lines;
+    // Only for orders built from a map; the lines are then derived from it
     private HashMap<Book, Integer> books;
     private Date orderDate;
     private OrderStatus status;
 
     /**
      * Enum representing the possible status of an order.
+     * An order starts {@link #PENDING} and ends either {@link #COMPLETED} or {@link #CANCELLED}.
      */
     public enum OrderStatus {
         PENDING,
@@ -31,10 +40,27 @@ public class Orders implements Entity<Long> {
      * Constructs a new {@code Order} with the specified parameters.
      *
      * @param customerName The name of the customer who placed the order.
+     * @param lines        The books in the order and their quantities.
+     * @param orderDate    The date the order was placed.
+     * @param status       The status of the order.
+     */
+    public Orders(String customerName, OrderLines lines, Date orderDate, OrderStatus status) {
+        this.customerName = customerName;
+        this.lines = lines;
+        this.orderDate = orderDate;
+        this.status = status;
+    }
+
+    /**
+     * Constructs a new {@code Order} from a map of books and their quantities.
+     *
+     * @param customerName The name of the customer who placed the order.
      * @param books        The map of books in the order and their quantities.
      * @param orderDate    The date the order was placed.
      * @param status       The status of the order.
+     * @deprecated Build the order from {@link OrderLines} with {@link #Orders(String, OrderLines, Date, OrderStatus)}.
      */
+    @Deprecated
     public Orders(String customerName, HashMap<Book, Integer> books, Date orderDate, OrderStatus status) {
         this.customerName = customerName;
         this.books = books;
@@ -52,6 +78,46 @@ public class Orders implements Entity<Long> {
         return id;
     }
 
+    /**
+     * Gets the ID of the order as a primitive.
+     *
+     * @return The ID of the order.
+     */
+    @Override
+    public long getLongId() {
+        return id;
+    }
+
+    /**
+     * Tells whether the order has been given an ID.
+     *
+     * @return {@code true} if the order has an ID.
+     */
+    @Override
+    public boolean hasId() {
+        return id != null;
+    }
+
+    /**
+     * Gets the version of the order.
+     *
+     * @return The version of the order, 0 if it was never saved.
+     */
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the order.
+     *
+     * @param version The version to set for the order.
+     */
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Sets the ID of the order.
      *
@@ -80,22 +146,71 @@ public class Orders implements Entity<Long> {
         this.customerName = customerName;
     }
 
+    /**
+     * Gets the lines of the order. For an order built from a map, the lines are those of the books of the
+     * map that have an ID, as the map is now.
+     *
+     * @return The books in the order and their quantities.
+     */
+    public OrderLines getLines() {
+        HashMap<Book, Integer> books = this.books;
+        if (books == null) {
+            return lines == null ? OrderLines.EMPTY : lines;
+        }
+        OrderLines.Builder builder = OrderLines.builder();
+        for (Map.Entry<Book, Integer> line : books.entrySet()) {
+            if (line.getKey() != null && line.getKey().hasId() && line.getValue() != null) {
+                builder.add(line.getKey(), line.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Sets the lines of the order.
+     *
+     * @param lines The new books and quantities.
+     */
+    public void setLines(OrderLines lines) {
+        this.lines = lines;
+        this.books = null;
+    }
+
     /**
      * Gets the map of books in the order with their quantities.
+     * For an order built from lines, this is a new map of the books of its lines, or of books carrying only
+     * the ID of each line if the lines are not resolved; books are equal by ID, so those still work as keys.
      *
      * @return The map of books and quantities.
+     * @deprecated Read the order with {@link #getLines()}, which does not allocate a map.
      */
+    @Deprecated
     public HashMap<Book, Integer> getBooks() {
-        return books;
+        if (books != null || lines == null) {
+            return books;
+        }
+        HashMap<Book, Integer> map = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Book book = lines.book(i);
+            if (book == null) {
+                book = new Book();
+                book.setId(lines.bookId(i));
+            }
+            map.put(book, lines.quantity(i));
+        }
+        return map;
     }
 
     /**
      * Sets the map of books in the order with their quantities.
      *
      * @param books The new map of books and quantities.
+     * @deprecated Set the lines of the order with {@link #setLines(OrderLines)}.
      */
+    @Deprecated
     public void setBooks(HashMap<Book, Integer> books) {
         this.books = books;
+        this.lines = null;
     }
 
     /**
@@ -134,6 +249,21 @@ public class Orders implements Entity<Long> {
         this.status = status;
     }
 
+    /**
+     * Returns a copy of the order with the same ID and version, for editing without changing the order other
+     * threads read. Passing the copy to {@code update} then stores it only if the order was not updated since.
+     *
+     * @return A new order with the values of this one.
+     */
+    public Orders copy() {
+        Orders copy = new Orders(customerName, lines, orderDate == null ? null : new Date(orderDate.getTime()),
+                status);
+        copy.books = books == null ? null : new HashMap<>(books);
+        copy.id = id;
+        copy.version = version;
+        return copy;
+    }
+
     /**
      * Returns a string representation of the {@code Order}.
      * This representation includes the order ID, customer name, order date, and status.
@@ -3,11 +3,19 @@ package doa_bookstore.entity.interfaces;
 /**
  * A generic interface representing an entity with a unique identifier.
  * This interface defines basic methods for getting and setting the entity's ID.
+ * <p>
+ * An entity also carries a version, which a repository increments each time it stores the entity. A writer
+ * that updates a copy of an entity is rejected if the stored entity changed since the copy was read.
  *
  * @param <ID> The type of the identifier for the entity.
  */
 public interface Entity<ID> {
 
+    /**
+     * The version to give a copy so that an update overwrites the stored entity whatever its version.
+     */
+    long ANY_VERSION = -1;
+
     /**
      * Gets the unique identifier of the entity.
      *
@@ -21,4 +29,20 @@ public interface Entity<ID> {
      * @param id The ID to set for the entity.
      */
     void setId(ID id);
+
+    /**
+     * Gets the version of the entity: 0 until it is saved, then incremented by every update of the repository.
+     *
+     * @return The version of the entity.
+     */
+    long getVersion();
+
+    /**
+     * Sets the version of the entity. Repositories set it; callers only need it to update an entity read with a
+     * known version, or to set it to {@link #ANY_VERSION} so that an update overwrites the stored entity whatever
+     * its version.
+     *
+     * @param version The version to set for the entity.
+     */
+    void setVersion(long version);
 }
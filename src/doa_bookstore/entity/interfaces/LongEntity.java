@@ -0,0 +1,23 @@
+package doa_bookstore.entity.interfaces;
+
+/**
+ * An {@link Entity} identified by a {@code long}. Besides the boxed accessors of {@link Entity}, it exposes
+ * its ID as a primitive, so repositories can hash and compare IDs without unboxing through {@link Long}.
+ */
+public interface LongEntity extends Entity<Long> {
+
+    /**
+     * Gets the ID of the entity as a primitive.
+     *
+     * @return The ID of the entity.
+     * @throws NullPointerException If the entity has no ID yet.
+     */
+    long getLongId();
+
+    /**
+     * Tells whether an ID has been assigned to the entity.
+     *
+     * @return {@code true} if the entity has an ID.
+     */
+    boolean hasId();
+}
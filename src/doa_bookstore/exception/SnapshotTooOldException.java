@@ -0,0 +1,34 @@
+package doa_bookstore.exception;
+
+/**
+ * Exception thrown when a read view can no longer be read, because the old versions it needed were collected.
+ * This happens to the oldest open views when a repository would otherwise keep more old versions than its
+ * retention bound, and to every view opened before the repository was cleared. The reader should open a new
+ * view and start its read again.
+ * <p>
+ * Like {@link StaleEntityException}, it is unchecked: any long read may outlive its versions, and most reads
+ * are short enough that it never happens.
+ */
+public class SnapshotTooOldException extends RuntimeException {
+
+    private final long stamp;
+
+    /**
+     * Constructs a new {@code SnapshotTooOldException} for a view.
+     *
+     * @param stamp The commit stamp the view reads at.
+     */
+    public SnapshotTooOldException(long stamp) {
+        super("The versions of read view " + stamp + " were collected; open a new view.");
+        this.stamp = stamp;
+    }
+
+    /**
+     * Returns the commit stamp of the view that can no longer be read.
+     *
+     * @return The stamp of the expired view.
+     */
+    public long getStamp() {
+        return stamp;
+    }
+}
@@ -0,0 +1,69 @@
+package doa_bookstore.exception;
+
+/**
+ * Exception thrown when an entity is updated from a copy that is older than the stored entity, because another
+ * writer updated it since the copy was read. The update is not applied; the writer should read the entity again
+ * and redo its change.
+ * <p>
+ * Unlike the other exceptions of the bookstore, it is unchecked: any update may race with another writer, and
+ * most callers update entities no one else edits.
+ */
+public class StaleEntityException extends RuntimeException {
+
+    private final Class<?> clazz;
+    private final long id;
+    private final long expectedVersion;
+    private final long storedVersion;
+
+    /**
+     * Constructs a new {@code StaleEntityException} for the given entity.
+     *
+     * @param clazz           The class of the entity.
+     * @param id              The ID of the entity.
+     * @param expectedVersion The version of the copy that was written.
+     * @param storedVersion   The version of the stored entity.
+     */
+    public StaleEntityException(Class<?> clazz, long id, long expectedVersion, long storedVersion) {
+        super(clazz.getSimpleName() + " " + id + " is at version " + storedVersion + ", not " + expectedVersion + ".");
+        this.clazz = clazz;
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+        this.storedVersion = storedVersion;
+    }
+
+    /**
+     * Returns the class of the entity that caused this exception.
+     *
+     * @return The class of the stale entity.
+     */
+    public Class<?> getEntityClass() {
+        return clazz;
+    }
+
+    /**
+     * Returns the ID of the entity.
+     *
+     * @return The ID of the stale entity.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the version of the copy that was written.
+     *
+     * @return The version the writer expected.
+     */
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * Returns the version of the stored entity when the update was rejected.
+     *
+     * @return The stored version.
+     */
+    public long getStoredVersion() {
+        return storedVersion;
+    }
+}
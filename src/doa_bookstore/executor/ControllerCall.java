@@ -0,0 +1,21 @@
+package doa_bookstore.executor;
+
+import doa_bookstore.controller.BookstoreController;
+
+/**
+ * One request against the {@link BookstoreController}, run by a {@link RequestExecutor}.
+ *
+ * @param <T> The type of the result of the request.
+ */
+@FunctionalInterface
+public interface ControllerCall<T> {
+
+    /**
+     * Runs the request.
+     *
+     * @param controller The controller to call.
+     * @return The result of the request.
+     * @throws Exception Any exception of the controller, e.g. {@link doa_bookstore.exception.EntityNotFoundException}.
+     */
+    T call(BookstoreController controller) throws Exception;
+}
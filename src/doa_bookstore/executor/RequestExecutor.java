@@ -0,0 +1,246 @@
+package doa_bookstore.executor;
+
+import doa_bookstore.controller.BookstoreController;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs requests against a {@link BookstoreController} asynchronously, with a bound on the number of
+ * requests in flight.
+ * <p>
+ * By default every request gets its own virtual thread, so a request that blocks, e.g. waiting for the
+ * write-ahead log to be flushed, does not hold an OS thread, and tens of thousands of requests can be in
+ * flight at once. The repositories and the write-ahead log block on {@code java.util.concurrent} locks,
+ * which release the carrier thread while waiting.
+ * <p>
+ * Backpressure is applied at submission: once {@code maxInFlight} requests are running, the submitting
+ * thread waits for one of them to finish, and the request is rejected if none finishes within the
+ * admission timeout. Load above capacity therefore slows producers down instead of piling up in a queue.
+ */
+public class RequestExecutor implements AutoCloseable {
+
+    /**
+     * System property setting the maximum number of requests in flight.
+     */
+    public static final String MAX_IN_FLIGHT_PROPERTY = "doa.executor.maxInFlight";
+
+    /**
+     * System property setting how many milliseconds a submission waits for capacity before it is rejected.
+     */
+    public static final String ADMISSION_TIMEOUT_PROPERTY = "doa.executor.admissionTimeoutMillis";
+
+    private static final Timer ADMISSION_WAIT = MetricsRegistry.getInstance().timer("executor.admissionWait");
+    private static final Counter REJECTED = MetricsRegistry.getInstance().counter("executor.rejected");
+
+    private final BookstoreController controller;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long admissionTimeoutNanos;
+
+    private RequestExecutor(BookstoreController controller, ExecutorService executor, int maxInFlight,
+                            Duration admissionTimeout) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.controller = controller;
+        this.executor = executor;
+        this.permits = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.admissionTimeoutNanos = admissionTimeout.toNanos();
+    }
+
+    /**
+     * Creates an executor that runs every request on a new virtual thread.
+     *
+     * @param controller       The controller to call.
+     * @param maxInFlight      The maximum number of requests running at once.
+     * @param admissionTimeout How long a submission waits for capacity before it is rejected.
+     * @return The executor.
+     */
+    public static RequestExecutor virtualThreads(BookstoreController controller, int maxInFlight,
+                                                 Duration admissionTimeout) {
+        ThreadFactory factory = Thread.ofVirtual().name("request-", 0).factory();
+        return new RequestExecutor(controller, Executors.newThreadPerTaskExecutor(factory), maxInFlight,
+                admissionTimeout);
+    }
+
+    /**
+     * Creates an executor that runs requests on a fixed pool of platform threads. Requests beyond the
+     * pool size wait in the pool's queue, up to {@code maxInFlight} in total.
+     *
+     * @param controller       The controller to call.
+     * @param threads          The number of threads of the pool.
+     * @param maxInFlight      The maximum number of requests running or queued at once.
+     * @param admissionTimeout How long a submission waits for capacity before it is rejected.
+     * @return The executor.
+     */
+    public static RequestExecutor platformThreads(BookstoreController controller, int threads, int maxInFlight,
+                                                  Duration admissionTimeout) {
+        ThreadFactory factory = Thread.ofPlatform().name("request-platform-", 0).daemon(true).factory();
+        return new RequestExecutor(controller, Executors.newFixedThreadPool(threads, factory), maxInFlight,
+                admissionTimeout);
+    }
+
+    /**
+     * Creates a virtual-thread executor configured by the {@value #MAX_IN_FLIGHT_PROPERTY} and
+     * {@value #ADMISSION_TIMEOUT_PROPERTY} system properties, which default to 10000 requests and 1 second.
+     *
+     * @param controller The controller to call.
+     * @return The executor.
+     */
+    public static RequestExecutor fromSystemProperties(BookstoreController controller) {
+        return virtualThreads(controller, Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, 10_000),
+                Duration.ofMillis(Long.getLong(ADMISSION_TIMEOUT_PROPERTY, 1_000)));
+    }
+
+    /**
+     * Submits a request. Waits for capacity if {@code maxInFlight} requests are already running.
+     *
+     * @param call The request.
+     * @param <T>  The type of the result.
+     * @return A future completed with the result of the request, or exceptionally with the exception it threw.
+     * @throws RejectedExecutionException If no capacity frees up within the admission timeout,
+     *                                    or the executor is closed.
+     */
+    public <T> CompletableFuture<T> submit(ControllerCall<T> call) {
+        acquire();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(call, result));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Runs a request on the calling thread, under the same bound on requests in flight as {@link #submit}.
+     * Meant for callers that already have a thread per request, such as HTTP exchanges, to avoid a second hop.
+     *
+     * @param call The request.
+     * @param <T>  The type of the result.
+     * @return The result of the request.
+     * @throws Exception                  Any exception thrown by the request.
+     * @throws RejectedExecutionException If no capacity frees up within the admission timeout.
+     */
+    public <T> T call(ControllerCall<T> call) throws Exception {
+        acquire();
+        try {
+            return call.call(controller);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private <T> void run(ControllerCall<T> call, CompletableFuture<T> result) {
+        T value;
+        try {
+            value = call.call(controller);
+        } catch (Throwable e) {
+            // Free the slot before anything chained on the future runs on this thread
+            permits.release();
+            result.completeExceptionally(e);
+            return;
+        }
+        permits.release();
+        result.complete(value);
+    }
+
+    private void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        long start = ADMISSION_WAIT.start();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(admissionTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for capacity", e);
+        } finally {
+            ADMISSION_WAIT.stop(start);
+        }
+        if (!acquired) {
+            REJECTED.increment();
+            throw new RejectedExecutionException("Too many requests in flight: " + maxInFlight);
+        }
+    }
+
+    /**
+     * Submits {@link BookstoreController#makeOrder}.
+     *
+     * @param customerName The name of the customer placing the order.
+     * @param orders       A map of books and their quantities to be ordered.
+     * @return A future completed with the result of the call.
+     */
+    public CompletableFuture<Boolean> makeOrder(String customerName, HashMap<Book, Integer> orders) {
+        return submit(controller -> controller.makeOrder(customerName, orders));
+    }
+
+    /**
+     * Submits {@link BookstoreController#getAllBooks}.
+     *
+     * @return A future completed with the result of the call.
+     */
+    public CompletableFuture<Iterable<Book>> getAllBooks() {
+        return submit(BookstoreController::getAllBooks);
+    }
+
+    /**
+     * Submits {@link BookstoreController#booksByAuthor}.
+     *
+     * @param author The author whose books are to be retrieved.
+     * @return A future completed with the result of the call.
+     */
+    public CompletableFuture<List<Book>> booksByAuthor(Author author) {
+        return submit(controller -> controller.booksByAuthor(author));
+    }
+
+    /**
+     * Submits {@link BookstoreController#saveBook}.
+     *
+     * @param book The book to be saved.
+     * @return A future completed with the result of the call.
+     */
+    public CompletableFuture<Book> saveBook(Book book) {
+        return submit(controller -> controller.saveBook(book));
+    }
+
+    /**
+     * @return The number of requests currently running or waiting for a thread.
+     */
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * @return The maximum number of requests in flight.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Stops accepting requests and waits for the running ones to finish.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
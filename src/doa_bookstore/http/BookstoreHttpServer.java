@@ -0,0 +1,449 @@
+package doa_bookstore.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import doa_bookstore.dto.AuthorDTO;
+import doa_bookstore.dto.BookDTO;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.executor.RequestExecutor;
+import doa_bookstore.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An HTTP/JSON front end for the bookstore, on the JDK's built-in {@link HttpServer}.
+ * <pre>
+ * GET  /books?after={id}&amp;limit={n}   one page of the catalog, ordered by ID
+ * GET  /books?q={words}&amp;limit={n}    the books whose title or author name match, best first
+ * GET  /books/{id}                    one book
+ * POST /books                         {"title", "authorId", "genre", "stockUnits"}
+ * GET  /authors/{id}                  one author
+ * GET  /authors/{id}/books            the books of an author
+ * POST /authors                       {"name"}
+ * GET  /orders/{id}                   one order
+ * POST /orders                        {"customerName", "lines": [{"bookId", "quantity"}]}
+ * GET  /metrics                       the metrics registry as JSON, or as text with ?format=text
+ * </pre>
+ * Every exchange runs on its own virtual thread and calls the controller through a {@link RequestExecutor},
+ * which bounds the requests in flight; a request that finds no capacity is answered with 503.
+ * Responses are streamed with a {@link JsonWriter}: one that fits in its buffer is sent with a
+ * {@code Content-Length}, a larger one is sent chunked as it is written.
+ * <p>
+ * Missing entities are answered with 404, duplicates and insufficient stock with 409.
+ */
+public class BookstoreHttpServer implements AutoCloseable {
+
+    /**
+     * System property setting the port to listen on. Defaults to 8080.
+     */
+    public static final String PORT_PROPERTY = "doa.http.port";
+
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    static {
+        // The JDK server writes the headers and the body of a response separately. With Nagle's algorithm on,
+        // the body then waits for the client's delayed ACK, adding about 40 ms to every small response.
+        // The property is read when the first server is created, so it must be set before that.
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+    }
+
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService exchanges;
+    private final RequestExecutor requests;
+
+    /**
+     * Creates a server bound to the given address. It does not accept connections until {@link #start()}.
+     *
+     * @param requests The executor through which the controller is called.
+     * @param address  The address to listen on; port 0 picks a free port.
+     * @throws IOException If the address cannot be bound.
+     */
+    public BookstoreHttpServer(RequestExecutor requests, InetSocketAddress address) throws IOException {
+        this.requests = requests;
+        this.server = HttpServer.create(address, 0);
+        this.exchanges = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-", 0).factory());
+        server.setExecutor(exchanges);
+        server.createContext("/books", exchange -> handle(exchange, "books", this::books));
+        server.createContext("/authors", exchange -> handle(exchange, "authors", this::authors));
+        server.createContext("/orders", exchange -> handle(exchange, "orders", this::orders));
+        server.createContext("/metrics", exchange -> handle(exchange, "metrics", this::metrics));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections and waits for the exchanges in progress to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        exchanges.close();
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        void handle(HttpExchange exchange, String[] path) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String root, Route route) {
+        try (exchange) {
+            try {
+                String[] path = segments(exchange.getRequestURI());
+                // Contexts match by prefix, so "/books" also receives "/bookshelf"
+                if (!path[0].equals(root)) {
+                    throw notFound();
+                }
+                route.handle(exchange, path);
+            } catch (HttpStatusException e) {
+                error(exchange, e.getStatus(), e.getMessage());
+            } catch (EntityNotFoundException e) {
+                error(exchange, 404, e.getMessage());
+            } catch (EntityAlreadyExistsException | InsufficientUnitsException e) {
+                error(exchange, 409, e.getMessage());
+            } catch (RejectedExecutionException e) {
+                error(exchange, 503, e.getMessage());
+            } catch (IOException e) {
+                // The client went away; there is no one left to answer
+            } catch (Exception e) {
+                error(exchange, 500, e.toString());
+            }
+        } catch (IOException e) {
+            // Same: the error response itself could not be sent
+        }
+    }
+
+    // GET /books, GET /books/{id}, POST /books
+    private void books(HttpExchange exchange, String[] path) throws Exception {
+        if (path.length == 1) {
+            if (isPost(exchange)) {
+                Map<String, Object> body = readObject(exchange);
+                String title = requireString(body, "title");
+                long authorId = requireLong(body, "authorId");
+                Book.Genre genre = requireGenre(body);
+                int stockUnits = requireInt(body, "stockUnits");
+                BookDTO saved = requests.call(controller -> {
+                    Author author = controller.findAuthorById(authorId);
+                    return new BookDTO(controller.saveBook(new Book(title, author, genre, stockUnits)));
+                });
+                respond(exchange, 201, json -> BookstoreJson.writeBook(json, saved));
+                return;
+            }
+            requireGet(exchange);
+            Map<String, String> query = query(exchange.getRequestURI());
+            if (query.containsKey("q")) {
+                String words = query.get("q").replace('+', ' ');
+                int limit = query.containsKey("limit") ? parseLimit(query.get("limit")) : DEFAULT_PAGE_SIZE;
+                List<BookDTO> found = requests.call(controller -> controller.searchCatalog(words, limit));
+                respond(exchange, 200, json -> BookstoreJson.writeBooks(json, found));
+                return;
+            }
+            Long after = query.containsKey("after") ? parseId(query.get("after")) : null;
+            int limit = query.containsKey("limit") ? parseLimit(query.get("limit")) : DEFAULT_PAGE_SIZE;
+            List<BookDTO> page = requests.call(controller -> controller.getCatalogPage(after, limit));
+            respond(exchange, 200, json -> BookstoreJson.writeBooks(json, page));
+        } else if (path.length == 2) {
+            requireGet(exchange);
+            long id = parseId(path[1]);
+            BookDTO book = requests.call(controller -> controller.findBookDTO(id));
+            respond(exchange, 200, json -> BookstoreJson.writeBook(json, book));
+        } else {
+            throw notFound();
+        }
+    }
+
+    // GET /authors/{id}, GET /authors/{id}/books, POST /authors
+    private void authors(HttpExchange exchange, String[] path) throws Exception {
+        if (path.length == 1) {
+            requirePost(exchange);
+            String name = requireString(readObject(exchange), "name");
+            AuthorDTO saved = requests.call(controller -> new AuthorDTO(controller.saveAuthor(new Author(name))));
+            respond(exchange, 201, json -> BookstoreJson.writeAuthor(json, saved));
+        } else if (path.length == 2) {
+            requireGet(exchange);
+            long id = parseId(path[1]);
+            AuthorDTO author = requests.call(controller -> controller.findAuthorDTO(id));
+            respond(exchange, 200, json -> BookstoreJson.writeAuthor(json, author));
+        } else if (path.length == 3 && path[2].equals("books")) {
+            requireGet(exchange);
+            long id = parseId(path[1]);
+            List<BookDTO> books = requests.call(controller -> controller.findBookDTOsByAuthor(id));
+            respond(exchange, 200, json -> BookstoreJson.writeBooks(json, books));
+        } else {
+            throw notFound();
+        }
+    }
+
+    // GET /orders/{id}, POST /orders
+    private void orders(HttpExchange exchange, String[] path) throws Exception {
+        if (path.length == 1) {
+            requirePost(exchange);
+            Map<String, Object> body = readObject(exchange);
+            String customerName = requireString(body, "customerName");
+            OrderLines lines = requireLines(body);
+            boolean placed = requests.call(controller -> controller.makeOrder(customerName, lines));
+            respond(exchange, 201, json -> json.beginObject().name("placed").value(placed).endObject());
+        } else if (path.length == 2) {
+            requireGet(exchange);
+            long id = parseId(path[1]);
+            Orders order = requests.call(controller -> controller.findOrderById(id));
+            respond(exchange, 200, json -> BookstoreJson.writeOrder(json, order));
+        } else {
+            throw notFound();
+        }
+    }
+
+    // GET /metrics
+    private void metrics(HttpExchange exchange, String[] path) throws Exception {
+        requireGet(exchange);
+        boolean text = "text".equals(query(exchange.getRequestURI()).get("format"));
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        byte[] body = (text ? registry.toText() : registry.toJson()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", text ? "text/plain; charset=utf-8" : JSON);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        ExchangeOutput output = new ExchangeOutput(exchange, status);
+        JsonWriter json = new JsonWriter(output);
+        body.write(json);
+        output.lastWrite();
+        json.close();
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // The response has already started; all that can be done is to cut it short
+            return;
+        }
+        respond(exchange, status, json -> json.beginObject()
+                .name("status").value(status)
+                .name("error").value(message)
+                .endObject());
+    }
+
+    private static String[] segments(URI uri) {
+        String path = uri.getPath();
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.endsWith("/") && path.length() > start ? path.length() - 1 : path.length();
+        return path.substring(start, end).split("/");
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static boolean isPost(HttpExchange exchange) {
+        return exchange.getRequestMethod().equals("POST");
+    }
+
+    private static void requireGet(HttpExchange exchange) throws HttpStatusException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            throw new HttpStatusException(405, "Method not allowed: " + exchange.getRequestMethod());
+        }
+    }
+
+    private static void requirePost(HttpExchange exchange) throws HttpStatusException {
+        if (!isPost(exchange)) {
+            throw new HttpStatusException(405, "Method not allowed: " + exchange.getRequestMethod());
+        }
+    }
+
+    private static HttpStatusException notFound() {
+        return new HttpStatusException(404, "No such resource");
+    }
+
+    private static long parseId(String id) throws HttpStatusException {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new HttpStatusException(400, "Invalid ID: " + id);
+        }
+    }
+
+    private static int parseLimit(String limit) throws HttpStatusException {
+        try {
+            int parsed = Integer.parseInt(limit);
+            if (parsed > 0 && parsed <= MAX_PAGE_SIZE) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new HttpStatusException(400, "limit must be between 1 and " + MAX_PAGE_SIZE + ": " + limit);
+    }
+
+    private static Map<String, Object> readObject(HttpExchange exchange) throws IOException, HttpStatusException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new HttpStatusException(413, "Request body larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        if (!(JsonReader.parse(new String(bytes, StandardCharsets.UTF_8)) instanceof Map<?, ?> object)) {
+            throw new HttpStatusException(400, "The request body must be a JSON object");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> members = (Map<String, Object>) object;
+        return members;
+    }
+
+    private static String requireString(Map<String, Object> body, String name) throws HttpStatusException {
+        if (!(body.get(name) instanceof String value)) {
+            throw new HttpStatusException(400, "Missing string member \"" + name + "\"");
+        }
+        return value;
+    }
+
+    private static long requireLong(Map<?, ?> body, String name) throws HttpStatusException {
+        if (!(body.get(name) instanceof Long value)) {
+            throw new HttpStatusException(400, "Missing integer member \"" + name + "\"");
+        }
+        return value;
+    }
+
+    private static int requireInt(Map<?, ?> body, String name) throws HttpStatusException {
+        long value = requireLong(body, name);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new HttpStatusException(400, "\"" + name + "\" out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static Book.Genre requireGenre(Map<String, Object> body) throws HttpStatusException {
+        String genre = requireString(body, "genre");
+        try {
+            return Book.Genre.valueOf(genre);
+        } catch (IllegalArgumentException e) {
+            throw new HttpStatusException(400, "Unknown genre: " + genre);
+        }
+    }
+
+    // Quantities by book ID; the same book on two lines is merged
+    private static OrderLines requireLines(Map<String, Object> body) throws HttpStatusException {
+        if (!(body.get("lines") instanceof List<?> lines) || lines.isEmpty()) {
+            throw new HttpStatusException(400, "An order needs a non-empty \"lines\" array");
+        }
+        OrderLines.Builder quantities = OrderLines.builder();
+        for (Object line : lines) {
+            if (!(line instanceof Map<?, ?> fields)) {
+                throw new HttpStatusException(400, "Every order line must be an object");
+            }
+            int quantity = requireInt(fields, "quantity");
+            if (quantity == 0) {
+                throw new HttpStatusException(400, "Order quantities must be positive");
+            }
+            quantities.add(requireLong(fields, "bookId"), quantity);
+        }
+        try {
+            return quantities.build();
+        } catch (ArithmeticException e) {
+            throw new HttpStatusException(400, "Order quantities are too large");
+        }
+    }
+
+    /**
+     * Sends the response headers on the first write: with the exact length if that write is also the last
+     * one, chunked otherwise.
+     */
+    private static final class ExchangeOutput extends OutputStream {
+
+        private final HttpExchange exchange;
+        private final int status;
+        private OutputStream body;
+        private boolean last;
+
+        ExchangeOutput(HttpExchange exchange, int status) {
+            this.exchange = exchange;
+            this.status = status;
+        }
+
+        void lastWrite() {
+            last = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (body == null) {
+                // 0 selects chunked encoding
+                exchange.sendResponseHeaders(status, last ? length : 0);
+                body = exchange.getResponseBody();
+            }
+            body.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body == null) {
+                // -1 means no body at all
+                exchange.sendResponseHeaders(status, -1);
+                body = exchange.getResponseBody();
+            }
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package doa_bookstore.http;
+
+import doa_bookstore.dto.AuthorDTO;
+import doa_bookstore.dto.BookDTO;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The JSON representation of the bookstore resources, written field by field to a {@link JsonWriter}.
+ */
+public final class BookstoreJson {
+
+    private BookstoreJson() {
+    }
+
+    /**
+     * Writes a book as {@code {"id":..,"title":..,"authorName":..}}.
+     *
+     * @param json The writer.
+     * @param book The book.
+     * @throws IOException If the writer fails.
+     */
+    public static void writeBook(JsonWriter json, BookDTO book) throws IOException {
+        json.beginObject()
+                .name("id").value(book.getId())
+                .name("title").value(book.getTitle())
+                .name("authorName").value(book.getAuthorName())
+                .endObject();
+    }
+
+    /**
+     * Writes a JSON array of books.
+     *
+     * @param json  The writer.
+     * @param books The books.
+     * @throws IOException If the writer fails.
+     */
+    public static void writeBooks(JsonWriter json, List<BookDTO> books) throws IOException {
+        json.beginArray();
+        for (BookDTO book : books) {
+            writeBook(json, book);
+        }
+        json.endArray();
+    }
+
+    /**
+     * Writes an author as {@code {"id":..,"name":..}}.
+     *
+     * @param json   The writer.
+     * @param author The author.
+     * @throws IOException If the writer fails.
+     */
+    public static void writeAuthor(JsonWriter json, AuthorDTO author) throws IOException {
+        json.beginObject()
+                .name("id").value(author.getId())
+                .name("name").value(author.getName())
+                .endObject();
+    }
+
+    /**
+     * Writes an order, with its date in epoch milliseconds and one line per book.
+     *
+     * @param json  The writer.
+     * @param order The order.
+     * @throws IOException If the writer fails.
+     */
+    public static void writeOrder(JsonWriter json, Orders order) throws IOException {
+        json.beginObject()
+                .name("id").value(order.getId())
+                .name("customerName").value(order.getCustomerName())
+                .name("orderDate");
+        if (order.getOrderDate() == null) {
+            json.nullValue();
+        } else {
+            json.value(order.getOrderDate().getTime());
+        }
+        json.name("status").value(order.getStatus() == null ? null : order.getStatus().name())
+                .name("lines").beginArray();
+        OrderLines lines = order.getLines();
+        for (int i = 0; i < lines.size(); i++) {
+            Book book = lines.book(i);
+            json.beginObject()
+                    .name("bookId").value(lines.bookId(i))
+                    .name("title").value(book == null ? null : book.getTitle())
+                    .name("quantity").value(lines.quantity(i))
+                    .endObject();
+        }
+        json.endArray().endObject();
+    }
+}
@@ -0,0 +1,22 @@
+package doa_bookstore.http;
+
+/**
+ * Thrown when an HTTP request cannot be served as sent, e.g. a malformed JSON body, a non-numeric ID
+ * or an unsupported method. The exchange is answered with the carried status code.
+ */
+class HttpStatusException extends Exception {
+
+    private final int status;
+
+    HttpStatusException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * @return The HTTP status code to answer with.
+     */
+    int getStatus() {
+        return status;
+    }
+}
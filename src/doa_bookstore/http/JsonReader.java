@@ -0,0 +1,229 @@
+package doa_bookstore.http;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small recursive-descent JSON parser for request bodies. Objects become {@link Map}s, arrays become
+ * {@link List}s, integers become {@link Long}s and other numbers {@link Double}s.
+ * Request bodies are small, so unlike {@link JsonWriter} this does not stream.
+ */
+class JsonReader {
+
+    private static final int MAX_DEPTH = 64;
+
+    private final String text;
+    private int position;
+    private int depth;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses a complete JSON document.
+     *
+     * @param text The document.
+     * @return The parsed value.
+     * @throws HttpStatusException If the document is not valid JSON.
+     */
+    static Object parse(String text) throws HttpStatusException {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position != text.length()) {
+            throw reader.error("Unexpected content after the JSON document");
+        }
+        return value;
+    }
+
+    private Object readValue() throws HttpStatusException {
+        skipWhitespace();
+        if (position == text.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        char c = text.charAt(position);
+        return switch (c) {
+            case '{' -> readObject();
+            case '[' -> readArray();
+            case '"' -> readString();
+            case 't' -> readLiteral("true", Boolean.TRUE);
+            case 'f' -> readLiteral("false", Boolean.FALSE);
+            case 'n' -> readLiteral("null", null);
+            default -> {
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    yield readNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+            }
+        };
+    }
+
+    private Map<String, Object> readObject() throws HttpStatusException {
+        enter();
+        position++;
+        Map<String, Object> object = new LinkedHashMap<>();
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            depth--;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                depth--;
+                return object;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() throws HttpStatusException {
+        enter();
+        position++;
+        List<Object> array = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            depth--;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            char c = next();
+            if (c == ']') {
+                depth--;
+                return array;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws HttpStatusException {
+        position++;
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escaped = next();
+            switch (escaped) {
+                case '"', '\\', '/' -> value.append(escaped);
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    if (position + 4 > text.length()) {
+                        throw error("Truncated unicode escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(text, position, position + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += 4;
+                }
+                default -> throw error("Invalid escape '\\" + escaped + "'");
+            }
+        }
+    }
+
+    private Object readNumber() throws HttpStatusException {
+        int start = position;
+        boolean integer = true;
+        if (peek() == '-') {
+            position++;
+        }
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c >= '0' && c <= '9') {
+                position++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integer = false;
+                position++;
+            } else {
+                break;
+            }
+        }
+        String number = text.substring(start, position);
+        try {
+            return integer ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) throws HttpStatusException {
+        if (!text.startsWith(literal, position)) {
+            throw error("Invalid literal");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private void enter() throws HttpStatusException {
+        if (++depth > MAX_DEPTH) {
+            throw error("JSON nested deeper than " + MAX_DEPTH + " levels");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private char peek() throws HttpStatusException {
+        if (position == text.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        return text.charAt(position);
+    }
+
+    private char next() throws HttpStatusException {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char expected) throws HttpStatusException {
+        if (next() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private HttpStatusException error(String message) {
+        return new HttpStatusException(400, message + " at offset " + position);
+    }
+}
@@ -0,0 +1,281 @@
+package doa_bookstore.http;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A streaming JSON writer that encodes straight into a byte buffer, which is written to the underlying
+ * stream whenever it fills up. Strings are escaped and encoded to UTF-8 one character at a time and numbers
+ * are formatted digit by digit, so serializing a response creates no intermediate strings or byte arrays.
+ * <p>
+ * The writer inserts commas and colons itself; callers only open and close containers, name members and
+ * write values. It does not check that the calls form a valid document.
+ * Containers can be nested up to 64 levels deep.
+ */
+public class JsonWriter implements Flushable, Closeable {
+
+    private static final int DEFAULT_BUFFER_BYTES = 8 * 1024;
+    private static final int MAX_DEPTH = Long.SIZE;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    // Bit d is set once the container at depth d has a member, so the next one needs a comma
+    private long hasMember;
+    private int depth;
+
+    // Set between a member name and its value, which needs no comma
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_BYTES);
+    }
+
+    /**
+     * @param out         The stream to write to.
+     * @param bufferBytes The size of the buffer; at least 32 bytes.
+     */
+    public JsonWriter(OutputStream out, int bufferBytes) {
+        this.out = out;
+        this.buffer = new byte[Math.max(32, bufferBytes)];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name The member name.
+     * @return This writer.
+     * @throws IOException If the underlying stream fails.
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        ensure(1);
+        buffer[position++] = ':';
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value, or {@code null}.
+     *
+     * @param value The value.
+     * @return This writer.
+     * @throws IOException If the underlying stream fails.
+     */
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a number value, or {@code null}.
+     *
+     * @param value The value.
+     * @return This writer.
+     * @throws IOException If the underlying stream fails.
+     */
+    public JsonWriter value(Long value) throws IOException {
+        return value == null ? nullValue() : value(value.longValue());
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        writeRaw(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separate();
+        writeRaw(NULL);
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying stream and flushes it.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Writes the buffered bytes and closes the underlying stream. The buffered bytes are written with a
+     * single call, so a stream that has seen no write before knows the exact length of a small document.
+     */
+    @Override
+    public void close() throws IOException {
+        drain();
+        out.close();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH + " levels");
+        }
+        separate();
+        ensure(1);
+        buffer[position++] = (byte) bracket;
+        depth++;
+        hasMember &= ~(1L << (depth - 1));
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        depth--;
+        ensure(1);
+        buffer[position++] = (byte) bracket;
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth == 0) {
+            return;
+        }
+        long bit = 1L << (depth - 1);
+        if ((hasMember & bit) != 0) {
+            ensure(1);
+            buffer[position++] = ',';
+        } else {
+            hasMember |= bit;
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        ensure(1);
+        buffer[position++] = '"';
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            // Up to 6 bytes: a \\u escape, or the 4 UTF-8 bytes of a surrogate pair
+            ensure(6);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                } else if (c >= 0x20) {
+                    buffer[position++] = (byte) c;
+                } else if (c == '\n') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'n';
+                } else if (c == '\r') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'r';
+                } else if (c == '\t') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 't';
+                } else {
+                    writeUnicodeEscape(c);
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate has no UTF-8 encoding; JSON can still carry it escaped
+                writeUnicodeEscape(c);
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        ensure(1);
+        buffer[position++] = '"';
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xF];
+        buffer[position++] = HEX[(c >> 8) & 0xF];
+        buffer[position++] = HEX[(c >> 4) & 0xF];
+        buffer[position++] = HEX[c & 0xF];
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+        // At most 19 digits and a sign
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writeRaw(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
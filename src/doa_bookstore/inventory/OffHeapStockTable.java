@@ -0,0 +1,171 @@
+package doa_bookstore.inventory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Stock levels of books kept outside the Java heap: one {@code int} counter per book ID, in direct buffers
+ * allocated by chunks of consecutive IDs. Counters are read and updated through a {@link VarHandle} view of
+ * the buffers, with volatile reads and writes and compare-and-set, so no lock is needed to read them and
+ * an update never allocates.
+ * <p>
+ * Only IDs from 0 to {@code 2^31 - 1} can be tracked, see {@link #covers(long)}. A counter holds any level
+ * but {@link #ABSENT}, which marks an ID that is not tracked.
+ */
+public class OffHeapStockTable {
+
+    /**
+     * Level returned for an ID that is not tracked.
+     */
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    // A chunk holds the counters of 2^CHUNK_BITS consecutive IDs: 256 KiB of direct memory
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    private static final long ID_LIMIT = 1L << 31;
+
+    private static final VarHandle COUNTER = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    // Grown by copy and republished under the table lock; chunks never move once allocated
+    private volatile ByteBuffer[] chunks = new ByteBuffer[16];
+
+    /**
+     * Tells whether the table can track the stock of an ID.
+     *
+     * @param bookId The ID of a book.
+     * @return {@code true} if the ID is in the range the table covers.
+     */
+    public boolean covers(long bookId) {
+        return bookId >= 0 && bookId < ID_LIMIT;
+    }
+
+    /**
+     * Returns the stock level of a book.
+     *
+     * @param bookId The ID of the book.
+     * @return Its level, or {@link #ABSENT} if the book is not tracked.
+     */
+    public int get(long bookId) {
+        ByteBuffer chunk = covers(bookId) ? chunkAt(bookId) : null;
+        return chunk == null ? ABSENT : decode((int) COUNTER.getVolatile(chunk, offset(bookId)));
+    }
+
+    /**
+     * Starts tracking a book, or overwrites its level.
+     *
+     * @param bookId The ID of the book, which the table must cover.
+     * @param units  The stock level, anything but {@link #ABSENT}.
+     */
+    public void set(long bookId, int units) {
+        if (!covers(bookId)) {
+            throw new IllegalArgumentException("Book ID out of range: " + bookId);
+        }
+        if (units == ABSENT) {
+            throw new IllegalArgumentException("Stock level out of range: " + units);
+        }
+        COUNTER.setVolatile(chunkFor(bookId), offset(bookId), encode(units));
+    }
+
+    /**
+     * Stops tracking a book.
+     *
+     * @param bookId The ID of the book.
+     */
+    public void remove(long bookId) {
+        ByteBuffer chunk = covers(bookId) ? chunkAt(bookId) : null;
+        if (chunk != null) {
+            COUNTER.setVolatile(chunk, offset(bookId), encode(ABSENT));
+        }
+    }
+
+    /**
+     * Atomically adds units to the stock of a tracked book.
+     *
+     * @param bookId The ID of the book.
+     * @param units  The number of units to add, negative to take units out.
+     * @return The new stock level.
+     * @throws IllegalStateException If the book is not tracked.
+     */
+    public int addAndGet(long bookId, int units) {
+        ByteBuffer chunk = covers(bookId) ? chunkAt(bookId) : null;
+        int offset = offset(bookId);
+        while (chunk != null) {
+            int current = (int) COUNTER.getVolatile(chunk, offset);
+            int level = decode(current);
+            if (level == ABSENT) {
+                break;
+            }
+            int updated = Math.addExact(level, units);
+            if (updated == ABSENT) {
+                throw new ArithmeticException("Stock level out of range");
+            }
+            if (COUNTER.compareAndSet(chunk, offset, current, encode(updated))) {
+                return updated;
+            }
+        }
+        throw new IllegalStateException("The stock of book " + bookId + " is not tracked.");
+    }
+
+    /**
+     * Stops tracking every book and lets the direct memory go. Levels set concurrently may be lost.
+     */
+    public synchronized void clear() {
+        chunks = new ByteBuffer[16];
+    }
+
+    /**
+     * Returns the amount of direct memory held by the counters.
+     *
+     * @return The size of the allocated chunks, in bytes.
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (ByteBuffer chunk : chunks) {
+            if (chunk != null) {
+                bytes += chunk.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    // Direct buffers start zeroed, so levels are stored shifted by ABSENT to make zero mean "not tracked".
+    // The shift is an addition modulo 2^32, so it commutes with adding units.
+    private static int encode(int units) {
+        return units - ABSENT;
+    }
+
+    private static int decode(int stored) {
+        return stored + ABSENT;
+    }
+
+    private static int offset(long bookId) {
+        return ((int) bookId & (CHUNK_SLOTS - 1)) * Integer.BYTES;
+    }
+
+    private ByteBuffer chunkAt(long bookId) {
+        ByteBuffer[] chunks = this.chunks;
+        int index = (int) (bookId >>> CHUNK_BITS);
+        return index < chunks.length ? chunks[index] : null;
+    }
+
+    private ByteBuffer chunkFor(long bookId) {
+        ByteBuffer chunk = chunkAt(bookId);
+        return chunk != null ? chunk : allocate((int) (bookId >>> CHUNK_BITS));
+    }
+
+    private synchronized ByteBuffer allocate(int index) {
+        ByteBuffer[] chunks = this.chunks;
+        if (index >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(index + 1, chunks.length * 2));
+        }
+        if (chunks[index] == null) {
+            chunks[index] = ByteBuffer.allocateDirect(CHUNK_SLOTS * Integer.BYTES).order(ByteOrder.nativeOrder());
+        }
+        // Republishing makes the new chunk visible to readers of the directory
+        this.chunks = chunks;
+        return chunks[index];
+    }
+}
@@ -0,0 +1,274 @@
+package doa_bookstore.inventory;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Atomically checks and decrements the stock of every book in an order.
+ * <p>
+ * Instead of a global lock, each book ID is hashed to one of a fixed set of lock stripes.
+ * A reservation locks the stripes of all its books in ascending stripe order, which rules out
+ * deadlocks between orders that share books, validates every line and only then decrements.
+ * Orders over disjoint books therefore proceed in parallel, and an order either reserves all of its
+ * lines or none of them.
+ * <p>
+ * The stock of stored books is counted in an {@link OffHeapStockTable}, which is the level reservations check
+ * and update. A book's level is counted from its stock field when it is saved or loaded; after that, only
+ * reservations, releases and {@linkplain #restock restocks} change it. Each of them copies the new level back
+ * into the {@link Book} it was given, so the stock field of a stored book is a published copy of its counter.
+ * An update does not change the counted level either: the book repository copies it into the replacement
+ * with {@link #copyLevelTo(Book)}, so a book edited from an older copy keeps the units reserved since.
+ * Books that were never stored, or whose ID the table does not cover, are reserved against their own field.
+ */
+public class StockReservationEngine implements RepositoryListener<Book> {
+
+    private static final int STRIPES = 256;
+
+    private static StockReservationEngine instance;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final OffHeapStockTable levels = new OffHeapStockTable();
+
+    private StockReservationEngine() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public static synchronized StockReservationEngine getInstance() {
+        if (instance == null) {
+            instance = new StockReservationEngine();
+        }
+        return instance;
+    }
+
+    /**
+     * Reserves the requested units of every book, all or nothing.
+     *
+     * @param lines The books to reserve, as stored in the repository, and the units wanted of each.
+     * @throws InsufficientUnitsException If any book has fewer units in stock than requested.
+     *                                    In that case no stock is changed.
+     */
+    public void reserve(Map<Book, Integer> lines) throws InsufficientUnitsException {
+        reserve(OrderLines.of(lines));
+    }
+
+    /**
+     * Reserves the requested units of every line, all or nothing.
+     *
+     * @param lines The lines to reserve, resolved to the books stored in the repository.
+     * @throws InsufficientUnitsException If any book has fewer units in stock than requested.
+     *                                    In that case no stock is changed.
+     * @throws IllegalArgumentException   If the lines are not resolved or a quantity is not positive.
+     */
+    public void reserve(OrderLines lines) throws InsufficientUnitsException {
+        requireResolved(lines);
+        int[] locked = lockStripes(lines);
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                if (available(lines.book(i)) < requireValidQuantity(lines.quantity(i))) {
+                    throw new InsufficientUnitsException();
+                }
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                adjust(lines.book(i), -lines.quantity(i));
+            }
+        } finally {
+            unlockStripes(locked);
+        }
+    }
+
+    /**
+     * Returns previously reserved units to stock, for example when the order could not be stored.
+     *
+     * @param lines The books and units that were reserved.
+     */
+    public void release(Map<Book, Integer> lines) {
+        release(OrderLines.of(lines));
+    }
+
+    /**
+     * Returns previously reserved units to stock, for example when the order could not be stored.
+     *
+     * @param lines The resolved lines that were reserved.
+     */
+    public void release(OrderLines lines) {
+        requireResolved(lines);
+        int[] locked = lockStripes(lines);
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                adjust(lines.book(i), requireValidQuantity(lines.quantity(i)));
+            }
+        } finally {
+            unlockStripes(locked);
+        }
+    }
+
+    /**
+     * Returns the units in stock of a book, without taking any lock.
+     *
+     * @param book The book.
+     * @return Its tracked level if it is stored, otherwise its own stock field.
+     */
+    public int available(Book book) {
+        int units = book.hasId() ? levels.get(book.getLongId()) : OffHeapStockTable.ABSENT;
+        return units == OffHeapStockTable.ABSENT ? book.getStockUnits() : units;
+    }
+
+    /**
+     * Returns the direct memory used by the stock counters.
+     *
+     * @return The size of the counters, in bytes.
+     */
+    public long offHeapBytes() {
+        return levels.offHeapBytes();
+    }
+
+    /**
+     * Adds units to the stock of a book, such as a delivery.
+     *
+     * @param book  The book, as stored in the repository.
+     * @param units The number of units added.
+     * @throws IllegalArgumentException If the number of units is not positive.
+     */
+    public void restock(Book book, int units) {
+        requireValidQuantity(units);
+        ReentrantLock stripe = stripes[stripeOf(book.getLongId())];
+        stripe.lock();
+        try {
+            adjust(book, units);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Sets the stock field of a book about to replace the stored one to the counted level, so that the
+     * replacement does not bring back the level its copy was taken at. Books that are not counted keep their own.
+     *
+     * @param replacement The book about to be stored.
+     */
+    public void copyLevelTo(Book replacement) {
+        long id = replacement.getLongId();
+        ReentrantLock stripe = stripes[stripeOf(id)];
+        stripe.lock();
+        try {
+            int units = levels.get(id);
+            if (units != OffHeapStockTable.ABSENT) {
+                replacement.setStockUnits(units);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Counts the stock of a stored book from its stock field, replacing any level counted before.
+     *
+     * @param book The stored book.
+     */
+    public void track(Book book) {
+        long id = book.getLongId();
+        if (!levels.covers(id)) {
+            return;
+        }
+        ReentrantLock stripe = stripes[stripeOf(id)];
+        stripe.lock();
+        try {
+            levels.set(id, book.getStockUnits());
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public void onSaved(Book book) {
+        track(book);
+    }
+
+    @Override
+    public void onDeleted(Book book) {
+        ReentrantLock stripe = stripes[stripeOf(book.getLongId())];
+        stripe.lock();
+        try {
+            levels.remove(book.getLongId());
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public void onCleared() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            levels.clear();
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    // Called with the book's stripe held
+    private void adjust(Book book, int units) {
+        long id = book.getLongId();
+        if (levels.get(id) == OffHeapStockTable.ABSENT) {
+            book.setStockUnits(book.getStockUnits() + units);
+        } else {
+            book.setStockUnits(levels.addAndGet(id, units));
+        }
+    }
+
+    private int[] lockStripes(OrderLines lines) {
+        int[] indexes = new int[lines.size()];
+        int count = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            indexes[count++] = stripeOf(lines.bookId(i));
+        }
+        // Sorted, de-duplicated acquisition order keeps concurrent reservations deadlock free
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        int[] locked = Arrays.copyOf(indexes, distinct);
+        for (int index : locked) {
+            stripes[index].lock();
+        }
+        return locked;
+    }
+
+    private void unlockStripes(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].unlock();
+        }
+    }
+
+    private static int stripeOf(long bookId) {
+        long h = bookId * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (STRIPES - 1);
+    }
+
+    private static void requireResolved(OrderLines lines) {
+        if (!lines.isResolved()) {
+            throw new IllegalArgumentException("Order lines must be resolved to their books to be reserved.");
+        }
+    }
+
+    private static int requireValidQuantity(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Ordered quantity must be positive: " + quantity);
+        }
+        return quantity;
+    }
+}
@@ -0,0 +1,41 @@
+package doa_bookstore.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count of events, backed by a {@link LongAdder} so that
+ * concurrent increments do not contend.
+ */
+public class Counter {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        if (MetricsRegistry.ENABLED) {
+            count.increment();
+        }
+    }
+
+    public void add(long events) {
+        if (MetricsRegistry.ENABLED) {
+            count.add(events);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
@@ -0,0 +1,121 @@
+package doa_bookstore.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, log-linear histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ * Values below {@code 2^SUB_BUCKET_BITS} are counted exactly. Above that, every power of two is split
+ * into {@code 2^SUB_BUCKET_BITS} equal buckets, so any recorded value is known to within about 3%.
+ * The whole range of {@code long} fits in under two thousand buckets, allocated once.
+ * <p>
+ * Recording is one atomic increment and never allocates. Threads record into one of several stripes,
+ * chosen by thread ID, so threads timing the same operation rarely write the same cache line.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKETS - 1;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        int stripe = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+        stripes[stripe].getAndIncrement(bucketOf(Math.max(0, nanos)));
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int group = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+        return (group << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    // The smallest value counted in the given bucket
+    static long lowestValueOf(int bucket) {
+        int group = bucket >>> SUB_BUCKET_BITS;
+        if (group == 0) {
+            return bucket;
+        }
+        return ((long) (bucket & SUB_BUCKET_MASK) + SUB_BUCKETS) << (group - 1);
+    }
+
+    // The largest value counted in the given bucket
+    static long highestValueOf(int bucket) {
+        return bucket + 1 == BUCKETS ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+    }
+
+    /**
+     * Takes a consistent-enough copy of the counts and computes the usual percentiles from it.
+     * Recording may continue meanwhile; values recorded during the copy may or may not be included.
+     *
+     * @return The snapshot.
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long count = stripe.get(bucket);
+                counts[bucket] += count;
+                total += count;
+            }
+        }
+        double sum = 0;
+        long max = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (counts[bucket] != 0) {
+                // Mid-point of the bucket, as HdrHistogram does
+                long low = lowestValueOf(bucket);
+                sum += counts[bucket] * (low + (highestValueOf(bucket) - low) / 2.0);
+                max = highestValueOf(bucket);
+            }
+        }
+        return new LatencySnapshot(total, total == 0 ? 0 : sum / total,
+                percentile(counts, total, 0.50), percentile(counts, total, 0.90),
+                percentile(counts, total, 0.99), percentile(counts, total, 0.999), max);
+    }
+
+    private static long percentile(long[] counts, long total, double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return highestValueOf(bucket);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /**
+     * Clears every count.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                stripe.set(bucket, 0);
+            }
+        }
+    }
+}
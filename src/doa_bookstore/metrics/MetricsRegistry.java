@@ -0,0 +1,186 @@
+package doa_bookstore.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The timers and counters of the application, by name. Names are dotted paths such as
+ * {@code controller.makeOrder} or {@code repository.BookRepository.findById}.
+ * <p>
+ * Instrumented classes look their metrics up once, when they are created, and keep them in fields,
+ * so recording never goes through the registry. Metrics are on by default and can be switched off
+ * with {@code -Ddoa.metrics=false}, which turns every timer and counter into a no-op the JIT removes.
+ * <p>
+ * Repository lookups by ID are the exception: they take about a hundred nanoseconds, and counting them
+ * alone costs a large part of that, so they are only timed with {@code -Ddoa.metrics.lookups=true}.
+ */
+public class MetricsRegistry {
+
+    /**
+     * System property that switches metrics on or off; read once, at startup.
+     */
+    public static final String ENABLED_PROPERTY = "doa.metrics";
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+
+    /**
+     * System property that also times repository lookups by ID, off by default; read once, at startup.
+     */
+    public static final String LOOKUPS_PROPERTY = "doa.metrics.lookups";
+
+    private static final boolean LOOKUPS_ENABLED =
+            ENABLED && Boolean.parseBoolean(System.getProperty(LOOKUPS_PROPERTY, "false"));
+
+    private static MetricsRegistry instance;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * @return {@code true} unless metrics were switched off with {@value #ENABLED_PROPERTY}.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Tells whether lookups by ID are timed. The result is a constant, so a branch on it costs nothing
+     * once compiled.
+     *
+     * @return {@code true} if metrics are on and {@value #LOOKUPS_PROPERTY} is set to {@code true}.
+     */
+    public static boolean isLookupTimingEnabled() {
+        return LOOKUPS_ENABLED;
+    }
+
+    /**
+     * Returns the timer with the given name, creating it if needed. Every call is timed.
+     *
+     * @param name The name of the timer.
+     * @return The timer.
+     */
+    public Timer timer(String name) {
+        return timer(name, 0);
+    }
+
+    /**
+     * Returns the timer with the given name, creating it if needed.
+     *
+     * @param name       The name of the timer.
+     * @param sampleBits One call in {@code 2^sampleBits} is timed; all are counted. Ignored if the timer exists.
+     * @return The timer.
+     */
+    public Timer timer(String name, int sampleBits) {
+        return timers.computeIfAbsent(name, key -> new Timer(key, sampleBits));
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if needed.
+     *
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * Clears every timer and counter, e.g. after a warm-up.
+     */
+    public void reset() {
+        timers.values().forEach(Timer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+
+    /**
+     * Formats every metric that recorded something, one per line, sorted by name.
+     * Latencies are in microseconds.
+     *
+     * @return The metrics as text.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            long calls = timer.getCalls();
+            if (calls == 0) {
+                continue;
+            }
+            LatencySnapshot latencies = timer.getLatencies();
+            text.append(String.format(Locale.ROOT,
+                    "%-50s calls=%d timed=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                    timer.getName(), calls, latencies.getCount(), latencies.getMean() / 1_000,
+                    micros(latencies.getP50()), micros(latencies.getP90()), micros(latencies.getP99()),
+                    micros(latencies.getP999()), micros(latencies.getMax())));
+        }
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            if (counter.getCount() != 0) {
+                text.append(String.format(Locale.ROOT, "%-50s count=%d%n", counter.getName(), counter.getCount()));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Formats every metric as one JSON object, with the timers and counters sorted by name.
+     * Latencies are in nanoseconds.
+     *
+     * @return The metrics as JSON.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"timers\":{");
+        String separator = "";
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            LatencySnapshot latencies = timer.getLatencies();
+            json.append(separator);
+            appendName(json, timer.getName());
+            json.append("{\"calls\":").append(timer.getCalls())
+                    .append(",\"timed\":").append(latencies.getCount())
+                    .append(",\"meanNanos\":").append(Math.round(latencies.getMean()))
+                    .append(",\"p50Nanos\":").append(latencies.getP50())
+                    .append(",\"p90Nanos\":").append(latencies.getP90())
+                    .append(",\"p99Nanos\":").append(latencies.getP99())
+                    .append(",\"p999Nanos\":").append(latencies.getP999())
+                    .append(",\"maxNanos\":").append(latencies.getMax())
+                    .append('}');
+            separator = ",";
+        }
+        json.append("},\"counters\":{");
+        separator = "";
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            json.append(separator);
+            appendName(json, counter.getName());
+            json.append(counter.getCount());
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    // Metric names are dotted identifiers, but quotes and backslashes are escaped anyway
+    private static void appendName(StringBuilder json, String name) {
+        json.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c);
+        }
+        json.append("\":");
+    }
+}
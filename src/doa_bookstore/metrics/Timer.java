@@ -0,0 +1,86 @@
+package doa_bookstore.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls of one operation and records their latency in a {@link LatencyHistogram}.
+ * Timing is done without allocating anything, by passing the start time around:
+ * <pre>
+ * long start = TIMER.start();
+ * try {
+ *     ...
+ * } finally {
+ *     TIMER.stop(start);
+ * }
+ * </pre>
+ * Operations that take only tens of nanoseconds, such as repository lookups, can be sampled:
+ * every call is counted, but only one in {@code 2^sampleBits} is timed, which keeps the two
+ * {@link System#nanoTime()} calls from dominating the cost of the operation itself.
+ */
+public class Timer {
+
+    // Returned by start() for calls that are counted but not timed
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private final String name;
+    private final int sampleMask;
+    private final LongAdder calls = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    Timer(String name, int sampleBits) {
+        this.name = name;
+        this.sampleMask = (1 << sampleBits) - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Starts timing a call.
+     *
+     * @return The value to pass to {@link #stop(long)} when the call ends.
+     */
+    public long start() {
+        if (!MetricsRegistry.ENABLED
+                || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)) {
+            return NOT_TIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends a call started with {@link #start()}, whether it succeeded or failed.
+     *
+     * @param start The value returned by {@link #start()}.
+     */
+    public void stop(long start) {
+        if (!MetricsRegistry.ENABLED) {
+            return;
+        }
+        calls.increment();
+        if (start != NOT_TIMED) {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The number of calls, timed or not.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return The latency statistics of the timed calls.
+     */
+    public LatencySnapshot getLatencies() {
+        return latencies.snapshot();
+    }
+
+    void reset() {
+        calls.reset();
+        latencies.reset();
+    }
+}
@@ -0,0 +1,28 @@
+package doa_bookstore.persistence;
+
+import doa_bookstore.entity.Author;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary codec for {@link Author}. The list of books is not stored: it is rebuilt from the
+ * author reference of each book once books have been loaded.
+ */
+public class AuthorCodec implements EntityCodec<Author> {
+
+    @Override
+    public void write(Author author, DataOutput out) throws IOException {
+        out.writeLong(author.getLongId());
+        EntityCodec.writeNullableString(out, author.getName());
+    }
+
+    @Override
+    public Author read(DataInput in) throws IOException {
+        long id = in.readLong();
+        Author author = new Author(EntityCodec.readNullableString(in));
+        author.setId(id);
+        return author;
+    }
+}
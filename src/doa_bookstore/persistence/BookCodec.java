@@ -0,0 +1,52 @@
+package doa_bookstore.persistence;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.LongFunction;
+
+/**
+ * Binary codec for {@link Book}. The author is stored by ID and resolved through the given
+ * function when reading, so authors must be loaded before books.
+ */
+public class BookCodec implements EntityCodec<Book> {
+
+    private static final Book.Genre[] GENRES = Book.Genre.values();
+
+    private final LongFunction<Author> authorResolver;
+
+    /**
+     * Creates a codec resolving authors with the given function.
+     *
+     * @param authorResolver Returns the author with the given ID, or {@code null} if it is unknown.
+     */
+    public BookCodec(LongFunction<Author> authorResolver) {
+        this.authorResolver = authorResolver;
+    }
+
+    @Override
+    public void write(Book book, DataOutput out) throws IOException {
+        out.writeLong(book.getLongId());
+        EntityCodec.writeNullableString(out, book.getTitle());
+        Author author = book.getAuthor();
+        out.writeLong(author == null || !author.hasId() ? 0 : author.getLongId());
+        out.writeByte(book.getGenre() == null ? -1 : book.getGenre().ordinal());
+        out.writeInt(book.getStockUnits());
+    }
+
+    @Override
+    public Book read(DataInput in) throws IOException {
+        long id = in.readLong();
+        String title = EntityCodec.readNullableString(in);
+        long authorId = in.readLong();
+        byte genre = in.readByte();
+        int stockUnits = in.readInt();
+        Book book = new Book(title, authorId == 0 ? null : authorResolver.apply(authorId),
+                genre < 0 ? null : GENRES[genre], stockUnits);
+        book.setId(id);
+        return book;
+    }
+}
@@ -0,0 +1,49 @@
+package doa_bookstore.persistence;
+
+/**
+ * Settings of the durable mode of a repository.
+ */
+public class DurabilityOptions {
+
+    private final FsyncPolicy fsyncPolicy;
+    private final long flushIntervalMillis;
+    private final long snapshotThreshold;
+
+    /**
+     * Creates a new set of durability options.
+     *
+     * @param fsyncPolicy         When log records are forced to disk.
+     * @param flushIntervalMillis How often pending records are flushed with {@link FsyncPolicy#INTERVAL}.
+     * @param snapshotThreshold   Number of logged writes after which a snapshot is taken and older log
+     *                            segments are deleted, or 0 to only take snapshots on request.
+     */
+    public DurabilityOptions(FsyncPolicy fsyncPolicy, long flushIntervalMillis, long snapshotThreshold) {
+        if (flushIntervalMillis <= 0 || snapshotThreshold < 0) {
+            throw new IllegalArgumentException("Invalid durability options");
+        }
+        this.fsyncPolicy = fsyncPolicy;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    /**
+     * Returns the default options: group commit, and a snapshot every 100,000 writes.
+     *
+     * @return The default options.
+     */
+    public static DurabilityOptions defaults() {
+        return new DurabilityOptions(FsyncPolicy.GROUP_COMMIT, 10, 100_000);
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public long getSnapshotThreshold() {
+        return snapshotThreshold;
+    }
+}
@@ -0,0 +1,49 @@
+package doa_bookstore.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts an entity to and from the binary form stored in write-ahead logs and snapshots.
+ * References to other entities are written as IDs and resolved again when reading.
+ *
+ * @param <E> The type of entity handled by the codec.
+ */
+public interface EntityCodec<E> {
+
+    /**
+     * Writes the state of an entity, including its ID.
+     *
+     * @param entity The entity to write.
+     * @param out    The output to write to.
+     * @throws IOException If the output cannot be written.
+     */
+    void write(E entity, DataOutput out) throws IOException;
+
+    /**
+     * Reads an entity previously written by {@link #write(Object, DataOutput)}.
+     *
+     * @param in The input to read from.
+     * @return A new entity instance with the stored state.
+     * @throws IOException If the input cannot be read or is malformed.
+     */
+    E read(DataInput in) throws IOException;
+
+    /**
+     * Writes a string that may be {@code null}.
+     */
+    static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeNullableString(DataOutput, String)}.
+     */
+    static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,25 @@
+package doa_bookstore.persistence;
+
+/**
+ * When the records of a {@link WriteAheadLog} are forced to disk.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Every record is written and forced on its own before the write returns. Safest and slowest.
+     */
+    EVERY_WRITE,
+
+    /**
+     * Writers wait until their record is on disk, but one {@code fsync} covers every record appended
+     * while the previous one was in progress. Just as safe as {@link #EVERY_WRITE}, with far fewer
+     * {@code fsync} calls under concurrent load.
+     */
+    GROUP_COMMIT,
+
+    /**
+     * Writers never wait. A background thread writes and forces pending records at a fixed interval,
+     * so a crash may lose the writes of the last interval.
+     */
+    INTERVAL
+}
@@ -0,0 +1,179 @@
+package doa_bookstore.persistence;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SnapshotFile} mapped read-only into memory. Opening one only reads the header, so it costs
+ * the same for ten entities as for ten million; entities are decoded one at a time when first requested.
+ * <p>
+ * Entries are addressed by their position in the ID-sorted index. Each entry can be {@linkplain #claim(int)
+ * claimed} once, by whoever moves it into the repository; a claimed entry is no longer served from the
+ * snapshot, even if the repository later deletes it.
+ *
+ * @param <E> The type of entity stored in the snapshot.
+ */
+public final class MappedSnapshot<E> {
+
+    private final EntityCodec<E> codec;
+    private final MappedByteBuffer[] chunks;
+    private final long firstSegment;
+    private final int size;
+    private final long indexOffset;
+    private final AtomicLongArray claimed;
+
+    MappedSnapshot(Path path, EntityCodec<E> codec) throws IOException {
+        this.codec = codec;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < SnapshotFile.HEADER_BYTES) {
+                throw new IOException("Truncated snapshot " + path);
+            }
+            int chunkCount = (int) ((length + SnapshotFile.CHUNK_BYTES - 1) / SnapshotFile.CHUNK_BYTES);
+            chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long start = i * SnapshotFile.CHUNK_BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SnapshotFile.CHUNK_BYTES, length - start));
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer header = chunks[0].duplicate();
+            if (header.getInt() != SnapshotFile.MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = header.getInt();
+            if (version != SnapshotFile.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            }
+            firstSegment = header.getLong();
+            long count = header.getLong();
+            indexOffset = header.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE
+                    || indexOffset + count * SnapshotFile.INDEX_SLOT_BYTES > length) {
+                throw new IOException("Corrupt snapshot header in " + path);
+            }
+            size = (int) count;
+            claimed = new AtomicLongArray((size + 63) >>> 6);
+        }
+    }
+
+    /**
+     * @return The first log segment not covered by the snapshot.
+     */
+    public long firstSegment() {
+        return firstSegment;
+    }
+
+    /**
+     * @return The number of entities in the snapshot.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The highest ID in the snapshot, or 0 if it is empty.
+     */
+    public long maxId() {
+        return size == 0 ? 0 : idAt(size - 1);
+    }
+
+    /**
+     * Returns the ID of the entry at the given position. Positions are in ascending ID order.
+     *
+     * @param position The position of the entry, from 0 to {@link #size()} - 1.
+     * @return The ID of that entry.
+     */
+    public long idAt(int position) {
+        long slot = indexOffset + (long) position * SnapshotFile.INDEX_SLOT_BYTES;
+        return chunk(slot).getLong(offsetInChunk(slot));
+    }
+
+    /**
+     * Finds the entry with the given ID by binary search over the index.
+     *
+     * @param id The ID to look for.
+     * @return The position of the entry, or -1 if the snapshot does not contain that ID.
+     */
+    public int indexOf(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = idAt(middle);
+            if (found < id) {
+                low = middle + 1;
+            } else if (found > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the entry at the given position. Every call returns a new instance.
+     *
+     * @param position The position of the entry.
+     * @return The decoded entity.
+     * @throws UncheckedIOException If the entry cannot be decoded.
+     */
+    public E read(int position) {
+        long slot = indexOffset + (long) position * SnapshotFile.INDEX_SLOT_BYTES;
+        long offset = chunk(slot).getLong(offsetInChunk(slot) + Long.BYTES);
+        ByteBuffer entry = chunk(offset).duplicate();
+        int start = offsetInChunk(offset);
+        int length = entry.getInt(start);
+        entry.limit(start + Integer.BYTES + length).position(start + Integer.BYTES);
+        try {
+            return codec.read(new DataInputStream(new ByteBufferInputStream(entry)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt snapshot entry at position " + position, e);
+        }
+    }
+
+    /**
+     * Tells whether the entry at the given position has already been claimed.
+     *
+     * @param position The position of the entry.
+     * @return {@code true} once {@link #claim(int)} succeeded for that position.
+     */
+    public boolean isClaimed(int position) {
+        return (claimed.get(position >>> 6) & (1L << position)) != 0;
+    }
+
+    /**
+     * Claims the entry at the given position. Exactly one caller succeeds per entry.
+     *
+     * @param position The position of the entry.
+     * @return {@code true} if this call claimed the entry, {@code false} if it was already claimed.
+     */
+    public boolean claim(int position) {
+        int word = position >>> 6;
+        long bit = 1L << position;
+        long current;
+        do {
+            current = claimed.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(word, current, current | bit));
+        return true;
+    }
+
+    private MappedByteBuffer chunk(long offset) {
+        return chunks[(int) (offset / SnapshotFile.CHUNK_BYTES)];
+    }
+
+    private static int offsetInChunk(long offset) {
+        return (int) (offset % SnapshotFile.CHUNK_BYTES);
+    }
+}
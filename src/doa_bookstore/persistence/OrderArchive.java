@@ -0,0 +1,318 @@
+package doa_bookstore.persistence;
+
+import doa_bookstore.entity.Orders;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold storage for orders that no longer change, partitioned by the UTC day they were placed. Each write
+ * compacts the orders of one day into a new immutable segment, so a day is held by one segment per archiving
+ * run that reached it. The headers of every segment are read when the archive is opened and kept in memory,
+ * so a query by date decompresses only the segments whose dates overlap the range.
+ * <pre>
+ * header  magic:int version:int epochDay:long count:int minDate:long maxDate:long minId:long maxId:long
+ *         compressedLength:int crc:int
+ * body    deflate(count x [length:int payload:byte[length]])
+ * </pre>
+ * Payloads are encoded by an {@link OrderCodec}, so the books of archived orders are resolved again when they
+ * are read. Segments are written to a temporary file, synced and atomically renamed, like a
+ * {@link SnapshotFile}: a crash while archiving leaves no partial segment behind.
+ */
+public final class OrderArchive {
+
+    static final int MAGIC = 0x444F414F; // "DOAO"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 60;
+
+    private static final String PREFIX = "orders-";
+    private static final String SUFFIX = ".seg";
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final Path directory;
+    private final OrderCodec codec;
+    // Sorted by day then sequence; replaced on every write so queries read it without locking
+    private volatile List<Segment> segments;
+
+    /**
+     * The header of a segment file.
+     */
+    private record Segment(Path path, long epochDay, int sequence, int count, long minDate, long maxDate,
+                           long minId, long maxId, int compressedLength, int crc) {
+
+        boolean overlaps(long fromMillis, long toMillis) {
+            return minDate < toMillis && maxDate >= fromMillis;
+        }
+    }
+
+    private OrderArchive(Path directory, OrderCodec codec, List<Segment> segments) {
+        this.directory = directory;
+        this.codec = codec;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens the archive stored in a directory, creating the directory if needed. Temporary files left by an
+     * interrupted write are deleted.
+     *
+     * @param directory The directory holding the segments.
+     * @param codec     The codec of the archived orders.
+     * @return The archive.
+     * @throws IOException If the directory cannot be read or a segment header is malformed.
+     */
+    public static OrderArchive open(Path directory, OrderCodec codec) throws IOException {
+        Files.createDirectories(directory);
+        List<Segment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX + ".tmp")) {
+                    Files.delete(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    segments.add(readHeader(file));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(Segment::epochDay).thenComparingInt(Segment::sequence));
+        return new OrderArchive(directory, codec, List.copyOf(segments));
+    }
+
+    /**
+     * Returns the UTC day an instant falls on.
+     *
+     * @param date The instant.
+     * @return The number of days since 1970-01-01.
+     */
+    public static long epochDay(Date date) {
+        return Math.floorDiv(date.getTime(), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Archives orders, writing one new segment for each day they were placed on. The orders must not change
+     * afterwards: they are copied as they are now.
+     *
+     * @param orders The orders to archive, each with an ID and a date.
+     * @throws IOException If a segment cannot be written. Segments written before the failure are kept.
+     * @throws IllegalArgumentException If an order has no ID or no date.
+     */
+    public synchronized void write(Iterable<Orders> orders) throws IOException {
+        Map<Long, List<Orders>> ordersByDay = new TreeMap<>();
+        for (Orders order : orders) {
+            if (!order.hasId() || order.getOrderDate() == null) {
+                throw new IllegalArgumentException("Only orders with an ID and a date can be archived: " + order);
+            }
+            ordersByDay.computeIfAbsent(epochDay(order.getOrderDate()), day -> new ArrayList<>()).add(order);
+        }
+        for (Map.Entry<Long, List<Orders>> day : ordersByDay.entrySet()) {
+            Segment segment = writeSegment(day.getKey(), nextSequence(day.getKey()), day.getValue());
+            List<Segment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            updated.sort(Comparator.comparingLong(Segment::epochDay).thenComparingInt(Segment::sequence));
+            segments = List.copyOf(updated);
+        }
+    }
+
+    /**
+     * Finds the archived orders placed in a range of dates. Only the segments overlapping the range are read.
+     *
+     * @param from The earliest date, included.
+     * @param to   The latest date, excluded.
+     * @return The matching orders, oldest day first.
+     * @throws IOException If a segment cannot be read or is corrupted.
+     */
+    public List<Orders> findByDateRange(Date from, Date to) throws IOException {
+        long fromMillis = from.getTime();
+        long toMillis = to.getTime();
+        List<Orders> result = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.overlaps(fromMillis, toMillis)) {
+                read(segment, order -> {
+                    long date = order.getOrderDate().getTime();
+                    if (date >= fromMillis && date < toMillis) {
+                        result.add(order);
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads every archived order, oldest day first.
+     *
+     * @param action Called with each order.
+     * @throws IOException If a segment cannot be read or is corrupted.
+     */
+    public void forEach(Consumer<Orders> action) throws IOException {
+        for (Segment segment : segments) {
+            read(segment, action);
+        }
+    }
+
+    /**
+     * @return The number of archived orders.
+     */
+    public long size() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.count();
+        }
+        return count;
+    }
+
+    /**
+     * @return The highest ID of an archived order, or 0 if the archive is empty.
+     */
+    public long maxId() {
+        long maxId = 0;
+        for (Segment segment : segments) {
+            maxId = Math.max(maxId, segment.maxId());
+        }
+        return maxId;
+    }
+
+    /**
+     * @return The number of segment files.
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return The size of the segment files, in bytes.
+     */
+    public long bytesOnDisk() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += HEADER_BYTES + (long) segment.compressedLength();
+        }
+        return bytes;
+    }
+
+    private int nextSequence(long epochDay) {
+        int sequence = 0;
+        for (Segment segment : segments) {
+            if (segment.epochDay() == epochDay) {
+                sequence = Math.max(sequence, segment.sequence() + 1);
+            }
+        }
+        return sequence;
+    }
+
+    private Segment writeSegment(long epochDay, int sequence, List<Orders> orders) throws IOException {
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(64 * orders.size());
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(compressed, deflater, 1 << 16))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream encoder = new DataOutputStream(bytes);
+            for (Orders order : orders) {
+                bytes.reset();
+                codec.write(order, encoder);
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+                long date = order.getOrderDate().getTime();
+                minDate = Math.min(minDate, date);
+                maxDate = Math.max(maxDate, date);
+                minId = Math.min(minId, order.getLongId());
+                maxId = Math.max(maxId, order.getLongId());
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] body = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        Path path = directory.resolve(PREFIX + LocalDate.ofEpochDay(epochDay).format(DateTimeFormatter.BASIC_ISO_DATE)
+                + "-" + String.format("%04d", sequence) + SUFFIX);
+        Segment segment = new Segment(path, epochDay, sequence, orders.size(), minDate, maxDate, minId, maxId,
+                body.length, (int) crc.getValue());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(epochDay).putInt(segment.count())
+                    .putLong(minDate).putLong(maxDate).putLong(minId).putLong(maxId)
+                    .putInt(body.length).putInt(segment.crc()).flip();
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(body)};
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    private void read(Segment segment, Consumer<Orders> action) throws IOException {
+        byte[] body;
+        try (FileChannel channel = FileChannel.open(segment.path(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(segment.compressedLength());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, HEADER_BYTES + (long) buffer.position()) < 0) {
+                    throw new IOException("Truncated archive segment: " + segment.path());
+                }
+            }
+            body = buffer.array();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != segment.crc()) {
+            throw new IOException("Corrupted archive segment: " + segment.path());
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteBufferInputStream(ByteBuffer.wrap(body)))))) {
+            for (int i = 0; i < segment.count(); i++) {
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                action.accept(codec.read(new DataInputStream(new ByteBufferInputStream(ByteBuffer.wrap(payload)))));
+            }
+        }
+    }
+
+    private static Segment readHeader(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Truncated archive segment: " + path);
+                }
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not an archive segment: " + path);
+        }
+        String name = path.getFileName().toString();
+        int sequence = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - SUFFIX.length()));
+        return new Segment(path, header.getLong(), sequence, header.getInt(), header.getLong(), header.getLong(),
+                header.getLong(), header.getLong(), header.getInt(), header.getInt());
+    }
+}
@@ -0,0 +1,70 @@
+package doa_bookstore.persistence;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+import java.util.function.LongFunction;
+
+/**
+ * Binary codec for {@link Orders}. Each order line is stored as a book ID and a quantity, and the books
+ * are resolved through the given function when reading, so books must be loaded before orders.
+ * Lines whose book was never saved, or can no longer be resolved, are dropped. Orders are read back with
+ * resolved {@link OrderLines}.
+ */
+public class OrderCodec implements EntityCodec<Orders> {
+
+    private static final Orders.OrderStatus[] STATUSES = Orders.OrderStatus.values();
+
+    private final LongFunction<Book> bookResolver;
+
+    /**
+     * Creates a codec resolving books with the given function.
+     *
+     * @param bookResolver Returns the book with the given ID, or {@code null} if it is unknown.
+     */
+    public OrderCodec(LongFunction<Book> bookResolver) {
+        this.bookResolver = bookResolver;
+    }
+
+    @Override
+    public void write(Orders order, DataOutput out) throws IOException {
+        out.writeLong(order.getLongId());
+        EntityCodec.writeNullableString(out, order.getCustomerName());
+        out.writeLong(order.getOrderDate() == null ? Long.MIN_VALUE : order.getOrderDate().getTime());
+        out.writeByte(order.getStatus() == null ? -1 : order.getStatus().ordinal());
+        OrderLines lines = order.getLines();
+        out.writeInt(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            out.writeLong(lines.bookId(i));
+            out.writeInt(lines.quantity(i));
+        }
+    }
+
+    @Override
+    public Orders read(DataInput in) throws IOException {
+        long id = in.readLong();
+        String customerName = EntityCodec.readNullableString(in);
+        long date = in.readLong();
+        byte status = in.readByte();
+        int lines = in.readInt();
+        OrderLines.Builder books = OrderLines.builder();
+        for (int i = 0; i < lines; i++) {
+            long bookId = in.readLong();
+            int quantity = in.readInt();
+            // Logs written before order lines existed store 0 for books without an ID
+            Book book = bookId == 0 ? null : bookResolver.apply(bookId);
+            if (book != null) {
+                books.add(book, quantity);
+            }
+        }
+        Orders order = new Orders(customerName, books.build(), date == Long.MIN_VALUE ? null : new Date(date),
+                status < 0 ? null : STATUSES[status]);
+        order.setId(id);
+        return order;
+    }
+}
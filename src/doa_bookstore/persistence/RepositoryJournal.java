@@ -0,0 +1,456 @@
+package doa_bookstore.persistence;
+
+import doa_bookstore.entity.interfaces.LongEntity;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The durable side of a repository: its {@link WriteAheadLog}, its {@link SnapshotFile} and the
+ * recovery that rebuilds the repository from both.
+ * <p>
+ * The repository applies a change to its table and logs it while holding the lock returned by
+ * {@link #lockFor(long)}. The log therefore records writes to the same entity in the order they were
+ * applied. It then waits for durability through {@link #sync(long)} after releasing that lock, so
+ * concurrent writers can share one {@code fsync}.
+ * <p>
+ * Batch writes lock every stripe they touch at once with {@link #lockAll(long[])} and are logged as a single
+ * {@link WriteAheadLog#BATCH} record, so a batch costs one lock acquisition, one append and one {@code fsync}.
+ * A batch too large for one record is split over consecutive records marked as its first, middle and last
+ * parts; recovery applies the parts only once it reads the last one, so a crash never leaves half a batch.
+ * <p>
+ * After {@link DurabilityOptions#getSnapshotThreshold()} logged writes, a background thread rotates
+ * the log, writes a snapshot and deletes the segments the snapshot covers. A snapshot that fails leaves
+ * the log as it was; failures are counted in the {@code persistence.<name>.snapshotFailures} counter and
+ * the last one is kept until a snapshot succeeds, see {@link #getLastSnapshotFailure()}.
+ *
+ * @param <E> The type of entity stored in the repository.
+ */
+public class RepositoryJournal<E extends LongEntity> implements Closeable {
+
+    /**
+     * Applies recovered state to the repository, without logging it again.
+     *
+     * @param <E> The type of entity stored in the repository.
+     */
+    public interface Replayer<E> {
+        /**
+         * Hands over the latest snapshot, before any log record is replayed. Its entities are not
+         * decoded yet; the repository decides when to load them.
+         */
+        void attach(MappedSnapshot<E> snapshot);
+
+        void restore(E entity);
+
+        void remove(long id);
+
+        void clear();
+    }
+
+    private static final int STRIPES = 64;
+
+    // Batches larger than this are split over several records, to stay well below the log's record size limit
+    private static final int BATCH_RECORD_BYTES = 16 * 1024 * 1024;
+
+    // The ID of a BATCH record: a whole batch, or which part of a split one
+    private static final long WHOLE_BATCH = 0;
+    private static final long FIRST_PART = 1;
+    private static final long MIDDLE_PART = 2;
+    private static final long LAST_PART = 3;
+
+    private final Path snapshotPath;
+    private final EntityCodec<E> codec;
+    private final WriteAheadLog log;
+    private final Iterable<E> entities;
+    private final long snapshotThreshold;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    // Keeps the parts of a split batch together, so that recovery can tell whose parts it reads
+    private final ReentrantLock splitLock = new ReentrantLock();
+    private final AtomicLong writesSinceSnapshot = new AtomicLong();
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+    private final ExecutorService snapshotter;
+    private final Counter snapshotFailures;
+    private volatile Exception lastSnapshotFailure;
+
+    private RepositoryJournal(Path snapshotPath, EntityCodec<E> codec, WriteAheadLog log, Iterable<E> entities,
+                              long snapshotThreshold, String name) {
+        this.snapshotPath = snapshotPath;
+        this.codec = codec;
+        this.log = log;
+        this.entities = entities;
+        this.snapshotThreshold = snapshotThreshold;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotFailures = MetricsRegistry.getInstance().counter("persistence." + name + ".snapshotFailures");
+    }
+
+    /**
+     * Recovers the repository from its latest snapshot and log, then opens the log for new writes.
+     * The snapshot is only mapped and {@linkplain Replayer#attach attached}; the log records written
+     * after it are then replayed on top of it.
+     *
+     * @param directory The directory holding the snapshot and log segments.
+     * @param name      The name of the repository, used as file name prefix.
+     * @param codec     The codec of the stored entities.
+     * @param options   The durability options.
+     * @param entities  Live view of the entities of the repository, used to write snapshots.
+     * @param replayer  Applies the recovered state to the repository.
+     * @param <E>       The type of entity stored in the repository.
+     * @return The journal, ready to log new writes.
+     * @throws IOException If the snapshot or log cannot be read, or the log cannot be opened.
+     */
+    public static <E extends LongEntity> RepositoryJournal<E> open(Path directory, String name, EntityCodec<E> codec,
+                                                                     DurabilityOptions options, Iterable<E> entities,
+                                                                     Replayer<E> replayer) throws IOException {
+        Files.createDirectories(directory);
+        Path snapshotPath = directory.resolve(name + ".snapshot");
+        MappedSnapshot<E> snapshot = SnapshotFile.map(snapshotPath, codec);
+        long firstSegment = 0;
+        if (snapshot != null) {
+            replayer.attach(snapshot);
+            firstSegment = snapshot.firstSegment();
+        }
+        SplitBatch<E> split = new SplitBatch<>(codec, replayer);
+        WriteAheadLog.replay(directory, name, firstSegment, (op, id, payload) -> {
+            switch (op) {
+                case WriteAheadLog.SAVE, WriteAheadLog.UPDATE -> replayer.restore(decode(codec, payload));
+                case WriteAheadLog.DELETE -> replayer.remove(id);
+                case WriteAheadLog.CLEAR -> replayer.clear();
+                case WriteAheadLog.BATCH -> split.onPart(id, payload);
+                default -> throw new IOException("Unknown log record type " + op);
+            }
+        });
+        WriteAheadLog log = WriteAheadLog.open(directory, name, firstSegment, options);
+        return new RepositoryJournal<>(snapshotPath, codec, log, entities, options.getSnapshotThreshold(), name);
+    }
+
+    /**
+     * Returns the lock under which changes to the entity with the given ID must be applied and logged.
+     *
+     * @param id The ID of the entity.
+     * @return The lock guarding that ID.
+     */
+    public ReentrantLock lockFor(long id) {
+        return stripes[stripeOf(id)];
+    }
+
+    /**
+     * Locks the stripes of all the given IDs, always in the same order so that concurrent batches cannot
+     * deadlock. Each stripe is locked once, however many of the IDs it guards.
+     *
+     * @param ids The IDs about to be written.
+     * @return The locks taken, to be released with {@link #unlockAll(ReentrantLock[])}.
+     */
+    public ReentrantLock[] lockAll(long[] ids) {
+        boolean[] needed = new boolean[STRIPES];
+        int count = 0;
+        for (long id : ids) {
+            int stripe = stripeOf(id);
+            if (!needed[stripe]) {
+                needed[stripe] = true;
+                count++;
+            }
+        }
+        ReentrantLock[] locks = new ReentrantLock[count];
+        int taken = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if (needed[stripe]) {
+                stripes[stripe].lock();
+                locks[taken++] = stripes[stripe];
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * Locks every stripe, in the same order as {@link #lockAll(long[])}, for a write that concerns every ID
+     * such as clearing the repository.
+     *
+     * @return The locks taken, to be released with {@link #unlockAll(ReentrantLock[])}.
+     */
+    public ReentrantLock[] lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        return stripes.clone();
+    }
+
+    /**
+     * Releases locks taken by {@link #lockAll(long[])} or {@link #lockAll()}.
+     *
+     * @param locks The locks to release.
+     */
+    public static void unlockAll(ReentrantLock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    private static int stripeOf(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (STRIPES - 1);
+    }
+
+    public long logSave(E entity) {
+        return append(WriteAheadLog.SAVE, entity.getLongId(), encode(entity));
+    }
+
+    public long logUpdate(E entity) {
+        return append(WriteAheadLog.UPDATE, entity.getLongId(), encode(entity));
+    }
+
+    public long logDelete(long id) {
+        return append(WriteAheadLog.DELETE, id, new byte[0]);
+    }
+
+    public long logClear() {
+        return append(WriteAheadLog.CLEAR, 0, new byte[0]);
+    }
+
+    public long logSaveAll(List<E> entities) {
+        return appendBatch(WriteAheadLog.SAVE, entities, null);
+    }
+
+    public long logUpdateAll(List<E> entities) {
+        return appendBatch(WriteAheadLog.UPDATE, entities, null);
+    }
+
+    public long logDeleteAll(long[] ids) {
+        return appendBatch(WriteAheadLog.DELETE, null, ids);
+    }
+
+    /**
+     * Waits until the record with the given sequence number is durable, as defined by the fsync policy.
+     *
+     * @param lsn The sequence number returned when the change was logged.
+     */
+    public void sync(long lsn) {
+        try {
+            log.sync(lsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the repository and deletes the log segments it makes redundant.
+     * Writes may continue while the snapshot is taken: they go to a new log segment,
+     * which recovery replays on top of the snapshot.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long firstSegment = log.rotate();
+            writesSinceSnapshot.set(0);
+            SnapshotFile.write(snapshotPath, codec, entities, firstSegment);
+            log.deleteSegmentsBefore(firstSegment);
+            lastSnapshotFailure = null;
+        } catch (IOException | RuntimeException e) {
+            snapshotFailures.increment();
+            lastSnapshotFailure = e;
+            throw e;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Returns why the last snapshot failed, whether it was taken in the background or by {@link #snapshot()}.
+     * While snapshots fail, the log keeps every write and grows.
+     *
+     * @return The exception thrown by the last snapshot, or {@code null} if it succeeded or none was taken.
+     */
+    public Exception getLastSnapshotFailure() {
+        return lastSnapshotFailure;
+    }
+
+    /**
+     * Stops background snapshots and closes the log, forcing any pending record to disk.
+     *
+     * @throws IOException If pending records cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    private long append(byte op, long id, byte[] payload) {
+        return append(op, id, payload, 1);
+    }
+
+    // Appends a record holding the given number of writes, which all count towards the snapshot threshold
+    private long append(byte op, long id, byte[] payload, int writes) {
+        long lsn;
+        try {
+            lsn = log.append(op, id, payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (snapshotThreshold > 0 && writesSinceSnapshot.addAndGet(writes) >= snapshotThreshold
+                && snapshotScheduled.compareAndSet(false, true)) {
+            snapshotter.execute(this::backgroundSnapshot);
+        }
+        return lsn;
+    }
+
+    /*
+     * Logs a batch as [count:int] followed by count x [op:byte][id:long][length:int][payload], in records of
+     * at most BATCH_RECORD_BYTES. Either entities or ids is given; deletes carry no payload. The parts of a
+     * split batch are written under splitLock, so that those of another split batch never come in between.
+     */
+    private long appendBatch(byte op, List<E> entities, long[] ids) {
+        int size = entities != null ? entities.size() : ids.length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(size * 64L, BATCH_RECORD_BYTES) + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream entity = new ByteArrayOutputStream(64);
+        DataOutputStream entityOut = new DataOutputStream(entity);
+        boolean split = false;
+        int count = 0;
+        try {
+            for (int i = 0; i < size; i++) {
+                entity.reset();
+                long id;
+                if (entities != null) {
+                    E next = entities.get(i);
+                    id = next.getLongId();
+                    codec.write(next, entityOut);
+                } else {
+                    id = ids[i];
+                }
+                out.writeByte(op);
+                out.writeLong(id);
+                out.writeInt(entity.size());
+                entity.writeTo(out);
+                count++;
+                if (bytes.size() >= BATCH_RECORD_BYTES && i < size - 1) {
+                    if (!split) {
+                        splitLock.lock();
+                    }
+                    append(WriteAheadLog.BATCH, split ? MIDDLE_PART : FIRST_PART, batchPayload(count, bytes), count);
+                    split = true;
+                    bytes.reset();
+                    count = 0;
+                }
+            }
+            return append(WriteAheadLog.BATCH, split ? LAST_PART : WHOLE_BATCH, batchPayload(count, bytes), count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (split) {
+                splitLock.unlock();
+            }
+        }
+    }
+
+    private static byte[] batchPayload(int count, ByteArrayOutputStream entries) {
+        ByteBuffer payload = ByteBuffer.allocate(Integer.BYTES + entries.size());
+        payload.putInt(count).put(entries.toByteArray());
+        return payload.array();
+    }
+
+    /*
+     * Replays BATCH records, holding back the parts of a split batch until its last part is read. A first part
+     * drops the parts of a batch that never ended, which a crash left before a later one. A part read without
+     * its first part belongs to a batch that was split across a log rotation: the snapshot taken after the
+     * rotation already holds that batch, so the part is applied as it comes.
+     */
+    private static final class SplitBatch<E> {
+        private final EntityCodec<E> codec;
+        private final Replayer<E> replayer;
+        private List<ByteBuffer> parts;
+
+        SplitBatch(EntityCodec<E> codec, Replayer<E> replayer) {
+            this.codec = codec;
+            this.replayer = replayer;
+        }
+
+        void onPart(long marker, ByteBuffer payload) throws IOException {
+            if (marker == FIRST_PART) {
+                parts = new ArrayList<>();
+            }
+            if (parts == null) {
+                replay(payload);
+                return;
+            }
+            parts.add(payload);
+            if (marker == LAST_PART) {
+                for (ByteBuffer part : parts) {
+                    replay(part);
+                }
+                parts = null;
+            }
+        }
+
+        private void replay(ByteBuffer payload) throws IOException {
+            int count = payload.getInt();
+            for (int i = 0; i < count; i++) {
+                byte op = payload.get();
+                long id = payload.getLong();
+                int length = payload.getInt();
+                ByteBuffer entity = payload.slice(payload.position(), length);
+                payload.position(payload.position() + length);
+                switch (op) {
+                    case WriteAheadLog.SAVE, WriteAheadLog.UPDATE -> replayer.restore(decode(codec, entity));
+                    case WriteAheadLog.DELETE -> replayer.remove(id);
+                    default -> throw new IOException("Unknown batched log record type " + op);
+                }
+            }
+        }
+    }
+
+    private void backgroundSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            // Counted and kept by snapshot(); the log still holds every write and the next threshold crossing retries
+        } finally {
+            snapshotScheduled.set(false);
+        }
+    }
+
+    private byte[] encode(E entity) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            codec.write(entity, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <E> E decode(EntityCodec<E> codec, ByteBuffer payload) throws IOException {
+        return codec.read(new DataInputStream(new ByteBufferInputStream(payload)));
+    }
+}
@@ -0,0 +1,225 @@
+package doa_bookstore.persistence;
+
+import doa_bookstore.entity.interfaces.LongEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A full copy of a repository, written next to its {@link WriteAheadLog}. The header records the first
+ * log segment that is not covered by the snapshot, so recovery loads the snapshot and then replays
+ * only the segments from that one onwards.
+ * <p>
+ * The file is laid out so it can be used through {@link MappedSnapshot} without being parsed:
+ * <pre>
+ * header  magic:int version:int firstSegment:long count:long indexOffset:long
+ * data    count x [length:int payload:byte[length]]
+ * index   count x [id:long offset:long], sorted by id
+ * </pre>
+ * The file is mapped in {@link #CHUNK_BYTES} chunks. No entry or index slot straddles a chunk boundary,
+ * because the writer pads the data section wherever needed.
+ * <p>
+ * Snapshots are written to a temporary file and atomically renamed, so a crash while writing one
+ * leaves the previous snapshot intact.
+ */
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x444F4153; // "DOAS"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final int INDEX_SLOT_BYTES = 16;
+    static final long CHUNK_BYTES = 1L << 30;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot of the given entities.
+     *
+     * @param path         The snapshot file.
+     * @param codec        The codec used to encode each entity.
+     * @param entities     The entities to write.
+     * @param firstSegment The first log segment not covered by the snapshot.
+     * @param <E>          The type of entity.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static <E extends LongEntity> void write(Path path, EntityCodec<E> codec, Iterable<E> entities,
+                                                      long firstSegment) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChunkWriter out = new ChunkWriter(channel);
+            out.skip(HEADER_BYTES);
+
+            long[] ids = new long[1024];
+            long[] offsets = new long[1024];
+            int count = 0;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream encoder = new DataOutputStream(bytes);
+            for (E entity : entities) {
+                bytes.reset();
+                codec.write(entity, encoder);
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                ids[count] = entity.getLongId();
+                offsets[count] = out.entry(bytes.toByteArray());
+                count++;
+            }
+
+            sortById(ids, offsets, 0, count - 1);
+            long indexOffset = out.alignIndex();
+            for (int i = 0; i < count; i++) {
+                out.slot(ids[i], offsets[i]);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(firstSegment).putLong(count).putLong(indexOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot for lazy reading.
+     *
+     * @param path  The snapshot file.
+     * @param codec The codec used to decode entities on access.
+     * @param <E>   The type of entity.
+     * @return The mapped snapshot, or {@code null} if there is no snapshot.
+     * @throws IOException If the snapshot exists but cannot be mapped or is malformed.
+     */
+    public static <E> MappedSnapshot<E> map(Path path, EntityCodec<E> codec) throws IOException {
+        return Files.exists(path) ? new MappedSnapshot<>(path, codec) : null;
+    }
+
+    // Sorts the (id, offset) pairs by id; quicksort on the two parallel arrays avoids boxing 10M pairs
+    private static void sortById(long[] ids, long[] offsets, int low, int high) {
+        while (low < high) {
+            long pivot = ids[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (ids[i] < pivot) {
+                    i++;
+                }
+                while (ids[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long id = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = id;
+                    long offset = offsets[i];
+                    offsets[i] = offsets[j];
+                    offsets[j] = offset;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sortById(ids, offsets, low, j);
+                low = i;
+            } else {
+                sortById(ids, offsets, i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * Buffered sequential writer that keeps entries from crossing mapping chunk boundaries.
+     */
+    private static final class ChunkWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position;
+
+        ChunkWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void skip(int bytes) throws IOException {
+            pad(bytes);
+        }
+
+        long entry(byte[] payload) throws IOException {
+            long size = Integer.BYTES + (long) payload.length;
+            if (size > CHUNK_BYTES) {
+                throw new IOException("Entity too large for a snapshot: " + payload.length + " bytes");
+            }
+            long roomInChunk = CHUNK_BYTES - (position % CHUNK_BYTES);
+            if (size > roomInChunk) {
+                pad(roomInChunk);
+            }
+            long offset = position;
+            ensure(Integer.BYTES);
+            buffer.putInt(payload.length);
+            position += Integer.BYTES;
+            write(payload);
+            return offset;
+        }
+
+        long alignIndex() throws IOException {
+            long misalignment = position % INDEX_SLOT_BYTES;
+            if (misalignment != 0) {
+                pad(INDEX_SLOT_BYTES - misalignment);
+            }
+            return position;
+        }
+
+        void slot(long id, long offset) throws IOException {
+            ensure(INDEX_SLOT_BYTES);
+            buffer.putLong(id).putLong(offset);
+            position += INDEX_SLOT_BYTES;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, count);
+                written += count;
+                position += count;
+            }
+        }
+
+        private void pad(long bytes) throws IOException {
+            for (long i = 0; i < bytes; i++) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+            position += bytes;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package doa_bookstore.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of repository writes, stored as numbered segment files
+ * ({@code <name>-<segment>.wal}) written through a {@link FileChannel}.
+ * <p>
+ * Each record is {@code [length][crc32][op][id][payload]}. Appending only queues the record in memory
+ * and returns its log sequence number (LSN). The record reaches the disk according to the {@link FsyncPolicy}.
+ * With {@link FsyncPolicy#GROUP_COMMIT}, the first writer to call {@link #sync(long)} becomes the leader.
+ * It writes and forces every queued record. Writers that arrive during that {@code fsync} wait for the
+ * next leader, which forces all of their records together.
+ * <p>
+ * On recovery, a record that was only partially written (a torn tail left by a crash) ends its segment,
+ * and the segment is truncated to its last complete record.
+ * <p>
+ * A write or force that fails may leave such a partial record behind, and later records would be lost with it
+ * on recovery. The first failure therefore makes the log unusable: every later append, sync and flush rethrows
+ * it, and no record of the failed batch, or after it, is ever reported durable.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final byte SAVE = 1;
+    public static final byte UPDATE = 2;
+    public static final byte DELETE = 3;
+    public static final byte CLEAR = 4;
+    // Several SAVE, UPDATE or DELETE records written, checksummed and replayed as one
+    public static final byte BATCH = 5;
+
+    // length + crc + op + id
+    private static final int HEADER_BYTES = 4 + 4 + 1 + 8;
+    static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Receives the records read back from the log.
+     */
+    public interface RecordHandler {
+        void onRecord(byte op, long id, ByteBuffer payload) throws IOException;
+    }
+
+    private final Path directory;
+    private final String name;
+    private final FsyncPolicy policy;
+
+    // Guards the queue of records waiting to be written
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Guards the channel; held by the thread currently writing and forcing records
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appendedLsn;
+    private volatile long durableLsn;
+
+    private FileChannel channel;
+    private long segment;
+    private final ScheduledExecutorService flusher;
+    private volatile IOException flushFailure;
+
+    private WriteAheadLog(Path directory, String name, long segment, DurabilityOptions options) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.policy = options.getFsyncPolicy();
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        if (policy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name + "-wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundFlush, options.getFlushIntervalMillis(),
+                    options.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Opens the log for appending. Appends always go to a new segment following the existing ones,
+     * so segments left by a previous run are never modified.
+     *
+     * @param directory  The directory holding the segments.
+     * @param name       The log name, used as the segment file prefix.
+     * @param minSegment The lowest segment number to append to, so that new records are never numbered
+     *                   below the first segment a snapshot expects, even if no segment is left on disk.
+     * @param options    The durability options.
+     * @return The opened log.
+     * @throws IOException If the segment cannot be created.
+     */
+    public static WriteAheadLog open(Path directory, String name, long minSegment, DurabilityOptions options)
+            throws IOException {
+        Files.createDirectories(directory);
+        long last = segments(directory, name).stream().mapToLong(Long::longValue).max().orElse(0);
+        return new WriteAheadLog(directory, name, Math.max(last + 1, minSegment), options);
+    }
+
+    /**
+     * Queues a record for writing.
+     *
+     * @param op      The operation code.
+     * @param id      The ID of the entity concerned.
+     * @param payload The encoded entity, or an empty array.
+     * @return The log sequence number of the record, to be passed to {@link #sync(long)}.
+     * @throws IOException If the record could not be written ({@link FsyncPolicy#EVERY_WRITE} only),
+     *                     a previous flush failed, or the payload is too large to be replayed.
+     */
+    public long append(byte op, long id, byte[] payload) throws IOException {
+        if (payload.length > MAX_RECORD_BYTES) {
+            throw new IOException("Log record of " + payload.length + " bytes exceeds " + MAX_RECORD_BYTES);
+        }
+        checkUsable();
+        ByteBuffer record = encode(op, id, payload);
+        if (policy == FsyncPolicy.EVERY_WRITE) {
+            flushLock.lock();
+            try {
+                // A write that failed while this one waited left the channel unusable
+                checkUsable();
+                long lsn;
+                appendLock.lock();
+                try {
+                    lsn = ++appendedLsn;
+                } finally {
+                    appendLock.unlock();
+                }
+                try {
+                    writeFully(new ByteBuffer[]{record});
+                    channel.force(false);
+                } catch (IOException e) {
+                    throw poison(e);
+                }
+                durableLsn = lsn;
+                return lsn;
+            } finally {
+                flushLock.unlock();
+            }
+        }
+        appendLock.lock();
+        try {
+            pending.add(record);
+            return ++appendedLsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record with the given LSN is on disk. This only blocks with {@link FsyncPolicy#GROUP_COMMIT}.
+     * With {@link FsyncPolicy#EVERY_WRITE} the record was already forced by {@link #append}.
+     * With {@link FsyncPolicy#INTERVAL} the background flusher writes it later.
+     *
+     * @param lsn The sequence number returned by {@link #append}.
+     * @throws IOException If the records could not be written, by this call or by an earlier flush.
+     */
+    public void sync(long lsn) throws IOException {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        checkUsable();
+        if (policy != FsyncPolicy.GROUP_COMMIT) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            // Another leader may have forced our record while we were waiting for the lock, or failed to
+            if (durableLsn < lsn) {
+                checkUsable();
+                flushPending();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces everything appended so far, then starts a new segment. Records appended
+     * after this call go to the new segment.
+     *
+     * @return The number of the new segment.
+     * @throws IOException If the records could not be written or the segment created.
+     */
+    public long rotate() throws IOException {
+        flushLock.lock();
+        try {
+            // Holding the append lock across the switch keeps every earlier record in the old segment
+            appendLock.lock();
+            try {
+                flushPending();
+                channel.close();
+                segment++;
+                channel = openSegment(segment);
+                return segment;
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes every segment numbered below the given one, typically after a snapshot made them redundant.
+     *
+     * @param segment The first segment to keep.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public void deleteSegmentsBefore(long segment) throws IOException {
+        for (long number : segments(directory, name)) {
+            if (number < segment) {
+                Files.deleteIfExists(segmentPath(directory, name, number));
+            }
+        }
+    }
+
+    /**
+     * Writes and forces every pending record, then closes the log.
+     *
+     * @throws IOException If the pending records could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            // Not shutdownNow(): interrupting a flush closes the channel and drops the records it had taken
+            flusher.shutdown();
+        }
+        flushLock.lock();
+        try {
+            if (channel.isOpen()) {
+                try {
+                    flushPending();
+                } finally {
+                    boolean empty = channel.size() == 0;
+                    channel.close();
+                    if (empty) {
+                        Files.deleteIfExists(segmentPath(directory, name, segment));
+                    }
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Reads every complete record of the segments numbered {@code fromSegment} or higher, in order.
+     *
+     * @param directory   The directory holding the segments.
+     * @param name        The log name.
+     * @param fromSegment The first segment to read.
+     * @param handler     Receives each record.
+     * @throws IOException If a segment cannot be read, or the handler fails.
+     */
+    public static void replay(Path directory, String name, long fromSegment, RecordHandler handler) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        for (long number : segments(directory, name)) {
+            if (number >= fromSegment) {
+                replaySegment(segmentPath(directory, name, number), handler);
+            }
+        }
+    }
+
+    private static void replaySegment(Path path, RecordHandler handler) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long position = 0;
+            long size = in.size();
+            while (position + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(in, header, position);
+                header.flip();
+                int length = header.getInt();
+                int crc = header.getInt();
+                byte op = header.get();
+                long id = header.getLong();
+                if (length < 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(in, payload, position + HEADER_BYTES);
+                payload.flip();
+                if (checksum(op, id, payload) != crc) {
+                    break;
+                }
+                handler.onRecord(op, id, payload);
+                position += HEADER_BYTES + length;
+            }
+            if (position < size) {
+                // Drop the torn tail so it cannot be mistaken for data on the next recovery
+                in.truncate(position);
+                in.force(true);
+            }
+        }
+    }
+
+    private void backgroundFlush() {
+        flushLock.lock();
+        try {
+            if (channel.isOpen()) {
+                flushPending();
+            }
+        } catch (IOException e) {
+            // Kept by flushPending; the next append or sync reports it
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Must be called with the flush lock held
+    private void flushPending() throws IOException {
+        List<ByteBuffer> batch;
+        long upTo;
+        appendLock.lock();
+        try {
+            batch = pending;
+            upTo = appendedLsn;
+            if (batch.isEmpty()) {
+                return;
+            }
+            // Nothing more is written behind a batch that failed
+            checkUsable();
+            pending = new ArrayList<>();
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            writeFully(batch.toArray(new ByteBuffer[0]));
+            channel.force(false);
+        } catch (IOException e) {
+            throw poison(e);
+        }
+        durableLsn = upTo;
+    }
+
+    private void checkUsable() throws IOException {
+        IOException failure = flushFailure;
+        if (failure != null) {
+            throw new IOException("Write-ahead log " + name + " is unusable after a failed flush", failure);
+        }
+    }
+
+    // Must be called with the flush lock held; the first failure is the one reported from then on
+    private IOException poison(IOException failure) {
+        if (flushFailure == null) {
+            flushFailure = failure;
+        }
+        return failure;
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log segment");
+            }
+        }
+    }
+
+    private static ByteBuffer encode(byte op, long id, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(op, id, ByteBuffer.wrap(payload)));
+        record.put(op);
+        record.putLong(id);
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    private static int checksum(byte op, long id, ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(9);
+        header.put(op).putLong(id).flip();
+        crc.update(header);
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, name, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentPath(Path directory, String name, long number) {
+        return directory.resolve(String.format("%s-%06d.wal", name, number));
+    }
+
+    private static List<Long> segments(Path directory, String name) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        String prefix = name + "-";
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(file -> file.startsWith(prefix) && file.endsWith(".wal"))
+                    .forEach(file -> {
+                        try {
+                            numbers.add(Long.parseLong(file.substring(prefix.length(), file.length() - 4)));
+                        } catch (NumberFormatException ignored) {
+                            // Not one of our segments
+                        }
+                    });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+}
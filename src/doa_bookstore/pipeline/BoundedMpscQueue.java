@@ -0,0 +1,118 @@
+package doa_bookstore.pipeline;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer, on a ring of slots.
+ * <p>
+ * A producer claims the next slot by advancing the tail with a CAS and then publishes its element into it.
+ * The consumer reads slots in order from the head and empties each one before moving on. A slot that has
+ * been claimed but not published yet reads as empty, so the consumer never sees a half-written element;
+ * it simply finds it on its next poll.
+ * <p>
+ * Only one thread may call {@link #poll()}, {@link #drainTo(Collection, int)} and {@link #isEmpty()}.
+ *
+ * @param <E> The type of the elements.
+ */
+public final class BoundedMpscQueue<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final int capacity;
+
+    // Next slot to claim, advanced by producers
+    private final AtomicLong tail = new AtomicLong();
+
+    // Next slot to read, advanced by the consumer only
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity The maximum number of elements, rounded up to a power of two.
+     */
+    public BoundedMpscQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Adds an element if there is room. Safe to call from any number of threads.
+     *
+     * @param element The element; not {@code null}.
+     * @return {@code true} if the element was added, {@code false} if the queue is full.
+     */
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head.get() >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        // A volatile store: the consumer that finds the queue empty and goes to sleep must not miss it
+        slots.set((int) claimed & mask, element);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head. Consumer thread only.
+     *
+     * @return The element, or {@code null} if the queue is empty or the head element is not published yet.
+     */
+    public E poll() {
+        long position = head.getPlain();
+        int index = (int) position & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        // Frees the slot for producers, after the slot itself has been emptied
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * Moves up to {@code max} elements into the given collection. Consumer thread only.
+     *
+     * @param sink The collection to add the elements to.
+     * @param max  The maximum number of elements to move.
+     * @return The number of elements moved.
+     */
+    public int drainTo(Collection<? super E> sink, int max) {
+        int moved = 0;
+        E element;
+        while (moved < max && (element = poll()) != null) {
+            sink.add(element);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Tells whether an element is ready at the head. Consumer thread only.
+     *
+     * @return {@code true} if {@link #poll()} would return {@code null}.
+     */
+    public boolean isEmpty() {
+        return slots.get((int) head.getPlain() & mask) == null;
+    }
+
+    /**
+     * @return The number of claimed slots; elements being published are included. Approximate under contention.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
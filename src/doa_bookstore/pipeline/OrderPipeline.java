@@ -0,0 +1,322 @@
+package doa_bookstore.pipeline;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.entity.Orders.OrderStatus;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
+import doa_bookstore.service.BookService;
+import doa_bookstore.service.OrderService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Places orders asynchronously, in batches, for peaks such as flash sales.
+ * <p>
+ * Callers put their orders on a {@link BoundedMpscQueue} and get a future back. A single writer thread
+ * drains up to {@code maxBatch} orders at a time and handles the whole batch at once: it resolves the books,
+ * reserves the stock of every order (each one all or nothing on its own), logs the new stock levels as one
+ * write, and saves all the orders with one {@link OrderService#saveOrders} call. In durable mode a batch
+ * therefore costs two log records and at most two fsyncs, however many orders it holds.
+ * <p>
+ * Each future completes with the saved order, or exceptionally with {@link EntityNotFoundException} if a book
+ * is unknown, {@link doa_bookstore.exception.InsufficientUnitsException} if the stock is short, or
+ * {@link RejectedExecutionException} if the queue stays full for longer than the offer timeout.
+ * Futures are completed on the writer thread, so callers should not chain slow work on them synchronously.
+ * If the writer thread dies of an {@link Error}, the pipeline closes itself and fails every queued order.
+ */
+public final class OrderPipeline implements AutoCloseable {
+
+    /**
+     * System property setting the capacity of the order queue.
+     */
+    public static final String CAPACITY_PROPERTY = "doa.orders.queueCapacity";
+
+    /**
+     * System property setting the maximum number of orders handled in one batch.
+     */
+    public static final String MAX_BATCH_PROPERTY = "doa.orders.maxBatch";
+
+    private static final Timer BATCH = MetricsRegistry.getInstance().timer("pipeline.orders.batch");
+    private static final Counter PLACED = MetricsRegistry.getInstance().counter("pipeline.orders.placed");
+    private static final Counter FAILED = MetricsRegistry.getInstance().counter("pipeline.orders.failed");
+    private static final Counter QUEUE_FULL = MetricsRegistry.getInstance().counter("pipeline.orders.queueFull");
+
+    // Longest pause between two attempts to offer to a full queue
+    private static final long MAX_BACKOFF_NANOS = 1_000_000;
+
+    private final BookService bookService;
+    private final OrderService orderService;
+    private final BoundedMpscQueue<Request> queue;
+    private final int maxBatch;
+    private final long offerTimeoutNanos;
+    private final Thread writer;
+
+    // Set by the writer just before it parks, so producers know to wake it up
+    private volatile boolean sleeping;
+
+    // Producers between their check of closed and the end of their offer; close() waits for them
+    private final AtomicInteger offering = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile boolean stopping;
+
+    private static final class Request {
+        final String customerName;
+        // One of the two is set: the lines of the order, or the map of an order placed as before lines existed
+        final OrderLines lines;
+        final HashMap<Book, Integer> books;
+        final CompletableFuture<Orders> result = new CompletableFuture<>();
+
+        Request(String customerName, OrderLines lines, HashMap<Book, Integer> books) {
+            this.customerName = customerName;
+            this.lines = lines;
+            this.books = books;
+        }
+    }
+
+    /**
+     * Creates a pipeline and starts its writer thread.
+     *
+     * @param bookService  The service used to resolve books and reserve stock.
+     * @param orderService The service used to save orders.
+     * @param capacity     The capacity of the queue, rounded up to a power of two.
+     * @param maxBatch     The maximum number of orders handled in one batch.
+     * @param offerTimeout How long {@link #placeOrder} waits for room in a full queue before rejecting the order.
+     */
+    public OrderPipeline(BookService bookService, OrderService orderService, int capacity, int maxBatch,
+                         Duration offerTimeout) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+        }
+        this.bookService = bookService;
+        this.orderService = orderService;
+        this.queue = new BoundedMpscQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.writer = new Thread(this::drainLoop, "order-pipeline-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Creates a pipeline configured by the {@value #CAPACITY_PROPERTY} and {@value #MAX_BATCH_PROPERTY}
+     * system properties, which default to 65536 and 512, with an offer timeout of 1 second.
+     *
+     * @param bookService  The service used to resolve books and reserve stock.
+     * @param orderService The service used to save orders.
+     * @return The pipeline.
+     */
+    public static OrderPipeline fromSystemProperties(BookService bookService, OrderService orderService) {
+        return new OrderPipeline(bookService, orderService, Integer.getInteger(CAPACITY_PROPERTY, 1 << 16),
+                Integer.getInteger(MAX_BATCH_PROPERTY, 512), Duration.ofSeconds(1));
+    }
+
+    /**
+     * Queues an order. Waits, with backoff, while the queue is full.
+     *
+     * @param customerName The name of the customer placing the order.
+     * @param lines        The IDs of the books of the order and their quantities.
+     * @return A future completed with the saved order once its batch has been written.
+     */
+    public CompletableFuture<Orders> placeOrder(String customerName, OrderLines lines) {
+        return enqueue(new Request(customerName, lines, null));
+    }
+
+    /**
+     * Queues an order. Waits, with backoff, while the queue is full.
+     *
+     * @param customerName The name of the customer placing the order.
+     * @param books        The books of the order and their quantities. Books are matched by ID and title.
+     * @return A future completed with the saved order once its batch has been written.
+     */
+    public CompletableFuture<Orders> placeOrder(String customerName, HashMap<Book, Integer> books) {
+        return enqueue(new Request(customerName, null, books));
+    }
+
+    private CompletableFuture<Orders> enqueue(Request request) {
+        offering.incrementAndGet();
+        try {
+            if (closed) {
+                request.result.completeExceptionally(new RejectedExecutionException("The order pipeline is closed"));
+            } else if (!offer(request)) {
+                QUEUE_FULL.increment();
+                request.result.completeExceptionally(new RejectedExecutionException("The order queue is full"));
+            } else if (sleeping) {
+                LockSupport.unpark(writer);
+            }
+        } finally {
+            offering.decrementAndGet();
+        }
+        return request.result;
+    }
+
+    private boolean offer(Request request) {
+        if (queue.offer(request)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + offerTimeoutNanos;
+        long backoff = 1_000;
+        while (System.nanoTime() < deadline) {
+            // The writer may be asleep on a batch boundary while producers fill the queue
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(backoff);
+            if (queue.offer(request)) {
+                return true;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of orders waiting in the queue.
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting orders, handles every order already queued and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // Once no producer is mid-offer, nothing can be added to the queue any more
+        while (offering.get() != 0) {
+            Thread.onSpinWait();
+        }
+        stopping = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            queue.drainTo(batch, maxBatch);
+            if (!batch.isEmpty()) {
+                try {
+                    process(batch);
+                } catch (Error e) {
+                    abandon(e);
+                    throw e;
+                }
+                batch.clear();
+            } else if (stopping) {
+                return;
+            } else {
+                sleeping = true;
+                // Re-check after announcing the nap: a producer that published before this sees no flag
+                if (queue.isEmpty() && !stopping) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    // Closes the pipeline from the dying writer thread and fails every order it will never handle
+    private void abandon(Error cause) {
+        closed = true;
+        stopping = true;
+        RejectedExecutionException rejection = new RejectedExecutionException("The order pipeline writer died", cause);
+        List<Request> orphans = new ArrayList<>();
+        // Producers that passed the check of closed may still be offering, possibly to a full queue
+        while (offering.get() != 0 || !queue.isEmpty()) {
+            queue.drainTo(orphans, Integer.MAX_VALUE);
+            for (Request request : orphans) {
+                fail(request, rejection);
+            }
+            orphans.clear();
+            Thread.onSpinWait();
+        }
+    }
+
+    private void process(List<Request> batch) {
+        long start = BATCH.start();
+        try {
+            List<Request> resolved = new ArrayList<>(batch.size());
+            List<OrderLines> reservations = new ArrayList<>(batch.size());
+            for (Request request : batch) {
+                try {
+                    reservations.add(request.books == null
+                            ? bookService.resolveBooks(request.lines)
+                            : bookService.resolveBooks(request.books));
+                    resolved.add(request);
+                } catch (EntityNotFoundException | IllegalArgumentException e) {
+                    fail(request, e);
+                }
+            }
+
+            Exception[] failures = bookService.reserveStockBatch(reservations);
+            List<Request> reserved = new ArrayList<>(resolved.size());
+            List<OrderLines> reservedStock = new ArrayList<>(resolved.size());
+            List<Orders> orders = new ArrayList<>(resolved.size());
+            Date now = new Date();
+            for (int i = 0; i < resolved.size(); i++) {
+                Request request = resolved.get(i);
+                if (failures[i] != null) {
+                    fail(request, failures[i]);
+                    continue;
+                }
+                reserved.add(request);
+                reservedStock.add(reservations.get(i));
+                orders.add(new Orders(request.customerName, reservations.get(i), now, OrderStatus.PENDING));
+            }
+            if (orders.isEmpty()) {
+                return;
+            }
+
+            try {
+                orderService.saveOrders(orders);
+            } catch (Exception e) {
+                bookService.releaseStockBatch(reservedStock);
+                for (Request request : reserved) {
+                    fail(request, e);
+                }
+                return;
+            }
+            PLACED.add(orders.size());
+            for (int i = 0; i < reserved.size(); i++) {
+                reserved.get(i).result.complete(orders.get(i));
+            }
+        } catch (RuntimeException | Error e) {
+            // Never leave a caller waiting, whatever went wrong
+            for (Request request : batch) {
+                fail(request, e);
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        } finally {
+            BATCH.stop(start);
+        }
+    }
+
+    private static void fail(Request request, Throwable cause) {
+        if (request.result.completeExceptionally(cause)) {
+            FAILED.increment();
+        }
+    }
+}
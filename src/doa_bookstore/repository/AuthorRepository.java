@@ -5,7 +5,9 @@ import doa_bookstore.entity.Author;
 public class AuthorRepository extends MyCrudRepository<Author> {
     private static AuthorRepository instance;
 
-    private AuthorRepository(){};
+    private AuthorRepository(){
+        super(StorageMode.CONCURRENT);
+    }
 
     public static synchronized AuthorRepository getInstance() {
         if (instance == null) {
@@ -17,6 +19,17 @@ public class AuthorRepository extends MyCrudRepository<Author> {
         }
         return instance;
     }
+
+    // An edited copy of an author keeps the books linked to the stored one
+    @Override
+    protected void carryOver(Author stored, Author replacement) {
+        replacement.shareBooksOf(stored);
+    }
+
+    @Override
+    protected Author copyOf(Author author) {
+        return author.copy();
+    }
 }
 
 
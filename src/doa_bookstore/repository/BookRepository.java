@@ -1,11 +1,93 @@
 package doa_bookstore.repository;
 
+import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.BookIds;
+import doa_bookstore.inventory.StockReservationEngine;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.EntityCodec;
+import doa_bookstore.repository.index.AuthorBookLinks;
+import doa_bookstore.repository.index.BookSearchIndex;
+import doa_bookstore.repository.index.SecondaryIndex;
+import doa_bookstore.repository.table.ColumnarBookTable;
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 public class BookRepository extends MyCrudRepository<Book> {
 
+    /**
+     * System property choosing how books are stored: {@code CONCURRENT} (the default), one object per book,
+     * or {@code COLUMNAR}, a {@link ColumnarBookTable} that is much smaller on large catalogs. In columnar mode
+     * lookups return views of the stored rows rather than the instances that were saved, and the author of a
+     * book is read from the author repository by ID.
+     */
+    public static final String STORAGE_MODE_PROPERTY = "doa.books.storage";
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     private static BookRepository instance;
-    private BookRepository(){};
+
+    // Secondary indexes and the books of each author, kept in sync with the table through the repository listeners
+    private final AuthorBookLinks authorLinks = new AuthorBookLinks(AuthorRepository.getInstance()::findById);
+    private final SecondaryIndex<Book.Genre, Book> genreIndex =
+            SecondaryIndex.forEnum(Book.Genre.class, Book::getGenre);
+    private final SecondaryIndex<String, Book> titleIndex =
+            new SecondaryIndex<>(book -> normalizeTitle(book.getTitle()));
+    private final BookSearchIndex searchIndex = new BookSearchIndex();
+    private final StockReservationEngine reservations = StockReservationEngine.getInstance();
+
+    // Set while the log is replayed, when recovered books bring the stock the log recorded
+    private volatile boolean recovering;
+
+    private BookRepository(){
+        this(StorageMode.valueOf(System.getProperty(STORAGE_MODE_PROPERTY, StorageMode.CONCURRENT.name())));
+    }
+
+    private BookRepository(StorageMode mode) {
+        super(mode, switch (mode) {
+            case CONCURRENT -> new ConcurrentLongEntityMap<>();
+            case COLUMNAR -> columnarTable(AuthorRepository.getInstance());
+            case SINGLE_THREADED -> throw new IllegalArgumentException(
+                    BookRepository.class.getSimpleName() + " is shared between threads and cannot be " + mode + ".");
+        });
+        addListener(authorLinks);
+        AuthorRepository.getInstance().addListener(authorLinks.authorListener());
+        addListener(genreIndex);
+        addListener(titleIndex);
+        addListener(searchIndex);
+        // Reservations count the stock of stored books in the engine's off-heap table
+        addListener(reservations);
+        addListener(new RepositoryListener<>() {
+            @Override
+            public void onUpdated(Book previous, Book book) {
+                if (recovering) {
+                    reservations.track(book);
+                }
+            }
+        });
+
+        // The search index holds the author name of every book; re-index an author's books when it changes
+        AuthorRepository.getInstance().addListener(new RepositoryListener<>() {
+            @Override
+            public void onUpdated(Author previous, Author author) {
+                author.getBookIds().forEach(id -> findById(id).ifPresent(searchIndex::reindex));
+            }
+        });
+    }
+
+    // The columns keep the ID of each book's author, resolved to the stored author on every read
+    private static ColumnarBookTable columnarTable(AuthorRepository authors) {
+        return new ColumnarBookTable(id -> authors.findById(id).orElse(null));
+    }
 
     @SuppressWarnings("unchecked")
     public static synchronized BookRepository getInstance() {
@@ -20,4 +102,139 @@ public class BookRepository extends MyCrudRepository<Book> {
         return instance;
     }
 
-}
\ No newline at end of file
+    /**
+     * Finds every book written by the given author, from the {@link Author#getBookIds() book IDs} of the author.
+     * A book is linked to its author when it is saved or updated.
+     * After a restart, this waits until the recovered books have all been linked.
+     *
+     * @param authorId The ID of the author.
+     * @return The books of that author, in ascending ID order.
+     */
+    public List<Book> findByAuthorId(Long authorId) {
+        awaitFullyLoaded();
+        BookIds ids = authorLinks.find(authorId);
+        List<Book> books = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            // Skip books deleted or moved to another author since the IDs were read
+            findById(ids.get(i))
+                    .filter(book -> book.getAuthor() != null && authorId.equals(book.getAuthor().getId()))
+                    .ifPresent(books::add);
+        }
+        return books;
+    }
+
+    /**
+     * Finds every book of the given genre.
+     *
+     * @param genre The genre to look for.
+     * @return The books of that genre.
+     */
+    public List<Book> findByGenre(Book.Genre genre) {
+        awaitFullyLoaded();
+        return genreIndex.resolve(genre, this::findById);
+    }
+
+    /**
+     * Finds every book with the given title. Titles are compared after {@link #normalizeTitle(String) normalization}.
+     *
+     * @param title The title to look for.
+     * @return The books with that title.
+     */
+    public List<Book> findByTitle(String title) {
+        awaitFullyLoaded();
+        return titleIndex.resolve(normalizeTitle(title), this::findById);
+    }
+
+    /**
+     * Searches the titles and author names of the books. See {@link BookSearchIndex} for the matching and ranking
+     * rules. After a restart, this waits until the recovered books have all been indexed.
+     *
+     * @param query The words to look for; the last one may be a prefix.
+     * @param limit The maximum number of books to return.
+     * @return The best matching books, best first.
+     */
+    public List<Book> search(String query, int limit) {
+        awaitFullyLoaded();
+        List<Long> ids = searchIndex.search(query, limit);
+        List<Book> books = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            findById(id).ifPresent(books::add);
+        }
+        return books;
+    }
+
+    /**
+     * Enables durability as {@link MyCrudRepository#enableDurability} does. The books recovered from the log
+     * bring the stock it recorded, which reservations then count from.
+     */
+    @Override
+    public synchronized void enableDurability(Path directory, EntityCodec<Book> codec, DurabilityOptions options)
+            throws IOException {
+        recovering = true;
+        try {
+            super.enableDurability(directory, codec, options);
+        } finally {
+            recovering = false;
+        }
+    }
+
+    /**
+     * Replaces a stored book as {@link MyCrudRepository#update} does, except for its stock: the book keeps the
+     * level counted by reservations, whatever the given book says, so that an edit made on an older copy does
+     * not bring back units reserved since.
+     */
+    @Override
+    public Book update(Book book) {
+        Book previous = super.update(book);
+        publishLevel(book.getLongId());
+        return previous;
+    }
+
+    /**
+     * Replaces several stored books as {@link MyCrudRepository#updateAll} does, keeping the stock counted by
+     * reservations as {@link #update(Book)} does.
+     */
+    @Override
+    public int updateAll(Collection<Book> books) {
+        int updated = super.updateAll(books);
+        for (Book book : books) {
+            publishLevel(book.getLongId());
+        }
+        return updated;
+    }
+
+    // Reservations change stock between updates; the replacement takes the counted level, under the write to it
+    @Override
+    protected void carryOver(Book stored, Book replacement) {
+        if (!recovering) {
+            reservations.copyLevelTo(replacement);
+        }
+    }
+
+    // A reservation made between the carry over and the replacement updated the book it was given, not this one
+    private void publishLevel(long id) {
+        findById(id).ifPresent(reservations::copyLevelTo);
+    }
+
+    @Override
+    protected Book copyOf(Book book) {
+        return book.copy();
+    }
+
+    /**
+     * Normalizes a title for lookups: accents are stripped, case is folded and runs of whitespace
+     * are collapsed, so "  Les Misérables" and "les miserables" are the same title.
+     *
+     * @param title The title to normalize.
+     * @return The normalized title, or {@code null} if {@code title} is {@code null}.
+     */
+    public static String normalizeTitle(String title) {
+        if (title == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(title, Normalizer.Form.NFKD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return WHITESPACE.matcher(stripped.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+}
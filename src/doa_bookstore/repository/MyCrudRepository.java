@@ -1,52 +1,202 @@
 package doa_bookstore.repository;
 
-import doa_bookstore.entity.Author;
-import doa_bookstore.entity.interfaces.Entity;
+import doa_bookstore.entity.interfaces.LongEntity;
 import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.SnapshotTooOldException;
+import doa_bookstore.exception.StaleEntityException;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.EntityCodec;
+import doa_bookstore.persistence.MappedSnapshot;
+import doa_bookstore.persistence.RepositoryJournal;
+import doa_bookstore.repository.mvcc.ReadView;
+import doa_bookstore.repository.mvcc.VersionHistory;
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+import doa_bookstore.repository.table.EntityTable;
+import doa_bookstore.repository.table.LongEntityMap;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * An abstract base class for a simple CRUD (Create, Read, Update, Delete) repository.
- * This class provides basic CRUD operations using an in-memory data store implemented with a HashMap.
+ * This class provides basic CRUD operations using an in-memory data store keyed by primitive IDs:
+ * a {@link LongEntityMap}, or a {@link ConcurrentLongEntityMap} when the subclass opts into
+ * {@link StorageMode#CONCURRENT}. Subclasses may also supply a table of their own, as {@link BookRepository}
+ * does for {@link StorageMode#COLUMNAR}.
+ * Calling {@link #enableDurability} additionally logs every write to disk, so the data survives a restart.
+ * After a restart, entities still held by the mapped snapshot are loaded on first access and by a
+ * background warm-up, so lookups by ID are served before the whole snapshot has been decoded.
+ * While a {@link ReadView} is open, every write is also versioned, so listings can read a consistent point in
+ * time through the view while other threads keep writing; with no view open, writes keep no versions. Only writes of edited copies are hidden from views opened before them: a
+ * change made in place on a stored entity is seen by every view at once.
  * It supports generic entity types and ensures that each subclass follows the Singleton pattern.
  *
- * @param <E> The type of entity stored in the repository, which must implement the {@link Entity} interface.
+ * @param <E> The type of entity stored in the repository, which must implement the {@link LongEntity} interface.
  */
-public abstract class MyCrudRepository<E extends Entity<Long>> {
-
+public abstract class MyCrudRepository<E extends LongEntity> {
 
+    /**
+     * System property setting how many old versions a repository keeps for open read views before it expires them.
+     */
+    public static final String MAX_RETAINED_VERSIONS_PROPERTY = "doa.views.maxRetainedVersions";
 
     // Incremental ID counter for new entities
-    private long idCounter = 1;
+    private final AtomicLong idCounter = new AtomicLong(1);
+
+    // Highest ID ever saved explicitly by a caller, used to bound page walks
+    private final AtomicLong maxExplicitId = new AtomicLong(0);
+
+    // A page walk probes IDs one by one while at least 1 in DENSE_RATIO allocated IDs is live
+    private static final int DENSE_RATIO = 4;
 
     // In-memory data storage
-    private final HashMap<Long, E> table = new HashMap<>();
+    private final EntityTable<E> table;
+
+    // Versions replaced or deleted since the oldest open read view
+    private final VersionHistory<E> history =
+            new VersionHistory<>(Long.getLong(MAX_RETAINED_VERSIONS_PROPERTY, 1_000_000L));
+
+    // Components notified of every write, e.g. secondary indexes
+    private final List<RepositoryListener<E>> listeners = new CopyOnWriteArrayList<>();
+
+    // Write-ahead journal, only set in durable mode
+    private volatile RepositoryJournal<E> journal;
+
+    // Recovered snapshot whose entities are not all in the table yet; null once the warm-up is done
+    private volatile MappedSnapshot<E> pendingSnapshot;
+
+    // Held shared by every load from the snapshot, and exclusively by deleteAll so no load outlives a clear
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    // Completed once every snapshot entity is in the table
+    private volatile CompletableFuture<Void> fullyLoaded = CompletableFuture.completedFuture(null);
+
+    private final StorageMode mode;
+
+    // Lookups by ID take tens of nanoseconds, so when they are timed at all only 1 in 2^LOOKUP_SAMPLE_BITS is
+    private static final int LOOKUP_SAMPLE_BITS = 3;
+
+    // Per-operation metrics, shared by every instance of the same repository class
+    private final Timer saveTimer;
+    private final Timer findByIdTimer;
+    private final Timer existsByIdTimer;
+    private final Timer updateTimer;
+    private final Timer deleteTimer;
+    private final Timer findAllTimer;
+    private final Timer findPageTimer;
+    private final Timer saveAllTimer;
+    private final Timer updateAllTimer;
+    private final Timer deleteAllByIdTimer;
+    private final Timer findAllByIdTimer;
 
     // Private constructor to prevent external instantiation
     protected MyCrudRepository() {
+        this(StorageMode.SINGLE_THREADED);
+    }
+
+    /**
+     * Creates a repository backed by the storage strategy of the given mode.
+     *
+     * @param mode The storage mode to use for the lifetime of the repository.
+     */
+    protected MyCrudRepository(StorageMode mode) {
+        this(mode, defaultTable(mode));
+    }
+
+    /**
+     * Creates a repository backed by the given table, for modes whose table depends on the entity type.
+     *
+     * @param mode  The storage mode to use for the lifetime of the repository.
+     * @param table The empty table to store the entities in. It must be thread-safe if the mode is concurrent.
+     */
+    protected MyCrudRepository(StorageMode mode, EntityTable<E> table) {
+        this.mode = mode;
+        this.table = table;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        // Anonymous subclasses have no simple name
+        String name = getClass().getSimpleName().isEmpty() ? getClass().getName() : getClass().getSimpleName();
+        String prefix = "repository." + name + ".";
+        this.saveTimer = metrics.timer(prefix + "save");
+        this.findByIdTimer = metrics.timer(prefix + "findById", LOOKUP_SAMPLE_BITS);
+        this.existsByIdTimer = metrics.timer(prefix + "existsById", LOOKUP_SAMPLE_BITS);
+        this.updateTimer = metrics.timer(prefix + "update");
+        this.deleteTimer = metrics.timer(prefix + "deleteById");
+        this.findAllTimer = metrics.timer(prefix + "findAll");
+        this.findPageTimer = metrics.timer(prefix + "findPage");
+        this.saveAllTimer = metrics.timer(prefix + "saveAll");
+        this.updateAllTimer = metrics.timer(prefix + "updateAll");
+        this.deleteAllByIdTimer = metrics.timer(prefix + "deleteAllById");
+        this.findAllByIdTimer = metrics.timer(prefix + "findAllById");
+    }
+
+    private static <E> EntityTable<E> defaultTable(StorageMode mode) {
+        return switch (mode) {
+            case SINGLE_THREADED -> new LongEntityMap<>();
+            case CONCURRENT -> new ConcurrentLongEntityMap<>();
+            case COLUMNAR -> throw new IllegalArgumentException(
+                    "Columnar storage needs a table supplied by the repository.");
+        };
     }
 
     /**
      * Saves an entity to the repository and assigns it a unique ID if it is a new entity.
      * If the entity already exists, an {@link EntityAlreadyExistsException} is thrown.
+     * The existence check and the insert are a single atomic step, so two threads saving the same ID
+     * cannot both succeed.
      *
      * @param entity The entity to be saved.
      * @return The saved entity.
      * @throws EntityAlreadyExistsException If an entity with the same ID already exists in the repository.
      */
     public E save(E entity) throws EntityAlreadyExistsException {
-        if (entity.getId() != null && existsById(entity.getId())) {
-            throw new EntityAlreadyExistsException(entity.getClass());
+        long start = saveTimer.start();
+        try {
+            boolean generated = !entity.hasId();
+            if (generated) {
+                entity.setId(idCounter.getAndIncrement());
+            }
+            entity.setVersion(1);
+            while (!insert(entity)) {
+                if (!generated) {
+                    entity.setVersion(0);
+                    throw new EntityAlreadyExistsException(entity.getClass());
+                }
+                // Generated IDs skip any slot already taken by an entity saved with an explicit ID
+                entity.setId(idCounter.getAndIncrement());
+            }
+            if (!generated) {
+                maxExplicitId.accumulateAndGet(entity.getLongId(), Math::max);
+            }
+            for (RepositoryListener<E> listener : listeners) {
+                listener.onSaved(entity);
+            }
+            return entity;
+        } finally {
+            saveTimer.stop(start);
         }
-        if (entity.getId() == null) {
-            entity.setId(idCounter++);
-        }
-        table.put(entity.getId(), entity);
-        return entity;
     }
 
     /**
@@ -56,7 +206,45 @@ public abstract class MyCrudRepository<E extends Entity<Long>> {
      * @return An {@link Optional} containing the entity if found, or an empty {@link Optional} if not found.
      */
     public Optional<E> findById(Long id) {
-        return Optional.ofNullable(table.get(id));
+        return id == null ? Optional.empty() : findById(id.longValue());
+    }
+
+    /**
+     * Finds an entity in the repository by its primitive ID, without boxing it.
+     *
+     * @param id The ID of the entity to find.
+     * @return An {@link Optional} containing the entity if found, or an empty {@link Optional} if not found.
+     */
+    public Optional<E> findById(long id) {
+        if (!MetricsRegistry.isLookupTimingEnabled()) {
+            return Optional.ofNullable(lookup(id));
+        }
+        long start = findByIdTimer.start();
+        try {
+            return Optional.ofNullable(lookup(id));
+        } finally {
+            findByIdTimer.stop(start);
+        }
+    }
+
+    /**
+     * Finds an entity as it was when a read view was opened.
+     *
+     * @param id   The ID of the entity to find.
+     * @param view The view to read at.
+     * @return An {@link Optional} containing the entity if it existed then, or an empty {@link Optional}.
+     * @throws SnapshotTooOldException If the view expired.
+     */
+    public Optional<E> findById(long id, ReadView view) {
+        if (!MetricsRegistry.isLookupTimingEnabled()) {
+            return Optional.ofNullable(history.read(id, view, this::detachedLookup));
+        }
+        long start = findByIdTimer.start();
+        try {
+            return Optional.ofNullable(history.read(id, view, this::detachedLookup));
+        } finally {
+            findByIdTimer.stop(start);
+        }
     }
 
     /**
@@ -65,7 +253,54 @@ public abstract class MyCrudRepository<E extends Entity<Long>> {
      * @param id The ID of the entity to delete.
      */
     public void deleteById(Long id) {
-        table.remove(id);
+        if (id != null) {
+            deleteById(id.longValue());
+        }
+    }
+
+    /**
+     * Deletes an entity from the repository by its primitive ID.
+     *
+     * @param id The ID of the entity to delete.
+     */
+    public void deleteById(long id) {
+        long start = deleteTimer.start();
+        try {
+            E removed;
+            loadFromSnapshot(id);
+            RepositoryJournal<E> journal = this.journal;
+            ReentrantLock lock = journal == null ? null : journal.lockFor(id);
+            long lsn = 0;
+            if (lock != null) {
+                lock.lock();
+            }
+            try (VersionHistory<E>.Write write = history.begin(id)) {
+                write.prepare(id);
+                removed = table.remove(id);
+                if (removed == null) {
+                    write.discard();
+                } else {
+                    write.applied(removed);
+                    if (journal != null) {
+                        lsn = journal.logDelete(id);
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+            if (journal != null) {
+                journal.sync(lsn);
+            }
+            if (removed != null) {
+                for (RepositoryListener<E> listener : listeners) {
+                    listener.onDeleted(removed);
+                }
+            }
+        } finally {
+            deleteTimer.stop(start);
+        }
     }
 
     /**
@@ -75,7 +310,25 @@ public abstract class MyCrudRepository<E extends Entity<Long>> {
      * @return {@code true} if the entity exists, {@code false} otherwise.
      */
     public boolean existsById(Long id) {
-        return table.containsKey(id);
+        return id != null && existsById(id.longValue());
+    }
+
+    /**
+     * Checks whether an entity exists in the repository by its primitive ID.
+     *
+     * @param id The ID of the entity to check.
+     * @return {@code true} if the entity exists, {@code false} otherwise.
+     */
+    public boolean existsById(long id) {
+        if (!MetricsRegistry.isLookupTimingEnabled()) {
+            return lookup(id) != null;
+        }
+        long start = existsByIdTimer.start();
+        try {
+            return lookup(id) != null;
+        } finally {
+            existsByIdTimer.stop(start);
+        }
     }
 
     /**
@@ -84,17 +337,983 @@ public abstract class MyCrudRepository<E extends Entity<Long>> {
      * @return A list of all entities in the repository.
      */
     public List<E> findAll() {
-        return new ArrayList<>(table.values());
+        long start = findAllTimer.start();
+        try {
+            awaitFullyLoaded();
+            return new ArrayList<>(table.values());
+        } finally {
+            findAllTimer.stop(start);
+        }
+    }
+
+    /**
+     * Opens a read view of every repository as of now. Shorthand for {@link ReadView#open()}.
+     *
+     * @return The view, to be closed once read.
+     */
+    public ReadView openReadView() {
+        return ReadView.open();
+    }
+
+    /**
+     * Retrieves all entities as they were when a read view was opened: the entities saved after are left out,
+     * and those updated or deleted after are returned in their earlier state. Unlike {@link #findAll()}, the
+     * result is never a mix of states before and after a write, and writers do not wait for it.
+     * <p>
+     * Only writes through the repository are versioned: fields changed in place on a stored entity, such as
+     * the stock moved by reservations, read as they are now.
+     *
+     * @param view The view to read at.
+     * @return A list of the entities the view sees, in no particular order.
+     * @throws SnapshotTooOldException If the view expired, or the repository was cleared since it was opened.
+     */
+    public List<E> findAll(ReadView view) {
+        long start = findAllTimer.start();
+        try {
+            return new ArrayList<>(visibleEntities(view).values());
+        } finally {
+            findAllTimer.stop(start);
+        }
+    }
+
+    /**
+     * Returns a stream over all entities as they were when a read view was opened; see {@link #findAll(ReadView)}.
+     * The entities are read before the stream is returned, so the view may be closed while it is consumed.
+     *
+     * @param view The view to read at.
+     * @return A stream of the entities the view sees.
+     * @throws SnapshotTooOldException If the view expired, or the repository was cleared since it was opened.
+     */
+    public Stream<E> streamAll(ReadView view) {
+        return findAll(view).stream();
+    }
+
+    /**
+     * Sets how many old versions this repository keeps for open read views. Past that bound, the oldest open
+     * views are expired and their versions collected. The default comes from {@link #MAX_RETAINED_VERSIONS_PROPERTY}.
+     *
+     * @param maxVersions The number of old versions above which views expire.
+     */
+    public void setMaxRetainedVersions(long maxVersions) {
+        history.setMaxRetained(maxVersions);
+    }
+
+    /**
+     * Returns the number of old versions this repository keeps for open read views.
+     *
+     * @return The number of versions retained.
+     */
+    public long retainedVersions() {
+        return history.retained();
+    }
+
+    // The entities a view sees, by ID: those in the table, read back to the view, and those deleted since
+    private LongEntityMap<E> visibleEntities(ReadView view) {
+        awaitFullyLoaded();
+        LongEntityMap<E> visible = new LongEntityMap<>();
+        for (E entity : table.values()) {
+            long id = entity.getLongId();
+            E version = history.read(id, view, this::detachedLookup);
+            if (version != null) {
+                visible.put(id, version);
+            }
+        }
+        history.forEachId(id -> {
+            if (!visible.containsKey(id)) {
+                E version = history.read(id, view, this::detachedLookup);
+                if (version != null) {
+                    visible.put(id, version);
+                }
+            }
+        });
+        history.checkNotCleared(view);
+        return visible;
+    }
+
+    /**
+     * Returns a read-only view over all entities in the repository. No copy is made: the view reflects
+     * later writes, and in {@link StorageMode#CONCURRENT} mode it can be iterated while other threads write.
+     * It is a {@link List} so that it can replace a copied list, but it is not random access: iterate it,
+     * as {@link List#get(int)} walks the table up to the index.
+     *
+     * @return An unmodifiable view of all entities.
+     */
+    public List<E> findAllView() {
+        awaitFullyLoaded();
+        return new TableListView<>(table.values());
+    }
+
+    /**
+     * Returns a lazy stream over all entities in the repository. Nothing is copied up front, so a
+     * pipeline that stops early (e.g. with {@code limit}) only touches the entities it consumes.
+     *
+     * @return A stream of all entities.
+     */
+    public Stream<E> streamAll() {
+        awaitFullyLoaded();
+        return table.values().stream();
+    }
+
+    /**
+     * Returns a parallel stream over all entities, for bulk queries such as reports over the whole repository.
+     * The table splits itself along its own storage (slot ranges, segments or row ranges), so the filter, map
+     * and reduce stages of the pipeline run on the common fork/join pool without first copying the entities
+     * into a list. Like {@link #findAllView()}, the stream reflects writes made while it runs.
+     *
+     * @return A parallel stream of all entities.
+     */
+    public Stream<E> parallelStreamAll() {
+        awaitFullyLoaded();
+        return table.values().parallelStream();
+    }
+
+    /**
+     * Retrieves one page of entities in ascending ID order, using the last ID of the previous page as cursor.
+     * <p>
+     * IDs are handed out sequentially, so while the ID space is dense the page is built by probing
+     * the IDs that follow the cursor, which costs O(limit) no matter how large the repository is.
+     * If most IDs have been deleted, or callers saved entities with far-off explicit IDs, the page falls
+     * back to one pass over the table keeping the {@code limit} smallest IDs above the cursor.
+     *
+     * @param afterId The ID after which the page starts, or {@code null} (or 0) for the first page.
+     * @param limit   The maximum number of entities to return.
+     * @return Up to {@code limit} entities whose IDs are greater than {@code afterId}, in ascending ID order.
+     */
+    public List<E> findPage(Long afterId, int limit) {
+        long start = findPageTimer.start();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Page limit must be positive: " + limit);
+            }
+            long cursor = afterId == null ? 0 : afterId;
+            long highestId = Math.max(idCounter.get() - 1, maxExplicitId.get());
+            MappedSnapshot<E> snapshot = pendingSnapshot;
+            long size = table.size() + (snapshot == null ? 0 : snapshot.size());
+            if (highestId - cursor <= DENSE_RATIO * size + limit) {
+                List<E> page = new ArrayList<>((int) Math.min(limit, size));
+                for (long id = cursor + 1; id <= highestId && page.size() < limit; id++) {
+                    E entity = lookup(id);
+                    if (entity != null) {
+                        page.add(entity);
+                    }
+                }
+                return page;
+            }
+            awaitFullyLoaded();
+            return scanPage(cursor, limit, table.values());
+        } finally {
+            findPageTimer.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves one page of entities as they were when a read view was opened, in ascending ID order.
+     * Pages read from the same view fit together: no entity is skipped or repeated because of writes made
+     * between them.
+     *
+     * @param afterId The ID after which the page starts, or {@code null} (or 0) for the first page.
+     * @param limit   The maximum number of entities to return.
+     * @param view    The view to read at.
+     * @return Up to {@code limit} entities the view sees whose IDs are greater than {@code afterId}.
+     * @throws SnapshotTooOldException If the view expired, or the repository was cleared since it was opened.
+     */
+    public List<E> findPage(Long afterId, int limit, ReadView view) {
+        long start = findPageTimer.start();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Page limit must be positive: " + limit);
+            }
+            long cursor = afterId == null ? 0 : afterId;
+            // Every ID the view sees was allocated before it, so the current highest ID bounds them all
+            long highestId = Math.max(idCounter.get() - 1, maxExplicitId.get());
+            MappedSnapshot<E> snapshot = pendingSnapshot;
+            long size = table.size() + (snapshot == null ? 0 : snapshot.size());
+            if (highestId - cursor <= DENSE_RATIO * size + limit) {
+                List<E> page = new ArrayList<>((int) Math.min(limit, size));
+                for (long id = cursor + 1; id <= highestId && page.size() < limit; id++) {
+                    E entity = history.read(id, view, this::detachedLookup);
+                    if (entity != null) {
+                        page.add(entity);
+                    }
+                }
+                return page;
+            }
+            return scanPage(cursor, limit, visibleEntities(view).values());
+        } finally {
+            findPageTimer.stop(start);
+        }
+    }
+
+    private List<E> scanPage(long cursor, int limit, Collection<E> entities) {
+        // Max-heap holding the smallest IDs seen so far above the cursor
+        PriorityQueue<E> smallest = new PriorityQueue<>(limit,
+                Comparator.comparingLong((E entity) -> entity.getLongId()).reversed());
+        for (E entity : entities) {
+            long id = entity.getLongId();
+            if (id <= cursor) {
+                continue;
+            }
+            if (smallest.size() < limit) {
+                smallest.add(entity);
+            } else if (id < smallest.peek().getLongId()) {
+                smallest.poll();
+                smallest.add(entity);
+            }
+        }
+        List<E> page = new ArrayList<>(smallest);
+        page.sort(Comparator.comparingLong(entity -> entity.getLongId()));
+        return page;
     }
 
     /**
      * Deletes all entities from the repository.
      */
     public void deleteAll() {
-        table.clear();
+        RepositoryJournal<E> journal = this.journal;
+        // Every stripe, so that no write is applied after the clear but logged before it
+        ReentrantLock[] locks = journal == null ? null : journal.lockAll();
+        long lsn = 0;
+        try {
+            clearTable();
+            if (journal != null) {
+                lsn = journal.logClear();
+            }
+        } finally {
+            if (locks != null) {
+                RepositoryJournal.unlockAll(locks);
+            }
+        }
+        if (journal != null) {
+            journal.sync(lsn);
+        }
+        for (RepositoryListener<E> listener : listeners) {
+            listener.onCleared();
+        }
     }
 
+    /**
+     * Replaces a stored entity with the given one, matched by ID, and increments its version.
+     * <p>
+     * Updates are optimistic: if the given entity is a copy, such as one taken with {@code copy()} or built from
+     * a request, it is only stored if its version is still that of the stored entity. The version is compared and
+     * incremented in the same atomic step as the replacement, so of several writers updating copies of the same
+     * version, exactly one succeeds and the others get a {@link StaleEntityException} instead of silently
+     * overwriting it. A copy that was never read, with version 0, is therefore always stale; only a copy given
+     * {@link LongEntity#ANY_VERSION} overwrites the stored entity whatever its version. Updating the stored
+     * instance itself, after changing it in place, is never stale, but read views opened before then see the
+     * change as soon as it is made.
+     *
+     * @param entity The new state of the entity.
+     * @return The entity that was stored before, or {@code null} if no entity has that ID.
+     * @throws StaleEntityException If the stored entity changed since the given copy was read.
+     */
     public E update(E entity) {
-        return table.replace(entity.getId(),entity);
+        long start = updateTimer.start();
+        try {
+            E previous;
+            long id = entity.getLongId();
+            loadFromSnapshot(id);
+            Consumer<E> check = versionCheck(entity);
+            RepositoryJournal<E> journal = this.journal;
+            ReentrantLock lock = journal == null ? null : journal.lockFor(id);
+            long lsn = 0;
+            if (lock != null) {
+                lock.lock();
+            }
+            try (VersionHistory<E>.Write write = history.begin(id)) {
+                write.prepare(id);
+                previous = table.replace(id, entity, check);
+                if (previous == null) {
+                    write.discard();
+                } else {
+                    write.applied(previous == entity ? copyOf(previous) : previous);
+                    if (journal != null) {
+                        lsn = journal.logUpdate(entity);
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+            if (journal != null) {
+                journal.sync(lsn);
+            }
+            if (previous != null) {
+                for (RepositoryListener<E> listener : listeners) {
+                    listener.onUpdated(previous, entity);
+                }
+            }
+            return previous;
+        } finally {
+            updateTimer.stop(start);
+        }
+    }
+
+    /**
+     * Saves several entities at once. Entities without an ID get consecutive IDs from a single allocation.
+     * The batch is all or nothing: if any entity has the ID of a stored entity, or two entities of the batch
+     * share an ID, nothing is saved and the generated IDs and versions are taken back.
+     * In durable mode the whole batch is applied under one acquisition of its locks and logged as one record.
+     *
+     * @param entities The entities to save.
+     * @return The saved entities, in the order given.
+     * @throws EntityAlreadyExistsException If an entity with the same ID already exists in the repository
+     *                                      or appears twice in the batch.
+     */
+    public List<E> saveAll(Collection<E> entities) throws EntityAlreadyExistsException {
+        long start = saveAllTimer.start();
+        try {
+            List<E> batch = new ArrayList<>(entities);
+            int size = batch.size();
+            boolean[] generated = new boolean[size];
+            int toGenerate = 0;
+            for (int i = 0; i < size; i++) {
+                if (!batch.get(i).hasId()) {
+                    generated[i] = true;
+                    toGenerate++;
+                }
+            }
+            // One allocation for the whole batch
+            long nextId = toGenerate == 0 ? 0 : idCounter.getAndAdd(toGenerate);
+            for (int i = 0; i < size; i++) {
+                if (generated[i]) {
+                    batch.get(i).setId(nextId++);
+                }
+                batch.get(i).setVersion(1);
+            }
+
+            int collision;
+            while ((collision = insertAll(batch)) >= 0) {
+                if (!generated[collision]) {
+                    for (int i = 0; i < size; i++) {
+                        batch.get(i).setVersion(0);
+                        if (generated[i]) {
+                            batch.get(i).setId(null);
+                        }
+                    }
+                    throw new EntityAlreadyExistsException(batch.get(collision).getClass());
+                }
+                // A generated ID was taken by an entity saved with an explicit ID; move it on and retry
+                batch.get(collision).setId(idCounter.getAndIncrement());
+            }
+
+            for (int i = 0; i < size; i++) {
+                E entity = batch.get(i);
+                if (!generated[i]) {
+                    maxExplicitId.accumulateAndGet(entity.getLongId(), Math::max);
+                }
+                for (RepositoryListener<E> listener : listeners) {
+                    listener.onSaved(entity);
+                }
+            }
+            return batch;
+        } finally {
+            saveAllTimer.stop(start);
+        }
+    }
+
+    /**
+     * Replaces several stored entities at once, each matched by ID. Entities whose ID is not stored are skipped,
+     * and so are stale copies, which {@link #update} would reject: compare the result with the size of the batch
+     * to detect them. In durable mode the whole batch is applied under one acquisition of its locks and logged
+     * as one record.
+     *
+     * @param entities The new states of the entities.
+     * @return The number of entities that were replaced.
+     */
+    public int updateAll(Collection<E> entities) {
+        long start = updateAllTimer.start();
+        try {
+            List<E> batch = new ArrayList<>(entities);
+            long[] ids = new long[batch.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = batch.get(i).getLongId();
+                loadFromSnapshot(ids[i]);
+            }
+            List<E> updated = new ArrayList<>(batch.size());
+            List<E> previous = new ArrayList<>(batch.size());
+            RepositoryJournal<E> journal = this.journal;
+            ReentrantLock[] locks = journal == null ? null : journal.lockAll(ids);
+            long lsn = 0;
+            try (VersionHistory<E>.Write write = history.begin(ids)) {
+                for (int i = 0; i < ids.length; i++) {
+                    E replaced;
+                    write.prepare(ids[i]);
+                    try {
+                        replaced = table.replace(ids[i], batch.get(i), versionCheck(batch.get(i)));
+                    } catch (StaleEntityException e) {
+                        write.discard();
+                        continue;
+                    }
+                    if (replaced == null) {
+                        write.discard();
+                    } else {
+                        write.applied(replaced == batch.get(i) ? copyOf(replaced) : replaced);
+                        updated.add(batch.get(i));
+                        previous.add(replaced);
+                    }
+                }
+                if (journal != null && !updated.isEmpty()) {
+                    lsn = journal.logUpdateAll(updated);
+                }
+            } finally {
+                if (locks != null) {
+                    RepositoryJournal.unlockAll(locks);
+                }
+            }
+            if (journal != null) {
+                journal.sync(lsn);
+            }
+            for (int i = 0; i < updated.size(); i++) {
+                for (RepositoryListener<E> listener : listeners) {
+                    listener.onUpdated(previous.get(i), updated.get(i));
+                }
+            }
+            return updated.size();
+        } finally {
+            updateAllTimer.stop(start);
+        }
+    }
+
+    /**
+     * Deletes several entities at once by ID. IDs that are not stored, and {@code null} IDs, are ignored.
+     * In durable mode the whole batch is applied under one acquisition of its locks and logged as one record.
+     *
+     * @param ids The IDs of the entities to delete.
+     */
+    public void deleteAllById(Collection<Long> ids) {
+        long start = deleteAllByIdTimer.start();
+        try {
+            removeAllById(ids, false);
+        } finally {
+            deleteAllByIdTimer.stop(start);
+        }
+    }
+
+    /**
+     * Removes several entities that have been copied to an archive. They are removed like by
+     * {@link #deleteAllById}, and logged as deleted, but listeners are told with
+     * {@link RepositoryListener#onArchived}.
+     *
+     * @param ids The IDs of the archived entities.
+     */
+    protected void archiveAllById(Collection<Long> ids) {
+        removeAllById(ids, true);
+    }
+
+    /**
+     * Keeps generated IDs above an ID used outside the table, such as that of an archived entity.
+     *
+     * @param id The highest ID in use.
+     */
+    protected void reserveIdsUpTo(long id) {
+        idCounter.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Called when an entity is about to replace a different instance stored under its ID, by an update or
+     * while recovering, so that it can take over state the repositories keep on the stored instance rather
+     * than in the copy. It runs under the write to the ID, before the replacement; by default it does nothing.
+     *
+     * @param stored      The entity stored.
+     * @param replacement The entity about to replace it.
+     */
+    protected void carryOver(E stored, E replacement) {
+    }
+
+    /**
+     * Returns a detached copy of an entity. When the stored instance itself is updated after being changed in
+     * place, the version kept for read views is such a copy, so that later changes in place do not show through
+     * it; the change already made does, which is why edits should be made on copies. By default the entity is
+     * returned as it is.
+     *
+     * @param entity The stored entity.
+     * @return A copy of it that later changes to the entity do not affect.
+     */
+    protected E copyOf(E entity) {
+        return entity;
+    }
+
+    private void removeAllById(Collection<Long> ids, boolean archived) {
+        long[] batch = ids.stream().filter(Objects::nonNull).mapToLong(Long::longValue).toArray();
+        for (long id : batch) {
+            loadFromSnapshot(id);
+        }
+        List<E> removed = new ArrayList<>(batch.length);
+        RepositoryJournal<E> journal = this.journal;
+        ReentrantLock[] locks = journal == null ? null : journal.lockAll(batch);
+        long lsn = 0;
+        try (VersionHistory<E>.Write write = history.begin(batch)) {
+            for (long id : batch) {
+                write.prepare(id);
+                E entity = table.remove(id);
+                if (entity == null) {
+                    write.discard();
+                } else {
+                    write.applied(entity);
+                    removed.add(entity);
+                }
+            }
+            if (journal != null && !removed.isEmpty()) {
+                lsn = journal.logDeleteAll(removed.stream().mapToLong(LongEntity::getLongId).toArray());
+            }
+        } finally {
+            if (locks != null) {
+                RepositoryJournal.unlockAll(locks);
+            }
+        }
+        if (journal != null) {
+            journal.sync(lsn);
+        }
+        for (E entity : removed) {
+            for (RepositoryListener<E> listener : listeners) {
+                if (archived) {
+                    listener.onArchived(entity);
+                } else {
+                    listener.onDeleted(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds several entities by ID.
+     *
+     * @param ids The IDs of the entities to find.
+     * @return The entities found, in the order of {@code ids}. Unknown and {@code null} IDs are skipped.
+     */
+    public List<E> findAllById(Collection<Long> ids) {
+        long start = findAllByIdTimer.start();
+        try {
+            List<E> found = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                E entity = id == null ? null : lookup(id);
+                if (entity != null) {
+                    found.add(entity);
+                }
+            }
+            return found;
+        } finally {
+            findAllByIdTimer.stop(start);
+        }
+    }
+
+    /**
+     * Registers a listener that is notified after every save, update and delete.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(RepositoryListener<E> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Switches the repository to durable mode. The repository is first rebuilt from the latest snapshot
+     * and write-ahead log found in {@code directory}. From then on, every save, update and delete is
+     * logged before it returns, as defined by the fsync policy of {@code options}.
+     * <p>
+     * The snapshot is memory-mapped rather than read, so this returns as soon as the log written after it
+     * has been replayed. In {@link StorageMode#CONCURRENT} mode a background thread then moves the snapshot
+     * entities into the table, while lookups by ID load the entities they need on the spot. Operations that
+     * see every entity, such as {@link #findAll()}, wait for that warm-up; see {@link #whenFullyLoaded()}.
+     *
+     * @param directory The directory holding the snapshot and log of this repository.
+     * @param codec     The codec used to store the entities.
+     * @param options   The durability options.
+     * @throws IOException If the stored data cannot be read or the log cannot be opened.
+     */
+    public synchronized void enableDurability(Path directory, EntityCodec<E> codec, DurabilityOptions options)
+            throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is already durable.");
+        }
+        Iterable<E> entities = () -> {
+            awaitFullyLoaded();
+            return table.values().iterator();
+        };
+        journal = RepositoryJournal.open(directory, getClass().getSimpleName(), codec, options, entities,
+                new RepositoryJournal.Replayer<>() {
+                    @Override
+                    public void attach(MappedSnapshot<E> snapshot) {
+                        pendingSnapshot = snapshot;
+                        fullyLoaded = new CompletableFuture<>();
+                        // Generated IDs must stay ahead of every snapshot entity, loaded or not
+                        idCounter.accumulateAndGet(snapshot.maxId() + 1, Math::max);
+                    }
+
+                    @Override
+                    public void restore(E entity) {
+                        restoreEntity(entity);
+                    }
+
+                    @Override
+                    public void remove(long id) {
+                        loadFromSnapshot(id);
+                        E removed = table.remove(id);
+                        if (removed != null) {
+                            for (RepositoryListener<E> listener : listeners) {
+                                listener.onDeleted(removed);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void clear() {
+                        clearTable();
+                        for (RepositoryListener<E> listener : listeners) {
+                            listener.onCleared();
+                        }
+                    }
+                });
+        startWarmUp();
+    }
+
+    /**
+     * Returns a future that completes once every entity of the recovered snapshot has been loaded.
+     * It is already complete when there was no snapshot to load.
+     *
+     * @return A future completing when the repository is fully loaded.
+     */
+    public CompletableFuture<Void> whenFullyLoaded() {
+        return fullyLoaded.copy();
+    }
+
+    /**
+     * Blocks until every entity of the recovered snapshot has been loaded.
+     * Subclasses call this before relying on state built by the listeners, such as secondary indexes.
+     */
+    protected void awaitFullyLoaded() {
+        CompletableFuture<Void> loading = fullyLoaded;
+        if (!loading.isDone()) {
+            loading.join();
+        }
+    }
+
+    /**
+     * Flushes and closes the write-ahead log and returns the repository to in-memory mode.
+     * Does nothing if the repository is not durable.
+     *
+     * @throws IOException If pending log records cannot be written.
+     */
+    public synchronized void disableDurability() throws IOException {
+        if (journal != null) {
+            RepositoryJournal<E> closing = journal;
+            journal = null;
+            closing.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the repository and deletes the log segments it covers, which shortens the next recovery.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     * @throws IllegalStateException If the repository is not durable.
+     */
+    public void snapshot() throws IOException {
+        RepositoryJournal<E> journal = this.journal;
+        if (journal == null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is not durable.");
+        }
+        journal.snapshot();
+    }
+
+    /**
+     * Returns why the last snapshot of the repository failed, whether it was written in the background once
+     * enough writes were logged or by {@link #snapshot()}. Failures are also counted in the
+     * {@code persistence.<repository>.snapshotFailures} metric.
+     *
+     * @return The exception thrown by the last snapshot, or {@code null} if it succeeded, none was taken, or
+     * the repository is not durable.
+     */
+    public Exception getLastSnapshotFailure() {
+        RepositoryJournal<E> journal = this.journal;
+        return journal == null ? null : journal.getLastSnapshotFailure();
+    }
+
+    /**
+     * Tells whether writes to this repository are logged to disk.
+     *
+     * @return {@code true} in durable mode.
+     */
+    public boolean isDurable() {
+        return journal != null;
+    }
+
+    // Inserts the entity if its ID is free, logging the insert in durable mode
+    private boolean insert(E entity) {
+        long id = entity.getLongId();
+        loadFromSnapshot(id);
+        RepositoryJournal<E> journal = this.journal;
+        ReentrantLock lock = journal == null ? null : journal.lockFor(id);
+        long lsn = 0;
+        if (lock != null) {
+            lock.lock();
+        }
+        try (VersionHistory<E>.Write write = history.begin(id)) {
+            write.prepare(id);
+            if (table.putIfAbsent(id, entity) != null) {
+                write.discard();
+                return false;
+            }
+            write.applied(null);
+            if (journal != null) {
+                try {
+                    lsn = journal.logSave(entity);
+                } catch (UncheckedIOException e) {
+                    table.remove(id, entity);
+                    write.discard();
+                    entity.setVersion(0);
+                    throw e;
+                }
+            }
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+        if (journal != null) {
+            journal.sync(lsn);
+        }
+        return true;
+    }
+
+    /*
+     * Inserts every entity of the batch, or none. Returns -1 on success, otherwise the index of the first
+     * entity whose ID was taken, after removing the entities of the batch that were already inserted.
+     */
+    private int insertAll(List<E> batch) {
+        long[] ids = new long[batch.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = batch.get(i).getLongId();
+            loadFromSnapshot(ids[i]);
+        }
+        RepositoryJournal<E> journal = this.journal;
+        ReentrantLock[] locks = journal == null ? null : journal.lockAll(ids);
+        long lsn = 0;
+        try (VersionHistory<E>.Write write = history.begin(ids)) {
+            for (int i = 0; i < ids.length; i++) {
+                write.prepare(ids[i]);
+                if (table.putIfAbsent(ids[i], batch.get(i)) != null) {
+                    removeAll(batch, ids, i);
+                    write.discardAll();
+                    return i;
+                }
+                write.applied(null);
+            }
+            if (journal != null) {
+                try {
+                    lsn = journal.logSaveAll(batch);
+                } catch (UncheckedIOException e) {
+                    removeAll(batch, ids, ids.length);
+                    write.discardAll();
+                    for (E entity : batch) {
+                        entity.setVersion(0);
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            if (locks != null) {
+                RepositoryJournal.unlockAll(locks);
+            }
+        }
+        if (journal != null) {
+            journal.sync(lsn);
+        }
+        return -1;
+    }
+
+    private void removeAll(List<E> batch, long[] ids, int count) {
+        for (int i = 0; i < count; i++) {
+            table.remove(ids[i], batch.get(i));
+        }
+    }
+
+    /*
+     * Check run by the table, under its write to the ID, before an entity replaces the stored one. A copy is
+     * rejected if the stored entity moved past the version the copy was read at; whatever is written then
+     * becomes the next version.
+     */
+    private Consumer<E> versionCheck(E entity) {
+        long expected = entity.getVersion();
+        return stored -> {
+            long version = stored.getVersion();
+            if (stored != entity) {
+                if (expected != LongEntity.ANY_VERSION && version != expected) {
+                    throw new StaleEntityException(entity.getClass(), entity.getLongId(), expected, version);
+                }
+                carryOver(stored, entity);
+            }
+            entity.setVersion(version + 1);
+        };
+    }
+
+    // Puts back an entity read from disk, keeping generated IDs ahead of every recovered one
+    private void restoreEntity(E entity) {
+        long id = entity.getLongId();
+        loadFromSnapshot(id);
+        // Versions are not logged, so they count again from the first recovered state
+        E stored = table.get(id);
+        entity.setVersion(stored == null ? 1 : stored.getVersion() + 1);
+        if (stored != null && stored != entity) {
+            carryOver(stored, entity);
+        }
+        E previous = table.put(id, entity);
+        idCounter.accumulateAndGet(id + 1, Math::max);
+        for (RepositoryListener<E> listener : listeners) {
+            if (previous == null) {
+                listener.onSaved(entity);
+            } else {
+                listener.onUpdated(previous, entity);
+            }
+        }
+    }
+
+    // Finds an entity in the table, loading it from the snapshot if it has not been loaded yet
+    private E lookup(long id) {
+        E entity = table.get(id);
+        return entity != null || pendingSnapshot == null ? entity : loadFromSnapshot(id);
+    }
+
+    // Finds an entity as a state that later writes to the table leave unchanged, for the history to hand out
+    private E detachedLookup(long id) {
+        E entity = lookup(id);
+        return entity == null ? null : table.detached(entity);
+    }
+
+    /*
+     * Moves the snapshot entity with the given ID into the table, unless it was loaded before, and returns
+     * whatever the table holds for that ID afterwards. Writes call this first so they always apply
+     * to the loaded entity, and so a later load cannot bring back an entity they replaced or deleted.
+     */
+    private E loadFromSnapshot(long id) {
+        MappedSnapshot<E> snapshot = pendingSnapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        int position = snapshot.indexOf(id);
+        return position < 0 ? table.get(id) : loadAt(snapshot, position, id);
+    }
+
+    private E loadAt(MappedSnapshot<E> snapshot, int position, long id) {
+        AtomicReference<E> loaded = new AtomicReference<>();
+        E entity;
+        snapshotLock.readLock().lock();
+        try {
+            if (pendingSnapshot != snapshot) {
+                return table.get(id);
+            }
+            // Claiming inside computeIfAbsent makes a concurrent lookup of the same ID wait for the load
+            entity = table.computeIfAbsent(id, key -> {
+                if (snapshot.isClaimed(position)) {
+                    return null;
+                }
+                E decoded = snapshot.read(position);
+                decoded.setVersion(1);
+                snapshot.claim(position);
+                loaded.set(decoded);
+                return decoded;
+            });
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        if (loaded.get() != null) {
+            for (RepositoryListener<E> listener : listeners) {
+                listener.onSaved(loaded.get());
+            }
+        }
+        return entity;
+    }
+
+    private void startWarmUp() {
+        MappedSnapshot<E> snapshot = pendingSnapshot;
+        CompletableFuture<Void> loading = fullyLoaded;
+        if (snapshot == null) {
+            // No snapshot, or the replayed log cleared it
+            loading.complete(null);
+        } else if (mode.isConcurrent()) {
+            Thread warmUp = new Thread(() -> warmUp(snapshot, loading), getClass().getSimpleName() + "-warm-up");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        } else {
+            // A single-threaded table cannot be filled behind the caller's back
+            warmUp(snapshot, loading);
+        }
+    }
+
+    private void warmUp(MappedSnapshot<E> snapshot, CompletableFuture<Void> loading) {
+        try {
+            for (int position = 0; position < snapshot.size() && pendingSnapshot == snapshot; position++) {
+                loadAt(snapshot, position, snapshot.idAt(position));
+            }
+            snapshotLock.writeLock().lock();
+            try {
+                if (pendingSnapshot == snapshot) {
+                    pendingSnapshot = null;
+                }
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            loading.complete(null);
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+        }
+    }
+
+    // Cleared entities are not versioned: the read views opened before expire
+    private void clearTable() {
+        history.clear(() -> {
+            snapshotLock.writeLock().lock();
+            try {
+                pendingSnapshot = null;
+                table.clear();
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+        });
+    }
+
+    // A list over the values of a table, which iterates and streams them in place
+    private static final class TableListView<E> extends AbstractList<E> {
+
+        private final Collection<E> values;
+
+        TableListView(Collection<E> values) {
+            this.values = Collections.unmodifiableCollection(values);
+        }
+
+        @Override
+        public E get(int index) {
+            if (index >= 0) {
+                int position = 0;
+                for (E entity : values) {
+                    if (position++ == index) {
+                        return entity;
+                    }
+                }
+            }
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return values.iterator();
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return values.spliterator();
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+            values.forEach(action);
+        }
     }
 }
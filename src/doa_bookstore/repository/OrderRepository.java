@@ -1,11 +1,48 @@
 package doa_bookstore.repository;
 
+import doa_bookstore.analytics.BookSales;
+import doa_bookstore.analytics.SalesAnalytics;
+import doa_bookstore.entity.Book;
 import doa_bookstore.entity.Orders;
+import doa_bookstore.persistence.OrderArchive;
+import doa_bookstore.repository.index.SecondaryIndex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class OrderRepository extends MyCrudRepository<Orders>{
 
     private static OrderRepository instance;
-    private OrderRepository(){};
+
+    // Sales aggregates, kept in sync with the table through the repository listeners
+    private final SalesAnalytics salesAnalytics =
+            new SalesAnalytics(id -> BookRepository.getInstance().findById(id).orElse(null));
+
+    // Secondary indexes; pending orders come out oldest first
+    private final SecondaryIndex<Orders.OrderStatus, Orders> statusIndex =
+            SecondaryIndex.forEnumSorted(Orders.OrderStatus.class, Orders::getStatus);
+    private final SecondaryIndex<String, Orders> customerIndex = new SecondaryIndex<>(Orders::getCustomerName);
+    // Live orders by the UTC day they were placed, which partitions them for date range queries and archiving
+    private final SecondaryIndex<Long, Orders> dayIndex = SecondaryIndex.sorted(
+            order -> order.getOrderDate() == null ? null : OrderArchive.epochDay(order.getOrderDate()));
+
+    // Older orders moved out of memory, or null if orders are never archived
+    private volatile OrderArchive archive;
+
+    private OrderRepository(){
+        super(StorageMode.CONCURRENT);
+        addListener(salesAnalytics);
+        addListener(statusIndex);
+        addListener(customerIndex);
+        addListener(dayIndex);
+    }
     @SuppressWarnings("unchecked")
     public static synchronized OrderRepository getInstance() {
         if (instance == null) {
@@ -19,4 +56,193 @@ public class OrderRepository extends MyCrudRepository<Orders>{
         return instance;
     }
 
+    /**
+     * Finds orders with the given status, lowest IDs first.
+     * The status of an order is indexed when the order is saved or updated, so this costs O(limit).
+     * After a restart, this waits until the recovered orders have all been indexed.
+     *
+     * @param status The status to look for.
+     * @param limit  The maximum number of orders to return.
+     * @return Up to {@code limit} orders with that status.
+     */
+    public List<Orders> findByStatus(Orders.OrderStatus status, int limit) {
+        awaitFullyLoaded();
+        return statusIndex.resolve(status, this::findById, limit);
+    }
+
+    /**
+     * Finds every order placed by the given customer.
+     *
+     * @param customerName The name of the customer.
+     * @return The orders of that customer.
+     */
+    public List<Orders> findByCustomerName(String customerName) {
+        awaitFullyLoaded();
+        return customerIndex.resolve(customerName, this::findById);
+    }
+
+    /**
+     * Attaches the archive that older orders are moved to by {@link #archiveOrdersBefore(Date)}. Archived
+     * orders are no longer in the repository, so they are counted again in the sales aggregates, which costs
+     * one read of the whole archive; an archive is therefore attached once, at startup. An archived order still
+     * in the repository, because archiving was interrupted before it was removed, is removed now.
+     * This waits until the recovered orders have all been loaded.
+     *
+     * @param archive The archive, or {@code null} to detach the current one.
+     * @throws IOException If the archive cannot be read.
+     * @throws IllegalStateException If another archive is attached.
+     */
+    public synchronized void attachArchive(OrderArchive archive) throws IOException {
+        if (archive != null && this.archive != null) {
+            throw new IllegalStateException("An archive is already attached to " + getClass().getSimpleName() + ".");
+        }
+        awaitFullyLoaded();
+        if (archive != null) {
+            reserveIdsUpTo(archive.maxId());
+            List<Long> duplicates = new ArrayList<>();
+            archive.forEach(order -> {
+                if (existsById(order.getLongId())) {
+                    duplicates.add(order.getLongId());
+                } else {
+                    salesAnalytics.onSaved(order);
+                    salesAnalytics.onArchived(order);
+                }
+            });
+            archiveAllById(duplicates);
+        }
+        this.archive = archive;
+    }
+
+    /**
+     * Moves the completed and cancelled orders placed before a date to the archive, one segment per day.
+     * Orders are written to the archive before they are removed from the repository, and they keep counting
+     * in the sales aggregates. Only the days before the cutoff are visited.
+     *
+     * @param cutoff Orders placed strictly before this date are archived.
+     * @return The number of orders archived.
+     * @throws IOException If the archive cannot be written. Orders that were not removed stay in the repository.
+     * @throws IllegalStateException If no archive is attached.
+     */
+    public synchronized int archiveOrdersBefore(Date cutoff) throws IOException {
+        OrderArchive archive = this.archive;
+        if (archive == null) {
+            throw new IllegalStateException("No archive is attached to " + getClass().getSimpleName() + ".");
+        }
+        awaitFullyLoaded();
+        List<Orders> archived = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (Orders order : dayIndex.resolveRange(Long.MIN_VALUE, OrderArchive.epochDay(cutoff), this::findById)) {
+            Orders.OrderStatus status = order.getStatus();
+            if ((status == Orders.OrderStatus.COMPLETED || status == Orders.OrderStatus.CANCELLED)
+                    && order.getOrderDate().before(cutoff)) {
+                archived.add(order);
+                ids.add(order.getLongId());
+            }
+        }
+        archive.write(archived);
+        archiveAllById(ids);
+        return ids.size();
+    }
+
+    /**
+     * Finds the orders placed in a range of dates, live or archived. Live orders are found through the days
+     * of the range, and only the archive segments of those days are read.
+     *
+     * @param from The earliest date, included.
+     * @param to   The latest date, excluded.
+     * @return The matching orders, oldest first.
+     * @throws UncheckedIOException If the archive cannot be read.
+     */
+    public List<Orders> findByDateRange(Date from, Date to) {
+        awaitFullyLoaded();
+        List<Orders> result = new ArrayList<>();
+        if (from.before(to)) {
+            long fromMillis = from.getTime();
+            long toMillis = to.getTime();
+            for (Orders order : dayIndex.resolveRange(OrderArchive.epochDay(from),
+                    OrderArchive.epochDay(new Date(toMillis - 1)), this::findById)) {
+                long date = order.getOrderDate().getTime();
+                if (date >= fromMillis && date < toMillis) {
+                    result.add(order);
+                }
+            }
+            OrderArchive archive = this.archive;
+            if (archive != null) {
+                Set<Long> liveIds = new HashSet<>();
+                result.forEach(order -> liveIds.add(order.getLongId()));
+                try {
+                    // An order being archived may be in both for a moment
+                    for (Orders order : archive.findByDateRange(from, to)) {
+                        if (!liveIds.contains(order.getLongId())) {
+                            result.add(order);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to read archived orders", e);
+                }
+            }
+            result.sort(Comparator.comparing(Orders::getOrderDate).thenComparing(Orders::getLongId));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the best-selling books, counting every order that is not cancelled.
+     * After a restart, this waits until the recovered orders have all been counted.
+     *
+     * @param n The maximum number of books to return.
+     * @return Up to {@code n} books and their units sold, most units first.
+     */
+    public List<BookSales> findTopSellingBooks(int n) {
+        awaitFullyLoaded();
+        return salesAnalytics.topBooks(n);
+    }
+
+    /**
+     * Counts the units sold of one book.
+     *
+     * @param bookId The ID of the book.
+     * @return The number of units sold.
+     */
+    public long countUnitsSoldOfBook(long bookId) {
+        awaitFullyLoaded();
+        return salesAnalytics.unitsSoldOfBook(bookId);
+    }
+
+    /**
+     * Counts the units sold of all the books of an author.
+     *
+     * @param authorId The ID of the author.
+     * @return The number of units sold.
+     */
+    public long countUnitsSoldByAuthor(long authorId) {
+        awaitFullyLoaded();
+        return salesAnalytics.unitsSoldByAuthor(authorId);
+    }
+
+    /**
+     * Counts the units sold of each genre.
+     *
+     * @return The number of units sold per genre, for every genre.
+     */
+    public Map<Book.Genre, Long> countUnitsSoldPerGenre() {
+        awaitFullyLoaded();
+        return salesAnalytics.unitsSoldPerGenre();
+    }
+
+    /**
+     * Counts the units sold of one genre.
+     *
+     * @param genre The genre.
+     * @return The number of units sold.
+     */
+    public long countUnitsSoldByGenre(Book.Genre genre) {
+        awaitFullyLoaded();
+        return salesAnalytics.unitsSoldByGenre(genre);
+    }
+
+    @Override
+    protected Orders copyOf(Orders order) {
+        return order.copy();
+    }
 }
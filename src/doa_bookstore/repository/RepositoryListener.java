@@ -0,0 +1,53 @@
+package doa_bookstore.repository;
+
+/**
+ * Callback interface for components that need to follow the writes made to a {@link MyCrudRepository},
+ * such as secondary indexes. Listeners are invoked on the writing thread, after the change has been
+ * applied to the repository.
+ *
+ * @param <E> The type of entity stored in the repository.
+ */
+public interface RepositoryListener<E> {
+
+    /**
+     * Called after a new entity has been saved.
+     *
+     * @param entity The saved entity, with its ID assigned.
+     */
+    default void onSaved(E entity) {
+    }
+
+    /**
+     * Called after an entity has been replaced by {@link MyCrudRepository#update}.
+     *
+     * @param previous The entity that was stored before the update. May be the same instance as {@code entity}.
+     * @param entity   The entity now stored.
+     */
+    default void onUpdated(E previous, E entity) {
+    }
+
+    /**
+     * Called after an entity has been deleted.
+     *
+     * @param entity The deleted entity.
+     */
+    default void onDeleted(E entity) {
+    }
+
+    /**
+     * Called after an entity has been moved out of the repository into an archive, where it is kept but no
+     * longer changes. By default it is handled like a deletion; listeners that aggregate over every entity
+     * ever stored, rather than over the entities in the repository, keep what it contributed.
+     *
+     * @param entity The archived entity.
+     */
+    default void onArchived(E entity) {
+        onDeleted(entity);
+    }
+
+    /**
+     * Called after every entity has been deleted by {@link MyCrudRepository#deleteAll()}.
+     */
+    default void onCleared() {
+    }
+}
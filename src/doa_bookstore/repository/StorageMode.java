@@ -0,0 +1,41 @@
+package doa_bookstore.repository;
+
+import doa_bookstore.repository.table.ColumnarBookTable;
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+import doa_bookstore.repository.table.LongEntityMap;
+
+/**
+ * Storage strategies available to a {@link MyCrudRepository}.
+ * Each repository picks its mode once, when it is constructed.
+ */
+public enum StorageMode {
+
+    /**
+     * Plain {@link LongEntityMap} storage. Cheapest option, but only safe when the repository
+     * is accessed by a single thread at a time.
+     */
+    SINGLE_THREADED,
+
+    /**
+     * {@link ConcurrentLongEntityMap} storage. Reads are usually lock-free and writes only
+     * contend on the segment they touch, so the repository can be shared by many threads without
+     * losing saves or handing out duplicate IDs.
+     */
+    CONCURRENT,
+
+    /**
+     * Column-per-field storage such as {@link ColumnarBookTable}, as thread-safe as {@link #CONCURRENT}.
+     * It trades some lookup speed for a much smaller heap footprint on large catalogs. The table is specific
+     * to an entity type, so only repositories that supply one accept this mode.
+     */
+    COLUMNAR;
+
+    /**
+     * Tells whether repositories in this mode may be shared by many threads.
+     *
+     * @return {@code true} unless the mode is {@link #SINGLE_THREADED}.
+     */
+    public boolean isConcurrent() {
+        return this != SINGLE_THREADED;
+    }
+}
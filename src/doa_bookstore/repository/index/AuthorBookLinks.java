@@ -0,0 +1,125 @@
+package doa_bookstore.repository.index;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.BookIds;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Keeps the author side of the book-author relationship: as a {@link RepositoryListener} of the book repository,
+ * it adds the ID of every book saved to the {@link Author#getBookIds() book IDs} of its author, moves it when the
+ * book changes author, and removes it when the book is deleted. The IDs are those of the stored author, so the
+ * books of an author are read from the author itself, in O(result) and without locking.
+ * <p>
+ * Like a {@link SecondaryIndex}, it remembers the author each book was linked to, because books are usually
+ * updated in place and the old author cannot be read back from them. All changes for one book are serialized;
+ * changes to the books of one author only contend on its compare-and-set. The {@link #authorListener()} forgets
+ * those authors again once they are deleted from the author repository.
+ */
+public class AuthorBookLinks implements RepositoryListener<Book> {
+
+    private final Function<Long, Optional<Author>> authors;
+    private final ConcurrentHashMap<Long, Author> authorByBook = new ConcurrentHashMap<>();
+    // The author each author ID was last linked through, for authors the repository does not hold
+    private final ConcurrentHashMap<Long, Author> linkedAuthors = new ConcurrentHashMap<>();
+    private final RepositoryListener<Author> authorListener = new RepositoryListener<>() {
+        @Override
+        public void onDeleted(Author author) {
+            if (author.getId() != null) {
+                linkedAuthors.remove(author.getId());
+            }
+        }
+
+        @Override
+        public void onCleared() {
+            linkedAuthors.clear();
+        }
+    };
+
+    /**
+     * Creates links resolving authors through the given function.
+     *
+     * @param authors Function finding a stored author by ID, typically {@code authorRepository::findById}.
+     */
+    public AuthorBookLinks(Function<Long, Optional<Author>> authors) {
+        this.authors = authors;
+    }
+
+    /**
+     * Returns the IDs of the books linked to an author: those of the stored author, or if it is not stored,
+     * those of the author instance books were last linked through.
+     *
+     * @param authorId The ID of the author.
+     * @return The IDs of the author's books, empty if the author is unknown.
+     */
+    public BookIds find(Long authorId) {
+        if (authorId == null) {
+            return BookIds.EMPTY;
+        }
+        Author author = authors.apply(authorId).orElseGet(() -> linkedAuthors.get(authorId));
+        return author == null ? BookIds.EMPTY : author.getBookIds();
+    }
+
+    /**
+     * Returns the listener to register with the author repository, so that a deleted author is no longer found
+     * through the instance its books were last linked through.
+     *
+     * @return A listener of the author repository.
+     */
+    public RepositoryListener<Author> authorListener() {
+        return authorListener;
+    }
+
+    @Override
+    public void onSaved(Book book) {
+        relink(book.getId(), storedAuthorOf(book));
+    }
+
+    @Override
+    public void onUpdated(Book previous, Book book) {
+        relink(book.getId(), storedAuthorOf(book));
+    }
+
+    @Override
+    public void onDeleted(Book book) {
+        relink(book.getId(), null);
+    }
+
+    @Override
+    public void onCleared() {
+        authorByBook.forEach((bookId, author) -> author.removeBookId(bookId));
+        authorByBook.clear();
+        linkedAuthors.clear();
+    }
+
+    // The book's author as stored in its repository, whose book IDs every copy of the author shares
+    private Author storedAuthorOf(Book book) {
+        Author author = book.getAuthor();
+        if (author == null || author.getId() == null) {
+            return null;
+        }
+        return authors.apply(author.getId()).orElse(author);
+    }
+
+    private void relink(Long bookId, Author newAuthor) {
+        // compute() locks the book's bin, serializing concurrent re-linking of the same book
+        authorByBook.compute(bookId, (ignored, oldAuthor) -> {
+            if (oldAuthor != null && newAuthor != null && Objects.equals(oldAuthor.getId(), newAuthor.getId())) {
+                return oldAuthor;
+            }
+            if (oldAuthor != null) {
+                oldAuthor.removeBookId(bookId);
+            }
+            if (newAuthor != null) {
+                newAuthor.addBookId(bookId);
+                linkedAuthors.put(newAuthor.getId(), newAuthor);
+            }
+            return newAuthor;
+        });
+    }
+}
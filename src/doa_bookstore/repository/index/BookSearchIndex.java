@@ -0,0 +1,357 @@
+package doa_bookstore.repository.index;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+/**
+ * A full-text index over the title and the author name of every book, kept up to date as a
+ * {@link RepositoryListener} of the book repository.
+ * <p>
+ * Text is {@link BookRepository#normalizeTitle(String) normalized} and split into words. Every word of the
+ * query must match a word of the title or of the author name, either exactly or as a prefix, so "pride prej"
+ * finds "Pride and Prejudice". Books are ranked by how well they match: an exact word scores more than a prefix,
+ * and a word of the title more than one of the author name. Ties go to the lowest ID among the books examined.
+ * <p>
+ * Each word maps to the books containing it, and the words are also kept sorted so prefixes are ranges.
+ * A query only enumerates the books of its most selective word and intersects them with the other words by
+ * checking the words stored for each candidate, so its cost depends on the rarest word rather than on the catalog
+ * size. Books missing a word are dropped before they are scored. A query stops as soon as it holds {@code limit}
+ * books with the best score its words can reach, and never scores more than {@value #MAX_CANDIDATES} matching
+ * books, which bounds queries made only of very common words without losing a rare combination of them.
+ */
+public class BookSearchIndex implements RepositoryListener<Book> {
+
+    /**
+     * The maximum number of matching books scored by one query.
+     */
+    public static final int MAX_CANDIDATES = 2_000;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String[] NO_WORDS = new String[0];
+
+    private static final int TITLE_EXACT = 4;
+    private static final int TITLE_PREFIX = 3;
+    private static final int AUTHOR_EXACT = 2;
+    private static final int AUTHOR_PREFIX = 1;
+
+    private final Postings titlePostings = new Postings();
+    private final Postings authorPostings = new Postings();
+    // The words each book is indexed under, to un-index books changed in place
+    private final ConcurrentHashMap<Long, Words> wordsById = new ConcurrentHashMap<>();
+
+    /**
+     * The books containing each word. Buckets hold the {@link Words} of the books rather than their IDs, so
+     * a candidate can be checked without looking it up. Buckets are created and dropped under the lock of
+     * their word in the hash map, which also keeps the sorted set of words, used for prefix ranges, in step.
+     */
+    private static final class Postings {
+        final ConcurrentHashMap<String, Set<Words>> booksByWord = new ConcurrentHashMap<>();
+        final ConcurrentSkipListSet<String> words = new ConcurrentSkipListSet<>();
+
+        void add(String[] indexed, Words book) {
+            for (String word : indexed) {
+                booksByWord.compute(word, (ignored, books) -> {
+                    Set<Words> bucket = books;
+                    if (bucket == null) {
+                        bucket = ConcurrentHashMap.newKeySet();
+                        words.add(word);
+                    }
+                    bucket.add(book);
+                    return bucket;
+                });
+            }
+        }
+
+        void remove(String[] indexed, Words book) {
+            for (String word : indexed) {
+                // Drop empty buckets so words that are no longer used do not pile up
+                booksByWord.computeIfPresent(word, (ignored, books) -> {
+                    books.remove(book);
+                    if (books.isEmpty()) {
+                        words.remove(word);
+                        return null;
+                    }
+                    return books;
+                });
+            }
+        }
+
+        // The words starting with the prefix
+        Set<String> range(String prefix) {
+            return words.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        Set<Words> find(String word) {
+            Set<Words> books = booksByWord.get(word);
+            return books == null ? Collections.emptySet() : books;
+        }
+
+        void clear() {
+            booksByWord.clear();
+            words.clear();
+        }
+    }
+
+    /**
+     * The words a book is indexed under, each field joined as " word word ", so a candidate is checked with
+     * a few string searches instead of a walk over an array of separately allocated words.
+     * Compared by identity: each indexing of a book creates a new instance.
+     */
+    private static final class Words {
+        final long id;
+        final String title;
+        final String author;
+
+        Words(long id, String[] title, String[] author) {
+            this.id = id;
+            this.title = join(title);
+            this.author = join(author);
+        }
+
+        static String join(String[] words) {
+            return words.length == 0 ? "" : " " + String.join(" ", words) + " ";
+        }
+
+        static String[] split(String joined) {
+            return joined.isEmpty() ? NO_WORDS : joined.substring(1, joined.length() - 1).split(" ");
+        }
+    }
+
+    private static final class Hit {
+        final long id;
+        final int score;
+
+        Hit(long id, int score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        // Worst hit first, so the head of a bounded queue is the one to evict
+        static int worstFirst(Hit a, Hit b) {
+            int byScore = Integer.compare(a.score, b.score);
+            return byScore != 0 ? byScore : Long.compare(b.id, a.id);
+        }
+    }
+
+    /**
+     * Splits a text into distinct normalized words.
+     *
+     * @param text The text to split. May be {@code null}.
+     * @return The words of the text, in order of first appearance.
+     */
+    public static String[] tokenize(String text) {
+        String normalized = BookRepository.normalizeTitle(text);
+        if (normalized == null || normalized.isEmpty()) {
+            return NO_WORDS;
+        }
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : NON_WORD.split(normalized)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words.toArray(NO_WORDS);
+    }
+
+    /**
+     * Finds the books matching a query.
+     *
+     * @param query The words to look for. The last one is usually a prefix still being typed.
+     * @param limit The maximum number of book IDs to return.
+     * @return The IDs of the best matching books, best first. Empty if the query has no words.
+     */
+    public List<Long> search(String query, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        int reachable = 0;
+        for (String word : words) {
+            int score = bestReachable(word);
+            if (score == 0) {
+                return Collections.emptyList();
+            }
+            reachable += score;
+        }
+
+        // Enumerate the candidates of the most selective word only. Longer words tend to be rarer,
+        // so counting them first gives a low bound that cuts the counting of the others short.
+        String[] byLength = words.clone();
+        Arrays.sort(byLength, (a, b) -> Integer.compare(b.length(), a.length()));
+        String driver = byLength[0];
+        long fewest = MAX_CANDIDATES;
+        for (String word : byLength) {
+            long count = countUpTo(word, fewest);
+            if (count < fewest) {
+                fewest = count;
+                driver = word;
+            }
+        }
+
+        // " word " matches the whole word in a joined field, " word" a word starting with it
+        String[] exact = new String[words.length];
+        String[] prefix = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            prefix[i] = " " + words[i];
+            exact[i] = prefix[i] + " ";
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, Hit::worstFirst);
+        examine(driver, exact, prefix, limit, reachable, best);
+
+        Hit[] ranked = best.toArray(new Hit[0]);
+        Arrays.sort(ranked, (a, b) -> Hit.worstFirst(b, a));
+        List<Long> ids = new ArrayList<>(ranked.length);
+        for (Hit hit : ranked) {
+            ids.add(hit.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Re-indexes a book whose indexed text may have changed outside of a book write, such as the name
+     * of its author.
+     *
+     * @param book The book to re-index.
+     */
+    public void reindex(Book book) {
+        reindex(book.getId(), tokenize(book.getTitle()),
+                book.getAuthor() == null ? NO_WORDS : tokenize(book.getAuthor().getName()));
+    }
+
+    @Override
+    public void onSaved(Book book) {
+        reindex(book);
+    }
+
+    @Override
+    public void onUpdated(Book previous, Book book) {
+        reindex(book);
+    }
+
+    @Override
+    public void onDeleted(Book book) {
+        reindex(book.getId(), null, null);
+    }
+
+    @Override
+    public void onCleared() {
+        wordsById.clear();
+        titlePostings.clear();
+        authorPostings.clear();
+    }
+
+    // Counts the books having a word starting with the prefix, giving up once the count reaches the bound
+    private long countUpTo(String prefix, long bound) {
+        long count = 0;
+        for (Postings postings : new Postings[]{titlePostings, authorPostings}) {
+            for (String word : postings.range(prefix)) {
+                count += postings.find(word).size();
+                if (count >= bound) {
+                    return count;
+                }
+            }
+        }
+        return count;
+    }
+
+    // The best score a word can contribute, given the words indexed right now
+    private int bestReachable(String word) {
+        if (!titlePostings.find(word).isEmpty()) {
+            return TITLE_EXACT;
+        }
+        if (!titlePostings.range(word).isEmpty()) {
+            return TITLE_PREFIX;
+        }
+        if (!authorPostings.find(word).isEmpty()) {
+            return AUTHOR_EXACT;
+        }
+        return authorPostings.range(word).isEmpty() ? 0 : AUTHOR_PREFIX;
+    }
+
+    /*
+     * Scores the books having a word starting with the driver and every other word, title matches first. Stops
+     * once no better result can be found: MAX_CANDIDATES matching books were scored, or the limit is reached with
+     * books of the best reachable score. Candidates missing a word do not count against MAX_CANDIDATES.
+     */
+    private void examine(String driver, String[] exact, String[] prefix, int limit, int reachable,
+                         PriorityQueue<Hit> best) {
+        Set<Words> examined = new HashSet<>();
+        int matched = 0;
+        for (Postings postings : new Postings[]{titlePostings, authorPostings}) {
+            for (String word : postings.range(driver)) {
+                for (Words book : postings.find(word)) {
+                    if (matched >= MAX_CANDIDATES || (best.size() == limit && best.peek().score == reachable)) {
+                        return;
+                    }
+                    if (!examined.add(book)) {
+                        continue;
+                    }
+                    int score = score(book, exact, prefix);
+                    if (score > 0) {
+                        matched++;
+                        best.add(new Hit(book.id, score));
+                        if (best.size() > limit) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Sums the best match of every query word, or returns 0 if one of them does not match
+    private static int score(Words indexed, String[] exact, String[] prefix) {
+        int total = 0;
+        for (int i = 0; i < exact.length; i++) {
+            int score;
+            if (indexed.title.contains(exact[i])) {
+                score = TITLE_EXACT;
+            } else if (indexed.title.contains(prefix[i])) {
+                score = TITLE_PREFIX;
+            } else if (indexed.author.contains(exact[i])) {
+                score = AUTHOR_EXACT;
+            } else if (indexed.author.contains(prefix[i])) {
+                score = AUTHOR_PREFIX;
+            } else {
+                return 0;
+            }
+            total += score;
+        }
+        return total;
+    }
+
+    private void reindex(Long id, String[] title, String[] author) {
+        Words words = title == null ? null : new Words(id, title, author);
+        // compute() locks the ID's bin, serializing concurrent re-indexing of the same book
+        wordsById.compute(id, (ignored, old) -> {
+            // Most updates, such as stock changes, leave the text alone
+            if (old != null && words != null && old.title.equals(words.title) && old.author.equals(words.author)) {
+                return old;
+            }
+            if (old != null) {
+                titlePostings.remove(Words.split(old.title), old);
+                authorPostings.remove(Words.split(old.author), old);
+            }
+            if (words != null) {
+                titlePostings.add(title, words);
+                authorPostings.add(author, words);
+            }
+            return words;
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package doa_bookstore.repository.index;
+
+import doa_bookstore.entity.interfaces.Entity;
+import doa_bookstore.repository.RepositoryListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * A secondary index mapping a derived key (author ID, genre, title...) to the IDs of the entities
+ * that have that key. It is kept up to date as a {@link RepositoryListener} of the repository it indexes,
+ * so lookups cost O(result) instead of a scan of the whole table.
+ * <p>
+ * The index remembers the key each entity was indexed under. Entities are usually updated in place,
+ * so the old key cannot be read back from the entity when it changes. All changes for one ID are
+ * serialized, which keeps the index consistent when the same entity is written concurrently.
+ * Entities whose key is {@code null} are not indexed.
+ *
+ * @param <K> The type of the indexed key.
+ * @param <E> The type of entity being indexed.
+ */
+public class SecondaryIndex<K, E extends Entity<Long>> implements RepositoryListener<E> {
+
+    private final Function<E, K> keyExtractor;
+    private final Map<K, Set<Long>> idsByKey;
+    private final boolean fixedKeys;
+    private final boolean sortedKeys;
+    private final ConcurrentHashMap<Long, K> keyById = new ConcurrentHashMap<>();
+
+    private SecondaryIndex(Function<E, K> keyExtractor, Map<K, Set<Long>> idsByKey, boolean fixedKeys) {
+        this.keyExtractor = keyExtractor;
+        this.idsByKey = idsByKey;
+        this.fixedKeys = fixedKeys;
+        this.sortedKeys = idsByKey instanceof NavigableMap;
+    }
+
+    /**
+     * Creates an index over an open-ended key space.
+     *
+     * @param keyExtractor Function returning the key of an entity, or {@code null} to leave it unindexed.
+     */
+    public SecondaryIndex(Function<E, K> keyExtractor) {
+        this(keyExtractor, new ConcurrentHashMap<>(), false);
+    }
+
+    /**
+     * Creates an index keyed by an enum. Buckets for every constant are allocated up front in an
+     * {@link EnumMap}, which is never structurally modified afterwards and can therefore be read concurrently.
+     *
+     * @param keyType      The enum class of the key.
+     * @param keyExtractor Function returning the key of an entity, or {@code null} to leave it unindexed.
+     */
+    public static <K extends Enum<K>, E extends Entity<Long>> SecondaryIndex<K, E> forEnum(
+            Class<K> keyType, Function<E, K> keyExtractor) {
+        EnumMap<K, Set<Long>> buckets = new EnumMap<>(keyType);
+        for (K key : keyType.getEnumConstants()) {
+            buckets.put(key, ConcurrentHashMap.newKeySet());
+        }
+        return new SecondaryIndex<>(keyExtractor, buckets, true);
+    }
+
+    /**
+     * Creates an index over ordered keys, in a {@link ConcurrentSkipListMap}, which can also be looked up by
+     * range with {@link #resolveRange}. The skip list does not apply its functions atomically, so a bucket is
+     * kept once created, even empty: this suits keys that come back or are few, such as days.
+     *
+     * @param keyExtractor Function returning the key of an entity, or {@code null} to leave it unindexed.
+     */
+    public static <K extends Comparable<K>, E extends Entity<Long>> SecondaryIndex<K, E> sorted(
+            Function<E, K> keyExtractor) {
+        return new SecondaryIndex<>(keyExtractor, new ConcurrentSkipListMap<>(), false);
+    }
+
+    /**
+     * Creates an index keyed by an enum whose buckets keep their IDs in ascending order, in a
+     * {@link ConcurrentSkipListSet}. Adding and removing an ID costs O(log n) instead of O(1), but the lowest
+     * IDs of a key come first and reading the first few costs O(limit), even in a bucket that once held
+     * many more IDs: hash sets never shrink, so their iterators walk the bins of every ID that was removed.
+     *
+     * @param keyType      The enum class of the key.
+     * @param keyExtractor Function returning the key of an entity, or {@code null} to leave it unindexed.
+     */
+    public static <K extends Enum<K>, E extends Entity<Long>> SecondaryIndex<K, E> forEnumSorted(
+            Class<K> keyType, Function<E, K> keyExtractor) {
+        EnumMap<K, Set<Long>> buckets = new EnumMap<>(keyType);
+        for (K key : keyType.getEnumConstants()) {
+            buckets.put(key, new ConcurrentSkipListSet<>());
+        }
+        return new SecondaryIndex<>(keyExtractor, buckets, true);
+    }
+
+    /**
+     * Returns the IDs of the entities currently indexed under the given key.
+     *
+     * @param key The key to look up.
+     * @return A read-only view of the matching IDs, empty if there are none.
+     */
+    public Set<Long> find(K key) {
+        Set<Long> ids = key == null ? null : idsByKey.get(key);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Loads the entities indexed under the given key, skipping any that were deleted or re-keyed
+     * since the index was read.
+     *
+     * @param key    The key to look up.
+     * @param loader Function loading an entity by ID, typically {@code repository::findById}.
+     * @return The matching entities.
+     */
+    public List<E> resolve(K key, Function<Long, Optional<E>> loader) {
+        return resolve(key, loader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Loads up to {@code limit} of the entities indexed under the given key, skipping any that were deleted or
+     * re-keyed since the index was read. Only as many IDs are read as it takes to fill the result, so a small
+     * batch costs O(limit) however many entities have the key.
+     *
+     * @param key    The key to look up.
+     * @param loader Function loading an entity by ID, typically {@code repository::findById}.
+     * @param limit  The maximum number of entities to return.
+     * @return At most {@code limit} matching entities, in no particular order.
+     */
+    public List<E> resolve(K key, Function<Long, Optional<E>> loader, int limit) {
+        Set<Long> ids = find(key);
+        List<E> result = new ArrayList<>(Math.min(ids.size(), limit));
+        Iterator<Long> it = ids.iterator();
+        while (result.size() < limit && it.hasNext()) {
+            loader.apply(it.next())
+                    .filter(entity -> Objects.equals(key, keyExtractor.apply(entity)))
+                    .ifPresent(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Loads the entities indexed under any key in a range, skipping any that were deleted or re-keyed since the
+     * index was read. Only the keys in the range are visited.
+     *
+     * @param fromKey The lowest key, included.
+     * @param toKey   The highest key, included.
+     * @param loader  Function loading an entity by ID, typically {@code repository::findById}.
+     * @return The matching entities, in ascending key order.
+     * @throws UnsupportedOperationException If the index was not created by {@link #sorted}.
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> resolveRange(K fromKey, K toKey, Function<Long, Optional<E>> loader) {
+        if (!sortedKeys) {
+            throw new UnsupportedOperationException("Only sorted indexes can be looked up by range.");
+        }
+        List<E> result = new ArrayList<>();
+        NavigableMap<K, Set<Long>> sortedIds = (NavigableMap<K, Set<Long>>) idsByKey;
+        for (Map.Entry<K, Set<Long>> bucket : sortedIds.subMap(fromKey, true, toKey, true).entrySet()) {
+            K key = bucket.getKey();
+            for (Long id : bucket.getValue()) {
+                loader.apply(id)
+                        .filter(entity -> Objects.equals(key, keyExtractor.apply(entity)))
+                        .ifPresent(result::add);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onSaved(E entity) {
+        reindex(entity.getId(), keyExtractor.apply(entity));
+    }
+
+    @Override
+    public void onUpdated(E previous, E entity) {
+        reindex(entity.getId(), keyExtractor.apply(entity));
+    }
+
+    @Override
+    public void onDeleted(E entity) {
+        reindex(entity.getId(), null);
+    }
+
+    @Override
+    public void onCleared() {
+        keyById.clear();
+        if (fixedKeys) {
+            idsByKey.values().forEach(Set::clear);
+        } else {
+            idsByKey.clear();
+        }
+    }
+
+    private void reindex(Long id, K newKey) {
+        // compute() locks the ID's bin, serializing concurrent re-indexing of the same entity
+        keyById.compute(id, (ignored, oldKey) -> {
+            if (Objects.equals(oldKey, newKey)) {
+                return oldKey;
+            }
+            if (oldKey != null) {
+                removeId(oldKey, id);
+            }
+            if (newKey != null) {
+                addId(newKey, id);
+            }
+            return newKey;
+        });
+    }
+
+    private void addId(K key, Long id) {
+        if (fixedKeys) {
+            idsByKey.get(key).add(id);
+        } else if (sortedKeys) {
+            idsByKey.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet()).add(id);
+        } else {
+            idsByKey.compute(key, (ignored, ids) -> {
+                Set<Long> bucket = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                bucket.add(id);
+                return bucket;
+            });
+        }
+    }
+
+    private void removeId(K key, Long id) {
+        if (fixedKeys || sortedKeys) {
+            idsByKey.get(key).remove(id);
+        } else {
+            // Drop empty buckets so keys that are no longer used do not pile up
+            idsByKey.computeIfPresent(key, (ignored, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+}
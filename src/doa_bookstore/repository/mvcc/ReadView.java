@@ -0,0 +1,234 @@
+package doa_bookstore.repository.mvcc;
+
+import doa_bookstore.exception.SnapshotTooOldException;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A point in time at which repositories can be read while other threads keep writing to them.
+ * <p>
+ * Every write to a repository commits at a stamp taken from one clock shared by all repositories, and a view
+ * reads as of the last stamp committed when it was opened: it sees every write committed before, none committed
+ * after, and each batch write entirely or not at all. A view is not tied to a repository, so reading the same
+ * view from several repositories gives states of all of them as of the same instant.
+ * <p>
+ * Opening a view takes no lock and writers never wait for readers. While views are open, repositories keep the
+ * versions of the entities written since the oldest of them, which is why views must be closed once read. While
+ * none is open, writes keep no version and take no stamp; a view being opened waits for the writes that started
+ * that way to finish, and reads after them.
+ * A repository that would keep more old versions than its retention bound expires its oldest open views instead;
+ * reading an expired view throws {@link SnapshotTooOldException}.
+ */
+public final class ReadView implements AutoCloseable {
+
+    // Commit sequence shared by every repository
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private static final Set<ReadView> OPEN = ConcurrentHashMap.newKeySet();
+
+    // Views in OPEN, read by every write to tell whether it must be versioned
+    private static final AtomicInteger OPEN_COUNT = new AtomicInteger();
+
+    /*
+     * Writes in progress that found no view open and keep no version, counted in the slot of their thread so that
+     * a write is added and taken back on the same counter. Slots are 128 bytes apart, on cache lines of their own.
+     */
+    private static final int WRITER_SLOTS = 64;
+    private static final int SLOT_SPACING = 16;
+    private static final AtomicLongArray UNVERSIONED_WRITES = new AtomicLongArray(WRITER_SLOTS * SLOT_SPACING);
+
+    // Moves whenever a view closes or expires, so histories know the versions they keep may have become garbage
+    private static final AtomicLong CLOSINGS = new AtomicLong();
+
+    // Lower bound of the stamp until the view is registered, then the stamp itself
+    private volatile long stamp;
+    private volatile boolean ready;
+    private volatile boolean expired;
+    private volatile boolean closed;
+
+    private ReadView(long floor) {
+        this.stamp = floor;
+    }
+
+    /**
+     * Opens a view of every repository as of now. If no view was open, this waits for the writes in progress,
+     * so it must not be called by a thread in the middle of a {@link VersionHistory.Write}.
+     *
+     * @return The view, to be closed once read.
+     */
+    public static ReadView open() {
+        ReadView view = new ReadView(CLOCK.get());
+        // Registered before its stamp is read, so no history collects a version the view may still need
+        OPEN.add(view);
+        OPEN_COUNT.incrementAndGet();
+        // Writes that started before the count moved keep no version, so the view reads after them
+        while (unversionedWrites() != 0) {
+            Thread.yield();
+        }
+        view.stamp = CLOCK.get();
+        view.ready = true;
+        return view;
+    }
+
+    /**
+     * Returns the commit stamp the view reads at.
+     *
+     * @return The stamp of the last write the view sees.
+     */
+    public long stamp() {
+        return stamp;
+    }
+
+    /**
+     * Tells whether the view was expired to bound the versions kept for it.
+     *
+     * @return {@code true} if reading the view throws {@link SnapshotTooOldException}.
+     */
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Closes the view, letting repositories collect the versions kept for it. Closing twice does nothing.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (OPEN.remove(this)) {
+            OPEN_COUNT.decrementAndGet();
+            CLOSINGS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a string representation of the view.
+     *
+     * @return A string representation of the view.
+     */
+    @Override
+    public String toString() {
+        return "ReadView{stamp=" + stamp + (expired ? ", expired" : closed ? ", closed" : "") + '}';
+    }
+
+    // Called by readers after a read, so a read racing with the expiry of its view does not return what it found
+    void checkReadable() {
+        if (expired) {
+            throw new SnapshotTooOldException(stamp);
+        }
+        if (closed) {
+            throw new IllegalStateException("Read view " + stamp + " is closed.");
+        }
+    }
+
+    static long commit() {
+        return CLOCK.incrementAndGet();
+    }
+
+    static boolean anyOpen() {
+        return OPEN_COUNT.get() != 0;
+    }
+
+    /*
+     * Called by a writer holding its stripes before it changes the table. If no view is open, the write may skip
+     * versioning: it is then counted until leaveUnversioned(), and views opened meanwhile wait for it. The count
+     * is read again once raised, so either the writer sees a view being opened or that view sees the writer.
+     */
+    static boolean enterUnversioned() {
+        if (OPEN_COUNT.get() != 0) {
+            return false;
+        }
+        int slot = writerSlot();
+        UNVERSIONED_WRITES.incrementAndGet(slot);
+        if (OPEN_COUNT.get() != 0) {
+            UNVERSIONED_WRITES.decrementAndGet(slot);
+            return false;
+        }
+        return true;
+    }
+
+    static void leaveUnversioned() {
+        UNVERSIONED_WRITES.decrementAndGet(writerSlot());
+    }
+
+    private static int writerSlot() {
+        return (int) (Thread.currentThread().threadId() & (WRITER_SLOTS - 1)) * SLOT_SPACING;
+    }
+
+    private static long unversionedWrites() {
+        long writes = 0;
+        for (int slot = 0; slot < WRITER_SLOTS * SLOT_SPACING; slot += SLOT_SPACING) {
+            writes += UNVERSIONED_WRITES.get(slot);
+        }
+        return writes;
+    }
+
+    static long closings() {
+        return CLOSINGS.get();
+    }
+
+    // Expires the oldest open view; returns false if there was none
+    static boolean expireOldest() {
+        ReadView oldest = null;
+        for (ReadView view : OPEN) {
+            if (view.ready && (oldest == null || view.stamp < oldest.stamp)) {
+                oldest = view;
+            }
+        }
+        return oldest != null && expire(oldest);
+    }
+
+    private static boolean expire(ReadView view) {
+        // Marked first: a reader that finds a version missing then always finds its view expired
+        view.expired = true;
+        if (OPEN.remove(view)) {
+            OPEN_COUNT.decrementAndGet();
+            CLOSINGS.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * The stamps open views read at, for a collection of old versions. A view still being opened only has a
+     * lower bound on its stamp, so every version committed after that bound is kept for it.
+     */
+    static Horizon horizon() {
+        long[] stamps = new long[OPEN.size() + 4];
+        int count = 0;
+        long pendingFloor = Long.MAX_VALUE;
+        for (ReadView view : OPEN) {
+            // Ready is read first: once it is set, the stamp is final
+            boolean ready = view.ready;
+            long viewStamp = view.stamp;
+            if (!ready) {
+                pendingFloor = Math.min(pendingFloor, viewStamp);
+            } else {
+                if (count == stamps.length) {
+                    stamps = Arrays.copyOf(stamps, count * 2);
+                }
+                stamps[count++] = viewStamp;
+            }
+        }
+        long[] sorted = Arrays.copyOf(stamps, count);
+        Arrays.sort(sorted);
+        return new Horizon(sorted, pendingFloor);
+    }
+
+    record Horizon(long[] stamps, long pendingFloor) {
+
+        // Whether a view reads at a stamp in [from, to), and thus needs the version valid over that range
+        boolean covers(long from, long to) {
+            if (to > pendingFloor) {
+                return true;
+            }
+            int index = Arrays.binarySearch(stamps, from);
+            int first = index >= 0 ? index : -index - 1;
+            return first < stamps.length && stamps[first] < to;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package doa_bookstore.repository.mvcc;
+
+import doa_bookstore.exception.SnapshotTooOldException;
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * The old versions of the entities of one repository, kept so that {@link ReadView}s can read past the writes
+ * committed after they were opened.
+ * <p>
+ * Each ID written to has a chain of versions, newest first. A version holds the state the entity had before a
+ * write, {@code null} if it did not exist, and the stamp the write committed at: it is the state a view sees if
+ * it reads at a stamp below that one and at or above the stamp of the next older version. The current state
+ * stays in the repository's table, so a read walks the chain of its ID down to the first version committed at or
+ * before its stamp, and an ID with no chain was not written since the oldest open view.
+ * <p>
+ * Writes go through a {@link Write}, which locks the stripes of its IDs, pushes a pending version for each ID
+ * before the table changes, and on {@link Write#close()} commits them all at one stamp. A reader that meets a
+ * pending version waits for that writer to finish and reads again; readers take no other lock, and writers
+ * never wait for readers. A write that starts while no view is open keeps no version and takes no stamp, as
+ * views opened later wait for it and read after it.
+ * <p>
+ * Versions that no open view can reach are collected by the writers: at once when no view is open, and
+ * otherwise in a pass over every chain after a view closed or once the number kept doubled. A history holding
+ * more versions than its bound after a pass expires the oldest open view and collects again.
+ *
+ * @param <E> The type of entity versioned.
+ */
+public final class VersionHistory<E> {
+
+    private static final long PENDING = Long.MAX_VALUE;
+    private static final long ABORTED = -1;
+
+    private static final int STRIPES = 64;
+
+    // Passes over the chains start once they hold this many versions
+    private static final long MIN_COLLECTION = 1024;
+
+    private static final class Version<E> {
+        final long id;
+        // The state before the write, null if the ID was absent; published by the write of end
+        E before;
+        boolean applied;
+        volatile long end = PENDING;
+        volatile Version<E> older;
+
+        Version(long id) {
+            this.id = id;
+        }
+    }
+
+    // The newest version of each ID, changed only under the stripe of the ID
+    private final ConcurrentLongEntityMap<Version<E>> chains = new ConcurrentLongEntityMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final AtomicLong retained = new AtomicLong();
+    private final ReentrantLock collecting = new ReentrantLock();
+    private volatile long maxRetained;
+    private volatile long nextCollection = MIN_COLLECTION;
+    private volatile long collectedClosings = ReadView.closings();
+
+    // Odd while a clear runs; readers retry if it moved during their read
+    private final AtomicLong clears = new AtomicLong();
+    // Stamp of the last clear: views older than it cannot be read
+    private volatile long clearedAt;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param maxRetained The number of old versions above which open views are expired.
+     */
+    public VersionHistory(long maxRetained) {
+        setMaxRetained(maxRetained);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Sets the number of old versions above which the oldest open views are expired.
+     *
+     * @param maxRetained The bound, at least 1.
+     */
+    public void setMaxRetained(long maxRetained) {
+        if (maxRetained < 1) {
+            throw new IllegalArgumentException("At least one version must be retained: " + maxRetained);
+        }
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Returns the number of old versions kept.
+     *
+     * @return The number of versions in all chains.
+     */
+    public long retained() {
+        return retained.get();
+    }
+
+    /**
+     * Starts a write to one ID, locking its stripe until the write is closed.
+     *
+     * @param id The ID about to be written.
+     * @return The write.
+     */
+    public Write begin(long id) {
+        ReentrantLock lock = stripes[stripeOf(id)];
+        lock.lock();
+        return new Write(new ReentrantLock[]{lock});
+    }
+
+    /**
+     * Starts a write to several IDs, locking their stripes, always in the same order, until the write is closed.
+     *
+     * @param ids The IDs about to be written.
+     * @return The write.
+     */
+    public Write begin(long[] ids) {
+        boolean[] needed = new boolean[STRIPES];
+        int count = 0;
+        for (long id : ids) {
+            int stripe = stripeOf(id);
+            if (!needed[stripe]) {
+                needed[stripe] = true;
+                count++;
+            }
+        }
+        ReentrantLock[] locks = new ReentrantLock[count];
+        int taken = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if (needed[stripe]) {
+                stripes[stripe].lock();
+                locks[taken++] = stripes[stripe];
+            }
+        }
+        return new Write(locks);
+    }
+
+    /**
+     * Returns the state of an entity as of a view.
+     *
+     * @param id   The ID of the entity.
+     * @param view The view to read at.
+     * @param live Reads the current state of an ID from the table, as an entity later writes do not change.
+     * @return The entity as the view sees it, or {@code null} if it did not exist then.
+     * @throws SnapshotTooOldException If the view expired or the repository was cleared since it was opened.
+     */
+    public E read(long id, ReadView view, LongFunction<E> live) {
+        while (true) {
+            long clearCount = awaitClears();
+            Version<E> head = chains.get(id);
+            E value = live.apply(id);
+            // A write that changed the table since the chain was read pushed a version first
+            if (chains.get(id) != head || clears.get() != clearCount) {
+                continue;
+            }
+            long stamp = view.stamp();
+            boolean settled = true;
+            for (Version<E> version = head; version != null; version = version.older) {
+                long end = version.end;
+                if (end == PENDING || end == ABORTED) {
+                    awaitWriter(id);
+                    settled = false;
+                    break;
+                }
+                if (end <= stamp) {
+                    break;
+                }
+                value = version.before;
+            }
+            if (settled) {
+                checkNotCleared(view);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Passes every ID that has old versions, which includes entities deleted since the oldest open view, to an
+     * action. IDs that gain or lose their versions meanwhile may or may not be passed.
+     *
+     * @param action Called with each ID that has a chain.
+     */
+    public void forEachId(LongConsumer action) {
+        for (Version<E> head : chains.values()) {
+            action.accept(head.id);
+        }
+    }
+
+    /**
+     * Fails if a view cannot be read because the repository was cleared after it was opened. Bulk reads call
+     * this once they are done, as a clear can remove the entities they had not reached without versioning them.
+     *
+     * @param view The view read.
+     * @throws SnapshotTooOldException If the view expired or the repository was cleared since it was opened.
+     */
+    public void checkNotCleared(ReadView view) {
+        awaitClears();
+        if (view.stamp() < clearedAt) {
+            throw new SnapshotTooOldException(view.stamp());
+        }
+        view.checkReadable();
+    }
+
+    /**
+     * Clears the table through {@code clear} under every stripe lock, dropping every version. The entities
+     * cleared are not versioned: views opened before can no longer be read.
+     *
+     * @param clear Clears the table.
+     */
+    public void clear(Runnable clear) {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        try {
+            clears.incrementAndGet();
+            try {
+                clear.run();
+                chains.clear();
+                retained.set(0);
+                clearedAt = ReadView.commit();
+            } finally {
+                clears.incrementAndGet();
+            }
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private long awaitClears() {
+        long clearCount = clears.get();
+        while ((clearCount & 1) != 0) {
+            // A clear holds every stripe until it is done
+            awaitWriter(0);
+            clearCount = clears.get();
+        }
+        return clearCount;
+    }
+
+    private void awaitWriter(long id) {
+        ReentrantLock lock = stripes[stripeOf(id)];
+        lock.lock();
+        lock.unlock();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Version<E>[] newVersions(int length) {
+        return (Version<E>[]) new Version<?>[length];
+    }
+
+    private static int stripeOf(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (STRIPES - 1);
+    }
+
+    // Called by writers after releasing their stripes
+    private void maybeCollect() {
+        long kept = retained.get();
+        if (kept == 0 || (kept < nextCollection && kept <= maxRetained
+                && collectedClosings == ReadView.closings())) {
+            return;
+        }
+        // One pass at a time; writers arriving meanwhile leave it to the running one
+        if (!collecting.tryLock()) {
+            return;
+        }
+        try {
+            collect();
+            while (retained.get() > maxRetained && ReadView.expireOldest()) {
+                collect();
+            }
+            nextCollection = Math.max(MIN_COLLECTION, 2 * retained.get());
+        } finally {
+            collecting.unlock();
+        }
+    }
+
+    private void collect() {
+        collectedClosings = ReadView.closings();
+        ReadView.Horizon horizon = ReadView.horizon();
+        for (Version<E> chain : chains.values()) {
+            long id = chain.id;
+            ReentrantLock lock = stripes[stripeOf(id)];
+            lock.lock();
+            try {
+                Version<E> head = chains.get(id);
+                if (head != null) {
+                    setHead(id, prune(head, horizon));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Called under the stripe of the ID
+    private void setHead(long id, Version<E> head) {
+        if (head == null) {
+            chains.remove(id);
+        } else {
+            chains.put(id, head);
+        }
+    }
+
+    // Unlinks the versions no view reads; runs under the stripe of the chain, so no write pushes meanwhile
+    private Version<E> prune(Version<E> head, ReadView.Horizon horizon) {
+        Version<E> newest = null;
+        Version<E> kept = null;
+        int dropped = 0;
+        for (Version<E> version = head; version != null; version = version.older) {
+            Version<E> older = version.older;
+            long end = version.end;
+            boolean needed = end == PENDING || horizon.covers(older == null ? Long.MIN_VALUE : older.end, end);
+            if (!needed) {
+                dropped++;
+            } else if (kept == null) {
+                newest = kept = version;
+            } else {
+                kept.older = version;
+                kept = version;
+            }
+        }
+        if (kept != null && kept.older != null) {
+            kept.older = null;
+        }
+        retained.addAndGet(-dropped);
+        return newest;
+    }
+
+    /**
+     * A write in progress: the stripes of its IDs are locked and the version of each ID written is pending
+     * until the write is closed. For each ID, call {@link #prepare(long)} before changing the table, then
+     * {@link #applied(Object)} with the state it replaced, or {@link #discard()} if the table was not changed.
+     * These do nothing if no view was open when the write started.
+     */
+    public final class Write implements AutoCloseable {
+
+        private final ReentrantLock[] locks;
+        // Decided once the stripes are held, so a batch is versioned entirely or not at all
+        private final boolean versioned;
+        private long[] ids;
+        private Version<E>[] versions;
+        private int count;
+
+        private Write(ReentrantLock[] locks) {
+            this.locks = locks;
+            this.versioned = !ReadView.enterUnversioned();
+            if (versioned) {
+                ids = new long[1];
+                versions = newVersions(1);
+            }
+        }
+
+        /**
+         * Pushes a pending version of an ID, before the table changes.
+         *
+         * @param id The ID about to be written.
+         */
+        public void prepare(long id) {
+            if (!versioned) {
+                return;
+            }
+            Version<E> version = new Version<>(id);
+            version.older = chains.get(id);
+            chains.put(id, version);
+            retained.incrementAndGet();
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                versions = Arrays.copyOf(versions, count * 2);
+            }
+            ids[count] = id;
+            versions[count++] = version;
+        }
+
+        /**
+         * Records that the table changed for the ID last prepared.
+         *
+         * @param before The state replaced or removed, as later writes do not change it, or {@code null} if the
+         *               ID was absent.
+         */
+        public void applied(E before) {
+            if (!versioned) {
+                return;
+            }
+            Version<E> version = versions[count - 1];
+            version.before = before;
+            version.applied = true;
+        }
+
+        /**
+         * Drops the version of the ID last prepared, because the table did not change.
+         */
+        public void discard() {
+            if (!versioned) {
+                return;
+            }
+            count--;
+            unlink(ids[count], versions[count]);
+            versions[count] = null;
+        }
+
+        /**
+         * Discards every version prepared by this write, because the changes it applied were undone.
+         */
+        public void discardAll() {
+            while (count > 0) {
+                discard();
+            }
+        }
+
+        /**
+         * Commits the applied versions at one stamp, discards the others, and releases the stripes.
+         */
+        @Override
+        public void close() {
+            if (!versioned) {
+                try {
+                    ReadView.leaveUnversioned();
+                } finally {
+                    unlock();
+                }
+                // Versions kept for views that have closed since are collected by any writer
+                maybeCollect();
+                return;
+            }
+            try {
+                for (int i = count - 1; i >= 0; i--) {
+                    if (!versions[i].applied) {
+                        unlink(ids[i], versions[i]);
+                    }
+                }
+                if (count > 0) {
+                    long stamp = ReadView.commit();
+                    for (int i = 0; i < count; i++) {
+                        if (versions[i].applied) {
+                            versions[i].end = stamp;
+                        }
+                    }
+                    // A view registered after this check reads at or after the stamp, so it needs none of them
+                    if (!ReadView.anyOpen()) {
+                        for (int i = 0; i < count; i++) {
+                            Version<E> version = versions[i];
+                            if (version.applied && version.older == null && chains.remove(ids[i], version)) {
+                                retained.decrementAndGet();
+                            }
+                        }
+                    }
+                }
+            } finally {
+                unlock();
+            }
+            maybeCollect();
+        }
+
+        private void unlock() {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+
+        private void unlink(long id, Version<E> version) {
+            Version<E> head = chains.get(id);
+            if (head == version) {
+                setHead(id, version.older);
+            } else {
+                for (Version<E> newer = head; newer != null; newer = newer.older) {
+                    if (newer.older == version) {
+                        newer.older = version.older;
+                        break;
+                    }
+                }
+            }
+            version.end = ABORTED;
+            retained.decrementAndGet();
+        }
+    }
+}
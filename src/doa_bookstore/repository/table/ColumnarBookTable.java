@@ -0,0 +1,705 @@
+package doa_bookstore.repository.table;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A thread-safe {@link EntityTable} of books that stores them column by column instead of as one object per book.
+ * The row of a book is its ID: rows are grouped in chunks of consecutive IDs, and each chunk holds one primitive
+ * array per field. Titles are stored as {@code int} codes into a dictionary that keeps each distinct title once,
+ * as UTF-8 bytes. Authors are stored as their ID, and resolved on every read through the function given to the
+ * constructor, so a view always sees the stored author and the table keeps no author instance. Only the authors
+ * that function does not know when a book is written, such as authors not saved yet, are kept as they are, for
+ * as long as their row holds them. The genre is a {@code byte} ordinal. With its version, a book therefore costs
+ * 26 bytes of columns plus the bytes of its title if no other book has it, against roughly a hundred for a
+ * {@link Book}, its boxed ID, its {@link String} title and a table slot.
+ * <p>
+ * Lookups return flyweight views: a {@link Book} with no fields of its own that reads and writes the columns of
+ * its row, so a change made through any view, such as a stock update, is seen by every other view. Like any
+ * books, views are equal when they have the same ID. Entities given to {@link #put(long, Book)} are copied into
+ * the columns and are not kept, and the entities returned as replaced or removed are detached copies of the row.
+ * <p>
+ * Deleted rows keep their values until a book is saved again under the same ID, so a view held across a delete
+ * still reads the last state of its book. The title dictionary only grows; {@link #clear()} starts a fresh one
+ * and leaves the views handed out before it on the old columns. Books whose ID is negative or beyond
+ * {@code 2^31}, which only happens when IDs are given explicitly, are kept whole in a
+ * {@link ConcurrentLongEntityMap}.
+ * <p>
+ * Writes to an ID are serialized by a striped lock. Reads take no lock: a row is published by a release write of
+ * its state after its columns, and stock is read and written with volatile semantics like {@link Book}'s.
+ */
+public class ColumnarBookTable implements EntityTable<Book> {
+
+    // A chunk holds the rows of 2^CHUNK_BITS consecutive IDs and never moves once allocated
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final long DENSE_LIMIT = 1L << 31;
+
+    private static final int LOCK_BITS = 6;
+
+    private static final byte ABSENT = 0;
+    private static final byte PRESENT = 1;
+
+    // Code of a null title, ordinal of a null genre
+    private static final int NONE = -1;
+
+    // Author column of a book without an author, and of a book whose author is kept whole by its chunk
+    private static final long NO_AUTHOR = Long.MIN_VALUE;
+    private static final long UNSTORED_AUTHOR = Long.MIN_VALUE + 1;
+
+    private static final Book.Genre[] GENRES = Book.Genre.values();
+
+    private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final VarHandle STOCK = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle VERSIONS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final ReentrantLock[] locks = new ReentrantLock[1 << LOCK_BITS];
+    private final ConcurrentLongEntityMap<Book> overflow = new ConcurrentLongEntityMap<>();
+    private final Collection<Book> values = new Values();
+    private final LongFunction<Author> authors;
+
+    // Replaced as a whole by clear()
+    private volatile Store store;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param authors Function finding a stored author by ID, or returning {@code null} if there is none.
+     */
+    public ColumnarBookTable(LongFunction<Author> authors) {
+        this.authors = authors;
+        this.store = new Store(authors);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private static boolean isDense(long id) {
+        return id >= 0 && id < DENSE_LIMIT;
+    }
+
+    private ReentrantLock lockFor(long id) {
+        // Consecutive IDs go to different stripes, so a bulk import in ID order does not contend
+        return locks[(int) id & (locks.length - 1)];
+    }
+
+    @Override
+    public Book get(long id) {
+        if (!isDense(id)) {
+            return overflow.get(id);
+        }
+        Chunk chunk = store.chunkAt(id);
+        int slot = (int) id & (CHUNK_SIZE - 1);
+        return chunk != null && chunk.isPresent(slot) ? new Row(chunk, slot, id) : null;
+    }
+
+    @Override
+    public boolean containsKey(long id) {
+        if (!isDense(id)) {
+            return overflow.containsKey(id);
+        }
+        Chunk chunk = store.chunkAt(id);
+        return chunk != null && chunk.isPresent((int) id & (CHUNK_SIZE - 1));
+    }
+
+    @Override
+    public Book put(long id, Book book) {
+        if (!isDense(id)) {
+            return overflow.put(id, book);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Store store = this.store;
+            Chunk chunk = store.chunkFor(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            Book previous = chunk.isPresent(slot) ? chunk.copy(slot, id) : null;
+            chunk.write(slot, book);
+            if (previous == null) {
+                chunk.publish(slot);
+            }
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Book putIfAbsent(long id, Book book) {
+        if (!isDense(id)) {
+            return overflow.putIfAbsent(id, book);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Chunk chunk = store.chunkFor(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            if (chunk.isPresent(slot)) {
+                return new Row(chunk, slot, id);
+            }
+            chunk.write(slot, book);
+            chunk.publish(slot);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Book replace(long id, Book book) {
+        if (!isDense(id)) {
+            return overflow.replace(id, book);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Chunk chunk = store.chunkAt(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            if (chunk == null || !chunk.isPresent(slot)) {
+                return null;
+            }
+            Book previous = chunk.copy(slot, id);
+            chunk.write(slot, book);
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the given book is a view of the row, the check is passed that view; otherwise it is passed a new view.
+     */
+    @Override
+    public Book replace(long id, Book book, Consumer<? super Book> check) {
+        if (!isDense(id)) {
+            return overflow.replace(id, book, check);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Chunk chunk = store.chunkAt(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            if (chunk == null || !chunk.isPresent(slot)) {
+                return null;
+            }
+            check.accept(chunk.isRow(book, slot) ? book : new Row(chunk, slot, id));
+            Book previous = chunk.copy(slot, id);
+            chunk.write(slot, book);
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Book remove(long id) {
+        if (!isDense(id)) {
+            return overflow.remove(id);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Chunk chunk = store.chunkAt(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            if (chunk == null || !chunk.isPresent(slot)) {
+                return null;
+            }
+            chunk.unpublish(slot);
+            return chunk.copy(slot, id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Rows have no identity of their own, so the row counts as holding the given book if the book is a view
+     * of it or has the same values.
+     */
+    @Override
+    public boolean remove(long id, Book book) {
+        if (!isDense(id)) {
+            return overflow.remove(id, book);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Chunk chunk = store.chunkAt(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            if (chunk == null || !chunk.isPresent(slot) || !chunk.holds(slot, book)) {
+                return false;
+            }
+            chunk.unpublish(slot);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The loader runs under the lock of the ID's stripe, so it must not access this table.
+     */
+    @Override
+    public Book computeIfAbsent(long id, LongFunction<? extends Book> loader) {
+        Book existing = get(id);
+        if (existing != null) {
+            return existing;
+        }
+        if (!isDense(id)) {
+            return overflow.computeIfAbsent(id, loader);
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Chunk chunk = store.chunkFor(id);
+            int slot = (int) id & (CHUNK_SIZE - 1);
+            if (!chunk.isPresent(slot)) {
+                Book loaded = loader.apply(id);
+                if (loaded == null) {
+                    return null;
+                }
+                chunk.write(slot, loaded);
+                chunk.publish(slot);
+            }
+            return new Row(chunk, slot, id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return store.count.get() + overflow.size();
+    }
+
+    /**
+     * Removes every book. The columns and dictionaries are replaced rather than wiped, so views handed out
+     * before keep reading the values they had. Books saved concurrently may be lost or survive the call.
+     */
+    @Override
+    public void clear() {
+        store = new Store(authors);
+        overflow.clear();
+    }
+
+    @Override
+    public Collection<Book> values() {
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Views are copied into a new {@link Book}; books of the overflow map are returned as they are.
+     */
+    @Override
+    public Book detached(Book book) {
+        return book instanceof Row row ? row.chunk.copy(row.slot, row.id) : book;
+    }
+
+    /**
+     * Returns the number of distinct titles stored, as a measure of how much the title dictionary saves.
+     *
+     * @return The number of entries of the title dictionary.
+     */
+    public int distinctTitles() {
+        return store.titles.size();
+    }
+
+    /*
+     * The columns and dictionaries of the table. Views point at a chunk, and a chunk at its store, so a view
+     * keeps decoding its codes with the dictionaries that produced them after a clear.
+     */
+    private static final class Store {
+
+        final TitleDictionary titles = new TitleDictionary();
+        final AtomicInteger count = new AtomicInteger();
+        final LongFunction<Author> authors;
+
+        // Chunk directory indexed by ID >>> CHUNK_BITS; grown by copy and republished under the store lock
+        private volatile Chunk[] chunks = new Chunk[16];
+
+        Store(LongFunction<Author> authors) {
+            this.authors = authors;
+        }
+
+        Chunk chunkAt(long id) {
+            Chunk[] chunks = this.chunks;
+            int index = (int) (id >>> CHUNK_BITS);
+            return index < chunks.length ? chunks[index] : null;
+        }
+
+        Chunk chunkFor(long id) {
+            Chunk chunk = chunkAt(id);
+            return chunk != null ? chunk : allocate((int) (id >>> CHUNK_BITS));
+        }
+
+        private synchronized Chunk allocate(int index) {
+            Chunk[] chunks = this.chunks;
+            if (index >= chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(index + 1, chunks.length * 2));
+            }
+            if (chunks[index] == null) {
+                chunks[index] = new Chunk(this);
+            }
+            // Republishing makes the new chunk visible to readers of the directory
+            this.chunks = chunks;
+            return chunks[index];
+        }
+    }
+
+    private static final class Chunk {
+
+        final Store store;
+        final byte[] states = new byte[CHUNK_SIZE];
+        final int[] titles = new int[CHUNK_SIZE];
+        final long[] authors = new long[CHUNK_SIZE];
+        // The authors of the rows written with an author the store could not resolve, by slot
+        final ConcurrentHashMap<Integer, Author> unstoredAuthors = new ConcurrentHashMap<>();
+        final byte[] genres = new byte[CHUNK_SIZE];
+        final int[] stock = new int[CHUNK_SIZE];
+        final long[] versions = new long[CHUNK_SIZE];
+
+        Chunk(Store store) {
+            this.store = store;
+        }
+
+        boolean isPresent(int slot) {
+            return (byte) STATES.getAcquire(states, slot) == PRESENT;
+        }
+
+        void publish(int slot) {
+            STATES.setRelease(states, slot, PRESENT);
+            store.count.incrementAndGet();
+        }
+
+        void unpublish(int slot) {
+            STATES.setRelease(states, slot, ABSENT);
+            store.count.decrementAndGet();
+        }
+
+        boolean isRow(Book book, int slot) {
+            return book instanceof Row row && row.chunk == this && row.slot == slot;
+        }
+
+        void write(int slot, Book book) {
+            if (isRow(book, slot)) {
+                return;
+            }
+            titles[slot] = titleCode(book.getTitle());
+            setAuthor(slot, book.getAuthor());
+            genres[slot] = genreCode(book.getGenre());
+            STOCK.setVolatile(stock, slot, book.getStockUnits());
+            VERSIONS.setVolatile(versions, slot, book.getVersion());
+        }
+
+        int titleCode(String title) {
+            return title == null ? NONE : store.titles.intern(title);
+        }
+
+        void setAuthor(int slot, Author author) {
+            if (author == null) {
+                authors[slot] = NO_AUTHOR;
+                unstoredAuthors.remove(slot);
+            } else if (author.getId() != null && store.authors.apply(author.getId()) != null) {
+                authors[slot] = author.getId();
+                unstoredAuthors.remove(slot);
+            } else {
+                unstoredAuthors.put(slot, author);
+                authors[slot] = UNSTORED_AUTHOR;
+            }
+        }
+
+        static byte genreCode(Book.Genre genre) {
+            return genre == null ? NONE : (byte) genre.ordinal();
+        }
+
+        String title(int slot) {
+            int code = titles[slot];
+            return code == NONE ? null : store.titles.get(code);
+        }
+
+        Author author(int slot) {
+            long id = authors[slot];
+            if (id == NO_AUTHOR) {
+                return null;
+            }
+            return id == UNSTORED_AUTHOR ? unstoredAuthors.get(slot) : store.authors.apply(id);
+        }
+
+        boolean holdsAuthor(int slot, Author author) {
+            long id = authors[slot];
+            if (author == null || id == NO_AUTHOR) {
+                return author == null && id == NO_AUTHOR;
+            }
+            if (id == UNSTORED_AUTHOR) {
+                return unstoredAuthors.get(slot) == author;
+            }
+            return author.getId() != null && author.getId() == id;
+        }
+
+        Book.Genre genre(int slot) {
+            int ordinal = genres[slot];
+            return ordinal == NONE ? null : GENRES[ordinal];
+        }
+
+        int stock(int slot) {
+            return (int) STOCK.getVolatile(stock, slot);
+        }
+
+        long version(int slot) {
+            return (long) VERSIONS.getVolatile(versions, slot);
+        }
+
+        boolean holds(int slot, Book book) {
+            if (book instanceof Row row) {
+                return row.chunk == this && row.slot == slot;
+            }
+            String title = book.getTitle();
+            int titleCode = titles[slot];
+            return (title == null ? titleCode == NONE : titleCode != NONE && title.equals(store.titles.get(titleCode)))
+                    && holdsAuthor(slot, book.getAuthor())
+                    && genres[slot] == genreCode(book.getGenre())
+                    && stock(slot) == book.getStockUnits();
+        }
+
+        // A detached Book holding the current values of the row
+        Book copy(int slot, long id) {
+            Book book = new Book(title(slot), author(slot), genre(slot), stock(slot));
+            book.setId(id);
+            book.setVersion(version(slot));
+            return book;
+        }
+    }
+
+    /*
+     * Flyweight view of a row. It has no state besides its position: every accessor goes to the columns,
+     * and the fields inherited from Book stay unused.
+     */
+    private static final class Row extends Book {
+
+        private final Chunk chunk;
+        private final int slot;
+        private final long id;
+
+        Row(Chunk chunk, int slot, long id) {
+            this.chunk = chunk;
+            this.slot = slot;
+            this.id = id;
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public long getLongId() {
+            return id;
+        }
+
+        @Override
+        public boolean hasId() {
+            return true;
+        }
+
+        @Override
+        public void setId(Long id) {
+            if (id == null || id != this.id) {
+                throw new UnsupportedOperationException("The ID of a stored book cannot be changed.");
+            }
+        }
+
+        @Override
+        public String getTitle() {
+            return chunk.title(slot);
+        }
+
+        @Override
+        public void setTitle(String title) {
+            chunk.titles[slot] = chunk.titleCode(title);
+        }
+
+        @Override
+        public Author getAuthor() {
+            return chunk.author(slot);
+        }
+
+        @Override
+        public void setAuthor(Author author) {
+            chunk.setAuthor(slot, author);
+        }
+
+        @Override
+        public Genre getGenre() {
+            return chunk.genre(slot);
+        }
+
+        @Override
+        public void setGenre(Genre genre) {
+            chunk.genres[slot] = Chunk.genreCode(genre);
+        }
+
+        @Override
+        public int getStockUnits() {
+            return chunk.stock(slot);
+        }
+
+        @Override
+        public void setStockUnits(int stockUnits) {
+            STOCK.setVolatile(chunk.stock, slot, stockUnits);
+        }
+
+        @Override
+        public long getVersion() {
+            return chunk.version(slot);
+        }
+
+        @Override
+        public void setVersion(long version) {
+            VERSIONS.setVolatile(chunk.versions, slot, version);
+        }
+    }
+
+    // Weakly consistent, in ascending ID order for the columnar rows, followed by the overflow books
+    private final class Values extends AbstractCollection<Book> {
+
+        @Override
+        public int size() {
+            return ColumnarBookTable.this.size();
+        }
+
+        @Override
+        public Spliterator<Book> spliterator() {
+            Store store = ColumnarBookTable.this.store;
+            Chunk[] chunks = store.chunks;
+            return new RowSpliterator(chunks, 0, (long) chunks.length << CHUNK_BITS, store.count.get(),
+                    overflow.values().spliterator());
+        }
+
+        @Override
+        public Iterator<Book> iterator() {
+            Chunk[] chunks = store.chunks;
+            Iterator<Book> overflowBooks = overflow.values().iterator();
+            return new Iterator<>() {
+                private int index;
+                private int slot = -1;
+                private Book next = advance();
+
+                private Book advance() {
+                    for (; index < chunks.length; index++, slot = -1) {
+                        Chunk chunk = chunks[index];
+                        if (chunk == null) {
+                            continue;
+                        }
+                        while (++slot < CHUNK_SIZE) {
+                            if (chunk.isPresent(slot)) {
+                                return new Row(chunk, slot, ((long) index << CHUNK_BITS) | slot);
+                            }
+                        }
+                    }
+                    return overflowBooks.hasNext() ? overflowBooks.next() : null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Book next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Book book = next;
+                    next = advance();
+                    return book;
+                }
+            };
+        }
+    }
+
+    /*
+     * Splits a range of rows in halves, down to a quarter of a chunk. The books kept whole in the overflow
+     * map belong to the first spliterator and are handed off by its first split.
+     */
+    private static final class RowSpliterator implements Spliterator<Book> {
+
+        private static final int MIN_SPLIT = CHUNK_SIZE / 4;
+
+        private final Chunk[] chunks;
+        private long position;
+        private final long fence;
+        private long estimate;
+        private Spliterator<Book> overflow;
+
+        RowSpliterator(Chunk[] chunks, long position, long fence, long estimate, Spliterator<Book> overflow) {
+            this.chunks = chunks;
+            this.position = position;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.overflow = overflow;
+        }
+
+        @Override
+        public Spliterator<Book> trySplit() {
+            if (overflow != null) {
+                Spliterator<Book> prefix = overflow;
+                overflow = null;
+                return prefix;
+            }
+            long middle = (position + fence) >>> 1;
+            if (middle - position < MIN_SPLIT) {
+                return null;
+            }
+            estimate >>>= 1;
+            Spliterator<Book> prefix = new RowSpliterator(chunks, position, middle, estimate, null);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Book> action) {
+            while (position < fence) {
+                Chunk chunk = chunks[(int) (position >>> CHUNK_BITS)];
+                if (chunk == null) {
+                    // Skip to the next chunk
+                    position = Math.min(fence, ((position >>> CHUNK_BITS) + 1) << CHUNK_BITS);
+                    continue;
+                }
+                int slot = (int) position & (CHUNK_SIZE - 1);
+                long id = position++;
+                if (chunk.isPresent(slot)) {
+                    action.accept(new Row(chunk, slot, id));
+                    return true;
+                }
+            }
+            return overflow != null && overflow.tryAdvance(action);
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate + (overflow == null ? 0 : overflow.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return CONCURRENT | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package doa_bookstore.repository.table;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A thread-safe {@link EntityTable}, split into segments that are each a {@link LongEntityMap}
+ * guarded by a {@link StampedLock}. The high bits of the ID hash pick the segment, so writers only
+ * contend when they touch the same segment.
+ * <p>
+ * Lookups first read the segment optimistically, without taking the lock, and only fall back to a read
+ * lock if a write happened meanwhile. Iteration over {@link #values()} is weakly consistent, like that
+ * of a {@link java.util.concurrent.ConcurrentHashMap}: it copies one segment at a time, so it never fails
+ * because of concurrent writes, but it may or may not see writes made after it started.
+ *
+ * @param <E> The type of entity stored in the table.
+ */
+public class ConcurrentLongEntityMap<E> implements EntityTable<E> {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final LongEntityMap<E>[] segments;
+    private final StampedLock[] locks = new StampedLock[SEGMENTS];
+    private final Collection<E> values = new Values();
+
+    public ConcurrentLongEntityMap() {
+        segments = newSegments(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LongEntityMap<>();
+            locks[i] = new StampedLock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> LongEntityMap<E>[] newSegments(int length) {
+        return (LongEntityMap<E>[]) new LongEntityMap<?>[length];
+    }
+
+    private static int segmentFor(long id) {
+        // The segment uses the top bits of the hash; the index inside the segment folds in the rest
+        return (int) (LongEntityMap.hash(id) >>> (Long.SIZE - SEGMENT_BITS));
+    }
+
+    @Override
+    public E get(long id) {
+        int segment = segmentFor(id);
+        StampedLock lock = locks[segment];
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            E entity = segments[segment].get(id);
+            if (lock.validate(stamp)) {
+                return entity;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return segments[segment].get(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean containsKey(long id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public E put(long id, E entity) {
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].put(id, entity);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E putIfAbsent(long id, E entity) {
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].putIfAbsent(id, entity);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E replace(long id, E entity) {
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].replace(id, entity);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E replace(long id, E entity, Consumer<? super E> check) {
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].replace(id, entity, check);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E remove(long id) {
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].remove(id);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(long id, E entity) {
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].remove(id, entity);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The loader runs under the write lock of the segment, so it must not access this table.
+     */
+    @Override
+    public E computeIfAbsent(long id, LongFunction<? extends E> loader) {
+        E existing = get(id);
+        if (existing != null) {
+            return existing;
+        }
+        int segment = segmentFor(id);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].computeIfAbsent(id, loader);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long total = 0;
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            StampedLock lock = locks[segment];
+            long stamp = lock.tryOptimisticRead();
+            int size = segments[segment].size();
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    size = segments[segment].size();
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            total += size;
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes every entity, one segment at a time. Entities saved concurrently may survive the call.
+     */
+    @Override
+    public void clear() {
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            long stamp = locks[segment].writeLock();
+            try {
+                segments[segment].clear();
+            } finally {
+                locks[segment].unlockWrite(stamp);
+            }
+        }
+    }
+
+    @Override
+    public Collection<E> values() {
+        return values;
+    }
+
+    private Object[] copySegment(int segment) {
+        long stamp = locks[segment].readLock();
+        try {
+            return segments[segment].toValueArray();
+        } finally {
+            locks[segment].unlockRead(stamp);
+        }
+    }
+
+    private final class Values extends AbstractCollection<E> {
+
+        @Override
+        public int size() {
+            return ConcurrentLongEntityMap.this.size();
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return new SegmentSpliterator(0, SEGMENTS, Math.max(1, size() / SEGMENTS));
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<>() {
+                private int segment = -1;
+                private Object[] batch = new Object[0];
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    while (index >= batch.length) {
+                        if (segment + 1 >= SEGMENTS) {
+                            return false;
+                        }
+                        batch = copySegment(++segment);
+                        index = 0;
+                    }
+                    return true;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public E next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return (E) batch[index++];
+                }
+            };
+        }
+    }
+
+    /*
+     * Weakly consistent like the iterator: splits over whole segments while it covers more than one, then copies
+     * its last segment under the read lock and splits the copy.
+     */
+    private final class SegmentSpliterator implements Spliterator<E> {
+
+        private int segment;
+        private final int fence;
+        private final long perSegment;
+        private Spliterator<E> copy;
+
+        SegmentSpliterator(int segment, int fence, long perSegment) {
+            this.segment = segment;
+            this.fence = fence;
+            this.perSegment = perSegment;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            if (fence - segment > 1 && copy == null) {
+                int middle = (segment + fence) >>> 1;
+                Spliterator<E> prefix = new SegmentSpliterator(segment, middle, perSegment);
+                segment = middle;
+                return prefix;
+            }
+            return nextCopy() ? copy.trySplit() : null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (nextCopy()) {
+                if (copy.tryAdvance(action)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            while (nextCopy()) {
+                copy.forEachRemaining(action);
+            }
+        }
+
+        // Makes copy hold the remaining entities of the current segment, moving on once it is exhausted
+        private boolean nextCopy() {
+            while (copy == null || copy.estimateSize() == 0) {
+                if (segment >= fence) {
+                    return false;
+                }
+                copy = Spliterators.spliterator(copySegment(segment++), NONNULL);
+            }
+            return true;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (copy == null ? 0 : copy.estimateSize()) + (fence - segment) * perSegment;
+        }
+
+        @Override
+        public int characteristics() {
+            return CONCURRENT | NONNULL;
+        }
+    }
+}
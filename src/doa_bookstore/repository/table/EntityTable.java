@@ -0,0 +1,82 @@
+package doa_bookstore.repository.table;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * The backing table of a repository: a map from primitive {@code long} IDs to entities.
+ * Keys are never boxed, and {@code null} values are not allowed, so a {@code null} result always means
+ * that no entity has the ID.
+ *
+ * @param <E> The type of entity stored in the table.
+ */
+public interface EntityTable<E> {
+
+    E get(long id);
+
+    boolean containsKey(long id);
+
+    E put(long id, E entity);
+
+    E putIfAbsent(long id, E entity);
+
+    /**
+     * Replaces the entity stored under an ID, only if there is one.
+     *
+     * @return The entity that was replaced, or {@code null} if the ID was absent and nothing was stored.
+     */
+    E replace(long id, E entity);
+
+    /**
+     * Replaces the entity stored under an ID, only if there is one, after passing the stored entity to
+     * {@code check}. No other write to the ID can happen between the check and the replacement, so a check
+     * that throws vetoes the write and leaves the table unchanged. The check may also prepare the new entity,
+     * which readers cannot see yet.
+     *
+     * @return The entity that was replaced, or {@code null} if the ID was absent and nothing was stored.
+     */
+    E replace(long id, E entity, Consumer<? super E> check);
+
+    E remove(long id);
+
+    /**
+     * Removes the entity stored under an ID, only if it is the given instance.
+     *
+     * @return {@code true} if the entity was removed.
+     */
+    boolean remove(long id, E entity);
+
+    /**
+     * Returns the entity stored under an ID, or stores and returns the one computed by {@code loader}.
+     * In a concurrent table no other write to the same ID can happen while {@code loader} runs,
+     * and a concurrent lookup of that ID may wait for it. Nothing is stored if {@code loader} returns {@code null}.
+     *
+     * @param id     The ID to look up.
+     * @param loader Computes the entity to store if the ID is absent.
+     * @return The stored entity, or {@code null} if there is none.
+     */
+    E computeIfAbsent(long id, LongFunction<? extends E> loader);
+
+    int size();
+
+    void clear();
+
+    /**
+     * Returns a live, read-only view of the stored entities.
+     *
+     * @return The entities in the table, in no particular order.
+     */
+    Collection<E> values();
+
+    /**
+     * Returns an entity that keeps the state the given one has now, whatever is written to the table later.
+     * Tables that hand out views of their storage return a copy; the others return the entity itself.
+     *
+     * @param entity An entity returned by this table.
+     * @return The entity, or a detached copy of it.
+     */
+    default E detached(E entity) {
+        return entity;
+    }
+}
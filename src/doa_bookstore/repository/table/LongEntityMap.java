@@ -0,0 +1,365 @@
+package doa_bookstore.repository.table;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * An open-addressing hash table from {@code long} IDs to entities, with linear probing.
+ * Keys live in a {@code long[]} and entities in a parallel array, so a lookup touches two arrays
+ * instead of a chain of {@code Node} and {@code Long} objects, and allocates nothing.
+ * An empty slot is one whose entity is {@code null}; removals shift the following entries back
+ * instead of leaving tombstones, so probe sequences never grow with churn.
+ * <p>
+ * Not thread-safe. {@link ConcurrentLongEntityMap} shards several of these behind locks.
+ *
+ * @param <E> The type of entity stored in the table.
+ */
+public class LongEntityMap<E> implements EntityTable<E> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /*
+     * Both arrays of a generation are published together, so a reader that raced with a resize
+     * (see ConcurrentLongEntityMap) never combines a key array with a value array of a different size.
+     */
+    private static final class Slots {
+        final long[] keys;
+        final Object[] values;
+
+        Slots(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private Slots slots;
+    private int size;
+    private final Collection<E> values = new Values();
+
+    public LongEntityMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a table sized to hold the given number of entities without resizing.
+     *
+     * @param expectedSize The number of entities expected.
+     */
+    public LongEntityMap(int expectedSize) {
+        slots = new Slots(capacityFor(expectedSize));
+    }
+
+    /**
+     * Spreads an ID over the table. The multiplicative hash keeps sequential IDs one slot apart,
+     * and the fold brings the well-mixed high bits into the low bits used as index.
+     */
+    static long hash(long id) {
+        return id * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int indexFor(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Resize at half full: linear probing stays at about one and a half probes per lookup
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, expectedSize) * 2L - 1) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Table too large: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(long id) {
+        Slots current = slots;
+        long[] keys = current.keys;
+        Object[] values = current.values;
+        int mask = keys.length - 1;
+        int index = indexFor(hash(id), mask);
+        // Bounded by the capacity, so a racing reader of a concurrently modified table cannot spin forever
+        for (int probes = 0; probes <= mask; probes++) {
+            Object value = values[index];
+            if (value == null) {
+                return null;
+            }
+            if (keys[index] == id) {
+                return (E) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(long id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public E put(long id, E entity) {
+        return insert(id, entity, true, true);
+    }
+
+    @Override
+    public E putIfAbsent(long id, E entity) {
+        return insert(id, entity, false, true);
+    }
+
+    @Override
+    public E replace(long id, E entity) {
+        return insert(id, entity, true, false);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E replace(long id, E entity, Consumer<? super E> check) {
+        if (entity == null) {
+            throw new NullPointerException("Entity tables do not store null");
+        }
+        int index = find(id);
+        if (index < 0) {
+            return null;
+        }
+        E previous = (E) slots.values[index];
+        check.accept(previous);
+        slots.values[index] = entity;
+        return previous;
+    }
+
+    @Override
+    public E computeIfAbsent(long id, LongFunction<? extends E> loader) {
+        E existing = get(id);
+        if (existing != null) {
+            return existing;
+        }
+        E loaded = loader.apply(id);
+        if (loaded != null) {
+            insert(id, loaded, false, true);
+        }
+        return loaded;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(long id) {
+        int index = find(id);
+        if (index < 0) {
+            return null;
+        }
+        E removed = (E) slots.values[index];
+        delete(index);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(long id, E entity) {
+        int index = find(id);
+        if (index < 0 || slots.values[index] != entity) {
+            return false;
+        }
+        delete(index);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        // Shrink back, so a cleared table does not keep probing over a huge empty array
+        slots = new Slots(MIN_CAPACITY);
+        size = 0;
+    }
+
+    @Override
+    public Collection<E> values() {
+        return values;
+    }
+
+    /**
+     * Passes every stored entity to the given action, without allocating an iterator.
+     *
+     * @param action The action to apply.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super E> action) {
+        Object[] values = slots.values;
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((E) value);
+            }
+        }
+    }
+
+    /**
+     * Copies the stored entities into a new array.
+     *
+     * @return The stored entities.
+     */
+    Object[] toValueArray() {
+        Object[] copy = new Object[size];
+        int count = 0;
+        for (Object value : slots.values) {
+            if (value != null) {
+                copy[count++] = value;
+            }
+        }
+        return copy;
+    }
+
+    private int find(long id) {
+        long[] keys = slots.keys;
+        Object[] values = slots.values;
+        int mask = keys.length - 1;
+        int index = indexFor(hash(id), mask);
+        while (values[index] != null) {
+            if (keys[index] == id) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E insert(long id, E entity, boolean overwrite, boolean addIfAbsent) {
+        if (entity == null) {
+            throw new NullPointerException("Entity tables do not store null");
+        }
+        long[] keys = slots.keys;
+        Object[] values = slots.values;
+        int mask = keys.length - 1;
+        int index = indexFor(hash(id), mask);
+        while (values[index] != null) {
+            if (keys[index] == id) {
+                E previous = (E) values[index];
+                if (overwrite) {
+                    values[index] = entity;
+                }
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        if (!addIfAbsent) {
+            return null;
+        }
+        if (size + 1 > keys.length >> 1) {
+            resize(keys.length << 1);
+            insert(id, entity, false, true);
+            return null;
+        }
+        // Key first: a racing reader that sees the entity also sees its key
+        keys[index] = id;
+        values[index] = entity;
+        size++;
+        return null;
+    }
+
+    private void delete(int index) {
+        long[] keys = slots.keys;
+        Object[] values = slots.values;
+        int mask = keys.length - 1;
+        int hole = index;
+        values[hole] = null;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = indexFor(hash(keys[next]), mask);
+            // Move the entry into the hole if the hole lies on its probe path, between its home slot and itself
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                values[next] = null;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        size--;
+    }
+
+    private void resize(int capacity) {
+        if (capacity > 1 << 30) {
+            throw new IllegalStateException("Entity table is full");
+        }
+        Slots old = slots;
+        Slots resized = new Slots(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.values.length; i++) {
+            Object value = old.values[i];
+            if (value != null) {
+                long key = old.keys[i];
+                int index = indexFor(hash(key), mask);
+                while (resized.values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                resized.keys[index] = key;
+                resized.values[index] = value;
+            }
+        }
+        slots = resized;
+    }
+
+    private final class Values extends AbstractCollection<E> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+            forEachValue(action);
+        }
+
+        // Splits the slot array itself, so a parallel stream needs no copy
+        @Override
+        public Spliterator<E> spliterator() {
+            Object[] values = slots.values;
+            return new SlotSpliterator<>(values, 0, values.length, size);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            Object[] values = slots.values;
+            return new Iterator<>() {
+                private int index = advance(0);
+
+                private int advance(int from) {
+                    while (from < values.length && values[from] == null) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return index < values.length;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public E next() {
+                    if (index >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    E value = (E) values[index];
+                    index = advance(index + 1);
+                    return value;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package doa_bookstore.repository.table;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of the slot array of an open-addressing table, skipping empty slots.
+ * Splitting halves the range, so a table of {@code n} slots splits into balanced parts for a parallel stream
+ * without copying anything. The size is estimated from the share of the table the range covers.
+ *
+ * @param <E> The type of entity stored in the slots.
+ */
+final class SlotSpliterator<E> implements Spliterator<E> {
+
+    // Below this many slots a range is not worth handing to another thread
+    private static final int MIN_SPLIT = 1 << 10;
+
+    private final Object[] slots;
+    private int index;
+    private final int fence;
+    private long estimate;
+
+    SlotSpliterator(Object[] slots, int index, int fence, long estimate) {
+        this.slots = slots;
+        this.index = index;
+        this.fence = fence;
+        this.estimate = estimate;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        int middle = (index + fence) >>> 1;
+        if (middle - index < MIN_SPLIT) {
+            return null;
+        }
+        estimate >>>= 1;
+        Spliterator<E> prefix = new SlotSpliterator<>(slots, index, middle, estimate);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super E> action) {
+        while (index < fence) {
+            Object value = slots[index++];
+            if (value != null) {
+                action.accept((E) value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachRemaining(Consumer<? super E> action) {
+        Object[] slots = this.slots;
+        for (int i = index; i < fence; i++) {
+            Object value = slots[i];
+            if (value != null) {
+                action.accept((E) value);
+            }
+        }
+        index = fence;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+}
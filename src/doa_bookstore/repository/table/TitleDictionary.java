@@ -0,0 +1,118 @@
+package doa_bookstore.repository.table;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only dictionary of strings, stored as UTF-8 in one byte array and addressed by {@code int} codes.
+ * Equal strings get the same code, so a column of codes holds each distinct string once, with no
+ * {@link String} object or array header per entry.
+ * <p>
+ * Interning is synchronized; lookups by code are lock-free. Codes are never reused, so the dictionary
+ * only shrinks when it is discarded as a whole.
+ */
+final class TitleDictionary {
+
+    private static final int INITIAL_CODES = 64;
+
+    // UTF-8 bytes of every string, back to back; ends[code] is where the string of that code ends
+    private volatile byte[] bytes = new byte[1024];
+    private volatile int[] ends = new int[INITIAL_CODES];
+
+    // Only read under the lock, to find the code of a string being interned
+    private int[] hashes = new int[INITIAL_CODES];
+    private int[] slots = new int[INITIAL_CODES * 2];
+    private int used;
+
+    // Written last by intern, so a reader that sees a code below size also sees its bytes
+    private volatile int size;
+
+    /**
+     * Returns the code of a string, adding it to the dictionary if it is new.
+     *
+     * @param value The string, not {@code null}.
+     * @return Its code.
+     */
+    synchronized int intern(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        int hash = value.hashCode();
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        for (int code; (code = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (hashes[code] == hash && Arrays.equals(bytes, start(code), ends[code], encoded, 0, encoded.length)) {
+                return code;
+            }
+        }
+        int code = size;
+        if (used + encoded.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + encoded.length));
+        }
+        System.arraycopy(encoded, 0, bytes, used, encoded.length);
+        used += encoded.length;
+        if (code == ends.length) {
+            ends = Arrays.copyOf(ends, code * 2);
+            hashes = Arrays.copyOf(hashes, code * 2);
+        }
+        ends[code] = used;
+        hashes[code] = hash;
+        slots[slot] = code + 1;
+        size = code + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    /**
+     * Returns the string of a code.
+     *
+     * @param code A code returned by {@link #intern(String)}.
+     * @return The string.
+     */
+    String get(int code) {
+        if (code >= size) {
+            // Seen in a column before the dictionary write that created it; the lock orders the two
+            synchronized (this) {
+                return decode(code);
+            }
+        }
+        return decode(code);
+    }
+
+    /**
+     * Returns the number of distinct strings in the dictionary.
+     *
+     * @return The number of codes handed out.
+     */
+    int size() {
+        return size;
+    }
+
+    private String decode(int code) {
+        byte[] bytes = this.bytes;
+        int[] ends = this.ends;
+        int start = code == 0 ? 0 : ends[code - 1];
+        return new String(bytes, start, ends[code] - start, StandardCharsets.UTF_8);
+    }
+
+    private int start(int code) {
+        return code == 0 ? 0 : ends[code - 1];
+    }
+
+    private void rehash() {
+        int[] rehashed = new int[slots.length * 2];
+        int mask = rehashed.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = mix(hashes[code]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = code + 1;
+        }
+        slots = rehashed;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
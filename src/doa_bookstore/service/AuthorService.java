@@ -1,12 +1,19 @@
 package doa_bookstore.service;
 
+import doa_bookstore.cache.CatalogProjections;
+import doa_bookstore.cache.ProjectionCache;
+import doa_bookstore.dto.AuthorDTO;
 import doa_bookstore.entity.Author;
 import doa_bookstore.exception.EntityAlreadyExistsException;
 import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.StaleEntityException;
 import doa_bookstore.repository.AuthorRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Service class for managing authors in the bookstore system.
@@ -15,6 +22,7 @@ import java.util.Optional;
 public class AuthorService {
 
     private final AuthorRepository authorRepository;
+    private final ProjectionCache<Author, AuthorDTO> authorDTOs;
 
     /**
      * Constructs a new {@code AuthorService} with the specified author repository.
@@ -23,6 +31,7 @@ public class AuthorService {
      */
     public AuthorService(AuthorRepository authorRepository) {
         this.authorRepository = authorRepository;
+        this.authorDTOs = CatalogProjections.getInstance().authors();
     }
 
     /**
@@ -46,10 +55,95 @@ public class AuthorService {
         return authorRepository.findById(authorID);
     }
 
+    /**
+     * Finds the DTO of an author, through the projection cache.
+     *
+     * @param authorID The ID of the author.
+     * @return The DTO, or an empty Optional if the author does not exist. It is shared and must not be modified.
+     */
+    public Optional<AuthorDTO> findAuthorDTO(Long authorID) {
+        return authorID == null ? Optional.empty() : authorDTOs.get(authorID);
+    }
 
+    /**
+     * Replaces a stored author, matched by ID. A copy of the author read at some version, such as one taken with
+     * {@link Author#copy()}, is only stored if no other writer updated the author since, so concurrent editors
+     * never silently overwrite each other. The author found by {@link #findAuthorByID} is the stored one: changing
+     * it in place is seen at once by every reader and is never checked, so edit a copy of it instead.
+     *
+     * @param author The new state of the author.
+     * @return The author that was stored before, or {@code null} if no author has that ID.
+     * @throws StaleEntityException If the stored author changed since the copy was read; read it again and retry.
+     */
     public Author updateAuthor(Author author) {
         return authorRepository.update(author);
     }
 
+    /**
+     * Edits a stored author. The edit is made on a copy of the author, which is then stored through a versioned
+     * update; if another writer updated the author in between, the edit is made again on a new copy, so no
+     * concurrent edit is lost.
+     *
+     * @param authorID The ID of the author.
+     * @param edit     The change to make. It may run more than once, and must only change the author it is given.
+     * @return The edited author, as stored.
+     * @throws EntityNotFoundException If there is no author with that ID.
+     */
+    public Author editAuthor(Long authorID, Consumer<Author> edit) throws EntityNotFoundException {
+        while (true) {
+            Author copy = authorRepository.findById(authorID)
+                    .orElseThrow(() -> new EntityNotFoundException(Author.class)).copy();
+            edit.accept(copy);
+            try {
+                if (authorRepository.update(copy) == null) {
+                    throw new EntityNotFoundException(Author.class);
+                }
+                return copy;
+            } catch (StaleEntityException e) {
+                // Changed by another writer since it was read; edit it again
+            }
+        }
+    }
+
+    /**
+     * Saves several authors in one batch. Nothing is saved if any author already exists.
+     *
+     * @param authors The authors to save.
+     * @return The saved authors, in the order given.
+     * @throws EntityAlreadyExistsException If an author with the same ID already exists in the repository.
+     */
+    public List<Author> saveAuthors(Collection<Author> authors) throws EntityAlreadyExistsException {
+        return authorRepository.saveAll(authors);
+    }
+
+    /**
+     * Replaces several stored authors in one batch. Authors that are not stored, and stale copies, are skipped.
+     *
+     * @param authors The new states of the authors.
+     * @return The number of authors that were replaced.
+     */
+    public int updateAuthors(Collection<Author> authors) {
+        return authorRepository.updateAll(authors);
+    }
+
+    /**
+     * Deletes several authors in one batch.
+     *
+     * @param authorIDs The IDs of the authors to delete.
+     */
+    public void deleteAuthors(Collection<Long> authorIDs) {
+        authorRepository.deleteAllById(authorIDs);
+    }
+
+    /**
+     * Finds several authors by ID.
+     *
+     * @param authorIDs The IDs of the authors to find.
+     * @return The authors found, in the order of {@code authorIDs}.
+     */
+    public List<Author> findAuthorsByIDs(Collection<Long> authorIDs) {
+        return authorRepository.findAllById(authorIDs);
+    }
+
 
 }
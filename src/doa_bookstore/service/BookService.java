@@ -1,11 +1,37 @@
 package doa_bookstore.service;
 
+import doa_bookstore.cache.CatalogProjections;
+import doa_bookstore.cache.ProjectionCache;
+import doa_bookstore.dto.BookDTO;
+import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
 import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.exception.SnapshotTooOldException;
+import doa_bookstore.exception.StaleEntityException;
+import doa_bookstore.inventory.StockReservationEngine;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
 import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.mvcc.ReadView;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing books in the bookstore system.
@@ -13,7 +39,21 @@ import java.util.Optional;
  */
 public class BookService {
 
+    private static final Timer GET_BOOK_DTO_PAGE = MetricsRegistry.getInstance().timer("service.BookService.getBookDTOPage");
+    private static final Timer FIND_BY_AUTHOR_ID = MetricsRegistry.getInstance().timer("service.BookService.findByAuthorId");
+    private static final Timer FIND_BY_GENRE = MetricsRegistry.getInstance().timer("service.BookService.findByGenre");
+    private static final Timer FIND_BY_TITLE = MetricsRegistry.getInstance().timer("service.BookService.findByTitle");
+    private static final Timer SEARCH_BOOKS = MetricsRegistry.getInstance().timer("service.BookService.searchBooks");
+    private static final Timer COUNT_STOCK_UNITS_PER_GENRE = MetricsRegistry.getInstance().timer("service.BookService.countStockUnitsPerGenre");
+    private static final Timer FIND_LOW_STOCK_BOOKS = MetricsRegistry.getInstance().timer("service.BookService.findLowStockBooks");
+    private static final Timer FIND_AUTHORS_WITH_MOST_TITLES = MetricsRegistry.getInstance().timer("service.BookService.findAuthorsWithMostTitles");
+    private static final Timer RESOLVE_BOOKS = MetricsRegistry.getInstance().timer("service.BookService.resolveBooks");
+    private static final Timer RESERVE_STOCK = MetricsRegistry.getInstance().timer("service.BookService.reserveStock");
+    private static final Timer RELEASE_STOCK = MetricsRegistry.getInstance().timer("service.BookService.releaseStock");
+
     private final BookRepository bookRepository;
+    private final StockReservationEngine reservationEngine;
+    private final ProjectionCache<Book, BookDTO> bookDTOs;
 
     /**
      * Constructs a new {@code BookService} with the specified book repository.
@@ -22,15 +62,95 @@ public class BookService {
      */
     public BookService(BookRepository bookRepository) {
         this.bookRepository = bookRepository;
+        this.reservationEngine = StockReservationEngine.getInstance();
+        this.bookDTOs = CatalogProjections.getInstance().books();
     }
 
     /**
      * Retrieves all books in the repository.
+     * The books are not copied: the result is a read-only view over the repository, meant to be iterated.
      *
-     * @return A list of all books.
+     * @return A read-only view of all books.
      */
     public List<Book> getAllBooks() {
-        return bookRepository.findAll();
+        return bookRepository.findAllView();
+    }
+
+    /**
+     * Retrieves all books as they were when a read view was opened, unaffected by writes made since.
+     *
+     * @param view The view to read at, from {@link ReadView#open()}.
+     * @return The books the view sees.
+     * @throws SnapshotTooOldException If the view expired.
+     */
+    public List<Book> getAllBooks(ReadView view) {
+        return bookRepository.findAll(view);
+    }
+
+    /**
+     * Retrieves one page of books in ascending ID order.
+     *
+     * @param afterId The ID of the last book of the previous page, or {@code null} for the first page.
+     * @param limit   The maximum number of books to return.
+     * @return Up to {@code limit} books following {@code afterId}.
+     */
+    public List<Book> getBooksPage(Long afterId, int limit) {
+        return bookRepository.findPage(afterId, limit);
+    }
+
+    /**
+     * Retrieves one page of books in ascending ID order, as they were when a read view was opened. Reading
+     * every page from the same view lists the catalog as of one instant.
+     *
+     * @param afterId The ID of the last book of the previous page, or {@code null} for the first page.
+     * @param limit   The maximum number of books to return.
+     * @param view    The view to read at, from {@link ReadView#open()}.
+     * @return Up to {@code limit} books following {@code afterId}.
+     * @throws SnapshotTooOldException If the view expired.
+     */
+    public List<Book> getBooksPage(Long afterId, int limit, ReadView view) {
+        return bookRepository.findPage(afterId, limit, view);
+    }
+
+    /**
+     * Returns a lazy stream over all books in the repository.
+     *
+     * @return A stream of all books.
+     */
+    public Stream<Book> streamAllBooks() {
+        return bookRepository.streamAll();
+    }
+
+    /**
+     * Retrieves one page of the catalog as DTOs, ordered by book ID. DTOs are served from the projection
+     * cache and only built for books that are not cached yet.
+     *
+     * @param afterId The ID of the last book of the previous page, or {@code null} for the first page.
+     * @param limit   The maximum number of books to return.
+     * @return Up to {@code limit} book DTOs following {@code afterId}. They are shared and must not be modified.
+     */
+    public List<BookDTO> getBookDTOPage(Long afterId, int limit) {
+        long start = GET_BOOK_DTO_PAGE.start();
+        try {
+            List<Book> page = bookRepository.findPage(afterId, limit);
+            List<BookDTO> dtos = new ArrayList<>(page.size());
+            for (Book book : page) {
+                dtos.add(bookDTOs.project(book));
+            }
+            return dtos;
+        } finally {
+            GET_BOOK_DTO_PAGE.stop(start);
+        }
+    }
+
+    /**
+     * Finds the DTO of a book, through the projection cache.
+     *
+     * @param id The ID of the book.
+     * @return The DTO, or an empty Optional if the book does not exist. It is shared and must not be modified.
+     */
+    public Optional<BookDTO> findBookDTO(long id) {
+        return bookDTOs.get(id);
     }
 
     /**
@@ -43,6 +163,89 @@ public class BookService {
         return bookRepository.save(book);
     }
 
+    /**
+     * Saves several books in one batch, e.g. for a catalog import. Nothing is saved if any book already exists.
+     *
+     * @param books The books to save.
+     * @return The saved books, in the order given.
+     * @throws EntityAlreadyExistsException If a book with the same ID already exists in the repository.
+     */
+    public List<Book> saveBooks(Collection<Book> books) throws EntityAlreadyExistsException {
+        return bookRepository.saveAll(books);
+    }
+
+    /**
+     * Replaces a stored book, matched by ID. A copy of the book read at some version, such as one taken with
+     * {@link Book#copy()}, is only stored if no other writer updated the book since, so concurrent editors never
+     * silently overwrite each other. The book found by {@link #findBookById} is the stored one: changing it in
+     * place is seen at once by every reader and is never checked, so edit a copy of it instead. The stock of
+     * the given book is ignored: the stored book keeps the units counted by reservations, see
+     * {@link #restockBook(long, int)}.
+     *
+     * @param book The new state of the book.
+     * @return The book that was stored before, or {@code null} if no book has that ID.
+     * @throws StaleEntityException If the stored book changed since the copy was read; read it again and retry.
+     */
+    public Book updateBook(Book book) {
+        return bookRepository.update(book);
+    }
+
+    /**
+     * Edits a stored book. The edit is made on a copy of the book, which is then stored through a versioned
+     * update; if another writer updated the book in between, the edit is made again on a new copy, so no
+     * concurrent edit is lost. The stock is not edited this way: the book keeps the units left after the
+     * reservations made meanwhile, see {@link #restockBook(long, int)}.
+     *
+     * @param bookId The ID of the book.
+     * @param edit   The change to make. It may run more than once, and must only change the book it is given.
+     * @return The edited book, as stored.
+     * @throws EntityNotFoundException If there is no book with that ID.
+     */
+    public Book editBook(long bookId, Consumer<Book> edit) throws EntityNotFoundException {
+        while (true) {
+            Book copy = bookRepository.findById(bookId)
+                    .orElseThrow(() -> new EntityNotFoundException(Book.class)).copy();
+            edit.accept(copy);
+            try {
+                if (bookRepository.update(copy) == null) {
+                    throw new EntityNotFoundException(Book.class);
+                }
+                return copy;
+            } catch (StaleEntityException e) {
+                // Changed by another writer since it was read; edit it again
+            }
+        }
+    }
+
+    /**
+     * Replaces several stored books in one batch. Books that are not stored, and stale copies, are skipped.
+     *
+     * @param books The new states of the books.
+     * @return The number of books that were replaced.
+     */
+    public int updateBooks(Collection<Book> books) {
+        return bookRepository.updateAll(books);
+    }
+
+    /**
+     * Deletes several books in one batch.
+     *
+     * @param ids The IDs of the books to delete.
+     */
+    public void deleteBooks(Collection<Long> ids) {
+        bookRepository.deleteAllById(ids);
+    }
+
+    /**
+     * Finds several books by ID.
+     *
+     * @param ids The IDs of the books to find.
+     * @return The books found, in the order of {@code ids}.
+     */
+    public List<Book> findBooksByIds(Collection<Long> ids) {
+        return bookRepository.findAllById(ids);
+    }
+
     /**
      * Finds a book by its ID.
      *
@@ -52,4 +255,372 @@ public class BookService {
     public Optional<Book> findBookById(long id) {
         return bookRepository.findById(id);
     }
+
+    /**
+     * Finds every book written by the given author, from the book IDs kept on the author.
+     *
+     * @param authorId The ID of the author.
+     * @return The books of that author, or an empty list if there are none.
+     */
+    public List<Book> findByAuthorId(Long authorId) {
+        long start = FIND_BY_AUTHOR_ID.start();
+        try {
+            return bookRepository.findByAuthorId(authorId);
+        } finally {
+            FIND_BY_AUTHOR_ID.stop(start);
+        }
+    }
+
+    /**
+     * Finds the DTOs of every book written by the given author, from the book IDs kept on the author and the
+     * projection cache.
+     *
+     * @param authorId The ID of the author.
+     * @return The DTOs of that author's books, or an empty list if there are none. They are shared and must not
+     *         be modified.
+     */
+    public List<BookDTO> findBookDTOsByAuthorId(Long authorId) {
+        List<Book> books = findByAuthorId(authorId);
+        List<BookDTO> dtos = new ArrayList<>(books.size());
+        for (Book book : books) {
+            dtos.add(bookDTOs.project(book));
+        }
+        return dtos;
+    }
+
+    /**
+     * Finds every book of the given genre, using the genre index of the repository.
+     *
+     * @param genre The genre to look for.
+     * @return The books of that genre, or an empty list if there are none.
+     */
+    public List<Book> findByGenre(Book.Genre genre) {
+        long start = FIND_BY_GENRE.start();
+        try {
+            return bookRepository.findByGenre(genre);
+        } finally {
+            FIND_BY_GENRE.stop(start);
+        }
+    }
+
+    /**
+     * Finds every book with the given title, ignoring case, accents and extra whitespace.
+     *
+     * @param title The title to look for.
+     * @return The books with that title, or an empty list if there are none.
+     */
+    public List<Book> findByTitle(String title) {
+        long start = FIND_BY_TITLE.start();
+        try {
+            return bookRepository.findByTitle(title);
+        } finally {
+            FIND_BY_TITLE.stop(start);
+        }
+    }
+
+    /**
+     * Searches the catalog by title and author name. Every word of the query must match a word of the title
+     * or of the author name, exactly or as a prefix. Exact matches and title matches rank first.
+     *
+     * @param query The words to look for; the last one may be a prefix still being typed.
+     * @param limit The maximum number of books to return.
+     * @return The best matching books, best first, or an empty list if the query has no words.
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        long start = SEARCH_BOOKS.start();
+        try {
+            return bookRepository.search(query, limit);
+        } finally {
+            SEARCH_BOOKS.stop(start);
+        }
+    }
+
+    /**
+     * Searches the catalog like {@link #searchBooks(String, int)} and returns the DTOs of the results,
+     * served from the projection cache.
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of books to return.
+     * @return The DTOs of the best matching books, best first. They are shared and must not be modified.
+     */
+    public List<BookDTO> searchBookDTOs(String query, int limit) {
+        List<Book> books = searchBooks(query, limit);
+        List<BookDTO> dtos = new ArrayList<>(books.size());
+        for (Book book : books) {
+            dtos.add(bookDTOs.project(book));
+        }
+        return dtos;
+    }
+
+    /**
+     * Adds up the units in stock of every genre, scanning the catalog in parallel.
+     *
+     * @return The units in stock per genre; genres without books are left out.
+     */
+    public Map<Book.Genre, Long> countStockUnitsPerGenre() {
+        long start = COUNT_STOCK_UNITS_PER_GENRE.start();
+        try {
+            return bookRepository.parallelStreamAll()
+                    .filter(book -> book.getGenre() != null)
+                    .collect(Collectors.groupingBy(Book::getGenre, () -> new EnumMap<>(Book.Genre.class),
+                            Collectors.summingLong(Book::getStockUnits)));
+        } finally {
+            COUNT_STOCK_UNITS_PER_GENRE.stop(start);
+        }
+    }
+
+    /**
+     * Finds the books that are running out, scanning the catalog in parallel.
+     *
+     * @param threshold The highest number of units in stock that counts as low.
+     * @return The books with at most {@code threshold} units in stock, fewest units first, then by ID.
+     */
+    public List<Book> findLowStockBooks(int threshold) {
+        long start = FIND_LOW_STOCK_BOOKS.start();
+        try {
+            return bookRepository.parallelStreamAll()
+                    .filter(book -> book.getStockUnits() <= threshold)
+                    .sorted(Comparator.comparingInt(Book::getStockUnits).thenComparingLong(Book::getLongId))
+                    .toList();
+        } finally {
+            FIND_LOW_STOCK_BOOKS.stop(start);
+        }
+    }
+
+    /**
+     * Finds the authors with the most books in the catalog, scanning it in parallel.
+     *
+     * @param limit The maximum number of authors to return.
+     * @return Up to {@code limit} authors, the one with the most books first.
+     */
+    public List<Author> findAuthorsWithMostTitles(int limit) {
+        long start = FIND_AUTHORS_WITH_MOST_TITLES.start();
+        try {
+            // One shared map of adders: per-thread maps of every author would cost more to merge than to fill
+            Map<Author, LongAdder> titles = new ConcurrentHashMap<>();
+            bookRepository.parallelStreamAll()
+                    .map(Book::getAuthor)
+                    .filter(Objects::nonNull)
+                    .forEach(author -> titles.computeIfAbsent(author, key -> new LongAdder()).increment());
+            return titles.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<Author, LongAdder> entry) -> entry.getValue().sum()).reversed())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            FIND_AUTHORS_WITH_MOST_TITLES.stop(start);
+        }
+    }
+
+    /**
+     * Resolves order lines against the repository: one lookup by ID per line, no comparison of book fields.
+     *
+     * @param lines The lines of an order.
+     * @return The same lines, holding the stored book of each line.
+     * @throws EntityNotFoundException If a book of the lines is not stored.
+     */
+    public OrderLines resolveBooks(OrderLines lines) throws EntityNotFoundException {
+        long start = RESOLVE_BOOKS.start();
+        try {
+            Book[] books = new Book[lines.size()];
+            for (int i = 0; i < books.length; i++) {
+                books[i] = bookRepository.findById(lines.bookId(i))
+                        .orElseThrow(() -> new EntityNotFoundException(Book.class));
+            }
+            return lines.withBooks(books);
+        } finally {
+            RESOLVE_BOOKS.stop(start);
+        }
+    }
+
+    /**
+     * Resolves the books of an order given as a map, as orders were placed before {@link OrderLines} existed.
+     * Books are matched by ID and title.
+     *
+     * @param books The books of an order and their quantities.
+     * @return The lines of the order, holding the stored book of each line.
+     * @throws EntityNotFoundException  If a book has no ID, is not stored, or has another title than the stored one.
+     * @throws IllegalArgumentException If a quantity is {@code null}.
+     */
+    public OrderLines resolveBooks(Map<Book, Integer> books) throws EntityNotFoundException {
+        for (Book book : books.keySet()) {
+            if (book == null || !book.hasId()) {
+                throw new EntityNotFoundException(Book.class);
+            }
+        }
+        OrderLines lines = resolveBooks(OrderLines.of(books));
+        for (Book requested : books.keySet()) {
+            Book stored = lines.book(lines.indexOf(requested.getLongId()));
+            if (!Objects.equals(stored.getTitle(), requested.getTitle())) {
+                throw new EntityNotFoundException(Book.class);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Atomically takes the requested units of every book out of stock, all or nothing.
+     *
+     * @param quantities The stored books to reserve and the number of units of each.
+     * @throws InsufficientUnitsException If any book does not have enough units. No stock is changed.
+     */
+    public void reserveStock(Map<Book, Integer> quantities) throws InsufficientUnitsException {
+        reserveStock(OrderLines.of(quantities));
+    }
+
+    /**
+     * Atomically takes the units of every line out of stock, all or nothing.
+     *
+     * @param lines The lines to reserve, resolved by {@link #resolveBooks(OrderLines)}.
+     * @throws InsufficientUnitsException If any book does not have enough units. No stock is changed.
+     */
+    public void reserveStock(OrderLines lines) throws InsufficientUnitsException {
+        long start = RESERVE_STOCK.start();
+        try {
+            reservationEngine.reserve(lines);
+            persistStock(lines);
+        } finally {
+            RESERVE_STOCK.stop(start);
+        }
+    }
+
+    /**
+     * Puts units taken by {@link #reserveStock(Map)} back into stock.
+     *
+     * @param quantities The books and units that were reserved.
+     */
+    public void releaseStock(Map<Book, Integer> quantities) {
+        releaseStock(OrderLines.of(quantities));
+    }
+
+    /**
+     * Puts units taken by {@link #reserveStock(OrderLines)} back into stock.
+     *
+     * @param lines The lines that were reserved.
+     */
+    public void releaseStock(OrderLines lines) {
+        long start = RELEASE_STOCK.start();
+        try {
+            reservationEngine.release(lines);
+            persistStock(lines);
+        } finally {
+            RELEASE_STOCK.stop(start);
+        }
+    }
+
+    /**
+     * Adds units to the stock of a book, such as a delivery. This is how stock grows: updates and edits keep
+     * the stock counted by reservations, whatever the copy they store says.
+     *
+     * @param bookId The ID of the book.
+     * @param units  The number of units added.
+     * @throws EntityNotFoundException  If there is no book with that ID.
+     * @throws IllegalArgumentException If the number of units is not positive.
+     */
+    public void restockBook(long bookId, int units) throws EntityNotFoundException {
+        Book stored = bookRepository.findById(bookId).orElseThrow(() -> new EntityNotFoundException(Book.class));
+        reservationEngine.restock(stored, units);
+        persistStock(List.of(stored));
+    }
+
+    /**
+     * Reserves the stock of several orders. Each order is reserved all or nothing on its own, so an order that
+     * lacks stock does not hold back the others, and the new stock levels of every book are logged as one batch.
+     *
+     * @param orders The resolved lines of each order.
+     * @return For each order, {@code null} if its stock was reserved, or the exception that prevented it,
+     *         an {@link InsufficientUnitsException} or an {@link IllegalArgumentException} for a bad quantity.
+     */
+    public Exception[] reserveStockBatch(List<OrderLines> orders) {
+        long start = RESERVE_STOCK.start();
+        try {
+            Exception[] failures = new Exception[orders.size()];
+            Set<Book> changed = new LinkedHashSet<>();
+            for (int i = 0; i < orders.size(); i++) {
+                OrderLines order = orders.get(i);
+                try {
+                    reservationEngine.reserve(order);
+                    addBooks(order, changed);
+                } catch (InsufficientUnitsException | IllegalArgumentException e) {
+                    failures[i] = e;
+                }
+            }
+            persistStock(changed);
+            return failures;
+        } finally {
+            RESERVE_STOCK.stop(start);
+        }
+    }
+
+    /**
+     * Puts the units taken by several orders back into stock, logging the new levels as one batch.
+     *
+     * @param orders The lines of the orders whose stock was reserved.
+     */
+    public void releaseStockBatch(List<OrderLines> orders) {
+        long start = RELEASE_STOCK.start();
+        try {
+            Set<Book> changed = new LinkedHashSet<>();
+            for (OrderLines order : orders) {
+                reservationEngine.release(order);
+                addBooks(order, changed);
+            }
+            persistStock(changed);
+        } finally {
+            RELEASE_STOCK.stop(start);
+        }
+    }
+
+    private static void addBooks(OrderLines lines, Collection<Book> books) {
+        for (int i = 0; i < lines.size(); i++) {
+            books.add(lines.book(i));
+        }
+    }
+
+    private void persistStock(OrderLines lines) {
+        if (!lines.isEmpty()) {
+            List<Book> books = new ArrayList<>(lines.size());
+            addBooks(lines, books);
+            persistStock(books);
+        }
+    }
+
+    /*
+     * The engine shows the new level on the books it was given, which may have been replaced since their lines
+     * were resolved. In memory, the stored books are given the counted level too. In durable mode, the counted
+     * level of every changed book is logged as one batch instead: the batch holds copies of the stored books,
+     * which the repository fills with the counted level under the write to each, so a replaced book is logged
+     * all the same. Copies made stale by an edit meanwhile are taken again.
+     */
+    private void persistStock(Collection<Book> books) {
+        if (!bookRepository.isDurable()) {
+            for (Book book : books) {
+                bookRepository.findById(book.getLongId())
+                        .filter(stored -> stored != book)
+                        .ifPresent(reservationEngine::copyLevelTo);
+            }
+            return;
+        }
+        Collection<Book> pending = books;
+        while (!pending.isEmpty()) {
+            List<Book> copies = new ArrayList<>(pending.size());
+            for (Book book : pending) {
+                bookRepository.findById(book.getLongId()).ifPresent(stored -> copies.add(stored.copy()));
+            }
+            long[] versions = new long[copies.size()];
+            for (int i = 0; i < versions.length; i++) {
+                versions[i] = copies.get(i).getVersion();
+            }
+            if (bookRepository.updateAll(copies) == copies.size()) {
+                return;
+            }
+            List<Book> skipped = new ArrayList<>();
+            for (int i = 0; i < versions.length; i++) {
+                if (copies.get(i).getVersion() == versions[i]) {
+                    skipped.add(copies.get(i));
+                }
+            }
+            pending = skipped;
+        }
+    }
 }
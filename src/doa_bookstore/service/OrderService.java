@@ -1,14 +1,25 @@
 package doa_bookstore.service;
 
+import doa_bookstore.analytics.BookSales;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
 import doa_bookstore.entity.Orders;
 import doa_bookstore.entity.Orders.OrderStatus;
 import doa_bookstore.exception.EntityAlreadyExistsException;
-import doa_bookstore.repository.MyCrudRepository;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.StaleEntityException;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.OrderRepository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Service class for managing orders in the bookstore system.
@@ -16,15 +27,48 @@ import java.util.Optional;
  */
 public class OrderService {
 
-    private final MyCrudRepository<Orders> orderRepository;
+    private static final Timer CREATE_ORDER = MetricsRegistry.getInstance().timer("service.OrderService.createOrder");
+    private static final Timer COMPLETE_ORDER = MetricsRegistry.getInstance().timer("service.OrderService.completeOrder");
+    private static final Timer CANCEL_ORDER = MetricsRegistry.getInstance().timer("service.OrderService.cancelOrder");
+    private static final Timer FIND_BY_STATUS = MetricsRegistry.getInstance().timer("service.OrderService.findOrdersByStatus");
+    private static final Timer FIND_BY_DATE = MetricsRegistry.getInstance().timer("service.OrderService.findOrdersBetween");
+
+    private final OrderRepository orderRepository;
+    private final BookService bookService;
 
     /**
-     * Constructs a new {@code OrderService} with the specified order repository.
+     * Constructs a new {@code OrderService} with the specified order repository, releasing the stock of
+     * cancelled orders through a {@link BookService} over the shared book repository.
      *
      * @param orderRepository The repository for managing Order entities.
      */
-    public OrderService(MyCrudRepository<Orders> orderRepository) {
+    public OrderService(OrderRepository orderRepository) {
+        this(orderRepository, new BookService(BookRepository.getInstance()));
+    }
+
+    /**
+     * Constructs a new {@code OrderService} with the specified order repository and book service.
+     *
+     * @param orderRepository The repository for managing Order entities.
+     * @param bookService     The service used to release the stock of cancelled orders.
+     */
+    public OrderService(OrderRepository orderRepository, BookService bookService) {
         this.orderRepository = orderRepository;
+        this.bookService = bookService;
+    }
+
+    /**
+     * Creates a new order with the given customer name and lines of books.
+     * The order status is set to PENDING, and the order date is set to the current date.
+     * No stock is reserved: orders are placed with {@link doa_bookstore.controller.BookstoreController#makeOrder}
+     * or the {@link doa_bookstore.pipeline.OrderPipeline}, which reserve it first.
+     *
+     * @param customerName The name of the customer placing the order.
+     * @param lines        The books included in the order and their quantities.
+     * @return The created Order.
+     */
+    public Orders createOrder(String customerName, OrderLines lines) throws EntityAlreadyExistsException {
+        return create(new Orders(customerName, lines, new Date(), OrderStatus.PENDING));
     }
 
     /**
@@ -34,10 +78,159 @@ public class OrderService {
      * @param customerName The name of the customer placing the order.
      * @param books        The list of books included in the order.
      * @return The created Order.
+     * @deprecated Create the order from {@link OrderLines} with {@link #createOrder(String, OrderLines)}.
      */
+    @Deprecated
     public Orders createOrder(String customerName, HashMap<Book, Integer> books) throws EntityAlreadyExistsException {
-        Orders order = new Orders(customerName, books, new Date(), OrderStatus.PENDING);
-        return orderRepository.save(order);
+        return create(new Orders(customerName, books, new Date(), OrderStatus.PENDING));
+    }
+
+    private Orders create(Orders order) throws EntityAlreadyExistsException {
+        long start = CREATE_ORDER.start();
+        try {
+            return orderRepository.save(order);
+        } finally {
+            CREATE_ORDER.stop(start);
+        }
+    }
+
+    /**
+     * Saves several new orders in one batch, with one ID allocation and, in durable mode, one log record.
+     *
+     * @param orders The orders to save.
+     * @return The saved orders, in the order given.
+     * @throws EntityAlreadyExistsException If an order already exists in the repository. No order is saved.
+     */
+    public List<Orders> saveOrders(Collection<Orders> orders) throws EntityAlreadyExistsException {
+        return orderRepository.saveAll(orders);
+    }
+
+    /**
+     * Marks a pending order as completed.
+     * The new status is written on a copy of the order through a versioned update, so an order completed and
+     * cancelled concurrently ends up in one state only, only the thread that made the change reports it, and an
+     * update that fails leaves the order pending.
+     *
+     * @param orderId The ID of the order.
+     * @return {@code true} if the order was completed, {@code false} if it was no longer pending.
+     * @throws EntityNotFoundException If there is no order with that ID.
+     */
+    public boolean completeOrder(long orderId) throws EntityNotFoundException {
+        long start = COMPLETE_ORDER.start();
+        try {
+            return moveFromPending(orderId, OrderStatus.COMPLETED, completed -> {});
+        } finally {
+            COMPLETE_ORDER.stop(start);
+        }
+    }
+
+    /**
+     * Cancels a pending order and puts the stock it reserved back.
+     * The new status is written on a copy of the order through a versioned update, so the stock of an order is
+     * released once however many threads cancel it, and never for an order that was completed.
+     *
+     * @param orderId The ID of the order.
+     * @return {@code true} if the order was cancelled, {@code false} if it was no longer pending.
+     * @throws EntityNotFoundException If there is no order with that ID.
+     */
+    public boolean cancelOrder(long orderId) throws EntityNotFoundException {
+        long start = CANCEL_ORDER.start();
+        try {
+            return moveFromPending(orderId, OrderStatus.CANCELLED,
+                    cancelled -> bookService.releaseStock(storedLines(cancelled.getLines())));
+        } finally {
+            CANCEL_ORDER.stop(start);
+        }
+    }
+
+    /*
+     * Moves a pending order to a final status by updating a copy of it. The stored order only changes if the
+     * version the copy was read at is still the stored one; when another writer got there first, the order is
+     * read again. Once the copy is stored, afterMove runs exactly once, by the thread that stored it.
+     */
+    private boolean moveFromPending(long orderId, OrderStatus next, Consumer<Orders> afterMove)
+            throws EntityNotFoundException {
+        while (true) {
+            Orders order = orderRepository.findById(orderId).orElseThrow(() -> new EntityNotFoundException(Orders.class));
+            if (order.getStatus() != OrderStatus.PENDING) {
+                return false;
+            }
+            Orders moved = order.copy();
+            moved.setStatus(next);
+            try {
+                if (orderRepository.update(moved) == null) {
+                    throw new EntityNotFoundException(Orders.class);
+                }
+            } catch (StaleEntityException e) {
+                // Changed by another writer since it was read; look at it again
+                continue;
+            } catch (RuntimeException e) {
+                // A write that is applied and then fails to be logged still moved the order
+                if (orderRepository.findById(orderId).orElse(null) == moved) {
+                    afterMove.accept(moved);
+                }
+                throw e;
+            }
+            afterMove.accept(moved);
+            return true;
+        }
+    }
+
+    // The lines resolved to the books still stored; the stock of a deleted book has nowhere to go back to
+    private OrderLines storedLines(OrderLines lines) {
+        if (lines.isResolved()) {
+            return lines;
+        }
+        OrderLines.Builder stored = OrderLines.builder();
+        for (int i = 0; i < lines.size(); i++) {
+            int quantity = lines.quantity(i);
+            bookService.findBookById(lines.bookId(i)).ifPresent(book -> stored.add(book, quantity));
+        }
+        return stored.build();
+    }
+
+    /**
+     * Finds orders with the given status, lowest IDs first, through the status index of the repository.
+     * Fulfillment workers pull pending orders in batches this way without scanning every order.
+     *
+     * @param status The status to look for.
+     * @param limit  The maximum number of orders to return.
+     * @return Up to {@code limit} orders with that status.
+     */
+    public List<Orders> findOrdersByStatus(OrderStatus status, int limit) {
+        long start = FIND_BY_STATUS.start();
+        try {
+            return orderRepository.findByStatus(status, limit);
+        } finally {
+            FIND_BY_STATUS.stop(start);
+        }
+    }
+
+    /**
+     * Finds the orders placed between two dates, including archived orders. Only the days in the range are
+     * looked up, in memory and in the archive.
+     *
+     * @param from The earliest date, included.
+     * @param to   The latest date, excluded.
+     * @return The matching orders, oldest first.
+     */
+    public List<Orders> findOrdersBetween(Date from, Date to) {
+        long start = FIND_BY_DATE.start();
+        try {
+            return orderRepository.findByDateRange(from, to);
+        } finally {
+            FIND_BY_DATE.stop(start);
+        }
+    }
+
+    /**
+     * Finds every order placed by a customer, through the customer index of the repository.
+     *
+     * @param customerName The name of the customer.
+     * @return The orders of that customer.
+     */
+    public List<Orders> findOrdersByCustomer(String customerName) {
+        return orderRepository.findByCustomerName(customerName);
     }
 
     /**
@@ -58,4 +251,62 @@ public class OrderService {
     public void deleteOrder(Long orderId) {
         orderRepository.deleteById(orderId);
     }
+
+    /**
+     * Finds several orders by ID.
+     *
+     * @param orderIds The IDs of the orders to find.
+     * @return The orders found, in the order of {@code orderIds}.
+     */
+    public List<Orders> findOrdersByIds(Collection<Long> orderIds) {
+        return orderRepository.findAllById(orderIds);
+    }
+
+    /**
+     * Replaces several stored orders in one batch. Orders that are not stored are skipped.
+     *
+     * @param orders The new states of the orders.
+     * @return The number of orders that were replaced.
+     */
+    public int updateOrders(Collection<Orders> orders) {
+        return orderRepository.updateAll(orders);
+    }
+
+    /**
+     * Deletes several orders in one batch.
+     *
+     * @param orderIds The IDs of the orders to delete.
+     */
+    public void deleteOrders(Collection<Long> orderIds) {
+        orderRepository.deleteAllById(orderIds);
+    }
+
+    /**
+     * Finds the best-selling books. Served from aggregates kept up to date on every order write.
+     *
+     * @param n The maximum number of books to return.
+     * @return Up to {@code n} books and their units sold, most units first.
+     */
+    public List<BookSales> findTopSellingBooks(int n) {
+        return orderRepository.findTopSellingBooks(n);
+    }
+
+    /**
+     * Counts the units sold of all the books of an author, in constant time.
+     *
+     * @param authorId The ID of the author.
+     * @return The number of units sold.
+     */
+    public long countUnitsSoldByAuthor(long authorId) {
+        return orderRepository.countUnitsSoldByAuthor(authorId);
+    }
+
+    /**
+     * Counts the units sold of each genre, in constant time.
+     *
+     * @return The number of units sold per genre, for every genre.
+     */
+    public Map<Book.Genre, Long> countUnitsSoldPerGenre() {
+        return orderRepository.countUnitsSoldPerGenre();
+    }
 }
@@ -1,25 +1,166 @@
 package doa_bookstore.startup;
 
+import doa_bookstore.controller.BookstoreController;
+import doa_bookstore.executor.RequestExecutor;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.persistence.AuthorCodec;
+import doa_bookstore.persistence.BookCodec;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.FsyncPolicy;
+import doa_bookstore.persistence.OrderArchive;
+import doa_bookstore.persistence.OrderCodec;
+import doa_bookstore.pipeline.OrderPipeline;
 import doa_bookstore.repository.AuthorRepository;
 import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.MyCrudRepository;
 import doa_bookstore.repository.OrderRepository;
 import doa_bookstore.service.AuthorService;
 import doa_bookstore.service.BookService;
 import doa_bookstore.service.OrderService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class StartupInitializer {
 
+    private static final Counter ARCHIVING_FAILURES = MetricsRegistry.getInstance().counter("archive.orders.failures");
+
+    /**
+     * System property naming the directory where repositories are persisted.
+     * When it is not set, the repositories only live in memory.
+     */
+    public static final String DATA_DIR_PROPERTY = "doa.data.dir";
+
+    /**
+     * System property selecting the {@link FsyncPolicy} of the write-ahead logs. Defaults to group commit.
+     */
+    public static final String FSYNC_POLICY_PROPERTY = "doa.fsync";
+
+    /**
+     * System property giving the age, in days, after which completed and cancelled orders are moved to the
+     * order archive of the data directory. Orders are checked once a day. When it is not set, orders are
+     * never archived.
+     */
+    public static final String ARCHIVE_AFTER_DAYS_PROPERTY = "doa.orders.archiveAfterDays";
+
     private final AuthorService authorService;
     private final BookService bookService;
     private final OrderService orderService;
+    private final BookstoreController controller;
+    private final RequestExecutor requestExecutor;
+    private final OrderPipeline orderPipeline;
 
     public StartupInitializer() {
         BookRepository bookRepository = BookRepository.getInstance();
         AuthorRepository authorRepository = AuthorRepository.getInstance();
         OrderRepository orderRepository = OrderRepository.getInstance();
 
+        String dataDir = System.getProperty(DATA_DIR_PROPERTY);
+        if (dataDir != null) {
+            recover(Path.of(dataDir), authorRepository, bookRepository, orderRepository);
+        }
+
         this.authorService = new AuthorService(authorRepository);
         this.bookService = new BookService(bookRepository);
-        this.orderService = new OrderService(orderRepository);
+        this.orderService = new OrderService(orderRepository, bookService);
+        this.controller = new BookstoreController(bookService, authorService, orderService);
+        this.requestExecutor = RequestExecutor.fromSystemProperties(controller);
+        this.orderPipeline = OrderPipeline.fromSystemProperties(bookService, orderService);
+    }
+
+    /**
+     * @return The controller wired to the repositories.
+     */
+    public BookstoreController getController() {
+        return controller;
+    }
+
+    /**
+     * @return The executor that runs requests against the controller on virtual threads.
+     */
+    public RequestExecutor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * @return The pipeline that places orders in batches, for traffic peaks.
+     */
+    public OrderPipeline getOrderPipeline() {
+        return orderPipeline;
+    }
+
+    /**
+     * Rebuilds the repositories from disk and makes them durable. Authors are recovered first,
+     * then books and then orders, because each one refers to the entities before it.
+     */
+    private static void recover(Path directory, AuthorRepository authorRepository,
+                                BookRepository bookRepository, OrderRepository orderRepository) {
+        DurabilityOptions defaults = DurabilityOptions.defaults();
+        DurabilityOptions options = new DurabilityOptions(
+                FsyncPolicy.valueOf(System.getProperty(FSYNC_POLICY_PROPERTY, defaults.getFsyncPolicy().name())),
+                defaults.getFlushIntervalMillis(), defaults.getSnapshotThreshold());
+        OrderCodec orderCodec = new OrderCodec(id -> bookRepository.findById(id).orElse(null));
+        try {
+            authorRepository.enableDurability(directory, new AuthorCodec(), options);
+            bookRepository.enableDurability(directory,
+                    new BookCodec(id -> authorRepository.findById(id).orElse(null)), options);
+            orderRepository.enableDurability(directory, orderCodec, options);
+            orderRepository.attachArchive(OrderArchive.open(directory.resolve("orders-archive"), orderCodec));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to recover repositories from " + directory, e);
+        }
+
+        String archiveAfterDays = System.getProperty(ARCHIVE_AFTER_DAYS_PROPERTY);
+        if (archiveAfterDays != null) {
+            scheduleArchiving(orderRepository, Long.parseLong(archiveAfterDays));
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Close every log even if one fails, then report the failures through the uncaught exception handler
+            IOException failure = null;
+            for (MyCrudRepository<?> repository : List.of(orderRepository, bookRepository, authorRepository)) {
+                try {
+                    repository.disableDurability();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Unable to flush the repository logs on shutdown", failure);
+            }
+        }, "repository-shutdown"));
+    }
+
+    /**
+     * Archives the orders older than the given age once a day, on a daemon thread. Failed runs are counted in the
+     * {@code archive.orders.failures} metric.
+     */
+    private static void scheduleArchiving(OrderRepository orderRepository, long archiveAfterDays) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                orderRepository.archiveOrdersBefore(
+                        new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(archiveAfterDays)));
+            } catch (IOException | RuntimeException e) {
+                // Orders that could not be archived stay in memory and are tried again the next day; an exception
+                // escaping the task would cancel every later run
+                ARCHIVING_FAILURES.increment();
+            }
+        }, 0, 1, TimeUnit.DAYS);
     }
 }
@@ -0,0 +1,174 @@
+package test.doa_bookstore.analytics;
+
+import doa_bookstore.analytics.BookSales;
+import doa_bookstore.analytics.SalesAnalytics;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.entity.Orders.OrderStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesAnalyticsTest {
+
+    private SalesAnalytics analytics;
+    private Author austen;
+    private Author twain;
+    private Book emma;
+    private Book persuasion;
+    private Book tomSawyer;
+    private long nextOrderId;
+
+    @BeforeEach
+    void setUp() {
+        analytics = new SalesAnalytics();
+        austen = author(1L, "Jane Austen");
+        twain = author(2L, "Mark Twain");
+        emma = book(10L, "Emma", austen, Book.Genre.ROMANCE);
+        persuasion = book(11L, "Persuasion", austen, Book.Genre.ROMANCE);
+        tomSawyer = book(12L, "Tom Sawyer", twain, Book.Genre.COMEDY);
+        nextOrderId = 100;
+    }
+
+    private static Author author(long id, String name) {
+        Author author = new Author(name);
+        author.setId(id);
+        return author;
+    }
+
+    private static Book book(long id, String title, Author author, Book.Genre genre) {
+        Book book = new Book(title, author, genre, 100);
+        book.setId(id);
+        return book;
+    }
+
+    private Orders order(OrderStatus status, Object... lines) {
+        OrderLines.Builder books = OrderLines.builder();
+        for (int i = 0; i < lines.length; i += 2) {
+            books.add((Book) lines[i], (Integer) lines[i + 1]);
+        }
+        Orders order = new Orders("Customer", books.build(), new Date(), status);
+        order.setId(nextOrderId++);
+        return order;
+    }
+
+    @Test
+    void testSavedOrdersAreAggregated() {
+        analytics.onSaved(order(OrderStatus.PENDING, emma, 2, tomSawyer, 1));
+        analytics.onSaved(order(OrderStatus.COMPLETED, emma, 3, persuasion, 4));
+
+        assertEquals(5, analytics.unitsSoldOfBook(emma.getLongId()));
+        assertEquals(9, analytics.unitsSoldByAuthor(austen.getId()));
+        assertEquals(1, analytics.unitsSoldByAuthor(twain.getId()));
+        assertEquals(9, analytics.unitsSoldByGenre(Book.Genre.ROMANCE));
+        assertEquals(1, analytics.unitsSoldByGenre(Book.Genre.COMEDY));
+        assertEquals(0, analytics.unitsSoldByGenre(Book.Genre.DRAMA));
+        assertEquals(10, analytics.totalUnitsSold());
+    }
+
+    @Test
+    void testTopBooksAreRankedByUnits() {
+        analytics.onSaved(order(OrderStatus.PENDING, emma, 2, tomSawyer, 7));
+        analytics.onSaved(order(OrderStatus.PENDING, persuasion, 4));
+
+        List<BookSales> top = analytics.topBooks(2);
+
+        assertEquals(2, top.size());
+        assertEquals(tomSawyer.getLongId(), top.get(0).getBookId());
+        assertEquals(7, top.get(0).getUnits());
+        assertEquals(persuasion.getLongId(), top.get(1).getBookId());
+        assertEquals(3, analytics.topBooks(10).size());
+    }
+
+    @Test
+    void testCancellingAnOrderTakesItsUnitsBack() {
+        Orders order = order(OrderStatus.PENDING, emma, 2);
+        analytics.onSaved(order);
+        analytics.onSaved(order(OrderStatus.PENDING, persuasion, 1));
+
+        order.setStatus(OrderStatus.CANCELLED);
+        analytics.onUpdated(order, order);
+
+        assertEquals(0, analytics.unitsSoldOfBook(emma.getLongId()));
+        assertEquals(1, analytics.unitsSoldByAuthor(austen.getId()));
+        assertEquals(persuasion.getLongId(), analytics.topBooks(10).get(0).getBookId());
+        assertEquals(1, analytics.topBooks(10).size());
+
+        order.setStatus(OrderStatus.COMPLETED);
+        analytics.onUpdated(order, order);
+
+        assertEquals(2, analytics.unitsSoldOfBook(emma.getLongId()));
+        assertEquals(emma.getLongId(), analytics.topBooks(1).get(0).getBookId());
+    }
+
+    @Test
+    void testCancelledOrdersAreNotCounted() {
+        analytics.onSaved(order(OrderStatus.CANCELLED, emma, 2));
+
+        assertEquals(0, analytics.totalUnitsSold());
+        assertTrue(analytics.topBooks(10).isEmpty());
+    }
+
+    @Test
+    void testInPlaceUpdateReplacesPreviousLines() {
+        Orders order = order(OrderStatus.PENDING, emma, 2);
+        analytics.onSaved(order);
+
+        order.setLines(OrderLines.builder().add(tomSawyer, 3).build());
+        analytics.onUpdated(order, order);
+
+        assertEquals(0, analytics.unitsSoldOfBook(emma.getLongId()));
+        assertEquals(3, analytics.unitsSoldOfBook(tomSawyer.getLongId()));
+        assertEquals(0, analytics.unitsSoldByGenre(Book.Genre.ROMANCE));
+        assertEquals(3, analytics.totalUnitsSold());
+    }
+
+    @Test
+    void testDeleteAndClear() {
+        Orders order = order(OrderStatus.PENDING, emma, 2);
+        analytics.onSaved(order);
+        analytics.onSaved(order(OrderStatus.PENDING, tomSawyer, 1));
+
+        analytics.onDeleted(order);
+        analytics.onDeleted(order);
+
+        assertEquals(0, analytics.unitsSoldOfBook(emma.getLongId()));
+        assertEquals(1, analytics.totalUnitsSold());
+
+        analytics.onCleared();
+
+        assertEquals(0, analytics.totalUnitsSold());
+        assertEquals(0, analytics.unitsSoldByAuthor(twain.getId()));
+        assertTrue(analytics.topBooks(10).isEmpty());
+    }
+
+    @Test
+    void testConcurrentOrdersAreAllCounted() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            List<Orders> orders = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                orders.add(order(OrderStatus.PENDING, emma, 1, tomSawyer, 2));
+            }
+            Thread thread = new Thread(() -> orders.forEach(analytics::onSaved));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8_000, analytics.unitsSoldOfBook(emma.getLongId()));
+        assertEquals(16_000, analytics.unitsSoldByAuthor(twain.getId()));
+        List<BookSales> top = analytics.topBooks(10);
+        assertEquals(2, top.size());
+        assertEquals(16_000, top.get(0).getUnits());
+    }
+}
@@ -0,0 +1,100 @@
+package test.doa_bookstore.cache;
+
+import doa_bookstore.cache.CacheStats;
+import doa_bookstore.cache.ProjectionCache;
+import doa_bookstore.dto.BookDTO;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.repository.MyCrudRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the read-through {@link ProjectionCache}.
+ */
+class ProjectionCacheTest {
+
+    private static class TestBookRepository extends MyCrudRepository<Book> {
+    }
+
+    private TestBookRepository repository;
+    private AtomicInteger projections;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TestBookRepository();
+        projections = new AtomicInteger();
+    }
+
+    private ProjectionCache<Book, BookDTO> cache(int maximumSize, Duration timeToLive) {
+        ProjectionCache<Book, BookDTO> cache = new ProjectionCache<>(book -> {
+            projections.incrementAndGet();
+            return new BookDTO(book);
+        }, repository::findById, maximumSize, timeToLive);
+        repository.addListener(cache);
+        return cache;
+    }
+
+    @Test
+    void testReadThroughCountsHitsAndMisses() throws EntityAlreadyExistsException {
+        ProjectionCache<Book, BookDTO> cache = cache(100, Duration.ZERO);
+        Book book = repository.save(new Book("Emma", null, Book.Genre.ROMANCE, 1));
+
+        BookDTO first = cache.get(book.getId()).orElseThrow();
+        BookDTO second = cache.get(book.getId()).orElseThrow();
+
+        assertSame(first, second);
+        assertEquals("Emma", first.getTitle());
+        assertTrue(cache.get(999).isEmpty());
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getSize());
+        assertEquals(1, projections.get());
+    }
+
+    @Test
+    void testUpdateAndDeleteInvalidate() throws EntityAlreadyExistsException {
+        ProjectionCache<Book, BookDTO> cache = cache(100, Duration.ZERO);
+        Book book = repository.save(new Book("Emma", null, Book.Genre.ROMANCE, 1));
+        cache.get(book.getId());
+
+        book.setTitle("Persuasion");
+        repository.update(book);
+        assertEquals("Persuasion", cache.get(book.getId()).orElseThrow().getTitle());
+
+        repository.deleteById(book.getId());
+        assertTrue(cache.get(book.getId()).isEmpty());
+        assertEquals(2, cache.stats().getInvalidations());
+    }
+
+    @Test
+    void testLeastRecentlyUsedProjectionsAreEvicted() throws EntityAlreadyExistsException {
+        ProjectionCache<Book, BookDTO> cache = cache(16, Duration.ZERO);
+        for (int i = 0; i < 1000; i++) {
+            cache.project(repository.save(new Book("Book " + i, null, Book.Genre.DRAMA, 1)));
+        }
+
+        CacheStats stats = cache.stats();
+        assertTrue(stats.getSize() <= 16, "Cache grew to " + stats.getSize());
+        assertEquals(1000 - stats.getSize(), stats.getEvictions());
+    }
+
+    @Test
+    void testExpiredProjectionsAreRebuilt() throws EntityAlreadyExistsException, InterruptedException {
+        ProjectionCache<Book, BookDTO> cache = cache(100, Duration.ofMillis(1));
+        Book book = repository.save(new Book("Emma", null, Book.Genre.ROMANCE, 1));
+        cache.get(book.getId());
+
+        Thread.sleep(5);
+        cache.get(book.getId());
+
+        assertEquals(2, projections.get());
+        assertEquals(1, cache.stats().getEvictions());
+    }
+}
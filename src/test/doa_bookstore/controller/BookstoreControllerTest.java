@@ -3,6 +3,7 @@ package test.doa_bookstore.controller;
 import doa_bookstore.controller.BookstoreController;
 import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
 import doa_bookstore.exception.EntityAlreadyExistsException;
 import doa_bookstore.exception.EntityNotFoundException;
 import doa_bookstore.exception.InsufficientUnitsException;
@@ -15,8 +16,13 @@ import doa_bookstore.service.OrderService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -51,15 +57,89 @@ class BookstoreControllerTest {
         assertNotNull(savedBook.getId());
         assertEquals("Pride and Prejudice", savedBook.getTitle());
 
+        // Linking the book again by hand, as callers did before the repositories linked it, changes nothing
         author.addBook(savedBook);
         authorService.updateAuthor(author);
 
         Author repoAuthor = authorService.findAuthorByID(author.getId())
                 .orElseThrow(() -> new EntityNotFoundException(Author.class));
 
-        assertTrue(repoAuthor.getBooks().contains(savedBook));
+        assertTrue(repoAuthor.getBookIds().contains(savedBook.getId()));
+        assertTrue(repoAuthor.getBooks(BookRepository.getInstance()::findById).contains(savedBook));
+        assertEquals(1, repoAuthor.getBookIds().size());
     }
 
+    @Test
+    void testConcurrentSaveBookLinksEveryBook() throws Exception {
+        Author author = new Author("Agatha Christie");
+        authorService.saveAuthor(author);
+        int threads = 4;
+        int booksPerThread = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < booksPerThread; i++) {
+                    bookstoreController.saveBook(new Book("Mystery " + thread + "-" + i, author, Book.Genre.DRAMA, 1));
+                    // A copy of the author replacing the stored one keeps the links made meanwhile
+                    authorService.editAuthor(author.getId(), copy -> copy.setName(author.getName()));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<Book> books = bookstoreController.booksByAuthor(author);
+        assertEquals(threads * booksPerThread, books.size());
+        assertEquals(threads * booksPerThread,
+                authorService.findAuthorByID(author.getId()).orElseThrow().getBookIds().size());
+    }
+
+
+    @Test
+    void testSaveBooks() throws EntityAlreadyExistsException, EntityNotFoundException {
+        Author author = new Author("Jane Austen");
+        authorService.saveAuthor(author);
+        List<Book> books = List.of(new Book("Emma", author, Book.Genre.ROMANCE, 3),
+                new Book("Persuasion", author, Book.Genre.ROMANCE, 4));
+
+        List<Book> saved = bookstoreController.saveBooks(books);
+
+        assertEquals(2, saved.size());
+        assertEquals(saved, bookstoreController.findBooksByIds(List.of(saved.get(0).getId(), saved.get(1).getId())));
+    }
+
+    @Test
+    void testSaveBooksWithUnknownAuthor() throws EntityAlreadyExistsException {
+        Author author = new Author("Jane Austen");
+        authorService.saveAuthor(author);
+        Author unknown = new Author("Unknown");
+        unknown.setId(-1L);
+        Book valid = new Book("Emma", author, Book.Genre.ROMANCE, 3);
+        Book invalid = new Book("Nobody's Book", unknown, Book.Genre.DRAMA, 1);
+
+        assertThrows(EntityNotFoundException.class, () -> bookstoreController.saveBooks(List.of(valid, invalid)));
+        assertNull(valid.getId());
+    }
+
+    @Test
+    void testBookDTOFollowsAuthorRename() throws EntityAlreadyExistsException, EntityNotFoundException {
+        Author author = new Author("Mark Twian");
+        authorService.saveAuthor(author);
+        Book book = bookstoreController.saveBook(new Book("Roughing It", author, Book.Genre.COMEDY, 2));
+        assertEquals("Mark Twian", bookstoreController.findBookDTO(book.getId()).getAuthorName());
+
+        author.setName("Mark Twain");
+        authorService.updateAuthor(author);
+
+        assertEquals("Mark Twain", bookstoreController.findBookDTO(book.getId()).getAuthorName());
+        assertTrue(bookstoreController.getCatalogPage(book.getId() - 1, 1).stream()
+                .anyMatch(dto -> dto.getAuthorName().equals("Mark Twain")));
+    }
 
     @Test
     void testFindAuthorById() throws EntityAlreadyExistsException, EntityNotFoundException {
@@ -85,9 +165,16 @@ class BookstoreControllerTest {
         author.addBook(book2);
 
         Author updatedAuthor = authorService.updateAuthor(author);
+        assertEquals(2, bookstoreController.booksByAuthor(updatedAuthor).size());
 
-        List<Book> books = bookstoreController.booksByAuthor(updatedAuthor);
-        assertEquals(2, books.size());
+        List<Book> books = bookstoreController.booksByAuthor(author);
+        assertEquals(List.of(book1.getId(), book2.getId()), books.stream().map(Book::getId).toList());
+
+        // The list is the caller's own, and deleted books are unlinked
+        books.clear();
+        bookService.deleteBooks(List.of(book1.getId()));
+        assertEquals(List.of(book2.getId()),
+                bookstoreController.booksByAuthor(author).stream().map(Book::getId).toList());
     }
 
     @Test
@@ -109,6 +196,23 @@ class BookstoreControllerTest {
         assertTrue(isOrderSuccessful);
     }
 
+    @Test
+    void testMakeOrderDecrementsStock() throws EntityAlreadyExistsException, InsufficientUnitsException, EntityNotFoundException {
+        Author author = new Author("Jane Austen");
+        authorService.saveAuthor(author);
+
+        Book book = new Book("Pride and Prejudice", author, Book.Genre.ROMANCE, 3);
+        bookService.saveBook(book);
+
+        HashMap<Book, Integer> orders = new HashMap<>();
+        orders.put(book, 2);
+
+        assertTrue(bookstoreController.makeOrder("Alice", orders));
+        assertEquals(1, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+        assertThrows(InsufficientUnitsException.class, () -> bookstoreController.makeOrder("Bob", orders));
+        assertEquals(1, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+    }
+
     @Test
     void testMakeOrderInsufficientUnits() throws EntityAlreadyExistsException {
         Author author = new Author("Jane Austen");
@@ -135,4 +239,26 @@ class BookstoreControllerTest {
 
         assertThrows(EntityNotFoundException.class, () -> bookstoreController.makeOrder("Alice", orders));
     }
+
+    @Test
+    void testMakeOrderByLines() throws EntityAlreadyExistsException, InsufficientUnitsException, EntityNotFoundException {
+        Author author = new Author("Jane Austen");
+        authorService.saveAuthor(author);
+        Book emma = bookService.saveBook(new Book("Emma", author, Book.Genre.ROMANCE, 5));
+        Book persuasion = bookService.saveBook(new Book("Persuasion", author, Book.Genre.ROMANCE, 5));
+
+        OrderLines lines = OrderLines.builder()
+                .add(emma.getId(), 2)
+                .add(persuasion.getId(), 1)
+                .add(emma.getId(), 1)
+                .build();
+
+        assertTrue(bookstoreController.makeOrder("Alice", lines));
+        assertEquals(2, bookService.findBookById(emma.getId()).orElseThrow().getStockUnits());
+        assertEquals(4, bookService.findBookById(persuasion.getId()).orElseThrow().getStockUnits());
+
+        OrderLines unknown = OrderLines.builder().add(emma.getId(), 1).add(Long.MAX_VALUE, 1).build();
+        assertThrows(EntityNotFoundException.class, () -> bookstoreController.makeOrder("Bob", unknown));
+        assertEquals(2, bookService.findBookById(emma.getId()).orElseThrow().getStockUnits());
+    }
 }
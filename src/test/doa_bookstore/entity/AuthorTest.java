@@ -2,6 +2,9 @@ package test.doa_bookstore.entity;
 
 import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.BookIds;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.repository.BookRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -40,16 +43,75 @@ class AuthorTest {
     }
 
     @Test
-    void testGetBooks() {
+    void testNewAuthorHasNoBooks() {
+        assertTrue(author.getBookIds().isEmpty());
+    }
+
+    @Test
+    void testGetBooks() throws EntityAlreadyExistsException {
         List<Book> books = new ArrayList<>();
-        books.add(new Book("Book 1", author, Book.Genre.DRAMA, 5));
+        books.add(BookRepository.getInstance().save(new Book("Book 1", author, Book.Genre.DRAMA, 5)));
         author.setBooks(books);
-        assertEquals(books, author.getBooks());
+        assertEquals(books, author.getBooks(BookRepository.getInstance()::findById));
+        assertEquals(BookIds.of(books.get(0).getLongId()), author.getBookIds());
+
+        BookRepository.getInstance().deleteById(books.get(0).getId());
+        assertTrue(author.getBooks(BookRepository.getInstance()::findById).isEmpty(),
+                "Books no longer stored are not returned.");
+        assertThrows(IllegalArgumentException.class,
+                () -> author.setBooks(List.of(new Book("Book 2", author, Book.Genre.DRAMA, 5))));
     }
 
     @Test
     void testAddBook() {
-        author.addBook(new Book("Book 1", author, Book.Genre.DRAMA, 5));
-        assertEquals(author.getBooks().get(0).getTitle(),"Book 1");
+        Book book = new Book("Book 1", author, Book.Genre.DRAMA, 5);
+        book.setId(3L);
+        author.addBook(book);
+        author.addBook(book);
+        assertEquals(BookIds.of(3L), author.getBookIds());
+        assertThrows(IllegalArgumentException.class,
+                () -> author.addBook(new Book("Book 2", author, Book.Genre.DRAMA, 5)));
+    }
+
+    @Test
+    void testAddAndRemoveBookIds() {
+        assertTrue(author.addBookId(5L));
+        assertTrue(author.addBookId(2L));
+        assertFalse(author.addBookId(5L));
+        BookIds before = author.getBookIds();
+
+        assertTrue(author.removeBookId(5L));
+        assertFalse(author.removeBookId(5L));
+        assertEquals(BookIds.of(2L), author.getBookIds());
+        // IDs read earlier do not change
+        assertEquals(BookIds.of(2L, 5L), before);
+    }
+
+    @Test
+    void testCopySharesBooksOfReplacedAuthor() {
+        author.addBookId(1L);
+        Author copy = new Author("Jane Doe");
+        copy.shareBooksOf(author);
+        author.addBookId(2L);
+        copy.removeBookId(1L);
+
+        assertEquals(BookIds.of(2L), copy.getBookIds());
+        assertEquals(BookIds.of(2L), author.getBookIds());
+    }
+
+    @Test
+    void testCopyStartsWithTheBooksButDoesNotFollowThem() {
+        author.setId(4L);
+        author.setVersion(2);
+        author.addBookId(1L);
+        Author copy = author.copy();
+        author.addBookId(2L);
+        copy.setName("Jane Doe");
+
+        assertEquals(4L, copy.getId());
+        assertEquals(2, copy.getVersion());
+        assertEquals(BookIds.of(1L), copy.getBookIds());
+        assertEquals("John Doe", author.getName());
+        assertEquals(BookIds.of(1L, 2L), author.getBookIds());
     }
 }
@@ -0,0 +1,51 @@
+package test.doa_bookstore.entity;
+
+import doa_bookstore.entity.BookIds;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookIdsTest {
+
+    @Test
+    void testOfSortsAndRemovesDuplicates() {
+        BookIds ids = BookIds.of(30, 10, 30, 20);
+
+        assertEquals(3, ids.size());
+        assertArrayEquals(new long[]{10, 20, 30}, ids.toArray());
+        assertTrue(ids.contains(20));
+        assertFalse(ids.contains(25));
+        assertSame(BookIds.EMPTY, BookIds.of());
+    }
+
+    @Test
+    void testWithAndWithoutLeaveTheOriginalUnchanged() {
+        BookIds ids = BookIds.of(10, 30);
+
+        BookIds added = ids.with(20);
+        assertArrayEquals(new long[]{10, 20, 30}, added.toArray());
+        assertArrayEquals(new long[]{10, 30}, ids.toArray());
+        assertSame(added, added.with(20));
+
+        BookIds removed = added.without(10);
+        assertArrayEquals(new long[]{20, 30}, removed.toArray());
+        assertSame(removed, removed.without(10));
+        assertSame(BookIds.EMPTY, BookIds.of(5).without(5));
+    }
+
+    @Test
+    void testIterationIsInAscendingOrder() {
+        BookIds ids = BookIds.EMPTY.with(3).with(1).with(2);
+        List<Long> visited = new ArrayList<>();
+        ids.forEach(visited::add);
+
+        assertEquals(List.of(1L, 2L, 3L), visited);
+        assertEquals(2, ids.get(1));
+        assertEquals(BookIds.of(1, 2, 3), ids);
+        assertEquals(BookIds.of(1, 2, 3).hashCode(), ids.hashCode());
+        assertEquals("BookIds[1, 2, 3]", ids.toString());
+    }
+}
@@ -71,4 +71,36 @@ class BookTest {
         book.setStockUnits(15);
         assertEquals(15, book.getStockUnits());
     }
+
+    @Test
+    void testBooksAreEqualById() {
+        Book stored = new Book("Pride and Prejudice", null, Book.Genre.ROMANCE, 10);
+        stored.setId(42L);
+        Book copy = new Book("Pride and Prejudice (2nd edition)", null, Book.Genre.ROMANCE, 3);
+        copy.setId(42L);
+        Book unsaved = new Book("Pride and Prejudice", null, Book.Genre.ROMANCE, 10);
+
+        assertEquals(stored, copy);
+        assertEquals(stored.hashCode(), copy.hashCode());
+        assertNotEquals(stored, unsaved);
+        assertNotEquals(unsaved, new Book("Pride and Prejudice", null, Book.Genre.ROMANCE, 10));
+        assertEquals(unsaved, unsaved);
+    }
+
+    @Test
+    void testCopy() {
+        book.setId(7L);
+        book.setVersion(3);
+        Book copy = book.copy();
+        copy.setTitle("Another Title");
+        copy.setStockUnits(1);
+
+        assertNotSame(book, copy);
+        assertEquals(7L, copy.getId());
+        assertEquals(3, copy.getVersion());
+        assertSame(book.getAuthor(), copy.getAuthor());
+        assertEquals(book.getGenre(), copy.getGenre());
+        assertNotEquals("Another Title", book.getTitle());
+        assertEquals(10, book.getStockUnits());
+    }
 }
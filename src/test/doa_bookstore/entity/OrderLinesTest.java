@@ -0,0 +1,76 @@
+package test.doa_bookstore.entity;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderLinesTest {
+
+    private static Book book(long id, String title) {
+        Book book = new Book(title, null, Book.Genre.DRAMA, 10);
+        book.setId(id);
+        return book;
+    }
+
+    @Test
+    void testBuilderSortsAndMergesLines() {
+        OrderLines lines = OrderLines.builder()
+                .add(30, 1)
+                .add(10, 2)
+                .add(30, 4)
+                .add(20, 3)
+                .build();
+
+        assertEquals(3, lines.size());
+        assertEquals(10, lines.bookId(0));
+        assertEquals(2, lines.quantity(0));
+        assertEquals(30, lines.bookId(2));
+        assertEquals(5, lines.quantity(2));
+        assertEquals(10, lines.totalUnits());
+        assertEquals(1, lines.indexOf(20));
+        assertTrue(lines.indexOf(40) < 0);
+        assertFalse(lines.isResolved());
+        assertNull(lines.book(0));
+    }
+
+    @Test
+    void testLinesOfMapKeepTheirBooks() {
+        Book emma = book(2, "Emma");
+        Book persuasion = book(1, "Persuasion");
+        HashMap<Book, Integer> books = new HashMap<>();
+        books.put(emma, 3);
+        books.put(persuasion, 1);
+
+        OrderLines lines = OrderLines.of(books);
+
+        assertTrue(lines.isResolved());
+        assertSame(persuasion, lines.book(0));
+        assertSame(emma, lines.book(lines.indexOf(2)));
+        assertEquals(3, lines.quantity(1));
+    }
+
+    @Test
+    void testBooksWithoutIdCannotBeOrdered() {
+        HashMap<Book, Integer> books = new HashMap<>();
+        books.put(new Book("Unsaved", null, Book.Genre.DRAMA, 1), 1);
+
+        assertThrows(IllegalArgumentException.class, () -> OrderLines.of(books));
+    }
+
+    @Test
+    void testWithBooksChecksEveryLine() {
+        OrderLines lines = OrderLines.builder().add(1, 1).add(2, 1).build();
+
+        OrderLines resolved = lines.withBooks(new Book[]{book(1, "A"), book(2, "B")});
+
+        assertTrue(resolved.isResolved());
+        assertEquals("B", resolved.book(1).getTitle());
+        assertFalse(lines.isResolved());
+        assertThrows(IllegalArgumentException.class, () -> lines.withBooks(new Book[]{book(2, "B"), book(1, "A")}));
+        assertThrows(IllegalArgumentException.class, () -> lines.withBooks(new Book[]{book(1, "A")}));
+    }
+}
@@ -2,6 +2,7 @@ package test.doa_bookstore.entity;
 
 import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
 import doa_bookstore.entity.Orders;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -84,4 +85,29 @@ class OrderTest {
         order.setStatus(Orders.OrderStatus.COMPLETED);
         assertEquals(Orders.OrderStatus.COMPLETED, order.getStatus());
     }
+
+    @Test
+    void testLinesOfAMapOrderFollowTheMap() {
+        // The book of the map has no ID, so it cannot be an order line
+        assertTrue(order.getLines().isEmpty());
+
+        Book stored = new Book("Animal Farm", author, Book.Genre.SCIFI, 15);
+        stored.setId(7L);
+        books.put(stored, 2);
+
+        assertEquals(1, order.getLines().size());
+        assertEquals(2, order.getLines().quantity(0));
+        assertSame(stored, order.getLines().book(0));
+    }
+
+    @Test
+    void testGetBooksOfALinesOrder() {
+        Orders byLines = new Orders("Bob Smith", OrderLines.builder().add(7, 2).build(), new Date(),
+                Orders.OrderStatus.PENDING);
+        Book stored = new Book("1984", author, Book.Genre.SCIFI, 20);
+        stored.setId(7L);
+
+        assertEquals(2, byLines.getBooks().get(stored));
+        assertEquals(1, byLines.getBooks().size());
+    }
 }
@@ -0,0 +1,119 @@
+package test.doa_bookstore.executor;
+
+import doa_bookstore.controller.BookstoreController;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.executor.RequestExecutor;
+import doa_bookstore.repository.AuthorRepository;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.OrderRepository;
+import doa_bookstore.service.AuthorService;
+import doa_bookstore.service.BookService;
+import doa_bookstore.service.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link RequestExecutor} in front of the {@link BookstoreController}.
+ */
+class RequestExecutorTest {
+
+    private AuthorService authorService;
+    private BookService bookService;
+    private BookstoreController controller;
+    private RequestExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        authorService = new AuthorService(AuthorRepository.getInstance());
+        bookService = new BookService(BookRepository.getInstance());
+        controller = new BookstoreController(bookService, authorService, new OrderService(OrderRepository.getInstance()));
+        executor = RequestExecutor.virtualThreads(controller, 1_000, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void testRequestsRunOnVirtualThreads() {
+        assertTrue(executor.submit(controller -> Thread.currentThread().isVirtual()).join());
+    }
+
+    @Test
+    void testConcurrentOrdersNeverOversell() throws EntityAlreadyExistsException, EntityNotFoundException {
+        Author author = authorService.saveAuthor(new Author("Jane Austen"));
+        Book book = controller.saveBook(new Book("Emma", author, Book.Genre.ROMANCE, 1_000));
+
+        List<CompletableFuture<Boolean>> orders = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            HashMap<Book, Integer> order = new HashMap<>();
+            order.put(book, 1);
+            orders.add(executor.makeOrder("Customer " + i, order));
+        }
+        int placed = 0;
+        int rejected = 0;
+        for (CompletableFuture<Boolean> order : orders) {
+            try {
+                assertTrue(order.join());
+                placed++;
+            } catch (CompletionException e) {
+                assertInstanceOf(InsufficientUnitsException.class, e.getCause());
+                rejected++;
+            }
+        }
+
+        assertEquals(1_000, placed);
+        assertEquals(1_000, rejected);
+        assertEquals(0, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+    }
+
+    @Test
+    void testControllerExceptionsCompleteTheFuture() {
+        Author unknown = new Author("Nobody");
+        unknown.setId(Long.MAX_VALUE);
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> executor.booksByAuthor(unknown).join());
+
+        assertInstanceOf(EntityNotFoundException.class, thrown.getCause());
+        assertEquals(0, executor.inFlight());
+    }
+
+    @Test
+    void testSubmissionsBeyondCapacityAreRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (RequestExecutor bounded = RequestExecutor.virtualThreads(controller, 2, Duration.ofMillis(50))) {
+            List<CompletableFuture<Boolean>> running = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                running.add(bounded.submit(controller -> release.await(10, TimeUnit.SECONDS)));
+            }
+            assertEquals(2, bounded.inFlight());
+
+            assertThrows(RejectedExecutionException.class, () -> bounded.submit(controller -> true));
+
+            release.countDown();
+            for (CompletableFuture<Boolean> request : running) {
+                assertTrue(request.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(bounded.submit(controller -> true).get(10, TimeUnit.SECONDS));
+        }
+    }
+}
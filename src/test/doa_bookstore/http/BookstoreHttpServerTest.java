@@ -0,0 +1,161 @@
+package test.doa_bookstore.http;
+
+import doa_bookstore.controller.BookstoreController;
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.executor.RequestExecutor;
+import doa_bookstore.http.BookstoreHttpServer;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.repository.AuthorRepository;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.OrderRepository;
+import doa_bookstore.service.AuthorService;
+import doa_bookstore.service.BookService;
+import doa_bookstore.service.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HTTP/JSON front end, over a real socket on the loopback interface.
+ */
+class BookstoreHttpServerTest {
+
+    private BookService bookService;
+    private AuthorService authorService;
+    private RequestExecutor executor;
+    private BookstoreHttpServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookService = new BookService(BookRepository.getInstance());
+        authorService = new AuthorService(AuthorRepository.getInstance());
+        BookstoreController controller = new BookstoreController(bookService, authorService,
+                new OrderService(OrderRepository.getInstance()));
+        executor = RequestExecutor.virtualThreads(controller, 100, Duration.ofSeconds(10));
+        server = new BookstoreHttpServer(executor, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.close();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    @Test
+    void testBookLifecycle() throws Exception {
+        Author author = authorService.saveAuthor(new Author("Jane \"J\" Austen"));
+
+        HttpResponse<String> created = post("/books", "{\"title\":\"Emma\",\"authorId\":" + author.getId()
+                + ",\"genre\":\"ROMANCE\",\"stockUnits\":5}");
+        assertEquals(201, created.statusCode());
+        long id = Long.parseLong(created.body().replaceAll(".*\"id\":(\\d+).*", "$1"));
+
+        HttpResponse<String> found = get("/books/" + id);
+        assertEquals(200, found.statusCode());
+        assertEquals("{\"id\":" + id + ",\"title\":\"Emma\",\"authorName\":\"Jane \\\"J\\\" Austen\"}", found.body());
+        assertTrue(found.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+
+        HttpResponse<String> byAuthor = get("/authors/" + author.getId() + "/books");
+        assertEquals(200, byAuthor.statusCode());
+        assertTrue(byAuthor.body().contains("\"title\":\"Emma\""));
+
+        HttpResponse<String> page = get("/books?after=" + (id - 1) + "&limit=1");
+        assertEquals("[" + found.body() + "]", page.body());
+    }
+
+    @Test
+    void testOrders() throws Exception {
+        Author author = authorService.saveAuthor(new Author("Mark Twain"));
+        Book book = bookService.saveBook(new Book("Tom Sawyer", author, Book.Genre.COMEDY, 3));
+
+        HttpResponse<String> placed = post("/orders", "{\"customerName\":\"Ana\",\"lines\":[{\"bookId\":"
+                + book.getId() + ",\"quantity\":2}]}");
+        assertEquals(201, placed.statusCode());
+        assertEquals("{\"placed\":true}", placed.body());
+        assertEquals(1, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+
+        HttpResponse<String> tooMany = post("/orders", "{\"customerName\":\"Ana\",\"lines\":[{\"bookId\":"
+                + book.getId() + ",\"quantity\":2}]}");
+        assertEquals(409, tooMany.statusCode());
+        assertEquals(1, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        assertEquals(404, get("/books/" + Long.MAX_VALUE).statusCode());
+        assertEquals(404, get("/authors/" + Long.MAX_VALUE + "/books").statusCode());
+        assertEquals(404, get("/bookshelf").statusCode());
+        assertEquals(400, get("/books/abc").statusCode());
+        assertEquals(400, get("/books?limit=0").statusCode());
+        assertEquals(400, post("/authors", "{\"name\":").statusCode());
+        assertEquals(400, post("/authors", "[]").statusCode());
+        assertEquals(405, post("/books/1", "{}").statusCode());
+
+        HttpResponse<String> missing = post("/books", "{\"title\":\"Orphan\",\"authorId\":" + Long.MAX_VALUE
+                + ",\"genre\":\"DRAMA\",\"stockUnits\":1}");
+        assertEquals(404, missing.statusCode());
+        assertTrue(missing.body().startsWith("{\"status\":404,\"error\":"));
+    }
+
+    @Test
+    void testLargeResponsesAreStreamed() throws Exception {
+        Author author = authorService.saveAuthor(new Author("Prolific"));
+        for (int i = 0; i < 500; i++) {
+            bookService.saveBook(new Book("A rather long title for book number " + i, author, Book.Genre.DRAMA, 1));
+        }
+
+        HttpResponse<String> books = get("/authors/" + author.getId() + "/books");
+
+        assertEquals(200, books.statusCode());
+        assertEquals(500, books.body().split("\"id\":").length - 1);
+        assertTrue(books.body().endsWith("}]"));
+    }
+
+    @Test
+    void testMetrics() throws Exception {
+        Author author = authorService.saveAuthor(new Author("Metered"));
+        get("/books?limit=1");
+        get("/authors/" + author.getId());
+        get("/authors/" + author.getId() + "/books");
+        get("/orders/" + Long.MAX_VALUE);
+
+        HttpResponse<String> metrics = get("/metrics");
+
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.body().contains("\"controller.getCatalogPage\":{\"calls\":"));
+        if (MetricsRegistry.isEnabled()) {
+            for (String operation : List.of("findAuthorDTO", "findBookDTOsByAuthor", "findOrderById")) {
+                assertTrue(metrics.body().matches("(?s).*\"controller\\." + operation + "\":\\{\"calls\":[1-9].*"),
+                        operation + " is not timed.");
+            }
+        }
+    }
+}
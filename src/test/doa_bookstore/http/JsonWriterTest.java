@@ -0,0 +1,77 @@
+package test.doa_bookstore.http;
+
+import doa_bookstore.http.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the streaming {@link JsonWriter}.
+ */
+class JsonWriterTest {
+
+    private static String write(int bufferBytes, JsonBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = new JsonWriter(out, bufferBytes);
+        body.write(json);
+        json.close();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    @Test
+    void testNestedContainers() throws IOException {
+        String json = write(1024, writer -> writer.beginObject()
+                .name("id").value(42L)
+                .name("tags").beginArray().value("a").value("b").endArray()
+                .name("empty").beginObject().endObject()
+                .name("nested").beginArray().beginObject().name("x").value(true).endObject().nullValue().endArray()
+                .name("missing").value((String) null)
+                .endObject());
+
+        assertEquals("{\"id\":42,\"tags\":[\"a\",\"b\"],\"empty\":{},\"nested\":[{\"x\":true},null],\"missing\":null}", json);
+    }
+
+    @Test
+    void testNumbers() throws IOException {
+        String json = write(64, writer -> writer.beginArray()
+                .value(0).value(7).value(-7).value(1234567890123L)
+                .value(Long.MAX_VALUE).value(Long.MIN_VALUE)
+                .endArray());
+
+        assertEquals("[0,7,-7,1234567890123," + Long.MAX_VALUE + "," + Long.MIN_VALUE + "]", json);
+    }
+
+    @Test
+    void testStringsAreEscapedAndEncoded() throws IOException {
+        String json = write(64, writer -> writer.value("quote\" backslash\\ tab\t newline\n bell\u0007 é € 😀 lone\uD800"));
+
+        assertEquals("\"quote\\\" backslash\\\\ tab\\t newline\\n bell\\u0007 é € 😀 lone\\ud800\"", json);
+    }
+
+    @Test
+    void testDocumentsLargerThanTheBufferAreStreamed() throws IOException {
+        StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            expected.append(i == 0 ? "" : ",").append("\"Título ").append(i).append('"');
+        }
+        expected.append(']');
+
+        String json = write(32, writer -> {
+            writer.beginArray();
+            for (int i = 0; i < 1000; i++) {
+                writer.value("Título " + i);
+            }
+            writer.endArray();
+        });
+
+        assertEquals(expected.toString(), json);
+    }
+}
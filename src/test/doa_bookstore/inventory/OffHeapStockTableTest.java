@@ -0,0 +1,78 @@
+package test.doa_bookstore.inventory;
+
+import doa_bookstore.inventory.OffHeapStockTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapStockTableTest {
+
+    @Test
+    void testUntrackedBooksAreAbsent() {
+        OffHeapStockTable table = new OffHeapStockTable();
+
+        assertEquals(OffHeapStockTable.ABSENT, table.get(1));
+        assertEquals(OffHeapStockTable.ABSENT, table.get(-1));
+        assertEquals(0, table.offHeapBytes());
+        assertThrows(IllegalStateException.class, () -> table.addAndGet(1, 1));
+    }
+
+    @Test
+    void testLevelsAreSetAdjustedAndRemoved() {
+        OffHeapStockTable table = new OffHeapStockTable();
+        table.set(3, 0);
+        table.set(200_000, 12);
+
+        assertEquals(0, table.get(3));
+        assertEquals(OffHeapStockTable.ABSENT, table.get(4));
+        assertEquals(7, table.addAndGet(200_000, -5));
+        assertEquals(-1, table.addAndGet(3, -1));
+        assertTrue(table.offHeapBytes() > 0);
+
+        table.remove(200_000);
+        assertEquals(OffHeapStockTable.ABSENT, table.get(200_000));
+        table.clear();
+        assertEquals(OffHeapStockTable.ABSENT, table.get(3));
+    }
+
+    @Test
+    void testOutOfRangeIdsAndLevelsAreRejected() {
+        OffHeapStockTable table = new OffHeapStockTable();
+
+        assertFalse(table.covers(-1));
+        assertFalse(table.covers(1L << 31));
+        assertThrows(IllegalArgumentException.class, () -> table.set(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> table.set(1, OffHeapStockTable.ABSENT));
+    }
+
+    @Test
+    void testConcurrentAdjustmentsAreNotLost() throws Exception {
+        OffHeapStockTable table = new OffHeapStockTable();
+        table.set(1, 0);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    table.addAndGet(1, 2);
+                    table.addAndGet(1, -1);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(threads * 10_000, table.get(1));
+    }
+}
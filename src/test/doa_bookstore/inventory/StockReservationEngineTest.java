@@ -0,0 +1,153 @@
+package test.doa_bookstore.inventory;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.inventory.StockReservationEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockReservationEngineTest {
+
+    private StockReservationEngine engine;
+    private Book first;
+    private Book second;
+
+    @BeforeEach
+    void setUp() {
+        engine = StockReservationEngine.getInstance();
+        first = new Book("First", null, Book.Genre.DRAMA, 10);
+        first.setId(1_000_001L);
+        second = new Book("Second", null, Book.Genre.DRAMA, 1);
+        second.setId(1_000_002L);
+    }
+
+    @Test
+    void testReserveDecrementsEveryLine() throws InsufficientUnitsException {
+        Map<Book, Integer> lines = new HashMap<>();
+        lines.put(first, 4);
+        lines.put(second, 1);
+
+        engine.reserve(lines);
+
+        assertEquals(6, first.getStockUnits());
+        assertEquals(0, second.getStockUnits());
+    }
+
+    @Test
+    void testReserveIsAllOrNothing() {
+        Map<Book, Integer> lines = new HashMap<>();
+        lines.put(first, 4);
+        lines.put(second, 2);
+
+        assertThrows(InsufficientUnitsException.class, () -> engine.reserve(lines));
+
+        assertEquals(10, first.getStockUnits());
+        assertEquals(1, second.getStockUnits());
+    }
+
+    @Test
+    void testReleaseRestoresStock() throws InsufficientUnitsException {
+        Map<Book, Integer> lines = new HashMap<>();
+        lines.put(first, 3);
+
+        engine.reserve(lines);
+        engine.release(lines);
+
+        assertEquals(10, first.getStockUnits());
+    }
+
+    @Test
+    void testReserveRejectsNonPositiveQuantities() {
+        Map<Book, Integer> lines = new HashMap<>();
+        lines.put(first, -3);
+
+        assertThrows(IllegalArgumentException.class, () -> engine.reserve(lines));
+        assertEquals(10, first.getStockUnits());
+    }
+
+    @Test
+    void testConcurrentReservationsNeverOversell() throws Exception {
+        int threads = 32;
+        Book contended = new Book("Contended", null, Book.Genre.DRAMA, 500);
+        contended.setId(1_000_003L);
+        AtomicInteger reservedUnits = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 100; i++) {
+                    Map<Book, Integer> lines = new HashMap<>();
+                    lines.put(contended, 1);
+                    lines.put(first, 1);
+                    try {
+                        engine.reserve(lines);
+                        reservedUnits.incrementAndGet();
+                    } catch (InsufficientUnitsException ignored) {
+                        // Expected once either book runs out
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(10, reservedUnits.get());
+        assertEquals(0, first.getStockUnits());
+        assertEquals(490, contended.getStockUnits());
+    }
+
+    @Test
+    void testStoredBooksAreCountedById() throws InsufficientUnitsException {
+        Book stored = new Book("Stored", null, Book.Genre.DRAMA, 5);
+        stored.setId(1_000_004L);
+        engine.onSaved(stored);
+        // A second instance of the same stored book, e.g. a copy about to replace it
+        Book copy = new Book("Stored", null, Book.Genre.DRAMA, 5);
+        copy.setId(1_000_004L);
+        try {
+            engine.reserve(Map.of(stored, 3));
+            assertEquals(2, stored.getStockUnits());
+            assertEquals(2, engine.available(copy));
+            assertEquals(5, copy.getStockUnits());
+
+            assertThrows(InsufficientUnitsException.class, () -> engine.reserve(Map.of(copy, 3)));
+            engine.reserve(Map.of(copy, 2));
+            assertEquals(0, copy.getStockUnits());
+            assertEquals(0, engine.available(stored));
+
+            engine.restock(copy, 7);
+            engine.copyLevelTo(stored);
+            assertEquals(7, stored.getStockUnits());
+            // A level written to the book itself is not counted
+            stored.setStockUnits(50);
+            assertEquals(7, engine.available(stored));
+        } finally {
+            engine.onDeleted(stored);
+        }
+        // Once deleted, the book is back to its own field
+        copy.setStockUnits(5);
+        assertEquals(5, engine.available(copy));
+        engine.copyLevelTo(copy);
+        assertEquals(5, copy.getStockUnits());
+    }
+}
@@ -0,0 +1,97 @@
+package test.doa_bookstore.metrics;
+
+import doa_bookstore.metrics.LatencyHistogram;
+import doa_bookstore.metrics.LatencySnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the log-linear {@link LatencyHistogram}.
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int nanos = 1; nanos <= 10; nanos++) {
+            histogram.record(nanos);
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(10, snapshot.getCount());
+        assertEquals(5, snapshot.getP50());
+        assertEquals(9, snapshot.getP90());
+        assertEquals(10, snapshot.getMax());
+        assertEquals(5.5, snapshot.getMean(), 0.001);
+    }
+
+    @Test
+    void testPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.getCount());
+        assertWithin(5_000_000, snapshot.getP50());
+        assertWithin(9_000_000, snapshot.getP90());
+        assertWithin(9_900_000, snapshot.getP99());
+        assertWithin(9_990_000, snapshot.getP999());
+        assertWithin(10_000_000, snapshot.getMax());
+        assertWithin(5_000_500, Math.round(snapshot.getMean()));
+    }
+
+    @Test
+    void testExtremeValuesAreRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getP50());
+        assertEquals(Long.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    void testConcurrentRecordsAreAllCounted() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int recordsPerThread = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < recordsPerThread; i++) {
+                    histogram.record(1_000);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals((long) threads * recordsPerThread, histogram.snapshot().getCount());
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    // Buckets split every power of two in 32, so a reported value is at most 1/32 above the real one
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected * 0.97 && actual <= expected * 1.04,
+                "Expected about " + expected + " but was " + actual);
+    }
+}
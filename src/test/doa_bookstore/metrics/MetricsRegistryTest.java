@@ -0,0 +1,80 @@
+package test.doa_bookstore.metrics;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.metrics.Timer;
+import doa_bookstore.repository.MyCrudRepository;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link MetricsRegistry} and the timers and counters it hands out.
+ */
+class MetricsRegistryTest {
+
+    private static class MeteredAuthorRepository extends MyCrudRepository<Author> {
+    }
+
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+    @Test
+    void testTimerCountsEveryCall() {
+        Timer timer = metrics.timer("test.timer.every");
+        for (int i = 0; i < 100; i++) {
+            timer.stop(timer.start());
+        }
+
+        assertSame(timer, metrics.timer("test.timer.every"));
+        assertEquals(100, timer.getCalls());
+        assertEquals(100, timer.getLatencies().getCount());
+    }
+
+    @Test
+    void testSampledTimerCountsEveryCallButTimesSome() {
+        Timer timer = metrics.timer("test.timer.sampled", 4);
+        for (int i = 0; i < 10_000; i++) {
+            timer.stop(timer.start());
+        }
+
+        long timed = timer.getLatencies().getCount();
+        assertEquals(10_000, timer.getCalls());
+        assertTrue(timed > 0 && timed < 2_000, "About 1 in 16 calls should be timed, not " + timed);
+    }
+
+    @Test
+    void testRepositoryOperationsAreMetered() throws EntityAlreadyExistsException {
+        MeteredAuthorRepository repository = new MeteredAuthorRepository();
+        Author author = repository.save(new Author("Jane Austen"));
+        for (int i = 0; i < 10; i++) {
+            repository.findById(author.getId());
+        }
+        repository.findAll();
+
+        String prefix = "repository.MeteredAuthorRepository.";
+        assertEquals(1, metrics.timer(prefix + "save").getCalls());
+        // Lookups by ID are only timed on request, as counting them costs a large part of the lookup
+        assertEquals(MetricsRegistry.isLookupTimingEnabled() ? 10 : 0, metrics.timer(prefix + "findById").getCalls());
+        assertEquals(1, metrics.timer(prefix + "findAll").getCalls());
+    }
+
+    @Test
+    void testDumps() {
+        Timer timer = metrics.timer("test.dump.timer");
+        timer.stop(timer.start());
+        Counter counter = metrics.counter("test.dump.counter");
+        counter.add(3);
+
+        String text = metrics.toText();
+        String json = metrics.toJson();
+
+        assertTrue(text.contains("test.dump.timer"));
+        assertTrue(text.contains("calls=1"));
+        assertTrue(text.matches("(?s).*test\\.dump\\.counter\\s+count=3.*"));
+        assertTrue(json.startsWith("{\"timers\":{") && json.endsWith("}}"));
+        assertTrue(json.contains("\"test.dump.timer\":{\"calls\":1,\"timed\":1,"));
+        assertTrue(json.contains("\"test.dump.counter\":3"));
+    }
+}
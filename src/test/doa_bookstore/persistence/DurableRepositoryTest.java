@@ -0,0 +1,344 @@
+package test.doa_bookstore.persistence;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.metrics.Counter;
+import doa_bookstore.metrics.MetricsRegistry;
+import doa_bookstore.persistence.AuthorCodec;
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.FsyncPolicy;
+import doa_bookstore.repository.MyCrudRepository;
+import doa_bookstore.repository.StorageMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the write-ahead log backed durable mode of {@link MyCrudRepository}.
+ */
+class DurableRepositoryTest {
+
+    private static class DurableAuthorRepository extends MyCrudRepository<Author> {
+        DurableAuthorRepository() {
+            super(StorageMode.CONCURRENT);
+        }
+    }
+
+    private Path directory;
+    private DurableAuthorRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("doa-wal");
+        repository = open(FsyncPolicy.GROUP_COMMIT, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        repository.disableDurability();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private DurableAuthorRepository open(FsyncPolicy policy, long snapshotThreshold) throws IOException {
+        DurableAuthorRepository opened = new DurableAuthorRepository();
+        opened.enableDurability(directory, new AuthorCodec(), new DurabilityOptions(policy, 5, snapshotThreshold));
+        return opened;
+    }
+
+    private DurableAuthorRepository restart() throws IOException {
+        repository.disableDurability();
+        repository = open(FsyncPolicy.GROUP_COMMIT, 0);
+        return repository;
+    }
+
+    @Test
+    void testWritesSurviveRestart() throws IOException, EntityAlreadyExistsException {
+        Author kept = repository.save(new Author("Jane Austen"));
+        Author renamed = repository.save(new Author("Mark Twian"));
+        Author deleted = repository.save(new Author("Nobody"));
+        renamed.setName("Mark Twain");
+        repository.update(renamed);
+        repository.deleteById(deleted.getId());
+
+        DurableAuthorRepository recovered = restart();
+
+        assertEquals(2, recovered.findAll().size());
+        assertEquals("Jane Austen", recovered.findById(kept.getId()).orElseThrow().getName());
+        assertEquals("Mark Twain", recovered.findById(renamed.getId()).orElseThrow().getName());
+        assertFalse(recovered.existsById(deleted.getId()));
+
+        Author next = recovered.save(new Author("After restart"));
+        assertTrue(next.getId() > deleted.getId(), "Recovered IDs must not be handed out again.");
+    }
+
+    @Test
+    void testDeleteAllSurvivesRestart() throws IOException, EntityAlreadyExistsException {
+        repository.save(new Author("Jane Austen"));
+        repository.deleteAll();
+        repository.save(new Author("Mark Twain"));
+
+        DurableAuthorRepository recovered = restart();
+
+        assertEquals(1, recovered.findAll().size());
+        assertEquals("Mark Twain", recovered.findAll().get(0).getName());
+    }
+
+    @Test
+    void testSnapshotPlusNewerLogIsRecovered() throws IOException, EntityAlreadyExistsException {
+        Author before = repository.save(new Author("Before snapshot"));
+        repository.snapshot();
+        Author after = repository.save(new Author("After snapshot"));
+        before.setName("Renamed after snapshot");
+        repository.update(before);
+
+        DurableAuthorRepository recovered = restart();
+
+        assertEquals(2, recovered.findAll().size());
+        assertEquals("Renamed after snapshot", recovered.findById(before.getId()).orElseThrow().getName());
+        assertEquals("After snapshot", recovered.findById(after.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void testSnapshotEntitiesAreLoadedOnDemand() throws Exception {
+        List<Author> saved = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            saved.add(repository.save(new Author("Author " + i)));
+        }
+        repository.snapshot();
+        Author renamed = saved.get(10);
+        renamed.setName("Renamed after snapshot");
+        repository.update(renamed);
+        repository.deleteById(saved.get(20).getId());
+
+        DurableAuthorRepository recovered = restart();
+
+        assertEquals("Renamed after snapshot", recovered.findById(renamed.getId()).orElseThrow().getName());
+        assertEquals("Author 500", recovered.findById(saved.get(500).getId()).orElseThrow().getName());
+        assertSame(recovered.findById(saved.get(500).getId()).orElseThrow(),
+                recovered.findById(saved.get(500).getId()).orElseThrow());
+        assertFalse(recovered.existsById(saved.get(20).getId()));
+        assertThrows(EntityAlreadyExistsException.class, () -> {
+            Author duplicate = new Author("Duplicate");
+            duplicate.setId(saved.get(999).getId());
+            recovered.save(duplicate);
+        });
+
+        recovered.whenFullyLoaded().get(60, TimeUnit.SECONDS);
+        assertEquals(999, recovered.findAll().size());
+        assertTrue(recovered.save(new Author("Next")).getId() > saved.get(999).getId());
+    }
+
+    @Test
+    void testDeleteAllDuringWarmUpIsNotUndone() throws Exception {
+        for (int i = 0; i < 10_000; i++) {
+            repository.save(new Author("Author " + i));
+        }
+        repository.snapshot();
+
+        DurableAuthorRepository recovered = restart();
+        recovered.deleteAll();
+        recovered.whenFullyLoaded().get(60, TimeUnit.SECONDS);
+
+        assertTrue(recovered.findAll().isEmpty());
+        assertTrue(restart().findAll().isEmpty());
+    }
+
+    @Test
+    void testBatchesSurviveRestart() throws IOException, EntityAlreadyExistsException {
+        List<Author> batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            batch.add(new Author("Author " + i));
+        }
+        List<Author> saved = repository.saveAll(batch);
+        Author renamed = saved.get(1).copy();
+        renamed.setName("Renamed");
+        repository.updateAll(List.of(renamed));
+        repository.deleteAllById(List.of(saved.get(0).getId(), saved.get(2).getId()));
+
+        DurableAuthorRepository recovered = restart();
+
+        assertEquals(498, recovered.findAll().size());
+        assertEquals("Renamed", recovered.findById(saved.get(1).getId()).orElseThrow().getName());
+        assertFalse(recovered.existsById(saved.get(0).getId()));
+        assertTrue(recovered.save(new Author("Next")).getId() > saved.get(499).getId());
+    }
+
+    @Test
+    void testFailedSnapshotsAreReported() throws Exception {
+        repository.disableDurability();
+        repository = open(FsyncPolicy.GROUP_COMMIT, 5);
+        Counter failures = MetricsRegistry.getInstance().counter("persistence.DurableAuthorRepository.snapshotFailures");
+        long failedBefore = failures.getCount();
+        // A directory where the snapshot is written makes every snapshot fail, like a full disk would
+        Path blocker = Files.createDirectories(directory.resolve("DurableAuthorRepository.snapshot.tmp"));
+        Files.createFile(blocker.resolve("blocked"));
+
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Author("Author " + i));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (repository.getLastSnapshotFailure() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertInstanceOf(IOException.class, repository.getLastSnapshotFailure());
+        assertThrows(IOException.class, repository::snapshot);
+        if (MetricsRegistry.isEnabled()) {
+            assertEquals(failedBefore + 2, failures.getCount());
+        }
+
+        Files.delete(blocker.resolve("blocked"));
+        Files.delete(blocker);
+        repository.snapshot();
+        assertNull(repository.getLastSnapshotFailure());
+        assertEquals(5, restart().findAll().size());
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws IOException, EntityAlreadyExistsException {
+        Author saved = repository.save(new Author("Complete record"));
+        repository.disableDurability();
+
+        // Simulate a crash in the middle of writing the next record
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.toString().endsWith(".wal")).max(Comparator.naturalOrder()).orElseThrow();
+        }
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        repository = open(FsyncPolicy.GROUP_COMMIT, 0);
+
+        assertEquals(1, repository.findAll().size());
+        assertEquals("Complete record", repository.findById(saved.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void testEveryPolicyRecoversConcurrentWrites() throws Exception {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            repository.disableDurability();
+            repository = open(policy, 500);
+            repository.deleteAll();
+
+            int threads = 16;
+            int savesPerThread = 100;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < savesPerThread; i++) {
+                        repository.save(new Author("Author " + i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            DurableAuthorRepository recovered = restart();
+
+            assertEquals(threads * savesPerThread, recovered.findAll().size(), "Writes lost with " + policy);
+        }
+    }
+
+    @Test
+    void testSavesRacingDeleteAllRecoverAsTheyWereLeft() throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    repository.save(new Author("Author " + i));
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 20; i++) {
+            repository.deleteAll();
+            Thread.sleep(1);
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        List<Long> live = repository.findAll().stream().map(Author::getId).sorted().toList();
+
+        DurableAuthorRepository recovered = restart();
+
+        assertEquals(live, recovered.findAll().stream().map(Author::getId).sorted().toList());
+    }
+
+    @Test
+    void testSplitBatchWithoutItsLastPartIsDropped() throws IOException, EntityAlreadyExistsException {
+        repository.save(new Author("Before"));
+        // Names near the 64 KB limit of the codec make the batch too large for one log record
+        String name = "n".repeat(60_000);
+        List<Author> batch = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            batch.add(new Author(name));
+        }
+        repository.saveAll(batch);
+        repository.disableDurability();
+
+        // Simulate a crash while the last part of the batch was written
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.toString().endsWith(".wal")).max(Comparator.naturalOrder()).orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        repository = open(FsyncPolicy.GROUP_COMMIT, 0);
+
+        assertEquals(List.of("Before"), repository.findAll().stream().map(Author::getName).toList());
+    }
+
+    @Test
+    void testFailedSavesLeaveEntitiesUnsaved() throws IOException, EntityAlreadyExistsException {
+        repository.disableDurability();
+        repository = open(FsyncPolicy.EVERY_WRITE, 0);
+        Author stored = repository.save(new Author("Stored"));
+        Author duplicate = new Author("Duplicate");
+        duplicate.setId(stored.getId());
+        assertThrows(EntityAlreadyExistsException.class, () -> repository.save(duplicate));
+        assertEquals(0, duplicate.getVersion());
+
+        // Writing from an interrupted thread closes the log, as a failing disk would fail the write
+        Author single = new Author("Single");
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(UncheckedIOException.class, () -> repository.save(single));
+        } finally {
+            Thread.interrupted();
+        }
+        List<Author> batch = List.of(new Author("First"), new Author("Second"));
+        assertThrows(UncheckedIOException.class, () -> repository.saveAll(batch));
+
+        assertEquals(0, single.getVersion());
+        assertEquals(List.of(0L, 0L), batch.stream().map(Author::getVersion).toList());
+        assertEquals(List.of(stored), repository.findAll());
+    }
+}
@@ -0,0 +1,142 @@
+package test.doa_bookstore.persistence;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.persistence.OrderArchive;
+import doa_bookstore.persistence.OrderCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the day-partitioned, compressed {@link OrderArchive}.
+ */
+class OrderArchiveTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // Noon on 2024-01-01 UTC
+    private static final long START = 19723 * DAY + DAY / 2;
+
+    private Path directory;
+    private OrderCodec codec;
+    private Book book;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("doa-archive");
+        book = new Book("Archived Book", null, Book.Genre.DRAMA, 10);
+        book.setId(7L);
+        codec = new OrderCodec(id -> id == 7 ? book : null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testOrdersArePartitionedByDay() throws IOException {
+        OrderArchive archive = OrderArchive.open(directory, codec);
+        List<Orders> orders = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            // Three orders a day over ten days
+            orders.add(order(i + 1, START + (i / 3) * DAY + i));
+        }
+        archive.write(orders);
+
+        assertEquals(10, archive.segmentCount());
+        assertEquals(30, archive.size());
+        assertEquals(30, archive.maxId());
+        List<Orders> found = archive.findByDateRange(new Date(START + 2 * DAY), new Date(START + 4 * DAY));
+        assertEquals(List.of(7L, 8L, 9L, 10L, 11L, 12L), found.stream().map(Orders::getId).sorted().toList());
+        Orders read = found.get(0);
+        assertEquals(Orders.OrderStatus.COMPLETED, read.getStatus());
+        assertEquals(2, read.getLines().quantity(0));
+        assertSame(book, read.getLines().book(0));
+    }
+
+    @Test
+    void testSegmentsAreReadBackAfterReopening() throws IOException {
+        OrderArchive archive = OrderArchive.open(directory, codec);
+        archive.write(List.of(order(1, START), order(2, START + DAY)));
+        // A second run reaching the same day adds a segment next to the first one
+        archive.write(List.of(order(3, START + DAY + 1)));
+
+        OrderArchive reopened = OrderArchive.open(directory, codec);
+
+        assertEquals(3, reopened.segmentCount());
+        assertEquals(3, reopened.size());
+        List<Long> ids = new ArrayList<>();
+        reopened.forEach(order -> ids.add(order.getId()));
+        assertEquals(List.of(1L, 2L, 3L), ids);
+        assertEquals(List.of(2L, 3L), reopened.findByDateRange(new Date(START + DAY), new Date(START + 2 * DAY))
+                .stream().map(Orders::getId).sorted(Comparator.naturalOrder()).toList());
+    }
+
+    @Test
+    void testSegmentsAreCompressed() throws IOException {
+        OrderArchive archive = OrderArchive.open(directory, codec);
+        List<Orders> orders = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            orders.add(order(i + 1, START + i));
+        }
+        archive.write(orders);
+
+        // Uncompressed, each order takes a 4-byte length and over 40 bytes of payload
+        assertTrue(archive.bytesOnDisk() < 1000 * 44 / 4, "Archived bytes: " + archive.bytesOnDisk());
+    }
+
+    @Test
+    void testCorruptedSegmentIsDetected() throws IOException {
+        OrderArchive archive = OrderArchive.open(directory, codec);
+        archive.write(List.of(order(1, START)));
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        assertThrows(IOException.class, () -> OrderArchive.open(directory, codec).forEach(order -> { }));
+    }
+
+    @Test
+    void testOrdersWithoutDateAreRejected() throws IOException {
+        OrderArchive archive = OrderArchive.open(directory, codec);
+        Orders undated = new Orders("Customer", OrderLines.EMPTY, null, Orders.OrderStatus.COMPLETED);
+        undated.setId(1L);
+
+        assertThrows(IllegalArgumentException.class, () -> archive.write(List.of(undated)));
+        assertEquals(0, archive.segmentCount());
+    }
+
+    private Orders order(long id, long date) {
+        Orders order = new Orders("Customer " + id % 3, OrderLines.builder().add(book, 2).build(), new Date(date),
+                Orders.OrderStatus.COMPLETED);
+        order.setId(id);
+        return order;
+    }
+}
@@ -0,0 +1,83 @@
+package test.doa_bookstore.persistence;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.persistence.AuthorCodec;
+import doa_bookstore.persistence.MappedSnapshot;
+import doa_bookstore.persistence.SnapshotFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the indexed {@link SnapshotFile} format and its lazy {@link MappedSnapshot} reader.
+ */
+class SnapshotFileTest {
+
+    private Path directory;
+    private Path path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("doa-snapshot");
+        path = directory.resolve("Authors.snapshot");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.delete(directory);
+    }
+
+    @Test
+    void testEntriesAreIndexedById() throws IOException {
+        // Written out of ID order, as a hash table would iterate them
+        List<Author> authors = new ArrayList<>();
+        for (long id : new long[]{42, 7, 1000, 3}) {
+            Author author = new Author("Author " + id);
+            author.setId(id);
+            authors.add(author);
+        }
+        SnapshotFile.write(path, new AuthorCodec(), authors, 5);
+
+        MappedSnapshot<Author> snapshot = SnapshotFile.map(path, new AuthorCodec());
+
+        assertEquals(5, snapshot.firstSegment());
+        assertEquals(4, snapshot.size());
+        assertEquals(1000, snapshot.maxId());
+        assertEquals(-1, snapshot.indexOf(8));
+        for (long id : new long[]{3, 7, 42, 1000}) {
+            int position = snapshot.indexOf(id);
+            assertTrue(position >= 0);
+            Author read = snapshot.read(position);
+            assertEquals(id, read.getId());
+            assertEquals("Author " + id, read.getName());
+        }
+    }
+
+    @Test
+    void testEntryIsClaimedOnce() throws IOException {
+        Author author = new Author("Jane Austen");
+        author.setId(1L);
+        SnapshotFile.write(path, new AuthorCodec(), List.of(author), 1);
+
+        MappedSnapshot<Author> snapshot = SnapshotFile.map(path, new AuthorCodec());
+
+        assertFalse(snapshot.isClaimed(0));
+        assertTrue(snapshot.claim(0));
+        assertFalse(snapshot.claim(0));
+        assertTrue(snapshot.isClaimed(0));
+    }
+
+    @Test
+    void testMissingSnapshotMapsToNull() throws IOException {
+        assertNull(SnapshotFile.map(path, new AuthorCodec()));
+    }
+}
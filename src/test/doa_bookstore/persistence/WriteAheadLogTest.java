@@ -0,0 +1,87 @@
+package test.doa_bookstore.persistence;
+
+import doa_bookstore.persistence.DurabilityOptions;
+import doa_bookstore.persistence.FsyncPolicy;
+import doa_bookstore.persistence.WriteAheadLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the failure handling of {@link WriteAheadLog}.
+ */
+class WriteAheadLogTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("doa-wal-log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void testRecordsOfAFailedGroupCommitAreNeverReportedDurable() throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory, "failing", 1,
+                new DurabilityOptions(FsyncPolicy.GROUP_COMMIT, 5, 0));
+        long leader = log.append(WriteAheadLog.SAVE, 1, new byte[]{1});
+        long follower = log.append(WriteAheadLog.SAVE, 2, new byte[]{2});
+
+        // Writing from an interrupted thread closes the channel, as a failing disk would fail the write
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IOException.class, () -> log.sync(leader));
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThrows(IOException.class, () -> log.sync(follower), "The follower's record was in the failed batch.");
+        assertThrows(IOException.class, () -> log.append(WriteAheadLog.SAVE, 3, new byte[]{3}));
+        log.close();
+
+        List<Long> replayed = new ArrayList<>();
+        WriteAheadLog.replay(directory, "failing", 1, (op, id, payload) -> replayed.add(id));
+        assertTrue(replayed.isEmpty());
+    }
+
+    @Test
+    void testFailedWriteMakesAnEveryWriteLogUnusable() throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory, "failing", 1,
+                new DurabilityOptions(FsyncPolicy.EVERY_WRITE, 5, 0));
+        long first = log.append(WriteAheadLog.SAVE, 1, new byte[]{1});
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IOException.class, () -> log.append(WriteAheadLog.SAVE, 2, new byte[]{2}));
+        } finally {
+            Thread.interrupted();
+        }
+
+        log.sync(first);
+        assertThrows(IOException.class, () -> log.append(WriteAheadLog.SAVE, 3, new byte[]{3}));
+        assertThrows(IOException.class, () -> log.sync(first + 1));
+        log.close();
+
+        List<Long> replayed = new ArrayList<>();
+        WriteAheadLog.replay(directory, "failing", 1, (op, id, payload) -> replayed.add(id));
+        assertEquals(List.of(1L), replayed);
+    }
+}
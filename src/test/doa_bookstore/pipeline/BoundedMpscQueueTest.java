@@ -0,0 +1,98 @@
+package test.doa_bookstore.pipeline;
+
+import doa_bookstore.pipeline.BoundedMpscQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedMpscQueueTest {
+
+    @Test
+    void testCapacityIsRoundedToPowerOfTwo() {
+        assertEquals(1, new BoundedMpscQueue<String>(1).capacity());
+        assertEquals(8, new BoundedMpscQueue<String>(5).capacity());
+        assertEquals(8, new BoundedMpscQueue<String>(8).capacity());
+    }
+
+    @Test
+    void testOfferFailsWhenFull() {
+        BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<>(2);
+
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(1, queue.poll());
+        assertTrue(queue.offer(3));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    void testDrainToKeepsOrderAndLimit() {
+        BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<>(16);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(4, queue.drainTo(batch, 4));
+        assertEquals(List.of(0, 1, 2, 3), batch);
+        assertEquals(6, queue.drainTo(batch, 100));
+        assertEquals(9, batch.get(9));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testConcurrentProducersLoseNothing() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 50_000;
+        BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        Set<Integer> seen = new HashSet<>();
+        int[] lastPerProducer = new int[producers];
+        Arrays.fill(lastPerProducer, -1);
+        List<Integer> batch = new ArrayList<>();
+        while (seen.size() < producers * perProducer) {
+            batch.clear();
+            queue.drainTo(batch, 256);
+            for (int value : batch) {
+                assertTrue(seen.add(value));
+                // Each producer's elements come out in the order it offered them
+                int producer = value / perProducer;
+                assertTrue(value > lastPerProducer[producer]);
+                lastPerProducer[producer] = value;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
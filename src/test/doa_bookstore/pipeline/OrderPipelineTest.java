@@ -0,0 +1,198 @@
+package test.doa_bookstore.pipeline;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
+import doa_bookstore.entity.Orders;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.pipeline.OrderPipeline;
+import doa_bookstore.repository.AuthorRepository;
+import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.OrderRepository;
+import doa_bookstore.service.AuthorService;
+import doa_bookstore.service.BookService;
+import doa_bookstore.service.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the batching {@link OrderPipeline}.
+ */
+class OrderPipelineTest {
+
+    private AuthorService authorService;
+    private BookService bookService;
+    private OrderService orderService;
+    private OrderPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        authorService = new AuthorService(AuthorRepository.getInstance());
+        bookService = new BookService(BookRepository.getInstance());
+        orderService = new OrderService(OrderRepository.getInstance());
+        pipeline = new OrderPipeline(bookService, orderService, 1_024, 64, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.close();
+    }
+
+    private Book saveBook(String title, int stock) throws EntityAlreadyExistsException {
+        Author author = authorService.saveAuthor(new Author("Jane Austen"));
+        return bookService.saveBook(new Book(title, author, Book.Genre.ROMANCE, stock));
+    }
+
+    private static HashMap<Book, Integer> order(Book book, int units) {
+        HashMap<Book, Integer> order = new HashMap<>();
+        order.put(book, units);
+        return order;
+    }
+
+    @Test
+    void testPlacedOrderIsSaved() throws EntityAlreadyExistsException {
+        Book book = saveBook("Emma", 5);
+
+        Orders placed = pipeline.placeOrder("Alice", order(book, 2)).join();
+
+        assertNotNull(placed.getId());
+        assertEquals("Alice", placed.getCustomerName());
+        assertEquals(Orders.OrderStatus.PENDING, placed.getStatus());
+        assertTrue(orderService.findOrderById(placed.getId()).isPresent());
+        assertEquals(3, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+    }
+
+    @Test
+    void testConcurrentOrdersNeverOversell() throws EntityAlreadyExistsException, InterruptedException {
+        Book book = saveBook("Persuasion", 1_000);
+
+        List<CompletableFuture<Orders>> futures = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    CompletableFuture<Orders> future = pipeline.placeOrder("Customer", order(book, 1));
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        int placed = 0;
+        int refused = 0;
+        for (CompletableFuture<Orders> future : futures) {
+            try {
+                future.join();
+                placed++;
+            } catch (CompletionException e) {
+                assertInstanceOf(InsufficientUnitsException.class, e.getCause());
+                refused++;
+            }
+        }
+        assertEquals(1_000, placed);
+        assertEquals(1_000, refused);
+        assertEquals(0, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+    }
+
+    @Test
+    void testFailedOrderDoesNotHoldBackItsBatch() throws EntityAlreadyExistsException {
+        Book scarce = saveBook("Sanditon", 1);
+        Book plenty = saveBook("Lady Susan", 10);
+        Book unknown = new Book("Unknown", null, Book.Genre.DRAMA, 1);
+        unknown.setId(-1L);
+
+        CompletableFuture<Orders> tooMany = pipeline.placeOrder("Alice", order(scarce, 2));
+        CompletableFuture<Orders> missing = pipeline.placeOrder("Bob", order(unknown, 1));
+        CompletableFuture<Orders> fine = pipeline.placeOrder("Carol", order(plenty, 3));
+
+        CompletionException insufficient = assertThrows(CompletionException.class, tooMany::join);
+        assertInstanceOf(InsufficientUnitsException.class, insufficient.getCause());
+        CompletionException notFound = assertThrows(CompletionException.class, missing::join);
+        assertInstanceOf(EntityNotFoundException.class, notFound.getCause());
+        assertEquals("Carol", fine.join().getCustomerName());
+        assertEquals(1, bookService.findBookById(scarce.getId()).orElseThrow().getStockUnits());
+        assertEquals(7, bookService.findBookById(plenty.getId()).orElseThrow().getStockUnits());
+    }
+
+    @Test
+    void testCloseDrainsQueueAndRejectsNewOrders() throws EntityAlreadyExistsException {
+        Book book = saveBook("Mansfield Park", 100);
+        List<CompletableFuture<Orders>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(pipeline.placeOrder("Customer " + i, order(book, 1)));
+        }
+
+        pipeline.close();
+
+        for (CompletableFuture<Orders> future : futures) {
+            assertTrue(future.isDone());
+            assertNotNull(future.join().getId());
+        }
+        CompletionException rejected = assertThrows(CompletionException.class,
+                () -> pipeline.placeOrder("Late", order(book, 1)).join());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+    }
+
+    @Test
+    void testWriterErrorFailsQueuedOrdersAndClosesThePipeline() throws Exception {
+        Book book = saveBook("Northanger Abbey", 100);
+        CountDownLatch resolving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BookService failing = new BookService(BookRepository.getInstance()) {
+            @Override
+            public OrderLines resolveBooks(Map<Book, Integer> books) {
+                resolving.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new AssertionError("Broken writer");
+            }
+        };
+        OrderPipeline broken = new OrderPipeline(failing, orderService, 1_024, 1, Duration.ofSeconds(10));
+        try {
+            CompletableFuture<Orders> first = broken.placeOrder("Alice", order(book, 1));
+            resolving.await();
+            List<CompletableFuture<Orders>> queued = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                queued.add(broken.placeOrder("Customer " + i, order(book, 1)));
+            }
+            release.countDown();
+
+            CompletionException failed = assertThrows(CompletionException.class, first::join);
+            assertInstanceOf(AssertionError.class, failed.getCause());
+            for (CompletableFuture<Orders> future : queued) {
+                CompletionException rejected = assertThrows(CompletionException.class, future::join);
+                assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+            }
+            CompletionException late = assertThrows(CompletionException.class,
+                    () -> broken.placeOrder("Late", order(book, 1)).join());
+            assertInstanceOf(RejectedExecutionException.class, late.getCause());
+            assertEquals(100, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+        } finally {
+            broken.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package test.doa_bookstore.repository;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.repository.MyCrudRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the batch operations of {@link MyCrudRepository}.
+ */
+class MyCrudRepositoryBatchTest {
+
+    private static class TestBookRepository extends MyCrudRepository<Book> {
+    }
+
+    private TestBookRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TestBookRepository();
+    }
+
+    private static List<Book> books(int count) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            books.add(new Book("Book " + i, null, Book.Genre.DRAMA, i));
+        }
+        return books;
+    }
+
+    @Test
+    void testSaveAllAssignsConsecutiveIds() throws EntityAlreadyExistsException {
+        List<Book> saved = repository.saveAll(books(100));
+
+        assertEquals(100, saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            assertEquals(i + 1L, saved.get(i).getId());
+        }
+        assertEquals(100, repository.findAll().size());
+    }
+
+    @Test
+    void testSaveAllSkipsExplicitlyTakenIds() throws EntityAlreadyExistsException {
+        Book explicit = new Book("Explicit", null, Book.Genre.DRAMA, 1);
+        explicit.setId(3L);
+        repository.save(explicit);
+
+        List<Book> saved = repository.saveAll(books(5));
+
+        assertEquals(6, repository.findAll().size());
+        assertEquals(5, saved.stream().map(Book::getId).distinct().count());
+        assertFalse(saved.stream().anyMatch(book -> book.getId() == 3L));
+        assertSame(explicit, repository.findById(3L).orElseThrow());
+    }
+
+    @Test
+    void testSaveAllIsAllOrNothing() throws EntityAlreadyExistsException {
+        Book existing = repository.save(new Book("Existing", null, Book.Genre.DRAMA, 1));
+        List<Book> batch = books(10);
+        Book duplicate = new Book("Duplicate", null, Book.Genre.DRAMA, 1);
+        duplicate.setId(existing.getId());
+        batch.add(5, duplicate);
+
+        assertThrows(EntityAlreadyExistsException.class, () -> repository.saveAll(batch));
+
+        assertEquals(1, repository.findAll().size());
+        assertNull(batch.get(0).getId(), "Generated IDs of a failed batch must be taken back.");
+    }
+
+    @Test
+    void testSaveAllRejectsIdRepeatedInBatch() {
+        Book first = new Book("First", null, Book.Genre.DRAMA, 1);
+        first.setId(7L);
+        Book second = new Book("Second", null, Book.Genre.DRAMA, 1);
+        second.setId(7L);
+
+        assertThrows(EntityAlreadyExistsException.class, () -> repository.saveAll(List.of(first, second)));
+        assertFalse(repository.existsById(7L));
+    }
+
+    @Test
+    void testUpdateAllSkipsUnknownIds() throws EntityAlreadyExistsException {
+        List<Book> saved = repository.saveAll(books(3));
+        Book renamed = saved.get(1).copy();
+        renamed.setTitle("Renamed");
+        Book unknown = new Book("Unknown", null, Book.Genre.COMEDY, 9);
+        unknown.setId(999L);
+
+        assertEquals(1, repository.updateAll(List.of(renamed, unknown)));
+        assertEquals("Renamed", repository.findById(saved.get(1).getId()).orElseThrow().getTitle());
+        assertFalse(repository.existsById(999L));
+    }
+
+    @Test
+    void testDeleteAllByIdAndFindAllById() throws EntityAlreadyExistsException {
+        List<Book> saved = repository.saveAll(books(5));
+
+        repository.deleteAllById(Arrays.asList(saved.get(0).getId(), saved.get(2).getId(), 42L, null));
+
+        List<Book> found = repository.findAllById(Arrays.asList(saved.get(4).getId(), saved.get(0).getId(),
+                saved.get(1).getId(), null));
+        assertEquals(List.of(saved.get(4), saved.get(1)), found);
+        assertEquals(3, repository.findAll().size());
+    }
+}
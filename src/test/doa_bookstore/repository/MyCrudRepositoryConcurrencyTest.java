@@ -0,0 +1,186 @@
+package test.doa_bookstore.repository;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.StaleEntityException;
+import doa_bookstore.repository.MyCrudRepository;
+import doa_bookstore.repository.StorageMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress tests for a {@link MyCrudRepository} running in {@link StorageMode#CONCURRENT} mode.
+ */
+class MyCrudRepositoryConcurrencyTest {
+
+    private static final int THREADS = 32;
+    private static final int SAVES_PER_THREAD = 2_000;
+
+    private static class ConcurrentBookRepository extends MyCrudRepository<Book> {
+        ConcurrentBookRepository() {
+            super(StorageMode.CONCURRENT);
+        }
+    }
+
+    private ConcurrentBookRepository repository;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ConcurrentBookRepository();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Test
+    void testConcurrentSavesHaveUniqueIdsAndAreNotLost() throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < SAVES_PER_THREAD; i++) {
+                    Book saved = repository.save(new Book("Book " + i, null, Book.Genre.DRAMA, 1));
+                    assertTrue(ids.add(saved.getId()), "ID " + saved.getId() + " was handed out twice.");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(THREADS * SAVES_PER_THREAD, ids.size());
+        assertEquals(THREADS * SAVES_PER_THREAD, repository.findAll().size());
+        for (Long id : ids) {
+            assertTrue(repository.existsById(id), "Saved book " + id + " was lost.");
+        }
+    }
+
+    @Test
+    void testConcurrentSavesOfSameIdOnlyOneWins() throws Exception {
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                Book book = new Book("Contended", null, Book.Genre.DRAMA, 1);
+                book.setId(42L);
+                start.await();
+                try {
+                    repository.save(book);
+                } catch (EntityAlreadyExistsException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(THREADS - 1, rejected.get());
+        assertEquals(1, repository.findAll().size());
+    }
+
+    @Test
+    void testGeneratedIdsSkipExplicitIds() throws EntityAlreadyExistsException {
+        Book explicit = new Book("Explicit", null, Book.Genre.DRAMA, 1);
+        explicit.setId(1L);
+        repository.save(explicit);
+
+        Book generated = repository.save(new Book("Generated", null, Book.Genre.DRAMA, 1));
+
+        assertNotEquals(1L, generated.getId());
+        assertSame(explicit, repository.findById(1L).orElseThrow());
+        executor.shutdown();
+    }
+
+    @Test
+    void testStaleCopiesAreRejected() throws EntityAlreadyExistsException {
+        Book stored = repository.save(new Book("Original", null, Book.Genre.DRAMA, 1));
+        assertEquals(1, stored.getVersion());
+        Book first = stored.copy();
+        Book second = stored.copy();
+
+        first.setTitle("First edit");
+        assertSame(stored, repository.update(first));
+        assertEquals(2, first.getVersion());
+
+        second.setTitle("Second edit");
+        StaleEntityException stale = assertThrows(StaleEntityException.class, () -> repository.update(second));
+        assertEquals(1, stale.getExpectedVersion());
+        assertEquals(2, stale.getStoredVersion());
+        assertEquals("First edit", repository.findById(stored.getId()).orElseThrow().getTitle());
+        assertEquals(0, repository.updateAll(List.of(second)), "Stale copies are skipped by batch updates.");
+
+        // A copy that was never read is stale too; only one given any version overwrites
+        second.setVersion(0);
+        assertThrows(StaleEntityException.class, () -> repository.update(second));
+        second.setVersion(Book.ANY_VERSION);
+        repository.update(second);
+        assertEquals(3, second.getVersion());
+
+        // The stored instance itself is never stale
+        second.setStockUnits(5);
+        repository.update(second);
+        assertEquals(4, second.getVersion());
+        executor.shutdown();
+    }
+
+    @Test
+    void testConcurrentCopyUpdatesLoseNoEdit() throws Exception {
+        Book stored = repository.save(new Book("Counter", null, Book.Genre.DRAMA, 0));
+        int editsPerThread = 200;
+        AtomicInteger retries = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < editsPerThread; i++) {
+                    while (true) {
+                        Book edit = repository.findById(stored.getId()).orElseThrow().copy();
+                        edit.setStockUnits(edit.getStockUnits() + 1);
+                        try {
+                            repository.update(edit);
+                            break;
+                        } catch (StaleEntityException e) {
+                            retries.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Book result = repository.findById(stored.getId()).orElseThrow();
+        assertEquals(THREADS * editsPerThread, result.getStockUnits());
+        assertEquals(1 + THREADS * editsPerThread, result.getVersion());
+    }
+}
@@ -0,0 +1,112 @@
+package test.doa_bookstore.repository;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.repository.MyCrudRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the paginated, streaming and view-based listing methods of {@link MyCrudRepository}.
+ */
+class MyCrudRepositoryPaginationTest {
+
+    private static class TestBookRepository extends MyCrudRepository<Book> {
+    }
+
+    private TestBookRepository repository;
+
+    @BeforeEach
+    void setUp() throws EntityAlreadyExistsException {
+        repository = new TestBookRepository();
+        for (int i = 1; i <= 25; i++) {
+            repository.save(new Book("Book " + i, null, Book.Genre.DRAMA, i));
+        }
+    }
+
+    @Test
+    void testPagesCoverAllEntitiesInIdOrder() {
+        List<Long> ids = new ArrayList<>();
+        Long cursor = null;
+        List<Book> page;
+        while (!(page = repository.findPage(cursor, 10)).isEmpty()) {
+            assertTrue(page.size() <= 10);
+            page.forEach(book -> ids.add(book.getId()));
+            cursor = page.get(page.size() - 1).getId();
+        }
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= 25; id++) {
+            expected.add(id);
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    void testPageSkipsDeletedEntities() {
+        repository.deleteById(2L);
+        repository.deleteById(3L);
+
+        List<Long> ids = repository.findPage(null, 3).stream().map(Book::getId).collect(Collectors.toList());
+
+        assertEquals(List.of(1L, 4L, 5L), ids);
+    }
+
+    @Test
+    void testPageWithSparseExplicitIds() throws EntityAlreadyExistsException {
+        Book far = new Book("Far away", null, Book.Genre.DRAMA, 1);
+        far.setId(1_000_000_000L);
+        repository.save(far);
+        Book further = new Book("Further away", null, Book.Genre.DRAMA, 1);
+        further.setId(2_000_000_000L);
+        repository.save(further);
+
+        List<Book> page = repository.findPage(25L, 10);
+
+        assertEquals(2, page.size());
+        assertSame(far, page.get(0));
+        assertSame(further, page.get(1));
+    }
+
+    @Test
+    void testPageRejectsNonPositiveLimit() {
+        assertThrows(IllegalArgumentException.class, () -> repository.findPage(null, 0));
+    }
+
+    @Test
+    void testStreamAllIsLazyOverEveryEntity() {
+        assertEquals(25, repository.streamAll().count());
+        assertEquals(3, repository.streamAll().limit(3).count());
+    }
+
+    @Test
+    void testFindAllViewIsReadOnlyAndLive() throws EntityAlreadyExistsException {
+        Collection<Book> view = repository.findAllView();
+        assertThrows(UnsupportedOperationException.class, view::clear);
+
+        repository.save(new Book("Late", null, Book.Genre.DRAMA, 1));
+
+        assertEquals(26, view.size());
+    }
+
+    @Test
+    void testFindAllViewIsAListOfEveryEntity() {
+        List<Book> view = repository.findAllView();
+
+        List<Book> iterated = new ArrayList<>();
+        view.forEach(iterated::add);
+        assertEquals(iterated, view);
+        assertEquals(iterated.get(24), view.get(24));
+        assertEquals(25, view.stream().map(Book::getId).distinct().count());
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(25));
+        assertThrows(UnsupportedOperationException.class, () -> view.remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> view.iterator().remove());
+    }
+}
@@ -0,0 +1,277 @@
+package test.doa_bookstore.repository;
+
+import doa_bookstore.entity.Book;
+import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.SnapshotTooOldException;
+import doa_bookstore.repository.MyCrudRepository;
+import doa_bookstore.repository.StorageMode;
+import doa_bookstore.repository.mvcc.ReadView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for reads of a {@link MyCrudRepository} through a {@link ReadView}.
+ */
+class MyCrudRepositoryReadViewTest {
+
+    private static class ConcurrentBookRepository extends MyCrudRepository<Book> {
+        ConcurrentBookRepository() {
+            super(StorageMode.CONCURRENT);
+        }
+
+        @Override
+        protected Book copyOf(Book book) {
+            return book.copy();
+        }
+    }
+
+    private ConcurrentBookRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ConcurrentBookRepository();
+    }
+
+    @Test
+    void testViewDoesNotSeeLaterWrites() throws EntityAlreadyExistsException {
+        Book kept = repository.save(new Book("Kept", null, Book.Genre.DRAMA, 1));
+        Book renamed = repository.save(new Book("Before", null, Book.Genre.DRAMA, 1));
+        Book deleted = repository.save(new Book("Deleted", null, Book.Genre.DRAMA, 1));
+
+        try (ReadView view = repository.openReadView()) {
+            repository.update(copy(renamed, "After", renamed.getStockUnits()));
+            repository.deleteById(deleted.getLongId());
+            Book added = repository.save(new Book("Added", null, Book.Genre.DRAMA, 1));
+
+            Map<Long, String> titles = repository.findAll(view).stream()
+                    .collect(Collectors.toMap(Book::getLongId, Book::getTitle));
+            assertEquals(Map.of(kept.getLongId(), "Kept", renamed.getLongId(), "Before",
+                    deleted.getLongId(), "Deleted"), titles);
+            assertEquals("Before", repository.findById(renamed.getLongId(), view).orElseThrow().getTitle());
+            assertTrue(repository.findById(deleted.getLongId(), view).isPresent());
+            assertTrue(repository.findById(added.getLongId(), view).isEmpty());
+
+            // Reads without the view see every write
+            assertEquals("After", repository.findById(renamed.getLongId()).orElseThrow().getTitle());
+            assertEquals(3, repository.findAll().size());
+        }
+    }
+
+    @Test
+    void testViewDoesNotSeeAnEditedCopyOfAFoundEntity() throws EntityAlreadyExistsException {
+        Book saved = repository.save(new Book("Before", null, Book.Genre.DRAMA, 1));
+
+        try (ReadView view = repository.openReadView()) {
+            Book edit = repository.findById(saved.getLongId()).orElseThrow().copy();
+            edit.setTitle("After");
+            edit.setGenre(Book.Genre.COMEDY);
+            repository.update(edit);
+
+            Book seen = repository.findById(saved.getLongId(), view).orElseThrow();
+            assertEquals("Before", seen.getTitle());
+            assertEquals(Book.Genre.DRAMA, seen.getGenre());
+            assertEquals("After", repository.findById(saved.getLongId()).orElseThrow().getTitle());
+        }
+    }
+
+    @Test
+    void testViewKeepsACopyOfAnEntityUpdatedInPlace() throws EntityAlreadyExistsException {
+        Book stored = repository.save(new Book("First", null, Book.Genre.DRAMA, 1));
+
+        try (ReadView view = repository.openReadView()) {
+            stored.setTitle("Second");
+            repository.update(stored);
+            // A later change in place does not show through the version kept for the view
+            stored.setTitle("Third");
+
+            assertEquals("Second", repository.findById(stored.getLongId(), view).orElseThrow().getTitle());
+            assertNotSame(stored, repository.findById(stored.getLongId(), view).orElseThrow());
+        }
+    }
+
+    @Test
+    void testPagesFromOneViewFitTogether() throws EntityAlreadyExistsException {
+        for (int i = 0; i < 100; i++) {
+            repository.save(new Book("Book " + i, null, Book.Genre.DRAMA, 1));
+        }
+        try (ReadView view = repository.openReadView()) {
+            List<Book> first = repository.findPage(null, 10, view);
+            List<Long> deleted = new ArrayList<>();
+            for (long id = 1; id <= 20; id++) {
+                deleted.add(id);
+            }
+            repository.deleteAllById(deleted);
+            repository.save(new Book("Late", null, Book.Genre.DRAMA, 1));
+
+            List<Book> second = repository.findPage(first.get(first.size() - 1).getId(), 10, view);
+            assertEquals(List.of(11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L),
+                    second.stream().map(Book::getId).toList());
+            assertEquals(100, repository.findAll(view).size());
+        }
+        assertEquals(81, repository.findAll().size());
+    }
+
+    @Test
+    void testBatchWritesAreSeenWholeOrNotAtAll() throws Exception {
+        Book left = repository.save(new Book("Left", null, Book.Genre.DRAMA, 50));
+        Book right = repository.save(new Book("Right", null, Book.Genre.DRAMA, 50));
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Moves units from one book to the other in one batch, so their sum never changes
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    int moved = i % 50;
+                    repository.updateAll(List.of(copy(left, "Left", 50 - moved), copy(right, "Right", 50 + moved)));
+                }
+            });
+            Future<?> reader = executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    try (ReadView view = repository.openReadView()) {
+                        int sum = repository.findById(left.getLongId(), view).orElseThrow().getStockUnits()
+                                + repository.findById(right.getLongId(), view).orElseThrow().getStockUnits();
+                        assertEquals(100, sum, "A view saw half of a batch.");
+                        assertEquals(100, repository.findAll(view).stream().mapToInt(Book::getStockUnits).sum());
+                    }
+                }
+            });
+            reader.get(60, TimeUnit.SECONDS);
+            stop.set(true);
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            stop.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testVersionsAreCollectedOnceViewsClose() throws EntityAlreadyExistsException {
+        Book book = repository.save(new Book("Title", null, Book.Genre.DRAMA, 1));
+        repository.update(copy(book, "Unseen", 1));
+        assertEquals(0, repository.retainedVersions(), "Versions kept with no view open.");
+
+        ReadView view = repository.openReadView();
+        for (int i = 0; i < 10; i++) {
+            repository.update(copy(book, "Title " + i, 1));
+        }
+        assertTrue(repository.retainedVersions() > 0);
+        assertEquals("Unseen", repository.findById(book.getLongId(), view).orElseThrow().getTitle());
+        view.close();
+
+        repository.update(copy(book, "Last", 1));
+        assertEquals(0, repository.retainedVersions());
+        assertThrows(IllegalStateException.class, () -> repository.findById(book.getLongId(), view));
+    }
+
+    @Test
+    void testWritesWithNoViewOpenAreNotVersioned() throws EntityAlreadyExistsException {
+        Book book = repository.save(new Book("Title", null, Book.Genre.DRAMA, 1));
+        long before;
+        try (ReadView view = repository.openReadView()) {
+            before = view.stamp();
+        }
+        for (int i = 0; i < 10; i++) {
+            repository.update(copy(book, "Title " + i, 1));
+        }
+        assertEquals(0, repository.retainedVersions());
+
+        try (ReadView view = repository.openReadView()) {
+            assertEquals(before, view.stamp(), "Writes with no view open took a stamp.");
+            assertEquals("Title 9", repository.findById(book.getLongId(), view).orElseThrow().getTitle());
+            repository.update(copy(book, "Seen Later", 1));
+            assertEquals("Title 9", repository.findById(book.getLongId(), view).orElseThrow().getTitle());
+        }
+    }
+
+    @Test
+    void testViewOpenedDuringAnUnversionedBatchReadsAfterIt() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        ConcurrentBookRepository pausing = new ConcurrentBookRepository() {
+            @Override
+            protected void carryOver(Book stored, Book replacement) {
+                if (replacement.getTitle().equals("Right, Moved")) {
+                    inside.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        Book left = pausing.save(new Book("Left", null, Book.Genre.DRAMA, 50));
+        Book right = pausing.save(new Book("Right", null, Book.Genre.DRAMA, 50));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The batch starts with no view open, so it keeps no version, and stops between its two books
+            Future<?> writer = executor.submit(() -> pausing.updateAll(
+                    List.of(copy(left, "Left, Moved", 40), copy(right, "Right, Moved", 60))));
+            assertTrue(inside.await(10, TimeUnit.SECONDS));
+            Future<ReadView> opening = executor.submit(pausing::openReadView);
+            Thread.sleep(100);
+            assertFalse(opening.isDone(), "A view was opened in the middle of an unversioned batch.");
+            resume.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+
+            try (ReadView view = opening.get(10, TimeUnit.SECONDS)) {
+                assertEquals("Left, Moved", pausing.findById(left.getLongId(), view).orElseThrow().getTitle());
+                assertEquals("Right, Moved", pausing.findById(right.getLongId(), view).orElseThrow().getTitle());
+            }
+        } finally {
+            resume.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testOldestViewExpiresPastRetentionBound() throws EntityAlreadyExistsException {
+        repository.setMaxRetainedVersions(5);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            books.add(repository.save(new Book("Book " + i, null, Book.Genre.DRAMA, 1)));
+        }
+        try (ReadView old = repository.openReadView()) {
+            for (Book book : books) {
+                repository.update(copy(book, "Renamed", 1));
+            }
+            assertTrue(old.isExpired());
+            assertThrows(SnapshotTooOldException.class, () -> repository.findAll(old));
+            assertTrue(repository.retainedVersions() <= 5);
+
+            try (ReadView recent = repository.openReadView()) {
+                assertEquals(10, repository.findAll(recent).size());
+            }
+        }
+    }
+
+    @Test
+    void testDeleteAllExpiresOpenViews() throws EntityAlreadyExistsException {
+        Book book = repository.save(new Book("Title", null, Book.Genre.DRAMA, 1));
+        try (ReadView view = repository.openReadView()) {
+            repository.deleteAll();
+            assertThrows(SnapshotTooOldException.class, () -> repository.findById(book.getLongId(), view));
+            assertThrows(SnapshotTooOldException.class, () -> repository.findAll(view));
+        }
+    }
+
+    private static Book copy(Book book, String title, int stockUnits) {
+        Book copy = new Book(title, book.getAuthor(), book.getGenre(), stockUnits);
+        copy.setId(book.getId());
+        copy.setVersion(Book.ANY_VERSION);
+        return copy;
+    }
+}
@@ -0,0 +1,142 @@
+package test.doa_bookstore.repository.index;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.repository.index.BookSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookSearchIndexTest {
+
+    private BookSearchIndex index;
+    private long nextId;
+
+    @BeforeEach
+    void setUp() {
+        index = new BookSearchIndex();
+        nextId = 1;
+    }
+
+    private Book index(String title, String authorName) {
+        Book book = new Book(title, authorName == null ? null : new Author(authorName), Book.Genre.DRAMA, 1);
+        book.setId(nextId++);
+        index.onSaved(book);
+        return book;
+    }
+
+    @Test
+    void testTokenizeNormalizesAndSplits() {
+        assertArrayEquals(new String[]{"les", "miserables", "tome", "1"},
+                BookSearchIndex.tokenize("  Les Misérables — Tome 1, les"));
+        assertEquals(0, BookSearchIndex.tokenize(null).length);
+        assertEquals(0, BookSearchIndex.tokenize(" ,; ").length);
+    }
+
+    @Test
+    void testEveryWordMustMatch() {
+        Book pride = index("Pride and Prejudice", "Jane Austen");
+        index("Sense and Sensibility", "Jane Austen");
+
+        assertEquals(List.of(pride.getLongId()), index.search("pride austen", 10));
+        assertEquals(List.of(pride.getLongId()), index.search("PRIDE prej", 10));
+        assertTrue(index.search("pride twain", 10).isEmpty());
+    }
+
+    @Test
+    void testRanking() {
+        Book authorPrefix = index("Collected Letters", "Emmanuel Kant");
+        Book titlePrefix = index("Emmanuelle", null);
+        Book authorExact = index("Selected Essays", "Emma Goldman");
+        Book titleExact = index("Emma", "Jane Austen");
+
+        assertEquals(List.of(titleExact.getLongId(), titlePrefix.getLongId(), authorExact.getLongId(),
+                authorPrefix.getLongId()), index.search("emma", 10));
+        assertEquals(List.of(titleExact.getLongId(), titlePrefix.getLongId()), index.search("emma", 2));
+    }
+
+    @Test
+    void testTiesGoToLowestId() {
+        Book first = index("Dune", null);
+        Book second = index("Dune", null);
+
+        assertEquals(List.of(first.getLongId(), second.getLongId()), index.search("dune", 10));
+    }
+
+    @Test
+    void testUpdatesDeletesAndClear() {
+        Book book = index("The Shining", "Stephen King");
+
+        book.setTitle("Doctor Sleep");
+        index.onUpdated(book, book);
+
+        assertTrue(index.search("shining", 10).isEmpty());
+        assertEquals(List.of(book.getLongId()), index.search("doctor king", 10));
+
+        book.getAuthor().setName("Richard Bachman");
+        index.reindex(book);
+
+        assertTrue(index.search("king", 10).isEmpty());
+        assertEquals(List.of(book.getLongId()), index.search("bachman", 10));
+
+        index.onDeleted(book);
+        assertTrue(index.search("doctor", 10).isEmpty());
+
+        index("Carrie", null);
+        index.onCleared();
+        assertTrue(index.search("carrie", 10).isEmpty());
+    }
+
+    @Test
+    void testCommonWordExaminesBoundedCandidates() {
+        for (int i = 0; i < BookSearchIndex.MAX_CANDIDATES + 500; i++) {
+            index("The Book " + i, null);
+        }
+        Book rare = index("The Quixotic Book", null);
+
+        assertEquals(List.of(rare.getLongId()), index.search("the quixotic", 10));
+        assertEquals(10, index.search("the", 10).size());
+    }
+
+    @Test
+    void testRareCombinationOfCommonWordsIsFoundPastTheCap() {
+        for (int i = 0; i < 4 * BookSearchIndex.MAX_CANDIDATES; i++) {
+            index("War Story " + i, null);
+            index("Peace Story " + i, null);
+        }
+        Book both = index("War and Peace", null);
+
+        // Whichever word drives the query, it has more books than the cap and only one of them has the other
+        assertEquals(List.of(both.getLongId()), index.search("war peace", 10));
+        assertEquals(List.of(both.getLongId()), index.search("peace war", 10));
+    }
+
+    @Test
+    void testConcurrentWritersSharingWords() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long base = 1_000_000L * (t + 1);
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 800; i++) {
+                    Book book = new Book("Shared Words", null, Book.Genre.DRAMA, 1);
+                    book.setId(base + i);
+                    index.onSaved(book);
+                    if (i % 2 == 0) {
+                        index.onDeleted(book);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1_600, index.search("shared words", 10_000).size());
+    }
+}
@@ -0,0 +1,301 @@
+package test.doa_bookstore.repository.table;
+
+import doa_bookstore.entity.Author;
+import doa_bookstore.entity.Book;
+import doa_bookstore.repository.table.ColumnarBookTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the column-per-field {@link ColumnarBookTable}.
+ */
+class ColumnarBookTableTest {
+
+    private static Book book(long id, String title, Author author, Book.Genre genre, int stock) {
+        Book book = new Book(title, author, genre, stock);
+        book.setId(id);
+        return book;
+    }
+
+    @Test
+    void testViewsReadAndWriteTheStoredRow() {
+        Author author = new Author("Ursula K. Le Guin");
+        author.setId(3L);
+        ColumnarBookTable table = new ColumnarBookTable(id -> id == 3 ? author : null);
+        assertNull(table.put(7, book(7, "The Dispossessed", author, Book.Genre.SCIFI, 5)));
+
+        Book view = table.get(7);
+        assertEquals(7L, view.getId());
+        assertEquals("The Dispossessed", view.getTitle());
+        assertSame(author, view.getAuthor());
+        assertEquals(Book.Genre.SCIFI, view.getGenre());
+        assertEquals(5, view.getStockUnits());
+
+        view.setStockUnits(3);
+        view.setTitle("The Dispossessed: An Ambiguous Utopia");
+        Book other = table.get(7);
+        assertEquals(3, other.getStockUnits());
+        assertEquals("The Dispossessed: An Ambiguous Utopia", other.getTitle());
+        assertEquals(view, other);
+        assertEquals(view.hashCode(), other.hashCode());
+        table.put(8, book(8, "Other", author, Book.Genre.SCIFI, 1));
+        assertNotEquals(view, table.get(8));
+    }
+
+    @Test
+    void testAuthorsAreResolvedByIdAndNotKept() {
+        Map<Long, Author> authors = new HashMap<>();
+        Author author = new Author("Octavia E. Butler");
+        author.setId(1L);
+        authors.put(1L, author);
+        ColumnarBookTable table = new ColumnarBookTable(authors::get);
+        table.put(1, book(1, "Kindred", author, Book.Genre.DRAMA, 1));
+        Book view = table.get(1);
+
+        // A replaced author is seen by the views, and the instance they were saved with is not held
+        Author renamed = new Author("Octavia Estelle Butler");
+        renamed.setId(1L);
+        authors.put(1L, renamed);
+        assertSame(renamed, view.getAuthor());
+        assertSame(renamed, table.detached(view).getAuthor());
+        assertTrue(table.remove(1, book(1, "Kindred", author, Book.Genre.DRAMA, 1)));
+
+        authors.remove(1L);
+        assertNull(view.getAuthor());
+
+        // Authors the function does not know are kept with their row until it is written again
+        Author unsaved = new Author("Unsaved");
+        table.put(2, book(2, "Dawn", unsaved, Book.Genre.SCIFI, 1));
+        assertSame(unsaved, table.get(2).getAuthor());
+        authors.put(1L, author);
+        table.get(2).setAuthor(author);
+        assertSame(author, table.get(2).getAuthor());
+        assertFalse(table.remove(2, book(2, "Dawn", unsaved, Book.Genre.SCIFI, 1)));
+    }
+
+    @Test
+    void testNullFieldsRoundTrip() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        table.put(1, book(1, null, null, null, 0));
+
+        Book view = table.get(1);
+        assertNull(view.getTitle());
+        assertNull(view.getAuthor());
+        assertNull(view.getGenre());
+    }
+
+    @Test
+    void testTitlesAreStoredOnce() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        for (long id = 1; id <= 1000; id++) {
+            table.put(id, book(id, "Édition " + (id % 10), null, Book.Genre.DRAMA, 1));
+        }
+
+        assertEquals(1000, table.size());
+        assertEquals(10, table.distinctTitles());
+        assertEquals("Édition 3", table.get(13).getTitle());
+    }
+
+    @Test
+    void testReplacedAndRemovedBooksAreDetachedCopies() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        table.put(1, book(1, "Dune", null, Book.Genre.SCIFI, 4));
+        Book view = table.get(1);
+
+        Book previous = table.replace(1, book(1, "Dune Messiah", null, Book.Genre.SCIFI, 2));
+        assertEquals("Dune", previous.getTitle());
+        assertEquals("Dune Messiah", view.getTitle());
+
+        Book removed = table.remove(1);
+        assertEquals("Dune Messiah", removed.getTitle());
+        assertEquals(1L, removed.getId());
+        assertNull(table.get(1));
+        assertFalse(table.containsKey(1));
+        assertEquals(0, table.size());
+        // A view held across the delete keeps the last state of its book
+        assertEquals("Dune Messiah", view.getTitle());
+        assertNull(table.replace(1, book(1, "Children of Dune", null, Book.Genre.SCIFI, 1)));
+    }
+
+    @Test
+    void testDetachedViewKeepsItsValues() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        table.put(1, book(1, "Dune", null, Book.Genre.SCIFI, 4));
+        Book detached = table.detached(table.get(1));
+
+        table.replace(1, book(1, "Dune Messiah", null, Book.Genre.SCIFI, 2));
+        assertEquals("Dune", detached.getTitle());
+        assertEquals(4, detached.getStockUnits());
+        assertEquals(1L, detached.getId());
+        Book plain = book(2, "Hyperion", null, Book.Genre.SCIFI, 1);
+        assertSame(plain, table.detached(plain));
+    }
+
+    @Test
+    void testCheckedReplaceSeesTheStoredRow() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        Book stored = book(1, "Dune", null, Book.Genre.SCIFI, 4);
+        stored.setVersion(3);
+        table.put(1, stored);
+        Book view = table.get(1);
+        assertEquals(3, view.getVersion());
+
+        Book edit = book(1, "Dune Messiah", null, Book.Genre.SCIFI, 4);
+        assertThrows(IllegalStateException.class, () -> table.replace(1, edit, current -> {
+            throw new IllegalStateException("vetoed at version " + current.getVersion());
+        }));
+        assertEquals("Dune", view.getTitle());
+
+        Book previous = table.replace(1, edit, current -> edit.setVersion(current.getVersion() + 1));
+        assertEquals(3, previous.getVersion());
+        assertEquals("Dune Messiah", view.getTitle());
+        assertEquals(4, view.getVersion());
+        // A view of the row is handed to the check as it is
+        table.replace(1, view, current -> assertSame(view, current));
+        assertNull(table.replace(2, edit, current -> fail("No book has ID 2.")));
+    }
+
+    @Test
+    void testConditionalRemoveMatchesViewsAndValues() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        Book saved = book(1, "Kindred", null, Book.Genre.DRAMA, 2);
+        table.put(1, saved);
+
+        assertFalse(table.remove(1, book(1, "Kindred", null, Book.Genre.DRAMA, 3)));
+        assertTrue(table.remove(1, saved));
+        assertNull(table.get(1));
+
+        table.put(1, saved);
+        assertTrue(table.remove(1, table.get(1)));
+    }
+
+    @Test
+    void testIdsOutsideTheColumnsAreKeptWhole() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        Book negative = book(-1, "Negative", null, Book.Genre.HORROR, 1);
+        Book huge = book(Long.MAX_VALUE, "Huge", null, Book.Genre.HORROR, 1);
+        table.put(-1, negative);
+        table.put(Long.MAX_VALUE, huge);
+        table.put(3, book(3, "Dense", null, Book.Genre.HORROR, 1));
+
+        assertSame(negative, table.get(-1));
+        assertSame(huge, table.get(Long.MAX_VALUE));
+        assertEquals(3, table.size());
+        List<Long> ids = new ArrayList<>();
+        for (Book book : table.values()) {
+            ids.add(book.getId());
+        }
+        assertEquals(3, ids.size());
+        assertEquals(3L, ids.get(0));
+    }
+
+    @Test
+    void testValuesAreInIdOrderAcrossChunks() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        for (long id = 20_000; id >= 1; id -= 7) {
+            table.put(id, book(id, "Title " + id, null, Book.Genre.COMEDY, 1));
+        }
+
+        long previous = 0;
+        int count = 0;
+        for (Book book : table.values()) {
+            assertTrue(book.getId() > previous);
+            assertEquals("Title " + book.getId(), book.getTitle());
+            previous = book.getId();
+            count++;
+        }
+        assertEquals(table.size(), count);
+    }
+
+    @Test
+    void testComputeIfAbsentLoadsOnce() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        AtomicInteger loads = new AtomicInteger();
+
+        Book first = table.computeIfAbsent(5, id -> {
+            loads.incrementAndGet();
+            return book(id, "Loaded", null, Book.Genre.ROMANCE, 1);
+        });
+        Book second = table.computeIfAbsent(5, id -> {
+            loads.incrementAndGet();
+            return book(id, "Reloaded", null, Book.Genre.ROMANCE, 1);
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals("Loaded", first.getTitle());
+        assertEquals(first, second);
+        assertNull(table.computeIfAbsent(6, id -> null));
+        assertFalse(table.containsKey(6));
+    }
+
+    @Test
+    void testClearLeavesEarlierViewsReadable() {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        table.put(1, book(1, "Before", null, Book.Genre.DRAMA, 1));
+        Book view = table.get(1);
+
+        table.clear();
+        table.put(1, book(1, "After", null, Book.Genre.DRAMA, 1));
+
+        assertEquals("Before", view.getTitle());
+        assertEquals("After", table.get(1).getTitle());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void testConcurrentPutIfAbsentHasOneWinnerPerId() throws Exception {
+        ColumnarBookTable table = new ColumnarBookTable(id -> null);
+        int threads = 8;
+        int ids = 20_000;
+        AtomicInteger wins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String title = "thread " + t;
+            futures.add(executor.submit(() -> {
+                for (long id = 1; id <= ids; id++) {
+                    if (table.putIfAbsent(id, book(id, title, null, Book.Genre.DRAMA, 1)) == null) {
+                        wins.incrementAndGet();
+                    }
+                    assertTrue(table.get(id).getTitle().startsWith("thread "));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(ids, wins.get());
+        assertEquals(ids, table.size());
+        assertTrue(table.distinctTitles() <= threads);
+    }
+
+    @Test
+    void testParallelStreamSplitsAndSeesEveryEntity() {
+        ColumnarBookTable map = new ColumnarBookTable(id -> null);
+        map.put(-5, book(-5, "Overflow", null, Book.Genre.DRAMA, 1));
+        map.remove(-5);
+        for (long id = 1; id <= 100_000; id++) {
+            map.put(id, book(id, "Title", null, Book.Genre.DRAMA, 1));
+        }
+
+        Spliterator<Book> spliterator = map.values().spliterator();
+        assertNotNull(spliterator.trySplit());
+        assertEquals(100_000L * 100_001 / 2, map.values().parallelStream().mapToLong(Book::getLongId).sum());
+        assertEquals(100_000, map.values().parallelStream().count());
+    }
+}
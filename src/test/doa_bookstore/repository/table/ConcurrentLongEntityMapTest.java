@@ -0,0 +1,113 @@
+package test.doa_bookstore.repository.table;
+
+import doa_bookstore.repository.table.ConcurrentLongEntityMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the segmented {@link ConcurrentLongEntityMap}.
+ */
+class ConcurrentLongEntityMapTest {
+
+    @Test
+    void testConcurrentPutIfAbsentHasOneWinnerPerId() throws Exception {
+        ConcurrentLongEntityMap<String> map = new ConcurrentLongEntityMap<>();
+        int threads = 16;
+        int ids = 20_000;
+        AtomicInteger wins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String value = "thread " + t;
+            futures.add(executor.submit(() -> {
+                for (long id = 1; id <= ids; id++) {
+                    if (map.putIfAbsent(id, value) == null) {
+                        wins.incrementAndGet();
+                    }
+                    assertNotNull(map.get(id));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(ids, wins.get());
+        assertEquals(ids, map.size());
+    }
+
+    @Test
+    void testReadersNeverMissStableEntriesDuringChurn() throws Exception {
+        ConcurrentLongEntityMap<String> map = new ConcurrentLongEntityMap<>();
+        for (long id = 0; id < 1000; id++) {
+            map.put(id * 2, "stable");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // Odd IDs are inserted and removed, which resizes segments and shifts entries around the stable ones
+        Future<?> writer = executor.submit(() -> {
+            for (int round = 0; round < 20; round++) {
+                for (long id = 0; id < 5000; id++) {
+                    map.put(id * 2 + 1, "churn");
+                }
+                for (long id = 0; id < 5000; id++) {
+                    map.remove(id * 2 + 1);
+                }
+            }
+            return null;
+        });
+        Future<?> reader = executor.submit(() -> {
+            while (!writer.isDone()) {
+                for (long id = 0; id < 1000; id++) {
+                    assertEquals("stable", map.get(id * 2));
+                }
+            }
+            return null;
+        });
+        writer.get(60, TimeUnit.SECONDS);
+        reader.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(1000, map.size());
+    }
+
+    @Test
+    void testValuesIteratesEverySegment() {
+        ConcurrentLongEntityMap<Long> map = new ConcurrentLongEntityMap<>();
+        Set<Long> expected = new HashSet<>();
+        for (long id = 1; id <= 10_000; id++) {
+            map.put(id, id);
+            expected.add(id);
+        }
+
+        assertEquals(expected, new HashSet<>(map.values()));
+        map.clear();
+        assertTrue(map.values().isEmpty());
+    }
+
+    @Test
+    void testParallelStreamSplitsAndSeesEveryEntity() {
+        ConcurrentLongEntityMap<Long> map = new ConcurrentLongEntityMap<>();
+        for (long id = 1; id <= 100_000; id++) {
+            map.put(id, id);
+        }
+
+        Spliterator<Long> spliterator = map.values().spliterator();
+        assertNotNull(spliterator.trySplit());
+        assertEquals(100_000L * 100_001 / 2, map.values().parallelStream().mapToLong(Long::longValue).sum());
+        assertEquals(100_000, map.values().parallelStream().count());
+    }
+}
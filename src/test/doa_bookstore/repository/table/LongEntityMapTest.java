@@ -0,0 +1,113 @@
+package test.doa_bookstore.repository.table;
+
+import doa_bookstore.repository.table.LongEntityMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the open-addressing {@link LongEntityMap}.
+ */
+class LongEntityMapTest {
+
+    private LongEntityMap<String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new LongEntityMap<>();
+    }
+
+    @Test
+    void testBasicOperations() {
+        assertNull(map.put(1, "one"));
+        assertEquals("one", map.put(1, "uno"));
+        assertNull(map.putIfAbsent(2, "two"));
+        assertEquals("two", map.putIfAbsent(2, "dos"));
+        assertNull(map.replace(3, "three"));
+        assertFalse(map.containsKey(3));
+        assertEquals("uno", map.replace(1, "one"));
+        assertEquals(2, map.size());
+
+        assertFalse(map.remove(1, "uno"));
+        assertTrue(map.remove(1, "one"));
+        assertEquals("two", map.remove(2));
+        assertNull(map.remove(2));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void testZeroAndNegativeIds() {
+        map.put(0, "zero");
+        map.put(-1, "minus one");
+        map.put(Long.MIN_VALUE, "min");
+
+        assertEquals("zero", map.get(0));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertNull(map.get(1));
+    }
+
+    @Test
+    void testComputeIfAbsentStoresOnlyNonNull() {
+        assertNull(map.computeIfAbsent(5, id -> null));
+        assertFalse(map.containsKey(5));
+        assertEquals("5", map.computeIfAbsent(5, Long::toString));
+        assertEquals("5", map.computeIfAbsent(5, id -> "other"));
+    }
+
+    @Test
+    void testMatchesHashMapUnderRandomChurn() {
+        // Small key range forces long probe runs, resizes and backward shifts on removal
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long id = random.nextInt(5_000) * 64L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), map.remove(id));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(id, value), map.put(id, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        List<String> values = new ArrayList<>(map.values());
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    @Test
+    void testClear() {
+        for (long id = 1; id <= 1000; id++) {
+            map.put(id, "v" + id);
+        }
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertTrue(map.values().isEmpty());
+        assertNull(map.get(500));
+    }
+
+    @Test
+    void testParallelStreamSplitsAndSeesEveryEntity() {
+        LongEntityMap<Long> map = new LongEntityMap<>();
+        for (long id = 1; id <= 100_000; id++) {
+            map.put(id, id);
+        }
+
+        Spliterator<Long> spliterator = map.values().spliterator();
+        assertNotNull(spliterator.trySplit());
+        assertEquals(100_000L * 100_001 / 2, map.values().parallelStream().mapToLong(Long::longValue).sum());
+        assertEquals(100_000, map.values().parallelStream().count());
+    }
+}
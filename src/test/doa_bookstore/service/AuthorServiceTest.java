@@ -3,6 +3,7 @@ package test.doa_bookstore.service;
 import doa_bookstore.entity.Author;
 import doa_bookstore.exception.EntityAlreadyExistsException;
 import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.StaleEntityException;
 import doa_bookstore.repository.AuthorRepository;
 import doa_bookstore.service.AuthorService;
 import org.junit.jupiter.api.BeforeEach;
@@ -57,4 +58,20 @@ class AuthorServiceTest {
         assertEquals("Author not found.", exception.getMessage());
     }
 
+    @Test
+    void testEditAuthorReplacesItWithAnEditedCopy() throws Exception {
+        Author saved = authorService.saveAuthor(new Author("Mary Westmacott"));
+        saved.addBookId(11L);
+        Author stale = saved.copy();
+
+        Author edited = authorService.editAuthor(saved.getId(), author -> author.setName("Agatha Christie"));
+
+        Author stored = authorService.findAuthorByID(saved.getId()).orElseThrow();
+        assertSame(edited, stored);
+        assertEquals("Agatha Christie", stored.getName());
+        assertEquals("Mary Westmacott", saved.getName());
+        assertTrue(stored.getBookIds().contains(11L), "The edited copy should keep the author's books.");
+        assertThrows(StaleEntityException.class, () -> authorService.updateAuthor(stale));
+        assertThrows(EntityNotFoundException.class, () -> authorService.editAuthor(-1L, author -> {}));
+    }
 }
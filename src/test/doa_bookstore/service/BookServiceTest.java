@@ -2,13 +2,28 @@ package test.doa_bookstore.service;
 
 import doa_bookstore.entity.Author;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
 import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.exception.InsufficientUnitsException;
+import doa_bookstore.exception.StaleEntityException;
+import doa_bookstore.repository.AuthorRepository;
 import doa_bookstore.repository.BookRepository;
+import doa_bookstore.repository.mvcc.ReadView;
 import doa_bookstore.service.BookService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -61,4 +76,237 @@ class BookServiceTest {
         Optional<Book> nonExistentBook = bookService.findBookById(-1L);
         assertFalse(nonExistentBook.isPresent(), "Non-existent book should not be found.");
     }
+
+    @Test
+    void testFindByAuthorId() throws EntityAlreadyExistsException {
+        Author author = new Author("Charlotte Bronte");
+        author.setId(900_001L);
+        Book book1 = bookService.saveBook(new Book("Jane Eyre", author, Book.Genre.ROMANCE, 3));
+        Book book2 = bookService.saveBook(new Book("Villette", author, Book.Genre.DRAMA, 3));
+
+        List<Book> books = bookService.findByAuthorId(author.getId());
+
+        assertEquals(2, books.size());
+        assertTrue(books.contains(book1));
+        assertTrue(books.contains(book2));
+        assertTrue(bookService.findByAuthorId(-1L).isEmpty(), "Unknown author should have no books.");
+    }
+
+    @Test
+    void testDeletedAuthorHasNoBooks() throws EntityAlreadyExistsException {
+        Author author = AuthorRepository.getInstance().save(new Author("Anne Bronte"));
+        bookService.saveBook(new Book("Agnes Grey", author, Book.Genre.DRAMA, 3));
+        assertEquals(1, bookService.findByAuthorId(author.getId()).size());
+
+        AuthorRepository.getInstance().deleteById(author.getId());
+        assertTrue(bookService.findByAuthorId(author.getId()).isEmpty(),
+                "A deleted author should not be found through the instance its books were linked through.");
+    }
+
+    @Test
+    void testFindByGenre() throws EntityAlreadyExistsException {
+        Book horror = bookService.saveBook(new Book("Dracula", null, Book.Genre.HORROR, 3));
+
+        assertTrue(bookService.findByGenre(Book.Genre.HORROR).contains(horror));
+        assertFalse(bookService.findByGenre(Book.Genre.COMEDY).contains(horror));
+    }
+
+    @Test
+    void testFindByTitleIsNormalized() throws EntityAlreadyExistsException {
+        Book book = bookService.saveBook(new Book("Les  Misérables", null, Book.Genre.DRAMA, 3));
+
+        List<Book> found = bookService.findByTitle("  les miserables ");
+
+        assertTrue(found.contains(book), "Title lookup should ignore case, accents and whitespace.");
+    }
+
+    @Test
+    void testIndexesFollowUpdatesAndDeletes() throws EntityAlreadyExistsException {
+        Book book = bookService.saveBook(new Book("The Shining", null, Book.Genre.HORROR, 3));
+
+        book.setGenre(Book.Genre.DRAMA);
+        book.setTitle("Doctor Sleep");
+        bookRepository.update(book);
+
+        assertFalse(bookService.findByGenre(Book.Genre.HORROR).contains(book));
+        assertTrue(bookService.findByGenre(Book.Genre.DRAMA).contains(book));
+        assertTrue(bookService.findByTitle("The Shining").isEmpty());
+        assertTrue(bookService.findByTitle("Doctor Sleep").contains(book));
+
+        bookRepository.deleteById(book.getId());
+
+        assertFalse(bookService.findByGenre(Book.Genre.DRAMA).contains(book));
+        assertTrue(bookService.findByTitle("Doctor Sleep").isEmpty());
+    }
+
+    @Test
+    void testSearchBooksMatchesTitleAndAuthorPrefixes() throws EntityAlreadyExistsException {
+        Author author = AuthorRepository.getInstance().save(new Author("Quentin Xanadu"));
+        Book first = bookService.saveBook(new Book("Zephyrine Gardens", author, Book.Genre.DRAMA, 1));
+        Book second = bookService.saveBook(new Book("Zephyr Nights", author, Book.Genre.DRAMA, 1));
+
+        assertEquals(List.of(second, first), bookService.searchBooks("zephyr", 10),
+                "An exact word should rank above a prefix.");
+        assertEquals(List.of(first), bookService.searchBooks("xanadu garde", 10));
+        assertEquals(1, bookService.searchBooks("zephyr", 1).size());
+        assertTrue(bookService.searchBooks("  ", 10).isEmpty());
+    }
+
+    @Test
+    void testSearchBooksFollowsAuthorRename() throws EntityAlreadyExistsException {
+        AuthorRepository authorRepository = AuthorRepository.getInstance();
+        Author author = authorRepository.save(new Author("Ottoline Vexworth"));
+        Book book = bookService.saveBook(new Book("Quillbrook", author, Book.Genre.DRAMA, 1));
+
+        author.setName("Ottoline Wrenfield");
+        authorRepository.update(author);
+
+        assertTrue(bookService.searchBooks("vexworth quillbrook", 10).isEmpty());
+        assertEquals(List.of(book), bookService.searchBooks("wrenfield quill", 10));
+
+        bookRepository.deleteById(book.getId());
+
+        assertTrue(bookService.searchBooks("quillbrook", 10).isEmpty());
+    }
+
+    @Test
+    void testCatalogReportsScanEveryBook() throws EntityAlreadyExistsException {
+        Map<Book.Genre, Long> before = bookService.countStockUnitsPerGenre();
+        Author prolific = new Author("Isaac Asimov");
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            books.add(new Book("Robot " + i, prolific, Book.Genre.SCIFI, i));
+        }
+        Author occasional = new Author("Occasional Writer");
+        books.add(new Book("Only Book", occasional, Book.Genre.DRAMA, 100));
+        bookService.saveBooks(books);
+
+        Map<Book.Genre, Long> after = bookService.countStockUnitsPerGenre();
+        assertEquals(40 * 39 / 2, after.get(Book.Genre.SCIFI) - before.getOrDefault(Book.Genre.SCIFI, 0L));
+
+        List<Book> lowStock = bookService.findLowStockBooks(2);
+        assertTrue(lowStock.containsAll(books.subList(0, 3)));
+        assertFalse(lowStock.contains(books.get(3)));
+        assertFalse(lowStock.contains(books.get(40)));
+        for (int i = 1; i < lowStock.size(); i++) {
+            assertTrue(lowStock.get(i - 1).getStockUnits() <= lowStock.get(i).getStockUnits());
+        }
+
+        // Other tests share the repository, so only the relative rank of these two authors is known
+        List<Author> ranking = bookService.findAuthorsWithMostTitles(Integer.MAX_VALUE);
+        assertTrue(ranking.indexOf(prolific) >= 0);
+        assertTrue(ranking.indexOf(prolific) < ranking.indexOf(occasional));
+    }
+
+    @Test
+    void testStockIsCountedByReservationsAndRestocks() throws Exception {
+        Book saved = bookService.saveBook(new Book("Restocked", null, Book.Genre.DRAMA, 5));
+
+        bookService.reserveStock(Map.of(saved, 3));
+        bookService.restockBook(saved.getId(), 10);
+        assertEquals(12, bookService.findBookById(saved.getId()).orElseThrow().getStockUnits());
+
+        // An update does not set the stock; the units counted by reservations stay
+        Book edit = bookService.findBookById(saved.getId()).orElseThrow().copy();
+        edit.setTitle("Restocked, Second Edition");
+        edit.setStockUnits(100);
+        bookService.updateBook(edit);
+        Book stored = bookService.findBookById(saved.getId()).orElseThrow();
+        assertEquals("Restocked, Second Edition", stored.getTitle());
+        assertEquals(12, stored.getStockUnits());
+
+        assertThrows(InsufficientUnitsException.class, () -> bookService.reserveStock(Map.of(stored, 13)));
+        bookService.reserveStock(Map.of(stored, 12));
+        assertEquals(0, bookService.findBookById(saved.getId()).orElseThrow().getStockUnits());
+        assertThrows(IllegalArgumentException.class, () -> bookService.restockBook(saved.getId(), 0));
+        assertThrows(EntityNotFoundException.class, () -> bookService.restockBook(Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    void testEditBookIsRetriedOnTheBookAnotherWriterStored() throws Exception {
+        Book saved = bookService.saveBook(new Book("Draft Title", null, Book.Genre.DRAMA, 1));
+        AtomicInteger attempts = new AtomicInteger();
+
+        Book edited = bookService.editBook(saved.getId(), book -> {
+            if (attempts.getAndIncrement() == 0) {
+                // Another editor stores its copy between this read and this update
+                Book other = bookService.findBookById(saved.getId()).orElseThrow().copy();
+                other.setGenre(Book.Genre.COMEDY);
+                bookService.updateBook(other);
+            }
+            book.setTitle("Final Title");
+        });
+
+        assertEquals(2, attempts.get());
+        Book stored = bookService.findBookById(saved.getId()).orElseThrow();
+        assertEquals(edited.getVersion(), stored.getVersion());
+        assertEquals("Final Title", stored.getTitle());
+        assertEquals(Book.Genre.COMEDY, stored.getGenre(), "The other editor's change should not be lost.");
+        assertEquals("Draft Title", saved.getTitle(), "The book read before the edit should not change.");
+        assertThrows(EntityNotFoundException.class, () -> bookService.editBook(-1, book -> {}));
+    }
+
+    @Test
+    void testEditsRacingReservationsKeepTheReservedStock() throws Exception {
+        Book saved = bookService.saveBook(new Book("Contended", null, Book.Genre.DRAMA, 10_000));
+        int edits = 500;
+        int reservations = 2_000;
+        OrderLines oneUnit = bookService.resolveBooks(OrderLines.builder().add(saved.getId(), 1).build());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> editor = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < edits; i++) {
+                String title = "Contended, Edit " + i;
+                bookService.editBook(saved.getId(), book -> book.setTitle(title));
+            }
+            return null;
+        });
+        Future<?> buyer = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < reservations; i++) {
+                bookService.reserveStock(oneUnit);
+            }
+            return null;
+        });
+        start.countDown();
+        editor.get(30, TimeUnit.SECONDS);
+        buyer.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        Book stored = bookService.findBookById(saved.getId()).orElseThrow();
+        assertEquals("Contended, Edit " + (edits - 1), stored.getTitle());
+        assertEquals(10_000 - reservations, stored.getStockUnits(), "An edit should not undo a reservation.");
+    }
+
+    @Test
+    void testUpdatingAStaleCopyIsRejected() throws EntityAlreadyExistsException {
+        Book saved = bookService.saveBook(new Book("Copied", null, Book.Genre.DRAMA, 1));
+        Book first = saved.copy();
+        Book second = saved.copy();
+
+        first.setTitle("First");
+        bookService.updateBook(first);
+        second.setTitle("Second");
+
+        assertThrows(StaleEntityException.class, () -> bookService.updateBook(second));
+        Book unread = new Book("Unread", null, Book.Genre.DRAMA, 1);
+        unread.setId(saved.getId());
+        assertThrows(StaleEntityException.class, () -> bookService.updateBook(unread));
+        assertEquals("First", bookService.findBookById(saved.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    void testListingFromAViewDoesNotSeeAnEdit() throws Exception {
+        Book saved = bookService.saveBook(new Book("Listed Before", null, Book.Genre.DRAMA, 1));
+
+        try (ReadView view = bookRepository.openReadView()) {
+            bookService.editBook(saved.getId(), book -> book.setTitle("Listed After"));
+
+            Book listed = bookService.getAllBooks(view).stream()
+                    .filter(book -> book.getId().equals(saved.getId())).findFirst().orElseThrow();
+            assertEquals("Listed Before", listed.getTitle());
+            assertEquals("Listed After", bookService.findBookById(saved.getId()).orElseThrow().getTitle());
+        }
+    }
 }
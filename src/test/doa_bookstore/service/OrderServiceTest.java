@@ -1,18 +1,38 @@
 package test.doa_bookstore.service;
 
+import doa_bookstore.controller.BookstoreController;
 import doa_bookstore.entity.Book;
+import doa_bookstore.entity.OrderLines;
 import doa_bookstore.entity.Orders;
 import doa_bookstore.exception.EntityAlreadyExistsException;
+import doa_bookstore.exception.EntityNotFoundException;
+import doa_bookstore.persistence.OrderArchive;
+import doa_bookstore.persistence.OrderCodec;
+import doa_bookstore.repository.AuthorRepository;
+import doa_bookstore.repository.BookRepository;
 import doa_bookstore.repository.MyCrudRepository;
 import doa_bookstore.repository.OrderRepository;
+import doa_bookstore.repository.mvcc.ReadView;
+import doa_bookstore.service.AuthorService;
+import doa_bookstore.service.BookService;
 import doa_bookstore.service.OrderService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -86,4 +106,126 @@ class OrderServiceTest {
         Optional<Orders> deletedOrder = orderService.findOrderById(orderId);
         assertFalse(deletedOrder.isPresent(), "Order should no longer exist after deletion.");
     }
+
+    @Test
+    void testCompletedOrdersLeaveThePendingIndex() throws Exception {
+        Orders first = orderService.createOrder("Index Customer", OrderLines.EMPTY);
+        Orders second = orderService.createOrder("Index Customer", OrderLines.EMPTY);
+
+        assertTrue(orderService.completeOrder(first.getId()));
+        assertFalse(orderService.completeOrder(first.getId()), "An order is completed only once.");
+        assertFalse(orderService.cancelOrder(first.getId()), "A completed order cannot be cancelled.");
+
+        // Completing an order stores a copy of it, so orders are matched by ID
+        List<Long> pending = orderService.findOrdersByStatus(Orders.OrderStatus.PENDING, Integer.MAX_VALUE).stream()
+                .map(Orders::getId).toList();
+        assertFalse(pending.contains(first.getId()));
+        assertTrue(pending.contains(second.getId()));
+        assertTrue(orderService.findOrdersByStatus(Orders.OrderStatus.COMPLETED, Integer.MAX_VALUE).stream()
+                .map(Orders::getId).toList().contains(first.getId()));
+        assertEquals(1, orderService.findOrdersByStatus(Orders.OrderStatus.PENDING, 1).size());
+        assertEquals(List.of(first.getId(), second.getId()), orderService.findOrdersByCustomer("Index Customer")
+                .stream().map(Orders::getId).sorted().toList());
+        assertThrows(EntityNotFoundException.class, () -> orderService.completeOrder(-1L));
+    }
+
+    @Test
+    void testViewOpenedBeforeAnOrderIsCompletedStillSeesItPending() throws Exception {
+        Orders order = orderService.createOrder("Viewing Customer", OrderLines.EMPTY);
+
+        try (ReadView view = orderRepository.openReadView()) {
+            assertTrue(orderService.completeOrder(order.getId()));
+
+            assertEquals(Orders.OrderStatus.PENDING, orderRepository.findById(order.getId(), view).orElseThrow()
+                    .getStatus());
+            assertEquals(Orders.OrderStatus.COMPLETED, orderService.findOrderById(order.getId()).orElseThrow()
+                    .getStatus());
+        }
+    }
+
+    @Test
+    void testCancellingAnOrderReleasesItsStock() throws Exception {
+        BookService bookService = new BookService(BookRepository.getInstance());
+        BookstoreController controller = new BookstoreController(bookService,
+                new AuthorService(AuthorRepository.getInstance()), new OrderService(orderRepository, bookService));
+        Book book = bookService.saveBook(new Book("Cancelled Book", null, Book.Genre.DRAMA, 5));
+        assertTrue(controller.makeOrder("Cancelling Customer", OrderLines.builder().add(book.getId(), 3).build()));
+        Orders order = orderService.findOrdersByCustomer("Cancelling Customer").get(0);
+        assertEquals(2, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+
+        assertTrue(controller.cancelOrder(order.getId()));
+        assertFalse(controller.cancelOrder(order.getId()), "The stock of an order is released only once.");
+
+        assertEquals(Orders.OrderStatus.CANCELLED, orderService.findOrderById(order.getId()).orElseThrow().getStatus());
+        assertEquals(Orders.OrderStatus.PENDING, order.getStatus(), "Orders read before are left as they were.");
+        assertEquals(5, bookService.findBookById(book.getId()).orElseThrow().getStockUnits());
+        assertFalse(controller.findPendingOrders(Integer.MAX_VALUE).contains(order));
+    }
+
+    @Test
+    void testConcurrentTransitionsHaveOneWinner() throws Exception {
+        Orders order = orderService.createOrder("Racing Customer", OrderLines.EMPTY);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            boolean cancel = t % 2 == 0;
+            results.add(executor.submit(() -> {
+                start.await();
+                return cancel ? orderService.cancelOrder(order.getId()) : orderService.completeOrder(order.getId());
+            }));
+        }
+        start.countDown();
+        int winners = 0;
+        for (Future<Boolean> result : results) {
+            winners += result.get(10, TimeUnit.SECONDS) ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, winners);
+        Orders moved = orderService.findOrderById(order.getId()).orElseThrow();
+        assertNotEquals(Orders.OrderStatus.PENDING, moved.getStatus());
+        assertEquals(order.getVersion() + 1, moved.getVersion(), "Only the winner writes the order.");
+    }
+
+    @Test
+    void testArchivedOrdersStayQueryableAndCounted() throws Exception {
+        BookService bookService = new BookService(BookRepository.getInstance());
+        Book book = bookService.saveBook(new Book("Archived Sales", null, Book.Genre.DRAMA, 100));
+        Path directory = Files.createTempDirectory("doa-orders-archive");
+        orderRepository.attachArchive(OrderArchive.open(directory,
+                new OrderCodec(id -> bookService.findBookById(id).orElse(null))));
+        try {
+            // Days of January 2001, long before any order placed by the other tests
+            long day = TimeUnit.DAYS.toMillis(1);
+            long january = TimeUnit.DAYS.toMillis(11323);
+            OrderLines lines = OrderLines.builder().add(book, 2).build();
+            Orders old = orderRepository.save(new Orders("Archive Customer", lines, new Date(january + day),
+                    Orders.OrderStatus.COMPLETED));
+            Orders pending = orderRepository.save(new Orders("Archive Customer", lines, new Date(january + 4 * day),
+                    Orders.OrderStatus.PENDING));
+            Orders recent = orderRepository.save(new Orders("Archive Customer", lines, new Date(january + 20 * day),
+                    Orders.OrderStatus.COMPLETED));
+            assertEquals(6, orderRepository.countUnitsSoldOfBook(book.getId()));
+
+            assertEquals(1, orderRepository.archiveOrdersBefore(new Date(january + 10 * day)));
+
+            assertFalse(orderService.findOrderById(old.getId()).isPresent(), "Archived orders leave the repository.");
+            assertEquals(6, orderRepository.countUnitsSoldOfBook(book.getId()));
+            List<Orders> january2001 = orderService.findOrdersBetween(new Date(january), new Date(january + 31 * day));
+            assertEquals(List.of(old.getId(), pending.getId(), recent.getId()),
+                    january2001.stream().map(Orders::getId).toList());
+            assertEquals(List.of(pending.getId()), orderService.findOrdersBetween(new Date(january + 2 * day),
+                    new Date(january + 20 * day)).stream().map(Orders::getId).toList());
+        } finally {
+            orderRepository.attachArchive(null);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
 }